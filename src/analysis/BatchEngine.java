@@ -0,0 +1,71 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+
+import base.AmuaModel;
+
+/**
+ * Batch runs: runs the model repeatedly with the same parameter values to capture stochastic (e.g. microsimulation) uncertainty
+ */
+public class BatchEngine{
+	AmuaModel myModel;
+	public int numIterations=100;
+	
+	public BatchEngine(AmuaModel myModel){
+		this.myModel=myModel;
+	}
+	
+	/**
+	 * Runs the batch.  Parameters are unlocked afterwards.
+	 * @param progress Progress listener
+	 * @return Results
+	 * @throws Exception If the base case model has errors
+	 */
+	public BatchResults run(ProgressListener progress) throws Exception{
+		ArrayList<String> errorsBase=myModel.parseModel();
+		if(errorsBase.size()>0){
+			throw new Exception("Errors in base case model!");
+		}
+		myModel.getStrategies();
+		BatchResults results=new BatchResults(numIterations);
+		
+		boolean origShowTrace=true;
+		if(myModel.type==1){
+			origShowTrace=myModel.markov.showTrace;
+			myModel.markov.showTrace=false; //don't show individual trace
+		}
+		try{
+			myModel.evaluateParameters(); //get parameters
+			for(int n=0; n<numIterations && results.cancelled==false; n++){
+				results.reports[n]=myModel.runModel(null, false);
+				results.outcomes[n]=Outcomes.record(myModel);
+				progress.setProgress(n+1, numIterations);
+				if(progress.isCancelled()){results.cancelled=true;}
+			}
+		} finally{
+			myModel.unlockParams();
+			if(myModel.type==1){
+				myModel.markov.showTrace=origShowTrace; //reset
+			}
+		}
+		return(results);
+	}
+}
@@ -0,0 +1,40 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import base.RunReport;
+
+/**
+ * Results of batch runs
+ */
+public class BatchResults{
+	public int numIterations;
+	public boolean cancelled=false;
+	/**
+	 * [Iteration]
+	 */
+	public Outcomes outcomes[];
+	public RunReport reports[];
+	
+	BatchResults(int numIterations){
+		this.numIterations=numIterations;
+		outcomes=new Outcomes[numIterations];
+		reports=new RunReport[numIterations];
+	}
+}
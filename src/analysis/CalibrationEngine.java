@@ -0,0 +1,856 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import base.AmuaModel;
+import base.RunReport;
+import main.MersenneTwisterFast;
+import main.ParameterSet;
+import main.ReplayRNG;
+import markov.MarkovNode;
+import math.Interpreter;
+import math.MathUtils;
+
+/**
+ * Calibrates a Markov chain by searching for parameter sets that minimize a score expression (lower is better).
+ * Candidates are searched in draw space: each parameter set is sampled by replaying a vector of uniform draws through the
+ * parameter distributions (see ReplayRNG), so the prior is uniform on the unit cube and constraints are checked as usual.
+ * With more than one thread, candidates are run in parallel on replicas of the model.
+ */
+public class CalibrationEngine{
+	AmuaModel myModel;
+	MarkovNode chain;
+	int chainIndex;
+	/**
+	 * 0=Random, 1=ABC (Approximate Bayesian Computation), 2=ABC-SMC (Sequential Monte Carlo), 3=Nelder-Mead, 4=CMA-ES
+	 */
+	public int method=0;
+	/**
+	 * Number of parameter sets to find (number of restarts for Nelder-Mead and CMA-ES)
+	 */
+	public int numSets=100;
+	public String score;
+	/**
+	 * ABC acceptance threshold (final threshold for ABC-SMC)
+	 */
+	public double threshold;
+	/**
+	 * ABC-SMC: Max number of generations after the initial sample
+	 */
+	public int maxGenerations=20;
+	/**
+	 * Nelder-Mead/CMA-ES: Max model runs for each restart
+	 */
+	public int maxRuns=1000;
+	public int numThreads=1;
+	public boolean seeded=false;
+	public int seed;
+	/**
+	 * CSV file that accepted parameter sets are written to as they are found (null for none).  ABC-SMC writes each complete generation.
+	 */
+	public String checkpointFile;
+	
+	/**
+	 * Draws are kept this far inside (0,1) so quantiles are finite
+	 */
+	private static final double EDGE=1e-12;
+	int numDraws;
+	MersenneTwisterFast generator;
+	ProgressListener progress;
+	volatile boolean cancelled;
+	AtomicInteger numRuns;
+	Worker mainWorker; //serial
+	ArrayBlockingQueue<Worker> workers; //parallel
+	ExecutorService pool;
+	BufferedWriter checkpoint;
+	
+	public CalibrationEngine(AmuaModel myModel, MarkovNode chain, String score){
+		this.myModel=myModel;
+		this.chain=chain;
+		this.score=score;
+	}
+	
+	/**
+	 * Runs the calibration.  Original parameter values are restored afterwards.
+	 * @param progress Progress listener
+	 * @return Results
+	 * @throws Exception If the base case model has errors or the score expression is invalid
+	 */
+	public CalibrationResults run(ProgressListener progress) throws Exception{
+		this.progress=progress;
+		if(myModel.panelMarkov!=null){
+			myModel.panelMarkov.curNode=chain; //select current chain
+		}
+		ArrayList<String> errorsBase=myModel.parseModel();
+		if(errorsBase.size()>0){
+			throw new Exception("Errors in base case model!");
+		}
+		chainIndex=myModel.markov.nodes.indexOf(chain);
+		
+		boolean origShowTrace=myModel.markov.showTrace;
+		boolean origDirect=myModel.directSampling;
+		myModel.markov.showTrace=false;
+		myModel.directSampling=false; //inverse-CDF only so each parameter uses a fixed number of draws
+		myModel.markov.chainFilter=new BitSet();
+		myModel.markov.chainFilter.set(chainIndex);
+		cancelled=false;
+		numRuns=new AtomicInteger();
+		generator=new MersenneTwisterFast();
+		if(seeded){generator.setSeed(seed);}
+		try{
+			//initial run to build trace
+			RunReport curReport=new RunReport(myModel);
+			myModel.markov.runModel(false,curReport,false);
+			try{ //try evaluate score expression
+				Interpreter.evaluate(score, myModel, false);
+			} catch(Exception e){
+				throw new Exception("Error in score expression: "+e.toString());
+			}
+			
+			if(numThreads<=1){
+				mainWorker=new Worker(myModel);
+				numDraws=mainWorker.countDraws();
+			}
+			else{
+				progress.setNote("Copying model");
+				workers=new ArrayBlockingQueue<Worker>(numThreads);
+				for(int r=0; r<numThreads; r++){
+					workers.add(new Worker(myModel.createReplica()));
+				}
+				numDraws=workers.peek().countDraws();
+				pool=Executors.newFixedThreadPool(numThreads);
+			}
+			if(method>=2 && numDraws==0){
+				throw new Exception("No parameters to calibrate - parameters must be sampled from distributions");
+			}
+			
+			CalibrationResults results;
+			if(method<=1){results=runRejection();}
+			else if(method==2){results=runSMC();}
+			else if(method==3){results=runNelderMead();}
+			else{results=runCMAES();}
+			results.numRuns=numRuns.get();
+			return(results);
+		} finally{
+			if(pool!=null){ //wait for running candidates before parameters are reset
+				pool.shutdown();
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				pool=null;
+			}
+			if(workers!=null){
+				for(Worker worker : workers){worker.curModel.releaseWorkerPool();}
+			}
+			workers=null;
+			if(mainWorker!=null){
+				mainWorker.sampler.reset();
+				mainWorker=null;
+			}
+			if(checkpoint!=null){
+				checkpoint.close();
+				checkpoint=null;
+			}
+			myModel.markov.showTrace=origShowTrace;
+			myModel.directSampling=origDirect;
+			myModel.markov.chainFilter=null;
+		}
+	}
+	
+	/**
+	 * Random search (all valid sets) or rejection ABC (sets within the threshold)
+	 */
+	private CalibrationResults runRejection() throws Exception{
+		CalibrationResults results=new CalibrationResults(numSets);
+		startCheckpoint();
+		int batchSize=(pool==null) ? 1 : numThreads*2;
+		int numFound=0;
+		while(numFound<numSets && isCancelled()==false){
+			double points[][]=new double[batchSize][];
+			for(int b=0; b<batchSize; b++){points[b]=randomDraws(generator);}
+			Candidate cands[]=evaluate(points);
+			int prevFound=numFound;
+			for(int b=0; b<batchSize && numFound<numSets; b++){
+				Candidate cand=cands[b];
+				if(cand.set!=null && (method==0 || cand.score<=threshold)){ //accept
+					cand.set.id=(numFound+1)+"";
+					results.params[numFound]=cand.set;
+					checkpoint(cand.set);
+					numFound++;
+				}
+			}
+			if(numFound>prevFound){progress.setProgress(numFound, numSets);}
+		}
+		if(numFound<numSets){ //cancelled
+			results.cancelled=true;
+			results.numSets=numFound;
+		}
+		return(results);
+	}
+	
+	/**
+	 * ABC-SMC (population Monte Carlo).  The population is moved through shrinking tolerances (the median score of the previous
+	 * population) until the threshold is reached.  Particles are perturbed with a Gaussian kernel reflected at 0 and 1.
+	 */
+	private CalibrationResults runSMC() throws Exception{
+		int n=numSets;
+		int batchSize=(pool==null) ? 1 : numThreads*2;
+		
+		//Initial population from the prior
+		Candidate pop[]=new Candidate[n];
+		int numFound=0;
+		while(numFound<n && isCancelled()==false){
+			double points[][]=new double[batchSize][];
+			for(int b=0; b<batchSize; b++){points[b]=randomDraws(generator);}
+			Candidate cands[]=evaluate(points);
+			int prevFound=numFound;
+			for(int b=0; b<batchSize && numFound<n; b++){
+				if(cands[b].set!=null){
+					pop[numFound]=cands[b];
+					numFound++;
+				}
+			}
+			if(numFound>prevFound){
+				progress.setProgress(numFound, n);
+				progress.setNote("Generation 0");
+			}
+		}
+		if(numFound<n){ //cancelled
+			pop=Arrays.copyOf(pop, numFound);
+			n=numFound;
+		}
+		double weights[]=new double[n];
+		Arrays.fill(weights, 1.0/n);
+		ParameterSet sets[]=resample(pop, weights);
+		writeCheckpoint(sets);
+		
+		double tol=Double.POSITIVE_INFINITY;
+		for(int g=1; g<=maxGenerations && cancelled==false; g++){
+			//Next tolerance
+			double scores[]=new double[n];
+			for(int i=0; i<n; i++){scores[i]=pop[i].cost();}
+			Arrays.sort(scores);
+			double nextTol=Math.max(threshold, scores[n/2]);
+			if(tol<=threshold || !(nextTol<tol)){break;} //reached threshold or not shrinking
+			tol=nextTol;
+			
+			//Kernel width: twice the weighted variance of each draw
+			double sigma[]=new double[numDraws];
+			for(int d=0; d<numDraws; d++){
+				double mean=0;
+				for(int i=0; i<n; i++){mean+=weights[i]*pop[i].draws[d];}
+				double var=0;
+				for(int i=0; i<n; i++){
+					double dev=pop[i].draws[d]-mean;
+					var+=weights[i]*dev*dev;
+				}
+				sigma[d]=Math.sqrt(2*var);
+			}
+			double cumWeights[]=new double[n];
+			double cum=0;
+			for(int i=0; i<n; i++){
+				cum+=weights[i];
+				cumWeights[i]=cum;
+			}
+			
+			Candidate next[]=new Candidate[n];
+			double logWeights[]=new double[n];
+			int numAccepted=0, numProposed=0;
+			while(numAccepted<n && isCancelled()==false){
+				double points[][]=new double[batchSize][];
+				for(int b=0; b<batchSize; b++){
+					Candidate parent=pop[MathUtils.selectIndex(cumWeights, generator.nextDouble())];
+					double x[]=new double[numDraws];
+					for(int d=0; d<numDraws; d++){x[d]=parent.draws[d]+sigma[d]*generator.nextGaussian();}
+					points[b]=reflect(x);
+				}
+				Candidate cands[]=evaluate(points);
+				numProposed+=batchSize;
+				int prevAccepted=numAccepted;
+				for(int b=0; b<batchSize && numAccepted<n; b++){
+					if(cands[b].cost()<=tol){
+						next[numAccepted]=cands[b];
+						logWeights[numAccepted]=-logKernelSum(cands[b].draws, pop, weights, sigma); //uniform prior
+						numAccepted++;
+					}
+				}
+				if(numAccepted>prevAccepted){
+					progress.setProgress(numAccepted, n);
+					progress.setNote("Generation "+g+" (tolerance "+tol+", acceptance "+MathUtils.round(numAccepted/(numProposed*1.0), 4)+")");
+				}
+			}
+			if(cancelled){break;} //keep last complete population
+			
+			//Normalize weights
+			double maxLog=Double.NEGATIVE_INFINITY;
+			for(int i=0; i<n; i++){maxLog=Math.max(maxLog, logWeights[i]);}
+			double sumWeights=0;
+			for(int i=0; i<n; i++){
+				weights[i]=Math.exp(logWeights[i]-maxLog);
+				sumWeights+=weights[i];
+			}
+			for(int i=0; i<n; i++){weights[i]/=sumWeights;}
+			pop=next;
+			sets=resample(pop, weights);
+			writeCheckpoint(sets);
+		}
+		
+		CalibrationResults results=new CalibrationResults(n);
+		results.params=sets;
+		results.cancelled=cancelled;
+		return(results);
+	}
+	
+	/**
+	 * Nelder-Mead simplex search from random starting points.  Restarts run in parallel, each on its own model.
+	 */
+	private CalibrationResults runNelderMead() throws Exception{
+		CalibrationResults results=new CalibrationResults(numSets);
+		startCheckpoint();
+		int numDone=0;
+		if(pool==null){
+			for(int r=0; r<numSets && isCancelled()==false; r++){
+				numDone=addResult(results, nelderMead(mainWorker, new MersenneTwisterFast(generator.nextLong())), numDone);
+			}
+		}
+		else{
+			ExecutorCompletionService<Candidate> completed=new ExecutorCompletionService<Candidate>(pool);
+			ArrayList<Future<Candidate>> restarts=new ArrayList<Future<Candidate>>();
+			try{
+				for(int r=0; r<numSets; r++){
+					final MersenneTwisterFast rng=new MersenneTwisterFast(generator.nextLong());
+					restarts.add(completed.submit(new Callable<Candidate>(){
+						public Candidate call() throws Exception{
+							Worker curWorker=workers.take();
+							try{
+								return(nelderMead(curWorker, rng));
+							} finally{
+								workers.put(curWorker);
+							}
+						}
+					}));
+				}
+				int numComplete=0;
+				while(numComplete<numSets){ //restarts return early once cancelled
+					Future<Candidate> restart=completed.poll(200, TimeUnit.MILLISECONDS);
+					if(restart!=null){
+						numComplete++;
+						numDone=addResult(results, restart.get(), numDone); //throws any errors
+					}
+					isCancelled();
+				}
+			} finally{
+				for(int r=0; r<restarts.size(); r++){
+					restarts.get(r).cancel(false);
+				}
+			}
+		}
+		if(numDone<numSets){
+			results.cancelled=cancelled;
+			results.numSets=numDone;
+		}
+		return(results);
+	}
+	
+	/**
+	 * Nelder-Mead search on one model.  Coordinates are reflected into draws (see reflect()).
+	 * @param rng Generator for the starting point
+	 * @return Best candidate, null if cancelled before a valid start was found
+	 */
+	private Candidate nelderMead(Worker curWorker, MersenneTwisterFast rng) throws Exception{
+		int n=numDraws;
+		Candidate start=null;
+		while(cancelled==false && (start==null || start.set==null)){
+			start=curWorker.evaluate(randomDraws(rng));
+		}
+		if(start==null || start.set==null){return(null);}
+		
+		//Initial simplex
+		double x[][]=new double[n+1][];
+		Candidate f[]=new Candidate[n+1];
+		x[0]=start.draws.clone();
+		f[0]=start;
+		for(int i=0; i<n; i++){
+			x[i+1]=start.draws.clone();
+			x[i+1][i]+=(x[i+1][i]<0.5) ? 0.1 : -0.1;
+			f[i+1]=curWorker.evaluate(reflect(x[i+1]));
+		}
+		int runs=n+1;
+		
+		while(runs<maxRuns && cancelled==false){
+			sortSimplex(x,f);
+			if(converged(x,f)){break;}
+			double fBest=f[0].cost(), fWorst=f[n].cost();
+			double c[]=new double[n]; //centroid of all but worst
+			for(int i=0; i<n; i++){
+				for(int d=0; d<n; d++){c[d]+=x[i][d]/n;}
+			}
+			double xr[]=move(c, x[n], -1); //reflect
+			Candidate fr=curWorker.evaluate(reflect(xr));
+			runs++;
+			if(fr.cost()<fBest){ //expand
+				double xe[]=move(c, x[n], -2);
+				Candidate fe=curWorker.evaluate(reflect(xe));
+				runs++;
+				if(fe.cost()<fr.cost()){x[n]=xe; f[n]=fe;}
+				else{x[n]=xr; f[n]=fr;}
+			}
+			else if(fr.cost()<f[n-1].cost()){
+				x[n]=xr; f[n]=fr;
+			}
+			else{ //contract
+				double xc[]=(fr.cost()<fWorst) ? move(c, x[n], -0.5) : move(c, x[n], 0.5);
+				Candidate fc=curWorker.evaluate(reflect(xc));
+				runs++;
+				if(fc.cost()<Math.min(fr.cost(), fWorst)){x[n]=xc; f[n]=fc;}
+				else{ //shrink towards best
+					for(int i=1; i<=n; i++){
+						for(int d=0; d<n; d++){x[i][d]=x[0][d]+0.5*(x[i][d]-x[0][d]);}
+						f[i]=curWorker.evaluate(reflect(x[i]));
+						runs++;
+					}
+				}
+			}
+		}
+		sortSimplex(x,f);
+		return(f[0]);
+	}
+	
+	/**
+	 * CMA-ES (covariance matrix adaptation evolution strategy).  The first restart starts at the prior medians, later
+	 * restarts at random draws.  Each generation's candidates are run in parallel.
+	 */
+	private CalibrationResults runCMAES() throws Exception{
+		CalibrationResults results=new CalibrationResults(numSets);
+		startCheckpoint();
+		int numDone=0;
+		for(int r=0; r<numSets && isCancelled()==false; r++){
+			double mean[];
+			if(r==0){
+				mean=new double[numDraws];
+				Arrays.fill(mean, 0.5);
+			}
+			else{mean=randomDraws(generator);}
+			numDone=addResult(results, cmaes(mean), numDone);
+		}
+		if(numDone<numSets){
+			results.cancelled=cancelled;
+			results.numSets=numDone;
+		}
+		return(results);
+	}
+	
+	/**
+	 * Runs one CMA-ES search.  Candidates are sampled with the Cholesky factor of the covariance matrix, and coordinates
+	 * are reflected into draws (see reflect()).
+	 * @param mean Starting mean (updated)
+	 * @return Best candidate
+	 */
+	private Candidate cmaes(double mean[]) throws Exception{
+		int n=numDraws;
+		int lambda=4+(int)(3*Math.log(n));
+		int mu=lambda/2;
+		double w[]=new double[mu];
+		double sumW=0, sumW2=0;
+		for(int i=0; i<mu; i++){
+			w[i]=Math.log(mu+0.5)-Math.log(i+1);
+			sumW+=w[i];
+		}
+		for(int i=0; i<mu; i++){
+			w[i]/=sumW;
+			sumW2+=w[i]*w[i];
+		}
+		double muEff=1.0/sumW2;
+		double cs=(muEff+2)/(n+muEff+5);
+		double ds=1+2*Math.max(0, Math.sqrt((muEff-1)/(n+1))-1)+cs;
+		double cc=(4+muEff/n)/(n+4+2*muEff/n);
+		double c1=2/((n+1.3)*(n+1.3)+muEff);
+		double cmu=Math.min(1-c1, 2*(muEff-2+1/muEff)/((n+2)*(n+2)+muEff));
+		double chiN=Math.sqrt(n)*(1-1.0/(4*n)+1.0/(21.0*n*n));
+		
+		double sigma=0.3;
+		double cov[][]=new double[n][n];
+		for(int i=0; i<n; i++){cov[i][i]=1;}
+		double ps[]=new double[n], pc[]=new double[n];
+		Candidate best=null;
+		int runs=0, gen=0;
+		while(runs<maxRuns && isCancelled()==false){
+			double a[][]=new double[n][];
+			for(int i=0; i<n; i++){a[i]=cov[i].clone();}
+			if(EVPPIEngine.cholesky(a)==false){break;} //numerically degenerate
+			
+			//Sample
+			double z[][]=new double[lambda][n], y[][]=new double[lambda][n];
+			double points[][]=new double[lambda][];
+			for(int k=0; k<lambda; k++){
+				for(int d=0; d<n; d++){z[k][d]=generator.nextGaussian();}
+				double x[]=new double[n];
+				for(int i=0; i<n; i++){
+					for(int j=0; j<=i; j++){y[k][i]+=a[i][j]*z[k][j];}
+					x[i]=mean[i]+sigma*y[k][i];
+				}
+				points[k]=reflect(x);
+			}
+			Candidate cands[]=evaluate(points);
+			runs+=lambda;
+			gen++;
+			
+			//Rank
+			int order[]=new int[lambda];
+			for(int k=0; k<lambda; k++){
+				int pos=k;
+				while(pos>0 && cands[order[pos-1]].cost()>cands[k].cost()){
+					order[pos]=order[pos-1];
+					pos--;
+				}
+				order[pos]=k;
+			}
+			if(best==null || cands[order[0]].cost()<best.cost()){best=cands[order[0]];}
+			
+			//Recombine
+			double zMean[]=new double[n], yMean[]=new double[n];
+			for(int m=0; m<mu; m++){
+				for(int d=0; d<n; d++){
+					zMean[d]+=w[m]*z[order[m]][d];
+					yMean[d]+=w[m]*y[order[m]][d];
+				}
+			}
+			for(int d=0; d<n; d++){mean[d]+=sigma*yMean[d];}
+			
+			//Evolution paths
+			double psNorm=0;
+			for(int d=0; d<n; d++){
+				ps[d]=(1-cs)*ps[d]+Math.sqrt(cs*(2-cs)*muEff)*zMean[d];
+				psNorm+=ps[d]*ps[d];
+			}
+			psNorm=Math.sqrt(psNorm);
+			boolean hsig=psNorm/Math.sqrt(1-Math.pow(1-cs, 2*gen))/chiN < 1.4+2.0/(n+1);
+			for(int d=0; d<n; d++){
+				pc[d]=(1-cc)*pc[d];
+				if(hsig){pc[d]+=Math.sqrt(cc*(2-cc)*muEff)*yMean[d];}
+			}
+			
+			//Covariance and step size
+			double dh=hsig ? 0 : cc*(2-cc);
+			for(int i=0; i<n; i++){
+				for(int j=0; j<=i; j++){
+					double rankMu=0;
+					for(int m=0; m<mu; m++){rankMu+=w[m]*y[order[m]][i]*y[order[m]][j];}
+					cov[i][j]=(1-c1-cmu)*cov[i][j]+c1*(pc[i]*pc[j]+dh*cov[i][j])+cmu*rankMu;
+					cov[j][i]=cov[i][j];
+				}
+			}
+			sigma*=Math.exp((cs/ds)*(psNorm/chiN-1));
+			
+			double maxSd=0;
+			for(int d=0; d<n; d++){maxSd=Math.max(maxSd, Math.sqrt(cov[d][d]));}
+			if(sigma*maxSd<1e-10){break;} //converged
+		}
+		return(best);
+	}
+	
+	/**
+	 * Adds the best set from a search to the results
+	 * @return Number of sets in the results
+	 */
+	private int addResult(CalibrationResults results, Candidate best, int numDone) throws IOException{
+		if(best!=null && best.set!=null){
+			best.set.id=(numDone+1)+"";
+			results.params[numDone]=best.set;
+			checkpoint(best.set);
+			numDone++;
+			progress.setProgress(numDone, numSets);
+			progress.setNote("Last score: "+best.score);
+		}
+		return(numDone);
+	}
+	
+	/**
+	 * Runs candidates, in parallel if there are replicas
+	 * @param points Draws for each candidate
+	 */
+	private Candidate[] evaluate(final double points[][]) throws Exception{
+		int num=points.length;
+		final Candidate cands[]=new Candidate[num];
+		if(pool==null){
+			for(int i=0; i<num; i++){cands[i]=mainWorker.evaluate(points[i]);}
+			return(cands);
+		}
+		ArrayList<Future<Void>> runs=new ArrayList<Future<Void>>();
+		try{
+			for(int i=0; i<num; i++){
+				final int curIndex=i;
+				runs.add(pool.submit(new Callable<Void>(){
+					public Void call() throws Exception{
+						Worker curWorker=workers.take();
+						try{
+							cands[curIndex]=curWorker.evaluate(points[curIndex]);
+						} finally{
+							workers.put(curWorker);
+						}
+						return(null);
+					}
+				}));
+			}
+			for(int i=0; i<num; i++){
+				runs.get(i).get(); //throws any errors
+			}
+		} finally{
+			for(int i=0; i<runs.size(); i++){
+				runs.get(i).cancel(false);
+			}
+		}
+		return(cands);
+	}
+	
+	private boolean isCancelled(){
+		if(progress.isCancelled()){cancelled=true;}
+		return(cancelled);
+	}
+	
+	private double[] randomDraws(MersenneTwisterFast rng){
+		double draws[]=new double[numDraws];
+		for(int d=0; d<numDraws; d++){draws[d]=clamp(rng.nextDouble());}
+		return(draws);
+	}
+	
+	private static double clamp(double draw){
+		return(Math.min(Math.max(draw, EDGE), 1-EDGE));
+	}
+	
+	/**
+	 * Maps unbounded search coordinates to draws by reflecting at 0 and 1
+	 */
+	private static double[] reflect(double x[]){
+		double draws[]=new double[x.length];
+		for(int d=0; d<x.length; d++){
+			double t=x[d]-2*Math.floor(x[d]/2); //[0,2)
+			if(t>1){t=2-t;}
+			draws[d]=clamp(t);
+		}
+		return(draws);
+	}
+	
+	/**
+	 * @return c+t*(x-c)
+	 */
+	private static double[] move(double c[], double x[], double t){
+		double moved[]=new double[c.length];
+		for(int d=0; d<c.length; d++){moved[d]=c[d]+t*(x[d]-c[d]);}
+		return(moved);
+	}
+	
+	/**
+	 * Sorts simplex vertices from best to worst
+	 */
+	private static void sortSimplex(double x[][], Candidate f[]){
+		for(int i=1; i<f.length; i++){
+			double curX[]=x[i];
+			Candidate curF=f[i];
+			int j=i-1;
+			while(j>=0 && f[j].cost()>curF.cost()){
+				x[j+1]=x[j];
+				f[j+1]=f[j];
+				j--;
+			}
+			x[j+1]=curX;
+			f[j+1]=curF;
+		}
+	}
+	
+	/**
+	 * @return True if the simplex has collapsed and scores are equal (sorted simplex)
+	 */
+	private static boolean converged(double x[][], Candidate f[]){
+		double fBest=f[0].cost(), fWorst=f[f.length-1].cost();
+		if(!(fWorst-fBest<=1e-10*(1+Math.abs(fBest)))){return(false);}
+		for(int i=1; i<x.length; i++){
+			for(int d=0; d<x[i].length; d++){
+				if(Math.abs(x[i][d]-x[0][d])>1e-8){return(false);}
+			}
+		}
+		return(true);
+	}
+	
+	/**
+	 * @return Log of the kernel density at the draws, mixed over the weighted population (constants dropped)
+	 */
+	private double logKernelSum(double draws[], Candidate pop[], double weights[], double sigma[]){
+		int n=pop.length;
+		double logK[]=new double[n];
+		double maxLog=Double.NEGATIVE_INFINITY;
+		for(int i=0; i<n; i++){
+			double sum=Math.log(weights[i]);
+			for(int d=0; d<numDraws; d++){
+				if(sigma[d]>0){sum+=Math.log(reflectedKernel(draws[d], pop[i].draws[d], sigma[d]));}
+			}
+			logK[i]=sum;
+			maxLog=Math.max(maxLog, sum);
+		}
+		double total=0;
+		for(int i=0; i<n; i++){total+=Math.exp(logK[i]-maxLog);}
+		return(maxLog+Math.log(total));
+	}
+	
+	/**
+	 * Gaussian kernel from v to u reflected at 0 and 1 (nearest images), up to a constant
+	 */
+	private static double reflectedKernel(double u, double v, double sigma){
+		double dens=0;
+		for(int m=-1; m<=1; m++){
+			double a=(u-v-2*m)/sigma, b=(u+v-2*m)/sigma;
+			dens+=Math.exp(-0.5*a*a)+Math.exp(-0.5*b*b);
+		}
+		return(dens);
+	}
+	
+	/**
+	 * Systematic resampling of a weighted population into equally weighted parameter sets
+	 */
+	private ParameterSet[] resample(Candidate pop[], double weights[]){
+		int n=pop.length;
+		ParameterSet sets[]=new ParameterSet[n];
+		if(n==0){return(sets);}
+		double start=generator.nextDouble()/n;
+		double cum=weights[0];
+		int i=0;
+		for(int s=0; s<n; s++){
+			double target=start+s/(n*1.0);
+			while(target>cum && i<n-1){
+				i++;
+				cum+=weights[i];
+			}
+			sets[s]=pop[i].set.copy();
+			sets[s].id=(s+1)+"";
+		}
+		return(sets);
+	}
+	
+	/**
+	 * Starts (or restarts) the checkpoint file with headers as in parameter set exports
+	 */
+	private void startCheckpoint() throws IOException{
+		if(checkpointFile==null){return;}
+		if(checkpoint!=null){checkpoint.close();}
+		checkpoint=new BufferedWriter(new FileWriter(checkpointFile));
+		checkpoint.write("Set,Score");
+		for(int v=0; v<myModel.parameters.size(); v++){checkpoint.write(","+myModel.parameters.get(v).name);}
+		checkpoint.newLine();
+		checkpoint.flush();
+	}
+	
+	private void checkpoint(ParameterSet set) throws IOException{
+		if(checkpoint==null){return;}
+		checkpoint.write(set.id+","+set.score);
+		for(int v=0; v<set.values.length; v++){checkpoint.write(","+set.values[v].saveAsCSVString());}
+		checkpoint.newLine();
+		checkpoint.flush();
+	}
+	
+	/**
+	 * Rewrites the checkpoint file with the current sets
+	 */
+	private void writeCheckpoint(ParameterSet sets[]) throws IOException{
+		startCheckpoint();
+		for(int s=0; s<sets.length; s++){checkpoint(sets[s]);}
+	}
+	
+	/**
+	 * Draws and the parameter set sampled from them
+	 */
+	private static class Candidate{
+		double draws[];
+		double score=Double.NaN;
+		/**
+		 * Null if constraints aren't met or the model is invalid
+		 */
+		ParameterSet set;
+		
+		Candidate(double draws[]){
+			this.draws=draws;
+		}
+		
+		/**
+		 * @return Score to minimize (infinite if invalid)
+		 */
+		double cost(){
+			if(set==null || Double.isNaN(score)){return(Double.POSITIVE_INFINITY);}
+			return(score);
+		}
+	}
+	
+	/**
+	 * A model (the base model or a replica) with its own parameter sampler.  Only the chain being calibrated is run.
+	 */
+	private class Worker{
+		AmuaModel curModel;
+		ParameterSampler sampler;
+		ReplayRNG replay;
+		
+		Worker(AmuaModel curModel){
+			this.curModel=curModel;
+			sampler=new ParameterSampler(curModel,false,0);
+			replay=new ReplayRNG(generator.nextLong());
+			curModel.generatorParam=replay;
+			curModel.markov.showTrace=false;
+			curModel.directSampling=false;
+			curModel.markov.chainFilter=new BitSet();
+			curModel.markov.chainFilter.set(chainIndex);
+		}
+		
+		/**
+		 * @return Number of draws used to sample all parameters
+		 */
+		int countDraws() throws Exception{
+			replay.replay(new double[0]);
+			sampler.sampleOnce();
+			return(replay.getNumDraws());
+		}
+		
+		/**
+		 * Samples parameters from the draws and scores the chain
+		 */
+		Candidate evaluate(double draws[]) throws Exception{
+			Candidate cand=new Candidate(draws);
+			replay.replay(draws);
+			if(sampler.sampleOnce()){
+				RunReport curReport=new RunReport(curModel);
+				curModel.markov.runModel(false,curReport,false);
+				numRuns.incrementAndGet();
+				cand.score=Interpreter.evaluate(score, curModel, false).getDouble();
+				cand.set=new ParameterSet(curModel);
+				cand.set.score=cand.score;
+			}
+			return(cand);
+		}
+	}
+}
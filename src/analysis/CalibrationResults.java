@@ -0,0 +1,43 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package analysis;
+
+import main.ParameterSet;
+
+/**
+ * Results of a calibration run
+ */
+public class CalibrationResults{
+	/**
+	 * Number of parameter sets found (less than requested if cancelled)
+	 */
+	public int numSets;
+	public boolean cancelled=false;
+	public ParameterSet params[];
+	/**
+	 * Number of model runs
+	 */
+	public int numRuns;
+	
+	CalibrationResults(int numSets){
+		this.numSets=numSets;
+		params=new ParameterSet[numSets];
+	}
+}
@@ -0,0 +1,235 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import base.AmuaModel;
+
+/**
+ * Expected value of perfect (and partial perfect) information, estimated from a PSA.
+ * EVPPI is estimated by sorting iterations by each parameter and taking the mean of the best strategy within bins,
+ * and by regression on the PSA draws (see EVPPIEngine).
+ */
+public class EVPIEngine{
+	AmuaModel myModel;
+	public int numIterations=1000;
+	public boolean seeded=false;
+	public int seed;
+	public int numThreads=1;
+	/**
+	 * Number of bins for EVPPI
+	 */
+	public int numBins=10;
+	
+	public EVPIEngine(AmuaModel myModel){
+		this.myModel=myModel;
+	}
+	
+	/**
+	 * Runs a PSA and calculates EVPI/EVPPI
+	 * @param progress Progress listener
+	 * @return Results (only the PSA results if cancelled)
+	 */
+	public EVPIResults run(ProgressListener progress) throws Exception{
+		PSAEngine psa=new PSAEngine(myModel);
+		psa.numIterations=numIterations;
+		psa.seeded=seeded;
+		psa.seed=seed;
+		psa.numThreads=numThreads;
+		
+		PSAResults psaResults=psa.run(progress);
+		if(psaResults.cancelled){
+			EVPIResults results=new EVPIResults();
+			results.psa=psaResults;
+			return(results);
+		}
+		progress.setNote("Estimating EVPPI");
+		return(analyze(psaResults));
+	}
+	
+	/**
+	 * Calculates EVPI/EVPPI from existing PSA results (the model isn't run again)
+	 * @param psa PSA results
+	 * @return Results
+	 */
+	public EVPIResults analyze(PSAResults psa) throws Exception{
+		EVPIResults results=new EVPIResults();
+		results.psa=psa;
+		int numIterations=psa.numIterations;
+		
+		int numStrat=myModel.strategyNames.length;
+		int numParams=results.psa.numParams;
+		int analysisType=myModel.dimInfo.analysisType;
+		
+		//Get outcomes
+		results.results=new double[numStrat][numIterations];
+		ArrayList<SortedResult> sortedResults=new ArrayList<SortedResult>();
+		for(int n=0; n<numIterations; n++){
+			Outcomes curOutcomes=results.psa.outcomes[n];
+			SortedResult curResult=new SortedResult(n,numStrat,numParams);
+			for(int p=0; p<numParams; p++){ //Record parameter value
+				curResult.paramVals[p]=results.psa.paramValues[p][n];
+			}
+			for(int s=0; s<numStrat; s++){
+				if(analysisType==0){ //EV
+					results.results[s][n]=curOutcomes.values[0][myModel.dimInfo.objectiveDim][s];
+				}
+				else{ //CEA or BCA
+					results.results[s][n]=curOutcomes.getNMB(0, s, myModel.dimInfo.WTP);
+				}
+				curResult.outcomes[s]=results.results[s][n];
+			}
+			sortedResults.add(curResult);
+		}
+		
+		//Calculate EVPI
+		if(analysisType==0 && myModel.dimInfo.objective==1) { //EV, minimize - change to maximize negative
+			results.sign=-1;
+		}
+		int sign=results.sign;
+		results.meanOutcomes=new double[numStrat];
+		results.numBest=new int[numStrat];
+		double bestOutcome=0; //mean of max
+		for(int n=0; n<numIterations; n++) {
+			double curBest=Double.NEGATIVE_INFINITY;
+			int bestS=-1;
+			for(int s=0; s<numStrat; s++) {
+				double curRes=sign*results.results[s][n];
+				results.meanOutcomes[s]+=curRes;
+				if(curRes>curBest) {
+					curBest=curRes;
+					bestS=s;
+				}
+			}
+			bestOutcome+=curBest;
+			results.numBest[bestS]++;
+		}
+		bestOutcome/=(numIterations*1.0);
+		double bestMean=Double.NEGATIVE_INFINITY;
+		int bestStrat=-1;
+		for(int s=0; s<numStrat; s++) {
+			double curMean=results.meanOutcomes[s]/=(numIterations*1.0);
+			if(curMean>bestMean) {
+				bestMean=curMean;
+				bestStrat=s;
+			}
+		}
+		results.bestOutcome=bestOutcome;
+		results.bestMean=bestMean;
+		results.bestStrat=bestStrat;
+		//EVPI: E[max] - max E[]
+		results.evpi=bestOutcome-bestMean;
+		
+		//Calculate EVPPI (for each parameter)
+		results.evppi=new double[numParams];
+		for(int p=0; p<numParams; p++) {
+			Collections.sort(sortedResults, new ResultComparator(-1)); //order by iteration (reset previous ordering)
+			Collections.sort(sortedResults, new ResultComparator(p)); //re-sort ascending by parameter
+			results.evppi[p]=getBinnedMax(sortedResults,numBins,numStrat,sign)-bestMean;
+		}
+		
+		//Calculate EVPPI for varying bin sizes
+		ArrayList<Integer> binSizes=new ArrayList<Integer>();
+		for(int b=1; b<numIterations/2; b++) {
+			if(numIterations%b==0) { //divides evenly
+				binSizes.add(b);
+			}
+		}
+		results.evppiBins=new double[numParams][2][binSizes.size()];
+		for(int p=0; p<numParams; p++) {
+			Collections.sort(sortedResults, new ResultComparator(-1)); //order by iteration (reset previous ordering)
+			Collections.sort(sortedResults, new ResultComparator(p)); //re-sort ascending by parameter
+			for(int b=0; b<binSizes.size(); b++) { //number of bins
+				int curBins=binSizes.get(b);
+				results.evppiBins[p][0][b]=curBins;
+				results.evppiBins[p][1][b]=getBinnedMax(sortedResults,curBins,numStrat,sign)-bestMean;
+			}
+		}
+		
+		//EVPPI by regression (for each parameter)
+		EVPPIEngine regression=new EVPPIEngine(results);
+		regression.numThreads=numThreads;
+		int groups[][]=new int[numParams][];
+		for(int p=0; p<numParams; p++){
+			groups[p]=new int[]{p};
+		}
+		results.evppiRegression=regression.run(groups, null);
+		return(results);
+	}
+	
+	/**
+	 * @return Mean across bins of the best strategy mean within each bin
+	 */
+	private double getBinnedMax(ArrayList<SortedResult> sortedResults, int numBins, int numStrat, int sign){
+		int numSamp=sortedResults.size()/numBins;
+		double avgMax=0;
+		for(int k=0; k<numBins; k++) {
+			int index0=k*numSamp;
+			int index1=index0+numSamp;
+			//calculate strategy mean within bin
+			double binMeans[]=new double[numStrat];
+			for(int i=index0; i<index1; i++) {
+				for(int s=0; s<numStrat; s++) {
+					binMeans[s]+=sortedResults.get(i).outcomes[s];
+				}
+			}
+			//get best strategy among bin means
+			double binMax=Double.NEGATIVE_INFINITY;
+			for(int s=0; s<numStrat; s++) {
+				binMeans[s]/=(numSamp*1.0);
+				binMax=Math.max(binMax, sign*binMeans[s]);
+			}
+			avgMax+=binMax;
+		}
+		avgMax/=(numBins*1.0);
+		return(avgMax);
+	}
+}
+
+class SortedResult{
+	int iteration;
+	double outcomes[]; //strategy outcome of interest (e.g. NMB)
+	double paramVals[];
+	
+	SortedResult(int i, int numStrat, int numParams){ //constructor
+		iteration=i;
+		outcomes=new double[numStrat];
+		paramVals=new double[numParams];
+	}
+}
+
+class ResultComparator implements Comparator<SortedResult> {
+	int pIndex; //parameter index to sort by
+	
+	ResultComparator(int p){ //Constructor
+		this.pIndex=p;
+	}
+	
+	@Override public int compare(SortedResult o1, SortedResult o2) {
+		if(pIndex==-1) { //sort by iteration
+			return(Double.compare(o1.iteration, o2.iteration));
+		}
+		else { //sort by parameter value
+			return(Double.compare(o1.paramVals[pIndex], o2.paramVals[pIndex]));
+		}
+	}
+}
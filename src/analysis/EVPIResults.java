@@ -0,0 +1,64 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+/**
+ * Results of an EVPI analysis.  Outcomes are NMB for CEA/BCA, or the objective dimension otherwise.
+ */
+public class EVPIResults{
+	public PSAResults psa;
+	/**
+	 * Outcome used to pick the best strategy [Strategy][Iteration]
+	 */
+	public double results[][];
+	/**
+	 * -1 if the objective is to minimize the outcome (outcomes are negated when comparing)
+	 */
+	public int sign=1;
+	/**
+	 * Mean of the best outcome in each iteration: E[max] (sign-adjusted)
+	 */
+	public double bestOutcome;
+	/**
+	 * Best mean outcome: max E[] (sign-adjusted)
+	 */
+	public double bestMean;
+	public int bestStrat;
+	public double evpi;
+	/**
+	 * Mean outcome by strategy (sign-adjusted)
+	 */
+	public double meanOutcomes[];
+	/**
+	 * Number of iterations each strategy was best
+	 */
+	public int numBest[];
+	/**
+	 * EVPPI by parameter
+	 */
+	public double evppi[];
+	/**
+	 * EVPPI by parameter, estimated by regression on the PSA draws (see EVPPIEngine)
+	 */
+	public double evppiRegression[];
+	/**
+	 * EVPPI for varying number of bins [Parameter][# bins, EVPPI][Bin size]
+	 */
+	public double evppiBins[][][];
+}
@@ -0,0 +1,552 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package analysis;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Partial EVPI (EVPPI) for groups of parameters, estimated by regression on stored PSA draws (the model isn't run).
+ * The incremental outcome of each strategy vs. the first is fit as a function of the group's parameters.
+ * Single parameters are fit with penalized cubic B-splines (P-splines), with the smoothing chosen by generalized cross-validation (GCV).
+ * Groups of 2 or more are fit with a Gaussian process so that interactions between the parameters are captured.
+ * EVPPI is then the mean of the best fitted outcome minus the best mean fitted outcome.
+ */
+public class EVPPIEngine{
+	int numIterations, numStrat, numParams;
+	/**
+	 * [Strategy][Iteration] - Incremental outcome vs. the first strategy (sign-adjusted)
+	 */
+	double incOutcomes[][];
+	/**
+	 * [Parameter][Iteration]
+	 */
+	double paramValues[][];
+	/**
+	 * Number of spline intervals per parameter
+	 */
+	public int numSegments=8;
+	/**
+	 * Maximum number of draws the Gaussian process is conditioned on (fitted values are still found for all draws)
+	 */
+	public int maxGPDraws=1000;
+	/**
+	 * Number of draws used to estimate the Gaussian process hyperparameters
+	 */
+	public int numHyperDraws=300;
+	public int numThreads=1;
+	
+	/**
+	 * @param evpi EVPI results with the outcomes and PSA draws
+	 */
+	public EVPPIEngine(EVPIResults evpi){
+		this(evpi.psa.paramValues, evpi.results, evpi.sign);
+	}
+	
+	/**
+	 * @param paramValues Parameter draws [Parameter][Iteration]
+	 * @param outcomes Outcomes [Strategy][Iteration]
+	 * @param sign 1 if higher outcomes are better, -1 if lower outcomes are better
+	 */
+	public EVPPIEngine(double paramValues[][], double outcomes[][], int sign){
+		this.paramValues=paramValues;
+		numParams=paramValues.length;
+		numStrat=outcomes.length;
+		numIterations=outcomes[0].length;
+		incOutcomes=new double[numStrat][numIterations];
+		for(int s=1; s<numStrat; s++){
+			for(int n=0; n<numIterations; n++){
+				incOutcomes[s][n]=sign*(outcomes[s][n]-outcomes[0][n]);
+			}
+		}
+	}
+	
+	/**
+	 * Estimates EVPPI for each group of parameters.  Groups are fit in parallel.
+	 * @param groups Parameter indices in each group
+	 * @param progress Progress listener (may be null)
+	 * @return EVPPI by group (NaN if no parameter in the group has numeric draws)
+	 */
+	public double[] run(final int groups[][], ProgressListener progress) throws Exception{
+		int numGroups=groups.length;
+		double evppi[]=new double[numGroups];
+		if(numThreads<=1){
+			for(int i=0; i<numGroups; i++){
+				evppi[i]=getEVPPI(groups[i]);
+				if(progress!=null){
+					progress.setProgress(i+1, numGroups);
+					if(progress.isCancelled()){return(evppi);}
+				}
+			}
+			return(evppi);
+		}
+		
+		ExecutorService pool=Executors.newWorkStealingPool(numThreads);
+		try{
+			ArrayList<Future<Double>> fits=new ArrayList<Future<Double>>();
+			for(int i=0; i<numGroups; i++){
+				final int curGroup[]=groups[i];
+				fits.add(pool.submit(new Callable<Double>(){
+					public Double call() throws Exception{
+						return(getEVPPI(curGroup));
+					}
+				}));
+			}
+			for(int i=0; i<numGroups; i++){
+				evppi[i]=fits.get(i).get();
+				if(progress!=null){
+					progress.setProgress(i+1, numGroups);
+					if(progress.isCancelled()){break;}
+				}
+			}
+		} finally{
+			pool.shutdownNow();
+		}
+		return(evppi);
+	}
+	
+	/**
+	 * Estimates EVPPI for one group of parameters
+	 * @param params Parameter indices
+	 * @return EVPPI (NaN if no parameter in the group has numeric draws)
+	 */
+	public double getEVPPI(int params[]){
+		if(numStrat<2){return(0);}
+		
+		//get parameters with numeric, non-constant draws
+		ArrayList<Integer> usable=new ArrayList<Integer>();
+		boolean numeric=false;
+		for(int i=0; i<params.length; i++){
+			double x[]=paramValues[params[i]];
+			double min=Double.POSITIVE_INFINITY, max=Double.NEGATIVE_INFINITY;
+			for(int n=0; n<numIterations; n++){
+				min=Math.min(min, x[n]);
+				max=Math.max(max, x[n]);
+			}
+			if(Double.isNaN(min) || Double.isNaN(max) || Double.isInfinite(max-min)){continue;} //not a number
+			numeric=true;
+			if(max>min){usable.add(params[i]);}
+		}
+		if(numeric==false){return(Double.NaN);}
+		if(usable.size()==0){return(0);} //no variation
+		
+		double fitted[][]=null;
+		if(usable.size()>1){fitted=fitGP(usable);}
+		if(fitted==null){fitted=fitSpline(usable);}
+		
+		//EVPPI = E[max] - max E[]
+		double meanFit[]=new double[numStrat];
+		double meanMax=0;
+		for(int n=0; n<numIterations; n++){
+			double curMax=0; //first strategy (incremental outcome is 0)
+			for(int s=1; s<numStrat; s++){
+				double fit=fitted[s][n];
+				meanFit[s]+=fit;
+				curMax=Math.max(curMax, fit);
+			}
+			meanMax+=curMax;
+		}
+		meanMax/=(numIterations*1.0);
+		double maxMean=0;
+		for(int s=1; s<numStrat; s++){
+			maxMean=Math.max(maxMean, meanFit[s]/(numIterations*1.0));
+		}
+		return(Math.max(meanMax-maxMean, 0));
+	}
+	
+	/**
+	 * Fits an additive P-spline model of the parameters to each strategy
+	 * @param usable Parameter indices (with variation)
+	 * @return Fitted values [Strategy][Iteration]
+	 */
+	private double[][] fitSpline(ArrayList<Integer> usable){
+		//design: intercept + cubic B-spline basis for each parameter (last basis function dropped - spanned by intercept)
+		int numBasis=numSegments+3;
+		int numUsable=usable.size();
+		int numCoeffs=1+numUsable*(numBasis-1);
+		int rowSize=1+numUsable*4;
+		int rowIndex[][]=new int[numIterations][rowSize];
+		double rowValue[][]=new double[numIterations][rowSize];
+		for(int n=0; n<numIterations; n++){
+			rowIndex[n][0]=0; rowValue[n][0]=1;
+		}
+		for(int k=0; k<numUsable; k++){
+			double x[]=paramValues[usable.get(k)];
+			double min=x[0], max=x[0];
+			for(int n=0; n<numIterations; n++){
+				min=Math.min(min, x[n]);
+				max=Math.max(max, x[n]);
+			}
+			double width=(max-min)/numSegments;
+			int offset=1+k*(numBasis-1);
+			double b[]=new double[4];
+			for(int n=0; n<numIterations; n++){
+				double t=(x[n]-min)/width;
+				int j=(int)Math.floor(t);
+				if(j>numSegments-1){j=numSegments-1;}
+				if(j<0){j=0;}
+				double u=t-j, u2=u*u, u3=u2*u;
+				b[0]=(1-u)*(1-u)*(1-u)/6.0; b[1]=(3*u3-6*u2+4)/6.0; b[2]=(-3*u3+3*u2+3*u+1)/6.0; b[3]=u3/6.0;
+				for(int i=0; i<4; i++){
+					int col=j+i;
+					int z=1+k*4+i;
+					if(col==numBasis-1){rowIndex[n][z]=-1;} //dropped
+					else{rowIndex[n][z]=offset+col; rowValue[n][z]=b[i];}
+				}
+			}
+		}
+		
+		//X'X and X'y
+		double xtx[][]=new double[numCoeffs][numCoeffs];
+		double xty[][]=new double[numStrat][numCoeffs];
+		double yty[]=new double[numStrat];
+		for(int n=0; n<numIterations; n++){
+			int index[]=rowIndex[n];
+			double value[]=rowValue[n];
+			for(int z=0; z<rowSize; z++){
+				int i=index[z];
+				if(i==-1){continue;}
+				for(int w=0; w<rowSize; w++){
+					int j=index[w];
+					if(j!=-1){xtx[i][j]+=value[z]*value[w];}
+				}
+				for(int s=1; s<numStrat; s++){xty[s][i]+=value[z]*incOutcomes[s][n];}
+			}
+			for(int s=1; s<numStrat; s++){yty[s]+=incOutcomes[s][n]*incOutcomes[s][n];}
+		}
+		
+		//second-difference penalty for each parameter (with the dropped coefficient fixed at 0)
+		double penalty[][]=new double[numCoeffs][numCoeffs];
+		for(int k=0; k<numUsable; k++){
+			int offset=1+k*(numBasis-1);
+			for(int i=0; i<numBasis-2; i++){
+				int cols[]=new int[]{i,i+1,i+2};
+				double d[]=new double[]{1,-2,1};
+				for(int z=0; z<3; z++){
+					if(cols[z]==numBasis-1){continue;}
+					for(int w=0; w<3; w++){
+						if(cols[w]==numBasis-1){continue;}
+						penalty[offset+cols[z]][offset+cols[w]]+=d[z]*d[w];
+					}
+				}
+			}
+		}
+		double traceXtX=0, tracePen=0;
+		for(int i=0; i<numCoeffs; i++){traceXtX+=xtx[i][i]; tracePen+=penalty[i][i];}
+		double scale=traceXtX/tracePen;
+		
+		//choose smoothing for each strategy by GCV
+		double bestGCV[]=new double[numStrat];
+		double bestBeta[][]=new double[numStrat][];
+		for(int s=0; s<numStrat; s++){bestGCV[s]=Double.POSITIVE_INFINITY;}
+		double lhs[][]=new double[numCoeffs][numCoeffs];
+		for(int e=-6; e<=6; e++){
+			double lambda=scale*Math.pow(10, e);
+			for(int i=0; i<numCoeffs; i++){
+				for(int j=0; j<numCoeffs; j++){lhs[i][j]=xtx[i][j]+lambda*penalty[i][j];}
+				lhs[i][i]+=1e-10*(xtx[i][i]+1); //ridge for stability
+			}
+			if(cholesky(lhs)==false){continue;}
+			//effective degrees of freedom: tr((X'X+lambda*P)^-1 X'X)
+			double edf=0;
+			double col[]=new double[numCoeffs];
+			for(int j=0; j<numCoeffs; j++){
+				for(int i=0; i<numCoeffs; i++){col[i]=xtx[i][j];}
+				solve(lhs,col);
+				edf+=col[j];
+			}
+			if(edf>=numIterations){continue;}
+			for(int s=1; s<numStrat; s++){
+				double beta[]=xty[s].clone();
+				solve(lhs,beta);
+				//RSS = y'y - 2b'X'y + b'X'Xb
+				double rss=yty[s];
+				for(int i=0; i<numCoeffs; i++){
+					double xtxb=0;
+					for(int j=0; j<numCoeffs; j++){xtxb+=xtx[i][j]*beta[j];}
+					rss+=beta[i]*(xtxb-2*xty[s][i]);
+				}
+				rss=Math.max(rss, 0);
+				double gcv=numIterations*rss/((numIterations-edf)*(numIterations-edf));
+				if(gcv<bestGCV[s]){
+					bestGCV[s]=gcv;
+					bestBeta[s]=beta;
+				}
+			}
+		}
+		
+		//fitted values
+		double fitted[][]=new double[numStrat][numIterations];
+		for(int s=1; s<numStrat; s++){
+			if(bestBeta[s]==null){continue;}
+			for(int n=0; n<numIterations; n++){
+				double fit=0;
+				for(int z=0; z<rowSize; z++){
+					int i=rowIndex[n][z];
+					if(i!=-1){fit+=rowValue[n][z]*bestBeta[s][i];}
+				}
+				fitted[s][n]=fit;
+			}
+		}
+		return(fitted);
+	}
+	
+	/**
+	 * Fits a Gaussian process of the parameters to each strategy, with a squared-exponential covariance (one length scale
+	 * per parameter), a linear mean and a nugget for the variation due to other parameters.
+	 * Hyperparameters are estimated by maximum likelihood on the first numHyperDraws draws (Nelder-Mead on the log scale),
+	 * then the process is conditioned on the first maxGPDraws draws.  PSA draws are independent so these are random subsets.
+	 * @param usable Parameter indices (with variation)
+	 * @return Fitted values [Strategy][Iteration], or null if there are too few draws or the covariance is degenerate
+	 */
+	private double[][] fitGP(ArrayList<Integer> usable){
+		int numDim=usable.size();
+		int numFit=Math.min(numIterations, Math.max(maxGPDraws, numHyperDraws));
+		int numHyper=Math.min(numFit, numHyperDraws);
+		if(numHyper<=numDim+2){return(null);}
+		
+		//standardize inputs
+		double x[][]=new double[numIterations][numDim];
+		for(int k=0; k<numDim; k++){
+			double v[]=paramValues[usable.get(k)];
+			double mean=0, var=0;
+			for(int n=0; n<numIterations; n++){mean+=v[n];}
+			mean/=(numIterations*1.0);
+			for(int n=0; n<numIterations; n++){var+=(v[n]-mean)*(v[n]-mean);}
+			double sd=Math.sqrt(var/(numIterations*1.0));
+			for(int n=0; n<numIterations; n++){x[n][k]=(v[n]-mean)/sd;}
+		}
+		
+		double fitted[][]=new double[numStrat][];
+		fitted[0]=new double[numIterations];
+		for(int s=1; s<numStrat; s++){
+			double theta[]=estimateGP(x, incOutcomes[s], numHyper, numDim);
+			double coeffs[][]=new double[2][];
+			if(Double.isInfinite(conditionGP(x, incOutcomes[s], numFit, theta, coeffs))){return(null);}
+			double beta[]=coeffs[0], alpha[]=coeffs[1];
+			double invScale[]=getInvScale(theta, numDim);
+			fitted[s]=new double[numIterations];
+			for(int n=0; n<numIterations; n++){
+				double fit=beta[0];
+				for(int k=0; k<numDim; k++){fit+=beta[k+1]*x[n][k];}
+				for(int j=0; j<numFit; j++){fit+=kernel(x[n], x[j], invScale)*alpha[j];}
+				fitted[s][n]=fit;
+			}
+		}
+		return(fitted);
+	}
+	
+	/**
+	 * Estimates GP hyperparameters by minimizing the negative log likelihood with Nelder-Mead
+	 * @return Log length scales, then log nugget
+	 */
+	private static double[] estimateGP(double x[][], double y[], int numHyper, int numDim){
+		int dim=numDim+1;
+		double simplex[][]=new double[dim+1][dim];
+		double value[]=new double[dim+1];
+		for(int i=0; i<=dim; i++){
+			for(int k=0; k<numDim; k++){simplex[i][k]=Math.log(2);}
+			simplex[i][numDim]=Math.log(0.1);
+			if(i>0){simplex[i][i-1]+=1;}
+			clampTheta(simplex[i], numDim);
+			value[i]=conditionGP(x, y, numHyper, simplex[i], null);
+		}
+		int maxEvals=50*dim;
+		for(int e=0; e<maxEvals; e++){
+			//order: best first
+			for(int i=1; i<=dim; i++){
+				for(int j=i; j>0 && value[j]<value[j-1]; j--){
+					double tempV=value[j]; value[j]=value[j-1]; value[j-1]=tempV;
+					double tempS[]=simplex[j]; simplex[j]=simplex[j-1]; simplex[j-1]=tempS;
+				}
+			}
+			if(value[dim]-value[0]<1e-6*(Math.abs(value[0])+1e-6)){break;}
+			double centroid[]=new double[dim];
+			for(int i=0; i<dim; i++){
+				for(int k=0; k<dim; k++){centroid[k]+=simplex[i][k]/(dim*1.0);}
+			}
+			double reflect[]=moveGP(centroid, simplex[dim], 1.0, numDim);
+			double valReflect=conditionGP(x, y, numHyper, reflect, null);
+			if(valReflect<value[0]){
+				double expand[]=moveGP(centroid, simplex[dim], 2.0, numDim);
+				double valExpand=conditionGP(x, y, numHyper, expand, null);
+				if(valExpand<valReflect){simplex[dim]=expand; value[dim]=valExpand;}
+				else{simplex[dim]=reflect; value[dim]=valReflect;}
+			}
+			else if(valReflect<value[dim-1]){
+				simplex[dim]=reflect; value[dim]=valReflect;
+			}
+			else{
+				double contract[]=moveGP(centroid, simplex[dim], -0.5, numDim);
+				double valContract=conditionGP(x, y, numHyper, contract, null);
+				if(valContract<value[dim]){
+					simplex[dim]=contract; value[dim]=valContract;
+				}
+				else{ //shrink towards best
+					for(int i=1; i<=dim; i++){
+						for(int k=0; k<dim; k++){simplex[i][k]=simplex[0][k]+0.5*(simplex[i][k]-simplex[0][k]);}
+						value[i]=conditionGP(x, y, numHyper, simplex[i], null);
+					}
+				}
+			}
+		}
+		int best=0;
+		for(int i=1; i<=dim; i++){
+			if(value[i]<value[best]){best=i;}
+		}
+		return(simplex[best]);
+	}
+	
+	private static double[] moveGP(double centroid[], double worst[], double coeff, int numDim){
+		double point[]=new double[centroid.length];
+		for(int k=0; k<centroid.length; k++){point[k]=centroid[k]+coeff*(centroid[k]-worst[k]);}
+		clampTheta(point, numDim);
+		return(point);
+	}
+	
+	/**
+	 * Keeps length scales (standardized units) and the nugget in a numerically safe range
+	 */
+	private static void clampTheta(double theta[], int numDim){
+		for(int k=0; k<numDim; k++){theta[k]=Math.max(Math.log(0.05), Math.min(Math.log(100), theta[k]));}
+		theta[numDim]=Math.max(Math.log(1e-6), Math.min(Math.log(100), theta[numDim]));
+	}
+	
+	private static double[] getInvScale(double theta[], int numDim){
+		double invScale[]=new double[numDim];
+		for(int k=0; k<numDim; k++){
+			double length=Math.exp(theta[k]);
+			invScale[k]=1.0/(length*length);
+		}
+		return(invScale);
+	}
+	
+	private static double kernel(double a[], double b[], double invScale[]){
+		double dist=0;
+		for(int k=0; k<invScale.length; k++){
+			double diff=a[k]-b[k];
+			dist+=diff*diff*invScale[k];
+		}
+		return(Math.exp(-dist));
+	}
+	
+	/**
+	 * Conditions the GP on the first m draws.  The covariance is sigma^2*(C+nugget*I) with a linear mean H*beta,
+	 * and beta and sigma^2 are profiled out (restricted likelihood).
+	 * @param theta Log length scales, then log nugget
+	 * @param coeffs If not null, set to beta and A^-1 (y-H*beta), where A=C+nugget*I
+	 * @return Negative log likelihood (up to a constant), or infinity if the covariance is degenerate
+	 */
+	private static double conditionGP(double x[][], double y[], int m, double theta[], double coeffs[][]){
+		int numDim=x[0].length, q=numDim+1;
+		double invScale[]=getInvScale(theta, numDim);
+		double nugget=Math.exp(theta[numDim]);
+		double a[][]=new double[m][m];
+		for(int i=0; i<m; i++){
+			for(int j=0; j<i; j++){a[i][j]=kernel(x[i], x[j], invScale);}
+			a[i][i]=1+nugget;
+		}
+		if(cholesky(a)==false){return(Double.POSITIVE_INFINITY);}
+		double logDet=0;
+		for(int i=0; i<m; i++){logDet+=2*Math.log(a[i][i]);}
+		
+		//A^-1 H and A^-1 y (H = [1, x])
+		double ainvH[][]=new double[q][m];
+		for(int c=0; c<q; c++){
+			for(int i=0; i<m; i++){ainvH[c][i]=(c==0) ? 1 : x[i][c-1];}
+			solve(a, ainvH[c]);
+		}
+		double ainvY[]=new double[m];
+		System.arraycopy(y, 0, ainvY, 0, m);
+		solve(a, ainvY);
+		
+		//beta = (H'A^-1H)^-1 H'A^-1y
+		double g[][]=new double[q][q];
+		double beta[]=new double[q];
+		for(int c=0; c<q; c++){
+			for(int i=0; i<m; i++){
+				double h=(c==0) ? 1 : x[i][c-1];
+				for(int w=0; w<q; w++){g[c][w]+=h*ainvH[w][i];}
+				beta[c]+=h*ainvY[i];
+			}
+		}
+		if(cholesky(g)==false){return(Double.POSITIVE_INFINITY);}
+		double logDetG=0;
+		for(int c=0; c<q; c++){logDetG+=2*Math.log(g[c][c]);}
+		solve(g, beta);
+		
+		//alpha = A^-1 (y-H*beta)
+		double alpha[]=new double[m];
+		double rss=0;
+		for(int i=0; i<m; i++){
+			alpha[i]=ainvY[i];
+			double resid=y[i]-beta[0];
+			for(int c=0; c<q; c++){alpha[i]-=ainvH[c][i]*beta[c];}
+			for(int k=0; k<numDim; k++){resid-=beta[k+1]*x[i][k];}
+			rss+=resid*alpha[i];
+		}
+		double sigma2=Math.max(rss/(m-q), 1e-300);
+		if(coeffs!=null){
+			coeffs[0]=beta;
+			coeffs[1]=alpha;
+		}
+		return(0.5*logDet+0.5*logDetG+0.5*(m-q)*Math.log(sigma2));
+	}
+	
+	/**
+	 * In-place Cholesky decomposition (lower triangle)
+	 * @return False if the matrix isn't positive definite
+	 */
+	static boolean cholesky(double a[][]){
+		int n=a.length;
+		for(int j=0; j<n; j++){
+			double sum=a[j][j];
+			for(int k=0; k<j; k++){sum-=a[j][k]*a[j][k];}
+			if(sum<=0){return(false);}
+			a[j][j]=Math.sqrt(sum);
+			for(int i=j+1; i<n; i++){
+				double cur=a[i][j];
+				for(int k=0; k<j; k++){cur-=a[i][k]*a[j][k];}
+				a[i][j]=cur/a[j][j];
+			}
+		}
+		return(true);
+	}
+	
+	/**
+	 * Solves LL'x=b in place using the Cholesky factor
+	 */
+	private static void solve(double l[][], double b[]){
+		int n=b.length;
+		for(int i=0; i<n; i++){
+			double sum=b[i];
+			for(int k=0; k<i; k++){sum-=l[i][k]*b[k];}
+			b[i]=sum/l[i][i];
+		}
+		for(int i=n-1; i>=0; i--){
+			double sum=b[i];
+			for(int k=i+1; k<n; k++){sum-=l[k][i]*b[k];}
+			b[i]=sum/l[i][i];
+		}
+	}
+}
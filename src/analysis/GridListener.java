@@ -0,0 +1,33 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package analysis;
+
+/**
+ * Receives the results of a sensitivity analysis point as soon as it's run, e.g. to update a chart while the analysis runs.
+ * Engines call pointComplete from the thread running the analysis, in the order points complete.
+ */
+public interface GridListener{
+	/**
+	 * @param index Index of the point (e.g. interval, or i*(intervals+1)+j for two-way grids)
+	 * @param paramValues Parameter values at the point
+	 * @param outcomes Model outcomes at the point
+	 */
+	public void pointComplete(int index, double paramValues[], Outcomes outcomes);
+}
@@ -0,0 +1,160 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package analysis;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import base.AmuaModel;
+import base.RunReport;
+import main.Parameter;
+import math.Numeric;
+
+/**
+ * Runs the model at each point of a sensitivity grid in parallel, each run on a replica of the model.
+ * Results are passed to the listener on the calling thread as points complete.
+ * Replicas and threads are kept between calls to run, and stopped by close.
+ */
+class GridRunner{
+	AmuaModel myModel;
+	int paramIndices[];
+	int numThreads;
+	boolean cancelled=false;
+	/**
+	 * [Point]
+	 */
+	Outcomes outcomes[];
+	RunReport reports[];
+	/**
+	 * If false, each replica is parsed once at the first point it's created for, and later points only lock the
+	 * parameters and re-evaluate variables.  Only for parameters already checked at their extreme values.
+	 */
+	boolean parseEachPoint=true;
+	ArrayBlockingQueue<AmuaModel> replicas;
+	int numReplicas=0;
+	ExecutorService pool;
+	
+	/**
+	 * @param myModel Model
+	 * @param paramIndices Indices of the parameters that vary
+	 * @param numThreads Number of replicas to run at once
+	 */
+	GridRunner(AmuaModel myModel, int paramIndices[], int numThreads){
+		this.myModel=myModel;
+		this.paramIndices=paramIndices;
+		this.numThreads=numThreads;
+	}
+	
+	/**
+	 * Runs all points.  The model itself isn't changed.
+	 * @param points Parameter values at each point [Point][Parameter]
+	 * @param listener Listener for each completed point (may be null)
+	 * @param progress Progress listener
+	 */
+	void run(final double points[][], GridListener listener, ProgressListener progress) throws Exception{
+		int numPoints=points.length;
+		outcomes=new Outcomes[numPoints];
+		reports=new RunReport[numPoints];
+		int numNeeded=Math.min(numThreads, numPoints);
+		if(replicas==null){replicas=new ArrayBlockingQueue<AmuaModel>(numThreads);}
+		if(numReplicas<numNeeded){
+			progress.setNote("Copying model");
+			while(numReplicas<numNeeded){
+				AmuaModel replica=myModel.createReplica();
+				if(parseEachPoint==false){ //parse once
+					lockPoint(replica,points[0]);
+					replica.parseModel();
+				}
+				replicas.add(replica);
+				numReplicas++;
+			}
+		}
+		progress.setNote("Running");
+		
+		if(pool==null){pool=Executors.newFixedThreadPool(numThreads);}
+		ExecutorCompletionService<Integer> completed=new ExecutorCompletionService<Integer>(pool);
+		ArrayList<Future<Integer>> runs=new ArrayList<Future<Integer>>();
+		try{
+			for(int i=0; i<numPoints; i++){
+				final int curPoint=i;
+				runs.add(completed.submit(new Callable<Integer>(){
+					public Integer call() throws Exception{
+						AmuaModel replica=replicas.take();
+						try{
+							lockPoint(replica,points[curPoint]);
+							if(parseEachPoint){replica.parseModel();}
+							else{replica.evaluateVariables();}
+							reports[curPoint]=replica.runModel(null, false);
+							outcomes[curPoint]=Outcomes.record(replica);
+						} finally{
+							replicas.put(replica);
+						}
+						return(curPoint);
+					}
+				}));
+			}
+			
+			for(int n=0; n<numPoints && cancelled==false; n++){
+				int curPoint=completed.take().get(); //throws any errors
+				if(listener!=null){listener.pointComplete(curPoint, points[curPoint], outcomes[curPoint]);}
+				progress.setProgress(n+1, numPoints);
+				if(progress.isCancelled()){cancelled=true;}
+			}
+		} finally{
+			//Drop queued points and wait for running points to finish
+			for(int i=0; i<runs.size(); i++){
+				runs.get(i).cancel(false);
+			}
+			ArrayList<AmuaModel> returned=new ArrayList<AmuaModel>();
+			for(int r=0; r<numReplicas; r++){
+				returned.add(replicas.take());
+			}
+			replicas.addAll(returned);
+		}
+	}
+	
+	/**
+	 * Stops the runner's threads and the worker threads of the replicas.  Called when the analysis is done with the runner.
+	 */
+	void close() throws InterruptedException{
+		if(pool!=null){
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			pool=null;
+		}
+		if(replicas!=null){
+			for(AmuaModel replica : replicas){replica.releaseWorkerPool();}
+		}
+	}
+	
+	private void lockPoint(AmuaModel replica, double point[]){
+		for(int v=0; v<paramIndices.length; v++){
+			Parameter curParam=replica.parameters.get(paramIndices[v]);
+			curParam.value=new Numeric(point[v]);
+			curParam.locked=true;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import base.AmuaModel;
+import main.DependencyIndex;
+import main.Parameter;
+import math.Numeric;
+
+/**
+ * One-way sensitivity analysis: runs the model over evenly spaced values of a parameter.
+ * With more than one thread, intervals are run in parallel on replicas of the model (see GridRunner).
+ * Otherwise, for Markov cohort models only the chains that depend on the parameter are re-run after the first interval (see DependencyIndex).
+ */
+public class OneWayEngine{
+	AmuaModel myModel;
+	int paramIndex;
+	Parameter curParam;
+	public double min, max;
+	public int intervals=10;
+	public int numThreads=1;
+	/**
+	 * Receives each interval's results as it completes (may be null)
+	 */
+	public GridListener listener;
+	
+	/**
+	 * @param myModel Model
+	 * @param paramIndex Index of the parameter to vary
+	 */
+	public OneWayEngine(AmuaModel myModel, int paramIndex){
+		this.myModel=myModel;
+		this.paramIndex=paramIndex;
+		curParam=myModel.parameters.get(paramIndex);
+	}
+	
+	/**
+	 * Runs the analysis.  The parameter is reset afterwards.
+	 * @param progress Progress listener
+	 * @return Results
+	 * @throws Exception If the model has errors at the base case, min, or max value
+	 */
+	public OneWayResults run(ProgressListener progress) throws Exception{
+		ArrayList<String> errorsBase=myModel.parseModel();
+		if(errorsBase.size()>0){
+			throw new Exception("Errors in base case model!");
+		}
+		myModel.getStrategies();
+		Numeric origValue=curParam.value;
+		boolean origShowTrace=false;
+		if(myModel.type==1) {
+			origShowTrace=myModel.markov.showTrace;
+			myModel.markov.showTrace=false;
+		}
+		
+		OneWayResults results=new OneWayResults(intervals);
+		try{
+			//Test parameter at min and max...
+			if(setValue(min).size()>0){throw new Exception("Error: Min value");}
+			if(setValue(max).size()>0){throw new Exception("Error: Max value");}
+			
+			double step=(max-min)/(intervals*1.0);
+			for(int i=0; i<=intervals; i++){
+				results.paramValues[i]=min+(step*i);
+			}
+			if(numThreads>1){
+				double points[][]=new double[intervals+1][1];
+				for(int i=0; i<=intervals; i++){points[i][0]=results.paramValues[i];}
+				GridRunner runner=new GridRunner(myModel, new int[]{paramIndex}, numThreads);
+				try{
+					runner.run(points, listener, progress);
+				} finally{
+					runner.close();
+				}
+				results.outcomes=runner.outcomes;
+				results.reports=runner.reports;
+				results.cancelled=runner.cancelled;
+			}
+			else{
+				BitSet affected=null;
+				if(DependencyIndex.canFilterChains(myModel)){affected=new DependencyIndex(myModel).getChains(curParam);}
+				for(int i=0; i<=intervals && results.cancelled==false; i++){
+					double curVal=results.paramValues[i];
+					setValue(curVal);
+					if(affected!=null && i>0){myModel.markov.chainFilter=affected;} //other chains are unchanged
+					results.reports[i]=myModel.runModel(null, false);
+					results.outcomes[i]=Outcomes.record(myModel);
+					if(listener!=null){listener.pointComplete(i, new double[]{curVal}, results.outcomes[i]);}
+					
+					progress.setProgress(i+1, intervals+1);
+					if(progress.isCancelled()){results.cancelled=true;}
+				}
+			}
+		} finally{
+			//Reset param value
+			curParam.value=origValue;
+			curParam.locked=false;
+			myModel.validateModelObjects();
+			if(myModel.type==1) {
+				myModel.markov.showTrace=origShowTrace;
+				myModel.markov.chainFilter=null;
+			}
+		}
+		return(results);
+	}
+	
+	/**
+	 * Locks the parameter at a value and parses the model
+	 * @return Model errors
+	 */
+	private ArrayList<String> setValue(double value){
+		curParam.value=new Numeric(value);
+		curParam.locked=true;
+		return(myModel.parseModel());
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import base.AmuaModel;
+import main.CEAHelper;
+import main.DimInfo;
+
+/**
+ * Expected values of one model run, copied so the model can be run again
+ */
+public class Outcomes{
+	/**
+	 * Overall + subgroups
+	 */
+	public int numGroups;
+	/**
+	 * Dimensions, + ICER/NMB for CEA/BCA
+	 */
+	public int numOutcomes;
+	public int numStrat;
+	/**
+	 * [Group][Outcome][Strategy].  Group 0 is overall, outcome numDim is the ICER (CEA) or NMB (BCA)
+	 */
+	public double values[][][];
+	/**
+	 * CEA notes (e.g. dominated) [Group][Strategy], null if not CEA
+	 */
+	public String notes[][];
+	DimInfo dimInfo;
+	
+	/**
+	 * Records outcomes for the last run of the model
+	 * @param myModel Model that was run
+	 * @return Outcomes
+	 */
+	public static Outcomes record(AmuaModel myModel){
+		Outcomes outcomes=new Outcomes();
+		outcomes.dimInfo=myModel.dimInfo;
+		int numDim=myModel.dimInfo.dimNames.length;
+		int analysisType=myModel.dimInfo.analysisType;
+		int numSubgroups=getNumSubgroups(myModel);
+		outcomes.numGroups=numSubgroups+1;
+		outcomes.numOutcomes=numDim;
+		if(analysisType>0){outcomes.numOutcomes++;}
+		outcomes.numStrat=myModel.strategyNames.length;
+		outcomes.values=new double[outcomes.numGroups][outcomes.numOutcomes][outcomes.numStrat];
+		
+		//Get EVs
+		for(int d=0; d<numDim; d++){
+			for(int s=0; s<outcomes.numStrat; s++){
+				outcomes.values[0][d][s]=myModel.getStrategyEV(s, d); //overall
+				for(int g=0; g<numSubgroups; g++){
+					outcomes.values[g+1][d][s]=myModel.getSubgroupEV(g, s, d);
+				}
+			}
+		}
+		if(analysisType==1){ //CEA
+			outcomes.notes=new String[outcomes.numGroups][outcomes.numStrat];
+			for(int g=0; g<outcomes.numGroups; g++){
+				Object table[][]=new CEAHelper().calculateICERs(myModel,g-1,true);
+				for(int s=0; s<table.length; s++){
+					int origStrat=(int) table[s][0];
+					if(origStrat!=-1){
+						outcomes.values[g][numDim][origStrat]=(double) table[s][4];
+						outcomes.notes[g][origStrat]=(String) table[s][5];
+					}
+				}
+			}
+		}
+		else if(analysisType==2){ //BCA
+			for(int g=0; g<outcomes.numGroups; g++){
+				Object table[][]=new CEAHelper().calculateNMB(myModel,g-1,true);
+				for(int s=0; s<table.length; s++){
+					int origStrat=(int) table[s][0];
+					outcomes.values[g][numDim][origStrat]=(double) table[s][4];
+				}
+			}
+		}
+		return(outcomes);
+	}
+	
+	/**
+	 * @return Number of subgroups reported by the model (excluding overall)
+	 */
+	public static int getNumSubgroups(AmuaModel myModel){
+		if(myModel.simType==1 && myModel.reportSubgroups){return(myModel.subgroupNames.size());}
+		return(0);
+	}
+	
+	public double getCost(int group, int strategy){
+		return(values[group][dimInfo.costDim][strategy]);
+	}
+	
+	public double getEffect(int group, int strategy){
+		return(values[group][dimInfo.effectDim][strategy]);
+	}
+	
+	/**
+	 * @return Net monetary benefit at the given willingness-to-pay
+	 */
+	public double getNMB(int group, int strategy, double wtp){
+		return((getEffect(group,strategy)*wtp)-getCost(group,strategy));
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import base.AmuaModel;
+import base.RunReport;
+import markov.MarkovNode;
+import markov.MarkovTrace;
+import math.Numeric;
+
+/**
+ * Probabilistic sensitivity analysis: samples all parameters and runs the model for each iteration.
+ * Parameters are always sampled in order on the base model, so results for a given seed don't depend on the number of threads.
+ */
+public class PSAEngine{
+	AmuaModel myModel;
+	public int numIterations=1000;
+	public boolean seeded=false;
+	public int seed;
+	/**
+	 * Iterations are run in parallel on model replicas if >1
+	 */
+	public int numThreads=1;
+	
+	int numParams, numSubgroups;
+	PSAResults results;
+	
+	public PSAEngine(AmuaModel myModel){
+		this.myModel=myModel;
+	}
+	
+	/**
+	 * Runs the analysis.  Original parameter values are restored afterwards.
+	 * @param progress Progress listener
+	 * @return Results
+	 * @throws Exception If the base case model has errors or a run fails
+	 */
+	public PSAResults run(ProgressListener progress) throws Exception{
+		ArrayList<String> errorsBase=myModel.parseModel();
+		if(errorsBase.size()>0){
+			throw new Exception("Errors in base case model!");
+		}
+		myModel.getStrategies();
+		numParams=myModel.parameters.size();
+		numSubgroups=Outcomes.getNumSubgroups(myModel);
+		results=new PSAResults(numIterations,numParams);
+		
+		ArrayList<MarkovNode> chainRoots=null;
+		boolean origShowTrace=true;
+		if(myModel.type==1){
+			//get number of chains
+			chainRoots=new ArrayList<MarkovNode>();
+			for(int n=0; n<myModel.markov.nodes.size(); n++){
+				MarkovNode curNode=myModel.markov.nodes.get(n);
+				if(curNode.type==1){chainRoots.add(curNode);}
+			}
+			results.numChains=chainRoots.size();
+			results.traces=new MarkovTrace[results.numChains][numSubgroups+1][numIterations];
+			origShowTrace=myModel.markov.showTrace;
+			myModel.markov.showTrace=false;
+		}
+		
+		ParameterSampler sampler=new ParameterSampler(myModel,seeded,seed);
+		try{
+			if(numThreads<=1){ //run sequentially
+				for(int n=0; n<numIterations && results.cancelled==false; n++){
+					//Sample parameters
+					sampler.sample();
+					recordParameters(n);
+					//Run model
+					myModel.curGenerator=myModel.generatorVar;
+					RunReport report=myModel.runModel(null, false);
+					recordIteration(myModel,report,n);
+					progress.setProgress(n+1,numIterations);
+					if(progress.isCancelled()){results.cancelled=true;}
+				}
+			}
+			else{ //run on model replicas
+				runParallel(sampler,progress);
+			}
+		} finally{
+			//Reset all parameters
+			sampler.reset();
+			if(myModel.type==1){
+				myModel.markov.showTrace=origShowTrace;
+			}
+		}
+		return(results);
+	}
+	
+	/**
+	 * Runs iterations in parallel, each on a replica of the model
+	 */
+	private void runParallel(ParameterSampler sampler, ProgressListener progress) throws Exception{
+		int numReplicas=Math.min(numThreads, numIterations);
+		final ArrayBlockingQueue<AmuaModel> replicas=new ArrayBlockingQueue<AmuaModel>(numReplicas);
+		progress.setNote("Copying model");
+		for(int r=0; r<numReplicas; r++){
+			replicas.add(myModel.createReplica());
+		}
+		
+		ExecutorService pool=Executors.newWorkStealingPool(numReplicas);
+		ArrayList<Future<Void>> iterations=new ArrayList<Future<Void>>();
+		int numComplete=0;
+		try{
+			for(int n=0; n<numIterations && results.cancelled==false; n++){
+				//Sample parameters
+				sampler.sample();
+				recordParameters(n);
+				final Numeric paramValues[]=sampler.getValues();
+				final int curIteration=n;
+				iterations.add(pool.submit(new Callable<Void>(){
+					public Void call() throws Exception{
+						AmuaModel replica=replicas.take();
+						try{
+							ParameterSampler.setValues(replica, paramValues);
+							replica.parseModel();
+							replica.curGenerator=replica.generatorVar;
+							RunReport report=replica.runModel(null, false);
+							recordIteration(replica,report,curIteration);
+						} finally{
+							replicas.put(replica);
+						}
+						return(null);
+					}
+				}));
+				
+				while(numComplete<iterations.size() && iterations.get(numComplete).isDone()){
+					iterations.get(numComplete).get(); //throws any errors
+					numComplete++;
+					progress.setProgress(numComplete,numIterations);
+				}
+				if(progress.isCancelled()){results.cancelled=true;}
+			}
+			
+			//Wait for remaining iterations
+			while(results.cancelled==false && numComplete<iterations.size()){
+				iterations.get(numComplete).get();
+				numComplete++;
+				progress.setProgress(numComplete,numIterations);
+				if(progress.isCancelled()){results.cancelled=true;}
+			}
+		} finally{
+			//Don't interrupt running iterations, wait for them to finish before parameters are reset
+			for(int i=numComplete; i<iterations.size(); i++){
+				iterations.get(i).cancel(false);
+			}
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			for(AmuaModel replica : replicas){replica.releaseWorkerPool();}
+		}
+	}
+	
+	private void recordParameters(int n){
+		for(int v=0; v<numParams; v++){
+			try{
+				results.paramValues[v][n]=myModel.parameters.get(v).value.getDouble();
+			} catch(Exception e){
+				results.paramValues[v][n]=Double.NaN;
+			}
+		}
+	}
+	
+	/**
+	 * Records traces and outcomes for iteration n
+	 * @param curModel Model that was run (base model or replica)
+	 */
+	private void recordIteration(AmuaModel curModel, RunReport report, int n){
+		if(curModel.type==1){ //Markov model
+			for(int c=0; c<results.numChains; c++){
+				results.traces[c][0][n]=report.markovTraces.get(c); //overall
+				for(int g=0; g<numSubgroups; g++){
+					results.traces[c][g+1][n]=report.markovTracesGroup[g].get(c);
+				}
+			}
+		}
+		results.reports[n]=report;
+		results.outcomes[n]=Outcomes.record(curModel);
+	}
+}
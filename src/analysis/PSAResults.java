@@ -0,0 +1,67 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import base.RunReport;
+import markov.MarkovTrace;
+
+/**
+ * Results of a probabilistic sensitivity analysis
+ */
+public class PSAResults{
+	public int numIterations;
+	public int numParams;
+	/**
+	 * True if the analysis was cancelled before all iterations were run
+	 */
+	public boolean cancelled=false;
+	/**
+	 * Sampled parameter values [Parameter][Iteration], NaN if not a scalar
+	 */
+	public double paramValues[][];
+	/**
+	 * [Iteration]
+	 */
+	public Outcomes outcomes[];
+	public RunReport reports[];
+	/**
+	 * Markov traces [Chain][Group][Iteration], null for decision trees
+	 */
+	public MarkovTrace traces[][][];
+	public int numChains;
+	
+	PSAResults(int numIterations, int numParams){
+		this.numIterations=numIterations;
+		this.numParams=numParams;
+		paramValues=new double[numParams][numIterations];
+		outcomes=new Outcomes[numIterations];
+		reports=new RunReport[numIterations];
+	}
+	
+	/**
+	 * @return Outcome across iterations
+	 */
+	public double[] getOutcome(int group, int outcome, int strategy){
+		double values[]=new double[numIterations];
+		for(int n=0; n<numIterations; n++){
+			values[n]=outcomes[n].values[group][outcome][strategy];
+		}
+		return(values);
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import base.AmuaModel;
+import main.Constraint;
+import main.MersenneTwisterFast;
+import main.Parameter;
+import math.Interpreter;
+import math.Numeric;
+
+/**
+ * Samples model parameters from their distributions, re-sampling until all constraints are met and the model is valid.
+ * Original parameter values are restored by reset().
+ */
+public class ParameterSampler{
+	AmuaModel myModel;
+	int numParams;
+	int numConstraints;
+	Numeric origValues[];
+	
+	/**
+	 * Starts sampling: parses constraints and records the original parameter values
+	 * @param myModel Model to sample
+	 * @param seeded True to seed the parameter generator
+	 * @param seed Seed
+	 */
+	public ParameterSampler(AmuaModel myModel, boolean seeded, int seed){
+		this.myModel=myModel;
+		numParams=myModel.parameters.size();
+		numConstraints=myModel.constraints.size();
+		
+		myModel.sampleParam=true;
+		myModel.generatorParam=new MersenneTwisterFast();
+		if(seeded){myModel.generatorParam.setSeed(seed);}
+		if(myModel.curGenerator==null){
+			myModel.curGenerator=new MersenneTwisterFast[1];
+		}
+		myModel.curGenerator[0]=myModel.generatorParam;
+		
+		//Get orig values for all parameters
+		origValues=new Numeric[numParams];
+		for(int v=0; v<numParams; v++){
+			origValues[v]=myModel.parameters.get(v).value.copy();
+		}
+		//Parse constraints
+		for(int c=0; c<numConstraints; c++){
+			myModel.constraints.get(c).parseConstraints();
+		}
+	}
+	
+	/**
+	 * Samples all parameters into the model, re-sampling until constraints are met and the model is valid
+	 */
+	public void sample() throws Exception{
+		boolean validParams=false;
+		while(validParams==false){
+			validParams=sampleOnce();
+		}
+	}
+	
+	/**
+	 * Samples all parameters into the model once
+	 * @return True if all constraints are met and the model is valid
+	 */
+	public boolean sampleOnce() throws Exception{
+		myModel.curGenerator[0]=myModel.generatorParam;
+		for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
+			Parameter curParam=myModel.parameters.get(v);
+			curParam.locked=false;
+			curParam.value=origValues[v];
+		}
+
+		for(int v=0; v<numParams; v++){ //sample all parameters
+			Parameter curParam=myModel.parameters.get(v);
+			if(curParam.locked==false) {
+				curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
+				curParam.locked=true;
+			}
+		}
+		//check constraints
+		boolean validParams=true;
+		int c=0;
+		while(validParams==true && c<numConstraints){
+			Constraint curConst=myModel.constraints.get(c);
+			validParams=curConst.checkConstraints(myModel);
+			c++;
+		}
+		if(validParams){ //check model for valid params
+			if(myModel.parseModel().size()!=0){validParams=false;}
+		}
+		return(validParams);
+	}
+	
+	/**
+	 * @return Copies of the current (sampled) parameter values
+	 */
+	public Numeric[] getValues(){
+		Numeric values[]=new Numeric[numParams];
+		for(int v=0; v<numParams; v++){
+			values[v]=myModel.parameters.get(v).value.copy();
+		}
+		return(values);
+	}
+	
+	/**
+	 * Stops sampling and restores the original parameter values
+	 */
+	public void reset(){
+		myModel.sampleParam=false;
+		for(int v=0; v<numParams; v++){ //Reset 'locked' for all parameter and orig values
+			Parameter curParam=myModel.parameters.get(v);
+			curParam.locked=false;
+			curParam.value=origValues[v];
+		}
+		myModel.validateModelObjects();
+	}
+	
+	/**
+	 * Locks parameter values into a model (e.g. a replica of the sampled model)
+	 */
+	public static void setValues(AmuaModel curModel, Numeric values[]){
+		for(int v=0; v<values.length; v++){
+			Parameter curParam=curModel.parameters.get(v);
+			curParam.value=values[v].copy();
+			curParam.locked=true;
+		}
+	}
+}
@@ -0,0 +1,399 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+
+import base.AmuaModel;
+import main.Parameter;
+import math.MathUtils;
+import math.Numeric;
+
+/**
+ * One-way threshold analysis: finds the parameter value where two strategies have the same outcome.
+ * The range is first run at evenly spaced intervals, then the interval where the difference changes sign is narrowed with Brent's method
+ * (inverse quadratic interpolation, secant, and bisection steps) until the bracket is at machine precision.
+ * The model is parsed at the base case, min, and max values only.  Each later run locks the parameter and re-evaluates the variables.
+ * With more than one thread, the intervals are run in parallel on replicas of the model (see GridRunner), and each search step runs
+ * several probes at once on the same replicas (see searchParallel).
+ */
+public class ThresholdEngine{
+	AmuaModel myModel;
+	int paramIndex;
+	Parameter curParam;
+	public double min, max;
+	public int intervals=10;
+	public int strat1, strat2;
+	/**
+	 * Outcome index (see Outcomes), numDim for ICER/NMB
+	 */
+	public int outcome;
+	/**
+	 * 0: Overall, >0: Subgroup
+	 */
+	public int group=0;
+	/**
+	 * Max difference between strategies at the intersection
+	 */
+	public double tol=0.001;
+	/**
+	 * Max number of search steps after the intervals are run
+	 */
+	public int maxSteps=100;
+	public int numThreads=1;
+	
+	/**
+	 * @param myModel Model
+	 * @param paramIndex Index of the parameter to vary
+	 */
+	public ThresholdEngine(AmuaModel myModel, int paramIndex){
+		this.myModel=myModel;
+		this.paramIndex=paramIndex;
+		curParam=myModel.parameters.get(paramIndex);
+	}
+	
+	/**
+	 * Runs the analysis.  The parameter is reset afterwards.
+	 * @param progress Progress listener
+	 * @return Results
+	 * @throws Exception If the model has errors at the base case, min, or max value
+	 */
+	public ThresholdResults run(ProgressListener progress) throws Exception{
+		ArrayList<String> errorsBase=myModel.parseModel();
+		if(errorsBase.size()>0){
+			throw new Exception("Errors in base case model!");
+		}
+		myModel.getStrategies();
+		Numeric origValue=curParam.value;
+		boolean origShowTrace=false;
+		if(myModel.type==1) {
+			origShowTrace=myModel.markov.showTrace;
+			myModel.markov.showTrace=false;
+		}
+		
+		ThresholdResults results=new ThresholdResults(intervals);
+		GridRunner runner=null;
+		try{
+			//Test parameter at min and max, the model isn't parsed again after this
+			if(parseAt(min).size()>0){throw new Exception("Error: Min value");}
+			if(parseAt(max).size()>0){throw new Exception("Error: Max value");}
+			
+			//Run intervals
+			double step=(max-min)/(intervals*1.0);
+			for(int i=0; i<=intervals; i++){
+				results.paramValues[i]=min+(step*i);
+			}
+			if(numThreads>1){
+				double points[][]=new double[intervals+1][1];
+				for(int i=0; i<=intervals; i++){points[i][0]=results.paramValues[i];}
+				runner=new GridRunner(myModel, new int[]{paramIndex}, numThreads);
+				runner.parseEachPoint=false;
+				runner.run(points, null, progress);
+				results.outcomes=runner.outcomes;
+				results.cancelled=runner.cancelled;
+			}
+			else{
+				for(int i=0; i<=intervals && results.cancelled==false; i++){
+					results.outcomes[i]=runModel(results.paramValues[i]);
+					progress.setProgress(i+1, intervals+1);
+					if(progress.isCancelled()){results.cancelled=true;}
+				}
+			}
+			if(results.cancelled){return(results);}
+			
+			double minDist=Double.POSITIVE_INFINITY;
+			int minIndex=-1;
+			double diffs[]=new double[intervals+1];
+			for(int i=0; i<=intervals; i++){
+				diffs[i]=getDifference(results.outcomes[i]);
+				double curDist=Math.abs(diffs[i]);
+				if(curDist<minDist){
+					minDist=curDist;
+					minIndex=i;
+				}
+			}
+			
+			//Find intersection
+			if(minDist==0){ //Intersection coincides with interval
+				results.crossed=true;
+				results.intersection=results.paramValues[minIndex];
+				return(results);
+			}
+			//Check if lines cross - use the sign change closest to zero
+			int bracket=-1;
+			double bracketDist=Double.POSITIVE_INFINITY;
+			for(int i=1; i<=intervals; i++) {
+				if((diffs[i-1]<0 && diffs[i]>0) || (diffs[i-1]>0 && diffs[i]<0)) {
+					results.crossed=true;
+					double curDist=Math.min(Math.abs(diffs[i-1]), Math.abs(diffs[i]));
+					if(curDist<bracketDist){
+						bracketDist=curDist;
+						bracket=i;
+					}
+				}
+			}
+			if(results.crossed==false){return(results);}
+			
+			double a=results.paramValues[bracket-1], fa=diffs[bracket-1];
+			double b=results.paramValues[bracket], fb=diffs[bracket];
+			if(runner==null){searchBrent(results, a, fa, b, fb, step, progress);}
+			else{searchParallel(results, runner, a, fa, b, fb, step, progress);}
+		} finally{
+			if(runner!=null){runner.close();}
+			//Reset param value
+			curParam.value=origValue;
+			curParam.locked=false;
+			myModel.validateModelObjects();
+			if(myModel.type==1) {
+				myModel.markov.showTrace=origShowTrace;
+			}
+		}
+		return(results);
+	}
+	
+	/**
+	 * Brent's method on the bracket [a,b], one run per step
+	 */
+	private void searchBrent(ThresholdResults results, double a, double fa, double b, double fb, double step, ProgressListener progress) throws Exception{
+		int dec=getDecimals();
+		double eps=Math.ulp(1.0);
+		double c=b, fc=fb;
+		double d=b-a, e=d;
+		int i=0;
+		while(i<maxSteps && results.cancelled==false){
+			if((fb>0 && fc>0) || (fb<0 && fc<0)){ //keep root between b and c
+				c=a; fc=fa;
+				d=b-a; e=d;
+			}
+			if(Math.abs(fc)<Math.abs(fb)){ //b is the best estimate
+				a=b; b=c; c=a;
+				fa=fb; fb=fc; fc=fa;
+			}
+			double tol1=2*eps*Math.abs(b)+0.5*eps*step;
+			double xm=0.5*(c-b);
+			if(Math.abs(xm)<=tol1 || fb==0){break;} //converged
+			
+			progress.setProgress(i, maxSteps);
+			progress.setNote("Distance: "+MathUtils.round(Math.abs(fb), dec));
+			
+			if(Math.abs(e)>=tol1 && Math.abs(fa)>Math.abs(fb)){ //try interpolation
+				double s=fb/fa, p, q;
+				if(a==c){ //secant
+					p=2*xm*s;
+					q=1-s;
+				}
+				else{ //inverse quadratic
+					q=fa/fc;
+					double r=fb/fc;
+					p=s*(2*xm*q*(q-r)-(b-a)*(r-1));
+					q=(q-1)*(r-1)*(s-1);
+				}
+				if(p>0){q=-q;}
+				p=Math.abs(p);
+				if(2*p<Math.min(3*xm*q-Math.abs(tol1*q), Math.abs(e*q))){ //accept interpolation
+					e=d;
+					d=p/q;
+				}
+				else{ //bisect
+					d=xm; e=d;
+				}
+			}
+			else{ //bisect
+				d=xm; e=d;
+			}
+			a=b; fa=fb;
+			if(Math.abs(d)>tol1){b+=d;}
+			else{b+=Math.copySign(tol1, xm);}
+			fb=getDifference(runModel(b));
+			
+			i++;
+			if(progress.isCancelled()){results.cancelled=true;}
+		}
+		results.numRuns=i;
+		if(Math.abs(fb)<tol){ //Convergence achieved
+			results.intersection=b;
+		}
+	}
+	
+	/**
+	 * Narrows the bracket [a,b] with one batch of probes per step, run in parallel on the runner's replicas.
+	 * Each step probes pairs of points either side of the interpolated root (inverse quadratic or secant), the outer pair at the
+	 * distance the estimate moved on the last step and each inner pair 100 times closer, and splits the bracket evenly with the
+	 * remaining threads.  If a step doesn't halve the bracket the next step only splits it evenly, so the bracket keeps
+	 * shrinking when the interpolation is poor.
+	 */
+	private void searchParallel(ThresholdResults results, GridRunner runner, double a, double fa, double b, double fb, double step, ProgressListener progress) throws Exception{
+		int dec=getDecimals();
+		double eps=Math.ulp(1.0);
+		double lo=Math.min(a,b), flo=(lo==a) ? fa : fb;
+		double hi=Math.max(a,b), fhi=(hi==a) ? fa : fb;
+		double x3=Double.NaN, f3=Double.NaN; //last point outside the bracket, for inverse quadratic interpolation
+		double prevEst=Double.NaN;
+		boolean split=false;
+		ProgressListener quiet=new SearchProgress(progress);
+		int i=0;
+		while(i<maxSteps && results.cancelled==false){
+			double best=(Math.abs(flo)<Math.abs(fhi)) ? lo : hi;
+			double fBest=(best==lo) ? flo : fhi;
+			double tol1=2*eps*Math.abs(best)+0.5*eps*step;
+			double width=hi-lo;
+			if(0.5*width<=tol1 || fBest==0){break;} //converged
+			
+			progress.setProgress(i, maxSteps);
+			progress.setNote("Distance: "+MathUtils.round(Math.abs(fBest), dec));
+			
+			//Estimate root
+			double est=hi-fhi*(hi-lo)/(fhi-flo); //secant
+			if(!Double.isNaN(x3) && f3!=flo && f3!=fhi){ //inverse quadratic, x3 is outside the bracket
+				double iqi=lo*fhi*f3/((flo-fhi)*(flo-f3))+hi*flo*f3/((fhi-flo)*(fhi-f3))+x3*flo*fhi/((f3-flo)*(f3-fhi));
+				if(iqi>lo && iqi<hi){est=iqi;}
+			}
+			
+			//Probes
+			double probes[]=new double[numThreads];
+			int numProbes=0;
+			if(split==false){
+				double delta=0.1*width; //first step, error of the estimate is unknown
+				if(!Double.isNaN(prevEst)){delta=Math.max(tol1, Math.abs(est-prevEst));}
+				delta=Math.min(delta, 0.25*width);
+				for(int j=0; j<numThreads/2 && delta>0.5*tol1; j++){ //pairs closer to the estimate
+					if(est-delta-lo>tol1){probes[numProbes++]=est-delta;}
+					if(hi-(est+delta)>tol1){probes[numProbes++]=est+delta;}
+					delta*=0.01;
+				}
+			}
+			int numEven=numThreads-numProbes;
+			for(int j=1; j<=numEven; j++){
+				probes[numProbes++]=lo+width*j/(numEven+1.0);
+			}
+			prevEst=est;
+			double points[][]=new double[numProbes][1];
+			for(int j=0; j<numProbes; j++){points[j][0]=probes[j];}
+			runner.run(points, null, quiet);
+			if(runner.cancelled){results.cancelled=true; break;}
+			results.numRuns+=numProbes;
+			
+			//Narrowest sign change among the bracket and the probes
+			double xs[]=new double[numProbes+2], fs[]=new double[numProbes+2];
+			xs[0]=lo; fs[0]=flo;
+			for(int j=0; j<numProbes; j++){
+				xs[j+1]=probes[j];
+				fs[j+1]=getDifference(runner.outcomes[j]);
+			}
+			xs[numProbes+1]=hi; fs[numProbes+1]=fhi;
+			sortPoints(xs,fs);
+			int newLo=-1;
+			for(int j=0; j<xs.length-1; j++){
+				if(fs[j]==0 || fs[j+1]==0 || (fs[j]<0)!=(fs[j+1]<0)){
+					if(newLo==-1 || xs[j+1]-xs[j]<xs[newLo+1]-xs[newLo]){newLo=j;}
+				}
+			}
+			//keep the best point outside the new bracket for interpolation
+			x3=Double.NaN; f3=Double.NaN;
+			for(int j=0; j<xs.length; j++){
+				boolean outside=(xs[j]<xs[newLo]-tol1 || xs[j]>xs[newLo+1]+tol1);
+				if(outside && (Double.isNaN(f3) || Math.abs(fs[j])<Math.abs(f3))){
+					x3=xs[j]; f3=fs[j];
+				}
+			}
+			lo=xs[newLo]; flo=fs[newLo];
+			hi=xs[newLo+1]; fhi=fs[newLo+1];
+			split=(hi-lo>0.5*width);
+			
+			i++;
+			if(progress.isCancelled()){results.cancelled=true;}
+		}
+		double best=(Math.abs(flo)<Math.abs(fhi)) ? lo : hi;
+		double fBest=(best==lo) ? flo : fhi;
+		if(Math.abs(fBest)<tol){ //Convergence achieved
+			results.intersection=best;
+		}
+	}
+	
+	/**
+	 * Sorts points by parameter value (few points, insertion sort)
+	 */
+	private static void sortPoints(double xs[], double fs[]){
+		for(int j=1; j<xs.length; j++){
+			double x=xs[j], f=fs[j];
+			int k=j-1;
+			while(k>=0 && xs[k]>x){
+				xs[k+1]=xs[k]; fs[k+1]=fs[k];
+				k--;
+			}
+			xs[k+1]=x; fs[k+1]=f;
+		}
+	}
+	
+	/**
+	 * @return Decimals shown for the distance between strategies
+	 */
+	private int getDecimals(){
+		int decimalDim=outcome;
+		if(outcome>=myModel.dimInfo.dimNames.length){decimalDim=myModel.dimInfo.costDim;} //ICER or NMB
+		return(myModel.dimInfo.decimals[decimalDim]+1);
+	}
+	
+	/**
+	 * Runs the model at a parameter value, without re-parsing
+	 */
+	private Outcomes runModel(double value) throws Exception{
+		curParam.value=new Numeric(value);
+		curParam.locked=true;
+		myModel.evaluateVariables();
+		myModel.runModel(null, false);
+		return(Outcomes.record(myModel));
+	}
+	
+	/**
+	 * @return Outcome of strategy 1 - strategy 2
+	 */
+	private double getDifference(Outcomes curOutcomes){
+		return(curOutcomes.values[group][outcome][strat1]-curOutcomes.values[group][outcome][strat2]);
+	}
+	
+	/**
+	 * Locks the parameter at a value and parses the model
+	 * @return Model errors
+	 */
+	private ArrayList<String> parseAt(double value){
+		curParam.value=new Numeric(value);
+		curParam.locked=true;
+		return(myModel.parseModel());
+	}
+	
+	/**
+	 * Passes cancellation to the analysis listener, but not the progress of each batch of probes
+	 */
+	private static class SearchProgress implements ProgressListener{
+		ProgressListener listener;
+		
+		SearchProgress(ProgressListener listener){
+			this.listener=listener;
+		}
+		
+		public void setProgress(int numComplete, int total){}
+		
+		public void setNote(String note){}
+		
+		public boolean isCancelled(){
+			return(listener.isCancelled());
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import base.AmuaModel;
+import main.DependencyIndex;
+import main.Parameter;
+import math.Numeric;
+
+/**
+ * Tornado diagram: runs the model with each parameter at its min and max value, holding the others at the base case.
+ * For Markov cohort models only the chains that depend on the current parameter are re-run (see DependencyIndex).
+ */
+public class TornadoEngine{
+	AmuaModel myModel;
+	int paramIndices[];
+	double mins[], maxs[];
+	
+	/**
+	 * @param myModel Model
+	 * @param paramIndices Parameters to vary
+	 * @param mins Min value for each parameter
+	 * @param maxs Max value for each parameter
+	 */
+	public TornadoEngine(AmuaModel myModel, int paramIndices[], double mins[], double maxs[]){
+		this.myModel=myModel;
+		this.paramIndices=paramIndices;
+		this.mins=mins;
+		this.maxs=maxs;
+	}
+	
+	/**
+	 * Runs the analysis.  Parameters are reset afterwards.
+	 * @param progress Progress listener
+	 * @return Results
+	 * @throws Exception If the model has errors at the base case, or at a min/max value
+	 */
+	public TornadoResults run(ProgressListener progress) throws Exception{
+		ArrayList<String> errorsBase=myModel.parseModel();
+		if(errorsBase.size()>0){
+			throw new Exception("Errors in base case model!");
+		}
+		myModel.getStrategies();
+		int numParams=paramIndices.length;
+		int numRuns=1+numParams*2;
+		boolean origShowTrace=false;
+		if(myModel.type==1) {
+			origShowTrace=myModel.markov.showTrace;
+			myModel.markov.showTrace=false;
+		}
+		
+		TornadoResults results=new TornadoResults(numParams);
+		Parameter curParam=null;
+		Numeric origValue=null;
+		DependencyIndex index=null;
+		if(DependencyIndex.canFilterChains(myModel)){index=new DependencyIndex(myModel);}
+		BitSet stale=new BitSet(); //chains last run with the previous parameter changed
+		try{
+			//Get baseline
+			myModel.runModel(null, false);
+			results.baseOutcomes=Outcomes.record(myModel);
+			progress.setProgress(1, numRuns);
+			
+			for(int p=0; p<numParams && results.cancelled==false; p++){
+				curParam=myModel.parameters.get(paramIndices[p]);
+				origValue=curParam.value;
+				BitSet affected=null;
+				if(index!=null){affected=index.getChains(curParam);}
+				for(int i=0; i<2; i++){ //min, max
+					curParam.value=new Numeric(i==0 ? mins[p] : maxs[p]);
+					curParam.locked=true;
+					ArrayList<String> errors=myModel.parseModel();
+					if(errors.size()>0){
+						throw new Exception("Error: "+curParam.name+" - "+(i==0 ? "Min" : "Max")+" value");
+					}
+					if(index!=null){
+						BitSet runChains=(BitSet)affected.clone();
+						if(i==0){runChains.or(stale);} //return previous chains to base case
+						myModel.markov.chainFilter=runChains;
+					}
+					myModel.runModel(null, false);
+					results.outcomes[p][i]=Outcomes.record(myModel);
+					progress.setProgress(2+p*2+i, numRuns);
+				}
+				curParam.value=origValue;
+				curParam.locked=false;
+				curParam=null;
+				if(index!=null){stale=affected;}
+				if(progress.isCancelled()){results.cancelled=true;}
+			}
+		} finally{
+			if(curParam!=null){ //reset current parameter
+				curParam.value=origValue;
+				curParam.locked=false;
+			}
+			myModel.validateModelObjects();
+			if(myModel.type==1) {
+				myModel.markov.showTrace=origShowTrace;
+				myModel.markov.chainFilter=null;
+			}
+		}
+		return(results);
+	}
+}
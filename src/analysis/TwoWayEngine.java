@@ -0,0 +1,146 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+
+import base.AmuaModel;
+import main.Parameter;
+import math.Numeric;
+
+/**
+ * Two-way sensitivity analysis: runs the model over a grid of values for two parameters.
+ * With more than one thread, grid points are run in parallel on replicas of the model (see GridRunner).
+ */
+public class TwoWayEngine{
+	AmuaModel myModel;
+	int paramIndex1, paramIndex2;
+	Parameter curParam1, curParam2;
+	public double min1, max1, min2, max2;
+	public int intervals=10;
+	public int numThreads=1;
+	/**
+	 * Receives each grid point's results as it completes, with index i*(intervals+1)+j (may be null)
+	 */
+	public GridListener listener;
+	
+	/**
+	 * @param myModel Model
+	 * @param paramIndex1 Index of the first parameter
+	 * @param paramIndex2 Index of the second parameter
+	 */
+	public TwoWayEngine(AmuaModel myModel, int paramIndex1, int paramIndex2){
+		this.myModel=myModel;
+		this.paramIndex1=paramIndex1;
+		this.paramIndex2=paramIndex2;
+		curParam1=myModel.parameters.get(paramIndex1);
+		curParam2=myModel.parameters.get(paramIndex2);
+	}
+	
+	/**
+	 * Runs the analysis.  Parameters are reset afterwards.
+	 * @param progress Progress listener
+	 * @return Results
+	 * @throws Exception If the model has errors at the base case, min, or max values
+	 */
+	public TwoWayResults run(ProgressListener progress) throws Exception{
+		ArrayList<String> errorsBase=myModel.parseModel();
+		if(errorsBase.size()>0){
+			throw new Exception("Errors in base case model!");
+		}
+		myModel.getStrategies();
+		Numeric origValue1=curParam1.value, origValue2=curParam2.value;
+		boolean origShowTrace=false;
+		if(myModel.type==1) {
+			origShowTrace=myModel.markov.showTrace;
+			myModel.markov.showTrace=false;
+		}
+		
+		TwoWayResults results=new TwoWayResults(intervals);
+		try{
+			//Test parameters at min and max...
+			if(setValues(min1,min2).size()>0){throw new Exception("Error: Min value");}
+			if(setValues(max1,max2).size()>0){throw new Exception("Error: Max value");}
+			
+			double step1=(max1-min1)/(intervals*1.0);
+			double step2=(max2-min2)/(intervals*1.0);
+			int numRuns=(intervals+1)*(intervals+1);
+			for(int i=0; i<=intervals; i++){
+				results.param1Values[i]=min1+(step1*i);
+				results.param2Values[i]=min2+(step2*i);
+			}
+			if(numThreads>1){
+				double points[][]=new double[numRuns][];
+				for(int i=0; i<=intervals; i++){
+					for(int j=0; j<=intervals; j++){
+						points[i*(intervals+1)+j]=new double[]{results.param1Values[i],results.param2Values[j]};
+					}
+				}
+				GridRunner runner=new GridRunner(myModel, new int[]{paramIndex1,paramIndex2}, numThreads);
+				try{
+					runner.run(points, listener, progress);
+				} finally{
+					runner.close();
+				}
+				for(int i=0; i<=intervals; i++){
+					for(int j=0; j<=intervals; j++){
+						results.outcomes[i][j]=runner.outcomes[i*(intervals+1)+j];
+					}
+				}
+				results.cancelled=runner.cancelled;
+			}
+			else{
+				int count=0;
+				for(int i=0; i<=intervals && results.cancelled==false; i++){
+					double curVal1=results.param1Values[i];
+					for(int j=0; j<=intervals && results.cancelled==false; j++){
+						double curVal2=results.param2Values[j];
+						setValues(curVal1,curVal2);
+						myModel.runModel(null, false);
+						results.outcomes[i][j]=Outcomes.record(myModel);
+						if(listener!=null){listener.pointComplete(count, new double[]{curVal1,curVal2}, results.outcomes[i][j]);}
+						
+						count++;
+						progress.setProgress(count, numRuns);
+						if(progress.isCancelled()){results.cancelled=true;}
+					}
+				}
+			}
+		} finally{
+			//Reset parameter values
+			curParam1.value=origValue1; curParam2.value=origValue2;
+			curParam1.locked=false; curParam2.locked=false;
+			myModel.validateModelObjects();
+			if(myModel.type==1) {
+				myModel.markov.showTrace=origShowTrace;
+			}
+		}
+		return(results);
+	}
+	
+	/**
+	 * Locks both parameters and parses the model
+	 * @return Model errors
+	 */
+	private ArrayList<String> setValues(double value1, double value2){
+		curParam1.value=new Numeric(value1); curParam1.locked=true;
+		curParam2.value=new Numeric(value2); curParam2.locked=true;
+		return(myModel.parseModel());
+	}
+}
@@ -18,6 +18,8 @@
 
 package base;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
@@ -27,12 +29,14 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.Stack;
 
+import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.ProgressMonitor;
 import javax.swing.table.DefaultTableModel;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
@@ -54,11 +58,15 @@ import main.ScaledIcon;
 import main.Scenario;
 import main.Table;
 import main.Variable;
+import main.VariableGraph;
+import main.WorkerPool;
 import markov.MarkovNode;
 import markov.MarkovTrace;
 import markov.MarkovTraceSummary;
 import markov.MarkovTree;
 import markov.PanelMarkov;
+import math.CompiledExpression;
+import math.ExpressionCache;
 import math.Interpreter;
 import math.MathUtils;
 import math.Numeric;
@@ -89,6 +97,9 @@ public class AmuaModel{
 	@XmlElement public int cohortSize=1000;
 	@XmlElement public boolean CRN; //common random numbers
 	@XmlElement public int crnSeed; //CRN seed
+	@XmlElement public boolean rngStreams; //per-person RNG streams, results don't depend on # of threads
+	@XmlElement public boolean directSampling; //faster non inverse-CDF sampling, draws aren't coupled by CRN
+	@XmlElement public boolean batchSim; //Markov microsimulation: evaluate nodes over batches of people
 	@XmlElement public boolean displayIndResults;
 	@XmlElement public int numThreads=1;
 	//Subgroup settings
@@ -107,17 +118,20 @@ public class AmuaModel{
 	@XmlTransient public int strategyIndices[];
 	@XmlTransient public String strategyNames[];
 	@XmlTransient public Token subgroupTokens[][];
+	@XmlTransient public ExpressionCache expressionCache=new ExpressionCache(this); //parsed expressions for current model version
 	//sampling
 	@XmlTransient public boolean sampleParam, sampleVar;
 	@XmlTransient public MersenneTwisterFast generatorParam, generatorVar[], curGenerator[]; //thread-specific
 	//innate vars
 	@XmlTransient public ArrayList<Variable> innateVariables;
+	@XmlTransient public VariableGraph variableGraph;
 	@XmlTransient public MarkovTrace traceMarkov;
 		
 	//Display
 	@XmlTransient public frmMain mainForm;
 	@XmlTransient public PanelTree panelTree;
 	@XmlTransient public PanelMarkov panelMarkov;
+	private WorkerPool workerPool; //microsimulation workers, kept between runs
 
 
 	//Constructor
@@ -161,6 +175,15 @@ public class AmuaModel{
 
 	}
 	
+	/**
+	 * Parent frame for dialogs and progress monitors
+	 * @return Main frame, or null if the model isn't open in the GUI
+	 */
+	public JFrame getFrame(){
+		if(mainForm==null){return(null);}
+		return(mainForm.frmMain);
+	}
+	
 	public JPanel getPanel(){
 		if(type==0){return(panelTree);}
 		else if(type==1){return(panelMarkov);}
@@ -174,42 +197,12 @@ public class AmuaModel{
 			this.mainForm=mainFrm;
 			this.errorLog=errorLog;
 			
-			innateVariables=new ArrayList<Variable>();
-			if(type==1) { //Markov
-				addT();
-			}
-			
-			//Update tables
-			if(parameters==null){parameters=new ArrayList<Parameter>();}
-			if(variables==null){variables=new ArrayList<Variable>();}
-			if(tables==null){tables=new ArrayList<Table>();}
-			if(constraints==null){constraints=new ArrayList<Constraint>();}
-			//Construct splines if needed
-			for(int t=0; t<tables.size(); t++){
-				Table curTable=tables.get(t);
-				curTable.myModel=this;
-				if(curTable.interpolate!=null && curTable.interpolate.matches("Cubic Splines")){
-					curTable.constructSplines();
-				}
-			}
-			if(subgroupNames==null){
-				subgroupNames=new ArrayList<String>();
-				subgroupDefinitions=new ArrayList<String>();
-			}
-			
-			validateModelObjects();
+			initModelObjects();
 			
 			refreshParamTable();
 			refreshVarTable();
 			refreshTableTable();
 			refreshConstTable();
-			//Parse parameters
-			if(parameterNames!=null){
-				int numSets=parameterSets.length;
-				for(int i=0; i<numSets; i++){
-					parameterSets[i].parseXMLValues();
-				}
-			}
 			refreshParamSetsTable();
 			refreshAlignment();
 			//Update undo stacks
@@ -236,6 +229,79 @@ public class AmuaModel{
 			errorLog.recordError(e);
 		}
 	}
+	
+	/**
+	 * Opens the model without any panels or main form (e.g. model replicas)
+	 * @param errorLog
+	 * @throws Exception
+	 */
+	public void openModelHeadless(ErrorLog errorLog) throws Exception{
+		this.errorLog=errorLog;
+		initModelObjects();
+		if(type==0){tree.initTree(this);}
+		else if(type==1){markov.initTree(this);}
+	}
+	
+	/**
+	 * Creates an independent copy of this model, e.g. to run iterations of an analysis in parallel.
+	 * The copy is made through the XML representation and opened without panels.
+	 * @return Model replica
+	 * @throws Exception
+	 */
+	public AmuaModel createReplica() throws Exception{
+		JAXBContext context = JAXBContext.newInstance(AmuaModel.class);
+		Marshaller m = context.createMarshaller();
+		m.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		m.marshal(this, out);
+		
+		Unmarshaller un = context.createUnmarshaller();
+		AmuaModel replica = (AmuaModel) un.unmarshal(new ByteArrayInputStream(out.toByteArray()));
+		replica.name=name;
+		replica.filepath=filepath;
+		replica.mainForm=mainForm; //dialogs and progress only
+		replica.openModelHeadless(errorLog);
+		replica.getStrategies();
+		return(replica);
+	}
+	
+	/**
+	 * Initializes model objects after unmarshalling
+	 */
+	private void initModelObjects() throws Exception{
+		innateVariables=new ArrayList<Variable>();
+		if(type==1) { //Markov
+			addT();
+		}
+		
+		//Update tables
+		if(parameters==null){parameters=new ArrayList<Parameter>();}
+		if(variables==null){variables=new ArrayList<Variable>();}
+		if(tables==null){tables=new ArrayList<Table>();}
+		if(constraints==null){constraints=new ArrayList<Constraint>();}
+		//Construct splines if needed
+		for(int t=0; t<tables.size(); t++){
+			Table curTable=tables.get(t);
+			curTable.myModel=this;
+			if(curTable.interpolate!=null && curTable.interpolate.matches("Cubic Splines")){
+				curTable.constructSplines();
+			}
+		}
+		if(subgroupNames==null){
+			subgroupNames=new ArrayList<String>();
+			subgroupDefinitions=new ArrayList<String>();
+		}
+		
+		validateModelObjects();
+		
+		//Parse parameters
+		if(parameterNames!=null){
+			int numSets=parameterSets.length;
+			for(int i=0; i<numSets; i++){
+				parameterSets[i].parseXMLValues();
+			}
+		}
+	}
 
 	public void refreshParamTable(){
 		mainForm.modelParameters.setRowCount(0);
@@ -359,6 +425,7 @@ public class AmuaModel{
 		mainForm.mntmRedo.setText("Redo "+lastAction);
 
 		modelStackUndo.pop().getSnapshot(this); //gets previous model
+		expressionCache.invalidate();
 		
 		//Update nodes on panel
 		if(type==0){panelTree.revert();}
@@ -405,6 +472,7 @@ public class AmuaModel{
 		mainForm.mntmUndo.setText("Undo "+lastAction);
 
 		modelStackRedo.pop().getSnapshot(this); //gets previous model
+		expressionCache.invalidate();
 		
 		//Update nodes on panel
 		if(type==0){panelTree.revert();}
@@ -530,8 +598,8 @@ public class AmuaModel{
 			curParam.valid=true;
 			if(curParam.locked==false){
 				try{
-					curParam.parsedTokens=Interpreter.parse(curParam.expression,this);
-					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, false);
+					curParam.parsedTokens=expressionCache.parse(curParam, curParam.expression);
+					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, false).copy(); //not shared with token values
 					
 				}catch(Exception e){
 					curParam.valid=false;
@@ -546,20 +614,21 @@ public class AmuaModel{
 		for(int i=0; i<numVars; i++){
 			Variable curVar=variables.get(i);
 			curVar.valid=true;
+			curVar.dependents=new ArrayList<Variable>();
 			try{
-				curVar.parsedTokens=Interpreter.parse(curVar.expression, this);
-				curVar.value[0]=Interpreter.evaluateTokens(curVar.parsedTokens, 0, false);
-				curVar.dependents=new ArrayList<Variable>();
+				curVar.parsedTokens=expressionCache.parse(curVar, curVar.expression);
 			}catch(Exception e){
 				curVar.valid=false;
 				curVar.parsedTokens=null;
+				curVar.compiledExpr=null;
 				curVar.value[0]=null;
 			}
 		}
 		//get variable dependents
+		Variable curT=null;
 		if(type==1) { //Markov
 			int indexT=getInnateVariableIndex("t");
-			Variable curT=innateVariables.get(indexT);
+			curT=innateVariables.get(indexT);
 			curT.dependents=new ArrayList<Variable>();
 		}
 		for(int i=0; i<numVars; i++){
@@ -568,6 +637,28 @@ public class AmuaModel{
 				curVar.getDependents(this);
 			}
 		}
+		variableGraph=new VariableGraph(variables,curT);
+		for(int i=0; i<variableGraph.circular.size(); i++){ //circular definitions
+			Variable curVar=variableGraph.circular.get(i);
+			curVar.valid=false;
+			curVar.parsedTokens=null;
+			curVar.compiledExpr=null;
+			curVar.value[0]=null;
+		}
+		//evaluate in dependency order
+		for(int i=0; i<variableGraph.order.length; i++){
+			Variable curVar=variableGraph.order[i];
+			if(curVar==curT){continue;}
+			try{
+				curVar.value[0]=Interpreter.evaluateTokens(curVar.parsedTokens, 0, false).copy(); //value may be updated in place
+				curVar.compiledExpr=CompiledExpression.compile(curVar.parsedTokens);
+			}catch(Exception e){
+				curVar.valid=false;
+				curVar.parsedTokens=null;
+				curVar.compiledExpr=null;
+				curVar.value[0]=null;
+			}
+		}
 		
 		//constraints
 		int numConst=constraints.size();
@@ -583,6 +674,19 @@ public class AmuaModel{
 		}
 	}
 
+	/**
+	 * Re-evaluates the base value of each variable in dependency order from its parsed expression.
+	 * Used after a locked parameter is changed, instead of re-parsing the model.
+	 * @throws Exception
+	 */
+	public void evaluateVariables() throws Exception{
+		for(int i=0; i<variableGraph.order.length; i++){
+			Variable curVar=variableGraph.order[i];
+			if(curVar.valid==false || curVar.parsedTokens==null){continue;} //also skips t
+			curVar.value[0]=Interpreter.evaluateTokens(curVar.parsedTokens, 0, false).copy(); //value may be updated in place
+		}
+	}
+
 	public void rescale(int scale){
 		if(type==0){panelTree.rescale(scale);}
 		else if(type==1){panelMarkov.rescale(scale);}
@@ -644,6 +748,7 @@ public class AmuaModel{
 	}
 
 	public void saveSnapshot(String action){
+		expressionCache.invalidate(); //model is being edited
 		unsavedChanges=true;
 		setUnsavedStatus();
 		//Add undoable action
@@ -808,7 +913,7 @@ public class AmuaModel{
 	public ArrayList<String> parseModel(){
 		if(type==0){return(tree.parseTree());}
 		else if(type==1){
-			if(panelMarkov.curNode==null || panelMarkov.curNode.type!=1){ //No Markov Chain selected, check whole model
+			if(panelMarkov==null || panelMarkov.curNode==null || panelMarkov.curNode.type!=1){ //No Markov Chain selected, check whole model
 				return(markov.parseTree());
 			}
 			else{ //Markov Chain selected
@@ -862,6 +967,33 @@ public class AmuaModel{
 		return(report);
 	}
 	
+	/**
+	 * Returns the model's worker pool, started on first use and reused by later runs.
+	 * The pool is restarted if the number of threads has changed.
+	 * @param numThreads
+	 * @return
+	 */
+	public synchronized WorkerPool getWorkerPool(int numThreads){
+		if(workerPool!=null && workerPool.getNumThreads()!=numThreads){
+			workerPool.shutdown();
+			workerPool=null;
+		}
+		if(workerPool==null){
+			workerPool=new WorkerPool(numThreads);
+		}
+		return(workerPool);
+	}
+	
+	/**
+	 * Stops the model's worker threads.  Called when the model or replica is no longer used.
+	 */
+	public synchronized void releaseWorkerPool(){
+		if(workerPool!=null){
+			workerPool.shutdown();
+			workerPool=null;
+		}
+	}
+	
 	
 	private void runDecisionTree(Console console,boolean display,RunReport runReport){
 		try{
@@ -870,7 +1002,7 @@ public class AmuaModel{
 				panelTree.tree.showEV=true;
 			}
 			evaluateParameters(); //get parameters
-			panelTree.tree.runModel(display,runReport); //run model
+			tree.runModel(display,runReport); //run model
 			runReport.getResults(true);
 			unlockParams(); //unlock parameters
 			
@@ -887,7 +1019,7 @@ public class AmuaModel{
 				}
 			}
 		}catch(Exception e){
-			JOptionPane.showMessageDialog(mainForm.frmMain, e.toString());
+			if(mainForm!=null){JOptionPane.showMessageDialog(mainForm.frmMain, e.toString());}
 			errorLog.recordError(e);
 		}
 	}
@@ -895,7 +1027,7 @@ public class AmuaModel{
 	private void runMarkov(Console console, boolean display, RunReport runReport){
 		try{
 			evaluateParameters(); //get parameters
-			if(panelMarkov.curNode==null || panelMarkov.curNode.type!=1){ //No Markov Chain selected, run all chains
+			if(panelMarkov==null || panelMarkov.curNode==null || panelMarkov.curNode.type!=1){ //No Markov Chain selected, run all chains
 				if(display){console.print("Running model... ");}
 				markov.runModel(display,runReport,true);
 				runReport.getResults(true);
@@ -922,14 +1054,14 @@ public class AmuaModel{
 			}
 			unlockParams(); //unlock parameters
 		}catch(Exception e){
-			JOptionPane.showMessageDialog(mainForm.frmMain, e.toString());
+			if(mainForm!=null){JOptionPane.showMessageDialog(mainForm.frmMain, e.toString());}
 			errorLog.recordError(e);
 		}
 	}
 	
 	private void runMarkovParamSets(Console console,boolean display){
 		try{
-			ProgressMonitor progress=new ProgressMonitor(mainForm.frmMain, "Running parameter sets", "", 0, 100);
+			ProgressMonitor progress=new ProgressMonitor(getFrame(), "Running parameter sets", "", 0, 100);
 			int prog=0;
 			//get number of chains
 			ArrayList<MarkovNode> chainRoots=new ArrayList<MarkovNode>();
@@ -1092,7 +1224,7 @@ public class AmuaModel{
 				}
 			} //end check cancelled == false
 		}catch(Exception e){
-			JOptionPane.showMessageDialog(mainForm.frmMain, e.toString());
+			if(mainForm!=null){JOptionPane.showMessageDialog(mainForm.frmMain, e.toString());}
 			errorLog.recordError(e);
 		}
 	}
@@ -1430,7 +1562,7 @@ public class AmuaModel{
 			Parameter curParam=parameters.get(p);
 			if(curParam.locked==false){
 				//curParam.value=Interpreter.evaluate(curParam.expression, this,sampleParam);
-				curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, sampleParam);
+				curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, sampleParam).copy(); //not shared with token values
 				curParam.locked=true;
 			}
 		}
@@ -63,15 +63,66 @@ public class MicroStats{
 	public double outcomesMed[], varsMed[]; //50%
 	public double outcomesQ3[], varsQ3[]; //75% 3rd Qu
 	
+	/**Accumulate one-pass summaries instead of storing every individual*/
+	boolean streaming;
+	/**[Partial][Dimension] - merged in calcSummary*/
+	StreamStats outcomeStats[][];
+	/**[Partial][Variable]*/
+	StreamStats varStats[][];
+	/**Sketch size, rank error is about 1/k*/
+	static final int SKETCH_SIZE=1024;
+	
 	//Constructor
 	public MicroStats(AmuaModel myModel, int numPeople1){
+		this(myModel,numPeople1,false);
+	}
+	
+	/**
+	 * @param streaming If true, summaries are accumulated per thread as values are set (outcomes/variables arrays are not kept), 
+	 * and quartiles are approximate for large populations
+	 */
+	public MicroStats(AmuaModel myModel, int numPeople1, boolean streaming){
+		this(myModel,numPeople1,streaming,myModel.numThreads);
+	}
+	
+	/**
+	 * @param numPartials Number of partial summaries when streaming (e.g. one per block of people), merged in index order
+	 */
+	public MicroStats(AmuaModel myModel, int numPeople1, boolean streaming, int numPartials){
 		this.myModel=myModel;
 		this.dimInfo=myModel.dimInfo;
 		this.numPeople=numPeople1;
+		this.streaming=streaming;
 		numDim=dimInfo.dimNames.length;
-		outcomes=new double[numDim][numPeople];
 		numVars=myModel.variables.size();
-		variables=new double[numVars][numPeople];
+		if(streaming==false){
+			outcomes=new double[numDim][numPeople];
+			variables=new double[numVars][numPeople];
+		}
+		else{
+			outcomeStats=new StreamStats[numPartials][numDim];
+			varStats=new StreamStats[numPartials][numVars];
+			for(int n=0; n<numPartials; n++){
+				for(int d=0; d<numDim; d++){outcomeStats[n][d]=new StreamStats();}
+				for(int v=0; v<numVars; v++){varStats[n][v]=new StreamStats();}
+			}
+		}
+	}
+	
+	/**
+	 * Records an individual outcome.  Each partial must only be used by one thread at a time.
+	 */
+	public void setOutcome(int partial, int d, int p, double value){
+		if(streaming){outcomeStats[partial][d].add(value);}
+		else{outcomes[d][p]=value;}
+	}
+	
+	/**
+	 * Records an individual variable value.  Each partial must only be used by one thread at a time.
+	 */
+	public void setVariable(int partial, int v, int p, double value){
+		if(streaming){varStats[partial][v].add(value);}
+		else{variables[v][p]=value;}
 	}
 
 	public void printSummary(Console console){
@@ -164,6 +215,11 @@ public class MicroStats{
 	
 	
 	public void calcSummary(){
+		if(streaming){
+			calcStreamingSummary();
+			return;
+		}
+		
 		//mean
 		outcomesMean=new double[numDim];
 		for(int d=0; d<numDim; d++){
@@ -231,4 +287,77 @@ public class MicroStats{
 		}
 	}
 	
+	private void calcStreamingSummary(){
+		outcomesMean=new double[numDim]; varsMean=new double[numVars];
+		outcomesSD=new double[numDim]; varsSD=new double[numVars];
+		outcomesMin=new double[numDim]; varsMin=new double[numVars];
+		outcomesQ1=new double[numDim]; varsQ1=new double[numVars];
+		outcomesMed=new double[numDim]; varsMed=new double[numVars];
+		outcomesQ3=new double[numDim]; varsQ3=new double[numVars];
+		outcomesMax=new double[numDim]; varsMax=new double[numVars];
+		
+		for(int d=0; d<numDim; d++){
+			StreamStats merged=new StreamStats();
+			for(int n=0; n<outcomeStats.length; n++){merged.merge(outcomeStats[n][d]);}
+			double summary[]=merged.getSummary();
+			outcomesMean[d]=summary[0]; outcomesSD[d]=summary[1];
+			outcomesMin[d]=summary[2]; outcomesQ1[d]=summary[3]; outcomesMed[d]=summary[4]; outcomesQ3[d]=summary[5]; outcomesMax[d]=summary[6];
+		}
+		for(int v=0; v<numVars; v++){
+			StreamStats merged=new StreamStats();
+			for(int n=0; n<varStats.length; n++){merged.merge(varStats[n][v]);}
+			double summary[]=merged.getSummary();
+			varsMean[v]=summary[0]; varsSD[v]=summary[1];
+			varsMin[v]=summary[2]; varsQ1[v]=summary[3]; varsMed[v]=summary[4]; varsQ3[v]=summary[5]; varsMax[v]=summary[6];
+		}
+	}
+	
+	/**
+	 * One-pass moments (Welford) and a quantile sketch for one column
+	 */
+	static class StreamStats{
+		long count;
+		double mean, m2;
+		double min=Double.POSITIVE_INFINITY, max=Double.NEGATIVE_INFINITY;
+		QuantileSketch sketch=new QuantileSketch(SKETCH_SIZE);
+		
+		void add(double value){
+			count++;
+			double delta=value-mean;
+			mean+=delta/count;
+			m2+=delta*(value-mean);
+			min=Math.min(min, value);
+			max=Math.max(max, value);
+			sketch.add(value);
+		}
+		
+		/**
+		 * Combines moments with the pairwise update of Chan et al.
+		 */
+		void merge(StreamStats other){
+			if(other.count==0){return;}
+			long n=count+other.count;
+			double delta=other.mean-mean;
+			mean+=delta*other.count/n;
+			m2+=other.m2+delta*delta*((double)count*other.count/n);
+			count=n;
+			min=Math.min(min, other.min);
+			max=Math.max(max, other.max);
+			sketch.merge(other.sketch);
+		}
+		
+		/**
+		 * @return Mean, SD, Min, Q1, Median, Q3, Max
+		 */
+		double[] getSummary(){
+			if(count==0){
+				return(new double[]{Double.NaN,Double.NaN,Double.NaN,Double.NaN,Double.NaN,Double.NaN,Double.NaN});
+			}
+			int ranks[]=new int[]{MathUtils.getQuantileIndex(count, 0.25), MathUtils.getQuantileIndex(count, 0.50), MathUtils.getQuantileIndex(count, 0.75)};
+			double quartiles[]=sketch.getQuantiles(ranks);
+			double sd=Math.sqrt(m2/count); //population sd, as above
+			return(new double[]{mean,sd,min,quartiles[0],quartiles[1],quartiles[2],max});
+		}
+	}
+	
 }
\ No newline at end of file
@@ -52,6 +52,9 @@ public class ModelSnapshot{
 	public int cohortSize=1000;
 	public boolean CRN;
 	public int crnSeed;
+	public boolean rngStreams;
+	public boolean directSampling;
+	public boolean batchSim;
 	public boolean displayIndResults;
 	public int numThreads;
 	public boolean reportSubgroups;
@@ -118,6 +121,9 @@ public class ModelSnapshot{
 		cohortSize=model.cohortSize;
 		CRN=model.CRN;
 		crnSeed=model.crnSeed;
+		rngStreams=model.rngStreams;
+		directSampling=model.directSampling;
+		batchSim=model.batchSim;
 		displayIndResults=model.displayIndResults;
 		numThreads=model.numThreads;
 		
@@ -155,6 +161,9 @@ public class ModelSnapshot{
 		model.cohortSize=cohortSize;
 		model.CRN=CRN;
 		model.crnSeed=crnSeed;
+		model.rngStreams=rngStreams;
+		model.directSampling=directSampling;
+		model.batchSim=batchSim;
 		model.displayIndResults=displayIndResults;
 		model.numThreads=numThreads;
 		
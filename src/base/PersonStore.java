@@ -0,0 +1,235 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package base;
+
+import java.util.BitSet;
+
+import main.Variable;
+import math.Numeric;
+import math.NumericException;
+
+/**
+ * Columnar storage for individuals in a microsimulation (one primitive array per field instead of one object per person).
+ * Scalar variables are stored as doubles with a format code, matrix variables as one Numeric per person.
+ * Each thread loads a person's variables into its own reusable Numeric values before evaluating expressions.
+ * @author zward
+ *
+ */
+public class PersonStore{
+	public int numPeople;
+	int numVars, numSubgroups;
+	Variable variables[];
+	
+	/**
+	 * [Person] - Current Markov state
+	 */
+	public int state[];
+	/**
+	 * [Dimension][Person]
+	 */
+	public double rewards[][], rewardsDis[][];
+	/**
+	 * [Subgroup] - Members
+	 */
+	BitSet inSubgroup[];
+	
+	//variables
+	boolean matrixVar[];
+	/**
+	 * [Variable][Person] - Scalar value and format (0=double, 1=integer, 2=boolean, 3=not initialized)
+	 */
+	double initVals[][], vals[][];
+	byte initFormat[][], format[][];
+	/**
+	 * [Variable][Person] - Matrix values
+	 */
+	Numeric initObj[][], obj[][];
+	/**
+	 * [Thread][Variable] - Re-used for each person
+	 */
+	Numeric scratch[][];
+	
+	/**
+	 * @param numPeople
+	 * @param variables
+	 * @param testVals Test value for each variable, used to decide if the variable is stored as a matrix
+	 * @param numSubgroups
+	 * @param numThreads
+	 */
+	public PersonStore(int numPeople, Variable variables[], Numeric testVals[], int numSubgroups, int numThreads){
+		this.numPeople=numPeople;
+		this.variables=variables;
+		this.numVars=variables.length;
+		this.numSubgroups=numSubgroups;
+		
+		inSubgroup=new BitSet[numSubgroups];
+		for(int g=0; g<numSubgroups; g++){
+			inSubgroup[g]=new BitSet(numPeople);
+		}
+		
+		matrixVar=new boolean[numVars];
+		initVals=new double[numVars][]; initFormat=new byte[numVars][];
+		initObj=new Numeric[numVars][];
+		for(int v=0; v<numVars; v++){
+			matrixVar[v]=(testVals[v]!=null && testVals[v].isMatrix());
+			if(matrixVar[v]){initObj[v]=new Numeric[numPeople];}
+			else{
+				initVals[v]=new double[numPeople];
+				initFormat[v]=new byte[numPeople];
+			}
+		}
+		scratch=new Numeric[numThreads][numVars];
+		for(int n=0; n<numThreads; n++){
+			for(int v=0; v<numVars; v++){
+				scratch[n][v]=new Numeric(0);
+			}
+		}
+	}
+	
+	/**
+	 * Allocates Markov state and reward columns
+	 * @param numDim
+	 */
+	public void initMarkov(int numDim){
+		state=new int[numPeople];
+		rewards=new double[numDim][numPeople];
+		rewardsDis=new double[numDim][numPeople];
+		vals=new double[numVars][]; format=new byte[numVars][];
+		obj=new Numeric[numVars][];
+		for(int v=0; v<numVars; v++){
+			if(matrixVar[v]){obj[v]=new Numeric[numPeople];}
+			else{
+				vals[v]=new double[numPeople];
+				format[v]=new byte[numPeople];
+			}
+		}
+	}
+	
+	public void setInSubgroup(int g, int p){
+		synchronized(inSubgroup[g]){ //threads may share words at block boundaries
+			inSubgroup[g].set(p);
+		}
+	}
+	
+	public boolean inSubgroup(int g, int p){
+		return(inSubgroup[g].get(p));
+	}
+	
+	public int getSubgroupSize(int g){
+		return(inSubgroup[g].cardinality());
+	}
+	
+	/**
+	 * @return Index within the subgroup of the first member at or after person p
+	 */
+	public int getSubgroupIndex(int g, int p){
+		return(inSubgroup[g].get(0, p).cardinality());
+	}
+	
+	/**
+	 * Stores the thread's current variable values as the person's initial values
+	 */
+	public void setInitValues(int p, int curThread) throws NumericException{
+		for(int v=0; v<numVars; v++){
+			Numeric value=variables[v].value[curThread];
+			if(matrixVar[v]){initObj[v][p]=(value==null) ? null : value.copy();}
+			else{setScalar(initVals[v],initFormat[v],p,value,v);}
+		}
+	}
+	
+	/**
+	 * Sets the thread's variable values to the person's initial values
+	 */
+	public void loadInitValues(int p, int curThread){
+		for(int v=0; v<numVars; v++){
+			if(matrixVar[v]){variables[v].value[curThread]=(initObj[v][p]==null) ? null : initObj[v][p].copy();}
+			else{variables[v].value[curThread]=getScalar(initVals[v],initFormat[v],p,scratch[curThread][v]);}
+		}
+	}
+	
+	/**
+	 * Sets the thread's variable values to the person's current values
+	 */
+	public void loadValues(int p, int curThread){
+		for(int v=0; v<numVars; v++){
+			if(matrixVar[v]){variables[v].value[curThread]=obj[v][p];}
+			else{variables[v].value[curThread]=getScalar(vals[v],format[v],p,scratch[curThread][v]);}
+		}
+	}
+	
+	/**
+	 * Stores the thread's variable values as the person's current values
+	 */
+	public void storeValues(int p, int curThread) throws NumericException{
+		for(int v=0; v<numVars; v++){
+			Numeric value=variables[v].value[curThread];
+			if(matrixVar[v]){obj[v][p]=value;}
+			else{setScalar(vals[v],format[v],p,value,v);}
+		}
+	}
+	
+	/**
+	 * @return [Variable][Person] - Current scalar values (null for matrix variables)
+	 */
+	public double[][] getColumns(){
+		return(vals);
+	}
+	
+	/**
+	 * Returns the person's current value as a real number (see Numeric.getDouble)
+	 */
+	public double getDouble(int v, int p) throws NumericException{
+		if(matrixVar[v] || format[v][p]>=2){
+			throw new NumericException("Matrix type, not real number","Numeric");
+		}
+		return(vals[v][p]);
+	}
+	
+	/**
+	 * Returns the person's current value (see Numeric.getValue)
+	 */
+	public double getValue(int v, int p){
+		if(matrixVar[v]){return(obj[v][p].getValue());}
+		else if(format[v][p]==3){return(Double.NaN);}
+		else{return(vals[v][p]);}
+	}
+	
+	private void setScalar(double col[], byte fmt[], int p, Numeric value, int v) throws NumericException{
+		if(value==null){
+			fmt[p]=3;
+			return;
+		}
+		if(value.isMatrix()){
+			throw new NumericException("Variable "+variables[v].name+" changed from a number to a matrix","PersonStore");
+		}
+		col[p]=value.getValue();
+		if(value.isInteger()){fmt[p]=1;}
+		else if(value.isBoolean()){fmt[p]=2;}
+		else{fmt[p]=0;}
+	}
+	
+	private Numeric getScalar(double col[], byte fmt[], int p, Numeric value){
+		if(fmt[p]==3){return(null);} //evaluated when first used
+		if(fmt[p]==1){value.setInt((int)col[p]);}
+		else if(fmt[p]==2){value.setBool(col[p]!=0);}
+		else{value.setDouble(col[p]);}
+		return(value);
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package base;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch using a stack of compactors (as in KLL).
+ * Level i holds up to k values, each representing 2^i observations. When a level fills, it is sorted and
+ * every other value is promoted to the next level, so memory is O(k log(n/k)) and the rank error is about 1/k.
+ * Quantiles are exact until a level is compacted (i.e. for fewer than k values).
+ */
+public class QuantileSketch{
+	int k;
+	double levels[][];
+	int sizes[];
+	boolean offset[]; //alternate which half is promoted
+	int numLevels;
+	long count;
+	
+	public QuantileSketch(int k){
+		this.k=k+(k%2); //even
+		levels=new double[4][];
+		sizes=new int[4];
+		offset=new boolean[4];
+	}
+	
+	public void add(double value){
+		insert(0,value);
+		count++;
+	}
+	
+	/**
+	 * Adds all values from another sketch (the other sketch is not changed)
+	 */
+	public void merge(QuantileSketch other){
+		for(int l=0; l<other.numLevels; l++){
+			for(int i=0; i<other.sizes[l]; i++){
+				insert(l,other.levels[l][i]);
+			}
+		}
+		count+=other.count;
+	}
+	
+	public long getCount(){
+		return(count);
+	}
+	
+	private void insert(int level, double value){
+		if(level>=numLevels){addLevel();}
+		if(sizes[level]==k){compact(level);}
+		levels[level][sizes[level]]=value;
+		sizes[level]++;
+	}
+	
+	private void addLevel(){
+		if(numLevels==levels.length){
+			levels=Arrays.copyOf(levels, numLevels*2);
+			sizes=Arrays.copyOf(sizes, numLevels*2);
+			offset=Arrays.copyOf(offset, numLevels*2);
+		}
+		levels[numLevels]=new double[k];
+		numLevels++;
+	}
+	
+	private void compact(int level){
+		double buffer[]=levels[level];
+		int size=sizes[level];
+		Arrays.sort(buffer,0,size);
+		int start=0;
+		if(offset[level]){start=1;}
+		offset[level]=!offset[level];
+		//promote to next level - values are copied first since insert may compact the next level
+		int numPromote=size/2;
+		double promote[]=new double[numPromote];
+		for(int i=0; i<numPromote; i++){
+			promote[i]=buffer[start+2*i];
+		}
+		sizes[level]=0;
+		if(size%2==1){ //keep odd value at this level
+			buffer[0]=buffer[size-1];
+			sizes[level]=1;
+		}
+		for(int i=0; i<numPromote; i++){
+			insert(level+1,promote[i]);
+		}
+	}
+	
+	/**
+	 * @param ranks 0-based ranks (see MathUtils.getQuantileIndex)
+	 * @return Approximate value at each rank, NaN if empty
+	 */
+	public double[] getQuantiles(int ranks[]){
+		double quantiles[]=new double[ranks.length];
+		if(count==0){
+			Arrays.fill(quantiles, Double.NaN);
+			return(quantiles);
+		}
+		//sort a copy of each level, then walk all levels in value order
+		double sorted[][]=new double[numLevels][];
+		for(int l=0; l<numLevels; l++){
+			sorted[l]=Arrays.copyOf(levels[l], sizes[l]);
+			Arrays.sort(sorted[l]);
+		}
+		int pos[]=new int[numLevels];
+		for(int q=0; q<ranks.length; q++){
+			Arrays.fill(pos, 0);
+			long cumWeight=0;
+			double value=Double.NaN;
+			boolean found=false;
+			while(found==false){
+				int minL=-1;
+				for(int l=0; l<numLevels; l++){
+					if(pos[l]<sizes[l] && (minL==-1 || sorted[l][pos[l]]<sorted[minL][pos[minL]])){minL=l;}
+				}
+				if(minL==-1){found=true;} //end of values
+				else{
+					value=sorted[minL][pos[minL]];
+					cumWeight+=(1L<<minL); //weight
+					pos[minL]++;
+					if(cumWeight>ranks[q]){found=true;}
+				}
+			}
+			quantiles[q]=value;
+		}
+		return(quantiles);
+	}
+}
@@ -18,6 +18,7 @@
 
 package base;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
@@ -377,5 +378,35 @@ public class RunReport{
 			}
 		}
 	}
+	
+	/**
+	 * Writes the header row for writeEVs
+	 * @param prefix Leading column names (e.g. "Iteration,"), may be empty
+	 */
+	public void writeEVHeaders(BufferedWriter out, String prefix) throws IOException{
+		out.write(prefix+"Group,Strategy");
+		for(int d=0; d<dimInfo.dimNames.length; d++){out.write(","+dimInfo.dimNames[d]);}
+		out.newLine();
+	}
+	
+	/**
+	 * Writes expected values for each strategy, overall and by subgroup
+	 * @param prefix Leading column values (e.g. iteration), may be empty
+	 */
+	public void writeEVs(BufferedWriter out, String prefix) throws IOException{
+		int numEVs=outcomeEVs[0].length;
+		for(int g=-1; g<numSubgroups; g++){
+			String group="Overall";
+			if(g>=0){group=subgroupNames[g];}
+			for(int s=0; s<numEVs; s++){
+				out.write(prefix+group+","+myModel.strategyNames[s]);
+				for(int d=0; d<numDim; d++){
+					if(g==-1){out.write(","+outcomeEVs[d][s]);}
+					else{out.write(","+outcomeEVsGroup[g][d][s]);}
+				}
+				out.newLine();
+			}
+		}
+	}
 
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package gui;
+
+import javax.swing.ProgressMonitor;
+
+import analysis.ProgressListener;
+
+/**
+ * Shows engine progress and estimated time left in a ProgressMonitor
+ */
+public class ProgressMonitorListener implements ProgressListener{
+	ProgressMonitor progress;
+	long startTime;
+	
+	public ProgressMonitorListener(ProgressMonitor progress){
+		this.progress=progress;
+		startTime=System.currentTimeMillis();
+	}
+	
+	@Override
+	public void setProgress(int numComplete, int total){
+		double prog=(numComplete/(total*1.0))*100;
+		long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
+		remTime=(long) (remTime*(100-prog));
+		remTime=remTime/1000;
+		String seconds = Integer.toString((int)(remTime % 60));
+		String minutes = Integer.toString((int)(remTime/60));
+		if(seconds.length()<2){seconds="0"+seconds;}
+		if(minutes.length()<2){minutes="0"+minutes;}
+		progress.setMaximum(total);
+		progress.setProgress(numComplete);
+		progress.setNote("Time left: "+minutes+":"+seconds);
+	}
+	
+	@Override
+	public void setNote(String note){
+		progress.setNote(note);
+	}
+	
+	@Override
+	public boolean isCancelled(){
+		return(progress.isCanceled());
+	}
+}
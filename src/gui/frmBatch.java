@@ -31,7 +31,6 @@ import java.awt.geom.Ellipse2D;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
-import java.util.ArrayList;
 import java.util.Arrays;
 
 import javax.swing.DefaultComboBoxModel;
@@ -56,12 +55,14 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
+import analysis.BatchEngine;
+import analysis.BatchResults;
+import analysis.Outcomes;
 import base.AmuaModel;
 import base.MicroStats;
 import base.RunReport;
 import base.RunReportSummary;
 import filters.CSVFilter;
-import main.CEAHelper;
 import main.Console;
 import main.ConsoleTable;
 import main.DimInfo;
@@ -391,291 +392,160 @@ public class frmBatch {
 							try{
 								tabbedPane.setEnabledAt(1, false);
 
-								//Check model first
-								ArrayList<String> errorsBase=myModel.parseModel();
-
-								if(errorsBase.size()>0){
-									JOptionPane.showMessageDialog(frmBatch, "Errors in base case model!");
-								}
-								else{
-									boolean cancelled=false;
-
-									numIterations=Integer.parseInt(textIterations.getText().replaceAll(",", ""));
-									progress.setMaximum(numIterations);
+								//Run batch
+								BatchEngine engine=new BatchEngine(myModel);
+								engine.numIterations=Integer.parseInt(textIterations.getText().replaceAll(",", ""));
+								BatchResults results=engine.run(new ProgressMonitorListener(progress));
 
+								if(results.cancelled==false){
+									numIterations=results.numIterations;
+									reports=results.reports;
 									int numOutcomes=comboDimensions.getItemCount();
 									int numDim=myModel.dimInfo.dimNames.length;
 									int analysisType=myModel.dimInfo.analysisType;
-									if(analysisType==1){CEAnotes=new String[numSubgroups+1][numStrat][numIterations];} //CEA
-									else{CEAnotes=null;}
-
-									dataResultsIter=new double[numSubgroups+1][numOutcomes][numStrat][2][numIterations];
-									dataResultsVal=new double[numSubgroups+1][numOutcomes][numStrat][2][numIterations];
-									dataResultsCumDens=new double[numSubgroups+1][numOutcomes][numStrat][2][numIterations];
-
-									dataScatterAbs=new double[numSubgroups+1][numStrat][2][numIterations];
-									dataScatterRel=new double[numSubgroups+1][numStrat][2][numIterations];
-
-									reports=new RunReport[numIterations];
-								
-									myModel.evaluateParameters(); //get parameters
-									
-									boolean origShowTrace = true;
-									if(myModel.type==1){
-										origShowTrace=myModel.markov.showTrace;
-										myModel.markov.showTrace=false; //don't show individual trace
-									}
+									getResults(results);
 									
-									long startTime=System.currentTimeMillis();
-
-									for(int n=0; n<numIterations; n++){
-										//Update progress
-										double prog=((n+1)/(numIterations*1.0))*100;
-										long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-										remTime=(long) (remTime*(100-prog));
-										remTime=remTime/1000;
-										String seconds = Integer.toString((int)(remTime % 60));
-										String minutes = Integer.toString((int)(remTime/60));
-										if(seconds.length()<2){seconds="0"+seconds;}
-										if(minutes.length()<2){minutes="0"+minutes;}
-										progress.setProgress(n+1);
-										progress.setNote("Time left: "+minutes+":"+seconds);
-
-										//Run model
-										reports[n]=myModel.runModel(null, false);
-										
-
-										//Get EVs
-										for(int d=0; d<numDim; d++){
-											for(int s=0; s<numStrat; s++){
-												//overall
-												dataResultsIter[0][d][s][0][n]=n; dataResultsVal[0][d][s][0][n]=n;
-												double curOutcome=myModel.getStrategyEV(s, d);
-												dataResultsIter[0][d][s][1][n]=curOutcome; dataResultsVal[0][d][s][1][n]=curOutcome;
-												//subgroups
-												for(int g=0; g<numSubgroups; g++){
-													dataResultsIter[g+1][d][s][0][n]=n; dataResultsVal[g+1][d][s][0][n]=n;
-													curOutcome=myModel.getSubgroupEV(g,s,d);
-													dataResultsIter[g+1][d][s][1][n]=curOutcome; dataResultsVal[g+1][d][s][1][n]=curOutcome;
-												}
-											}
-										}
-										if(analysisType>0){ //CEA or BCA
-											if(analysisType==1){ //CEA
-												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateICERs(myModel,g-1,true);
-													//get baseline row
-													int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
-													int baseRow=-1,curRow=0;
-													while(baseRow==-1 && curRow<table.length){
-														if((int)table[curRow][0]==baseIndex){
-															baseRow=curRow;
-														}
-														curRow++;
-													}
-
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														if(origStrat!=-1){
-															dataResultsIter[g][numDim][origStrat][0][n]=n; dataResultsVal[g][numDim][origStrat][0][n]=n;
-															double curOutcome=(double) table[s][4];
-															dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
-															CEAnotes[g][origStrat][n]=(String) table[s][5];
-															double cost=(double) table[s][2];
-															double benefit=(double) table[s][3];
-															dataScatterAbs[g][origStrat][0][n]=benefit;
-															dataScatterAbs[g][origStrat][1][n]=cost;
-															double baseCost=(double) table[baseRow][2];
-															double baseBenefit=(double) table[baseRow][3];
-															dataScatterRel[g][origStrat][0][n]=benefit-baseBenefit;
-															dataScatterRel[g][origStrat][1][n]=cost-baseCost;
-														}
-													}
-												}
-											}
-											else if(analysisType==2){ //BCA
-												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateNMB(myModel,g-1,true);
-													//get baseline row
-													int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
-													int baseRow=-1,curRow=0;
-													while(baseRow==-1 && curRow<table.length){
-														if((int)table[curRow][0]==baseIndex){
-															baseRow=curRow;
-														}
-														curRow++;
-													}
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														dataResultsIter[g][numDim][origStrat][0][n]=n;	dataResultsVal[g][numDim][origStrat][0][n]=n;
-														double curOutcome=(double) table[s][4];
-														dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
-														double cost=(double) table[s][2];
-														double benefit=(double) table[s][3];
-														dataScatterAbs[g][origStrat][0][n]=benefit;
-														dataScatterAbs[g][origStrat][1][n]=cost;
-														double baseCost=(double) table[baseRow][2];
-														double baseBenefit=(double) table[baseRow][3];
-														dataScatterRel[g][origStrat][0][n]=benefit-baseBenefit;
-														dataScatterRel[g][origStrat][1][n]=cost-baseCost;
-													}
+									double meanResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
+									double lbResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
+									double ubResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
+									int bounds[]=MathUtils.getBoundIndices(numIterations);
+									int indexLB=bounds[0], indexUB=bounds[1];
+
+									//Sort ordered arrays
+									for(int d=0; d<numOutcomes; d++){
+										for(int s=0; s<numStrat; s++){
+											for(int g=0; g<numSubgroups+1; g++){
+												Arrays.sort(dataResultsVal[g][d][s][1]);
+												for(int n=0; n<numIterations; n++){
+													dataResultsVal[g][d][s][0][n]=n/(numIterations*1.0);
+													dataResultsCumDens[g][d][s][0][n]=dataResultsVal[g][d][s][1][n];
+													dataResultsCumDens[g][d][s][1][n]=dataResultsVal[g][d][s][0][n];
+													meanResults[g][d][s]+=dataResultsVal[g][d][s][1][n];
 												}
+												meanResults[g][d][s]/=(numIterations*1.0);
+												lbResults[g][d][s]=dataResultsVal[g][d][s][1][indexLB];
+												ubResults[g][d][s]=dataResultsVal[g][d][s][1][indexUB];
 											}
 										}
-
-										if(progress.isCanceled()){  //End loop
-											n=numIterations;
-											cancelled=true;
-										}
 									}
-									myModel.unlockParams();
-									if(myModel.type==1){
-										myModel.markov.showTrace=origShowTrace; //reset
-									}
-																		
-									if(cancelled==false){
-										double meanResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
-										double lbResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
-										double ubResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
-										int bounds[]=MathUtils.getBoundIndices(numIterations);
-										int indexLB=bounds[0], indexUB=bounds[1];
-
-										//Sort ordered arrays
-										for(int d=0; d<numOutcomes; d++){
-											for(int s=0; s<numStrat; s++){
-												for(int g=0; g<numSubgroups+1; g++){
-													Arrays.sort(dataResultsVal[g][d][s][1]);
-													for(int n=0; n<numIterations; n++){
-														dataResultsVal[g][d][s][0][n]=n/(numIterations*1.0);
-														dataResultsCumDens[g][d][s][0][n]=dataResultsVal[g][d][s][1][n];
-														dataResultsCumDens[g][d][s][1][n]=dataResultsVal[g][d][s][0][n];
-														meanResults[g][d][s]+=dataResultsVal[g][d][s][1][n];
-													}
-													meanResults[g][d][s]/=(numIterations*1.0);
-													lbResults[g][d][s]=dataResultsVal[g][d][s][1][indexLB];
-													ubResults[g][d][s]=dataResultsVal[g][d][s][1][indexUB];
-												}
-											}
-										}
 
-										//Update results chart
-										updateResultsChart();
+									//Update results chart
+									updateResultsChart();
 
-										//Update scatter chart
-										if(analysisType>0){
-											tabbedPane.setEnabledAt(1, true);
-											XYPlot plotScatter = chartScatter.getXYPlot();
-											XYLineAndShapeRenderer rendererScatter = new XYLineAndShapeRenderer(false,true);
-											Shape dot=new Ellipse2D.Double(0,0,3,3);
-											DefaultDrawingSupplier supplier = new DefaultDrawingSupplier();
-											for(int s=0; s<numStrat; s++){
-												rendererScatter.setSeriesPaint(s, supplier.getNextPaint());
-												rendererScatter.setSeriesShape(s, dot);
-											}
-											plotScatter.setRenderer(rendererScatter);
-											updateScatter();
+									//Update scatter chart
+									if(analysisType>0){
+										tabbedPane.setEnabledAt(1, true);
+										XYPlot plotScatter = chartScatter.getXYPlot();
+										XYLineAndShapeRenderer rendererScatter = new XYLineAndShapeRenderer(false,true);
+										Shape dot=new Ellipse2D.Double(0,0,3,3);
+										DefaultDrawingSupplier supplier = new DefaultDrawingSupplier();
+										for(int s=0; s<numStrat; s++){
+											rendererScatter.setSeriesPaint(s, supplier.getNextPaint());
+											rendererScatter.setSeriesShape(s, dot);
+										}
+										plotScatter.setRenderer(rendererScatter);
+										updateScatter();
 
 
-										}
-										btnExport.setEnabled(true);
-
-										//Get trace summary
-										if(myModel.type==1 && myModel.markov.showTrace){
-											if(myModel.markov.compileTraces==false) {
-												//get mean and bounds of results
-												int numChains=reports[0].markovTraces.size();
-												for(int c=0; c<numChains; c++){
-													MarkovTrace curTraces[][]=new MarkovTrace[numSubgroups+1][numIterations];
-													for(int i=0; i<numIterations; i++){
-														curTraces[0][i]=reports[i].markovTraces.get(c);
-														for(int g=0; g<numSubgroups; g++){
-															curTraces[g+1][i]=reports[i].markovTracesGroup[g].get(c);
-														}
-													}
-													MarkovTraceSummary traceSummaries[]=new MarkovTraceSummary[numSubgroups+1];
-													traceSummaries[0]=new MarkovTraceSummary(curTraces[0]);
+									}
+									btnExport.setEnabled(true);
+
+									//Get trace summary
+									if(myModel.type==1 && myModel.markov.showTrace){
+										if(myModel.markov.compileTraces==false) {
+											//get mean and bounds of results
+											int numChains=reports[0].markovTraces.size();
+											for(int c=0; c<numChains; c++){
+												MarkovTrace curTraces[][]=new MarkovTrace[numSubgroups+1][numIterations];
+												for(int i=0; i<numIterations; i++){
+													curTraces[0][i]=reports[i].markovTraces.get(c);
 													for(int g=0; g<numSubgroups; g++){
-														traceSummaries[g+1]=new MarkovTraceSummary(curTraces[g+1]);
+														curTraces[g+1][i]=reports[i].markovTracesGroup[g].get(c);
 													}
-													frmTraceSummary showSummary=new frmTraceSummary(traceSummaries,myModel.errorLog,subgroupNames);
-													showSummary.frmTraceSummary.setVisible(true);
 												}
-											}
-											else {
-												RunReportSummary reportSummary=new RunReportSummary(reports);
-												frmTraceSummaryMulti window=new frmTraceSummaryMulti(reportSummary,myModel.errorLog);
-												window.frmTraceSummaryMulti.setVisible(true);
+												MarkovTraceSummary traceSummaries[]=new MarkovTraceSummary[numSubgroups+1];
+												traceSummaries[0]=new MarkovTraceSummary(curTraces[0]);
+												for(int g=0; g<numSubgroups; g++){
+													traceSummaries[g+1]=new MarkovTraceSummary(curTraces[g+1]);
+												}
+												frmTraceSummary showSummary=new frmTraceSummary(traceSummaries,myModel.errorLog,subgroupNames);
+												showSummary.frmTraceSummary.setVisible(true);
 											}
 										}
+										else {
+											RunReportSummary reportSummary=new RunReportSummary(reports);
+											frmTraceSummaryMulti window=new frmTraceSummaryMulti(reportSummary,myModel.errorLog);
+											window.frmTraceSummaryMulti.setVisible(true);
+										}
+									}
 
-										//Print results summary to console
-										Console console=myModel.mainForm.console;
-										myModel.printSimInfo(console);
-										console.print("Batch Iterations:\t"+numIterations+"\n\n");
-										boolean colTypes[]=new boolean[]{false,false,true,true,true}; //is column number (true), or text (false)
-										ConsoleTable curTable=new ConsoleTable(console,colTypes);
-										String headers[]=new String[]{"Strategy","Outcome","Mean","95% LB","95% UB"};
+									//Print results summary to console
+									Console console=myModel.mainForm.console;
+									myModel.printSimInfo(console);
+									console.print("Batch Iterations:\t"+numIterations+"\n\n");
+									boolean colTypes[]=new boolean[]{false,false,true,true,true}; //is column number (true), or text (false)
+									ConsoleTable curTable=new ConsoleTable(console,colTypes);
+									String headers[]=new String[]{"Strategy","Outcome","Mean","95% LB","95% UB"};
+									curTable.addRow(headers);
+									//strategy results
+									for(int s=0; s<numStrat; s++){
+										String stratName=myModel.strategyNames[s];
+										for(int d=0; d<numDim; d++){
+											String dimName=myModel.dimInfo.dimNames[d];
+											if(myModel.type==1 && myModel.markov.discountRewards){dimName+=" (Dis)";}
+											double mean=MathUtils.round(meanResults[0][d][s],myModel.dimInfo.decimals[d]);
+											double lb=MathUtils.round(lbResults[0][d][s],myModel.dimInfo.decimals[d]);
+											double ub=MathUtils.round(ubResults[0][d][s],myModel.dimInfo.decimals[d]);
+											String curRow[]=new String[]{stratName,dimName,mean+"",lb+"",ub+""};
+											curTable.addRow(curRow);
+										}
+									}
+									curTable.print();
+									
+									//subgroups
+									for(int g=0; g<numSubgroups; g++){
+										console.print("\nSubgroup Results: "+reports[0].subgroupNames[g]+"\n");
+										curTable=new ConsoleTable(console,colTypes);
 										curTable.addRow(headers);
-										//strategy results
 										for(int s=0; s<numStrat; s++){
 											String stratName=myModel.strategyNames[s];
 											for(int d=0; d<numDim; d++){
 												String dimName=myModel.dimInfo.dimNames[d];
 												if(myModel.type==1 && myModel.markov.discountRewards){dimName+=" (Dis)";}
-												double mean=MathUtils.round(meanResults[0][d][s],myModel.dimInfo.decimals[d]);
-												double lb=MathUtils.round(lbResults[0][d][s],myModel.dimInfo.decimals[d]);
-												double ub=MathUtils.round(ubResults[0][d][s],myModel.dimInfo.decimals[d]);
+												double mean=MathUtils.round(meanResults[g+1][d][s],myModel.dimInfo.decimals[d]);
+												double lb=MathUtils.round(lbResults[g+1][d][s],myModel.dimInfo.decimals[d]);
+												double ub=MathUtils.round(ubResults[g+1][d][s],myModel.dimInfo.decimals[d]);
 												String curRow[]=new String[]{stratName,dimName,mean+"",lb+"",ub+""};
 												curTable.addRow(curRow);
 											}
 										}
 										curTable.print();
-										
+									}
+									
+									if(myModel.simType==1 && myModel.displayIndResults==true){
+										console.print("\nIndividual-level Results:\n");
+										RunReportSummary summary=new RunReportSummary(reports);
+										for(int s=0; s<numStrat; s++){
+											console.print("Strategy: "+myModel.strategyNames[s]+"\n");
+											summary.microStatsSummary[s].printSummary(console);
+										}
 										//subgroups
 										for(int g=0; g<numSubgroups; g++){
-											console.print("\nSubgroup Results: "+reports[0].subgroupNames[g]+"\n");
-											curTable=new ConsoleTable(console,colTypes);
-											curTable.addRow(headers);
-											for(int s=0; s<numStrat; s++){
-												String stratName=myModel.strategyNames[s];
-												for(int d=0; d<numDim; d++){
-													String dimName=myModel.dimInfo.dimNames[d];
-													if(myModel.type==1 && myModel.markov.discountRewards){dimName+=" (Dis)";}
-													double mean=MathUtils.round(meanResults[g+1][d][s],myModel.dimInfo.decimals[d]);
-													double lb=MathUtils.round(lbResults[g+1][d][s],myModel.dimInfo.decimals[d]);
-													double ub=MathUtils.round(ubResults[g+1][d][s],myModel.dimInfo.decimals[d]);
-													String curRow[]=new String[]{stratName,dimName,mean+"",lb+"",ub+""};
-													curTable.addRow(curRow);
-												}
-											}
-											curTable.print();
-										}
-										
-										if(myModel.simType==1 && myModel.displayIndResults==true){
-											console.print("\nIndividual-level Results:\n");
-											RunReportSummary summary=new RunReportSummary(reports);
+											console.print("\nSubgroup Results: "+summary.subgroupNames[g]+"\n");
 											for(int s=0; s<numStrat; s++){
 												console.print("Strategy: "+myModel.strategyNames[s]+"\n");
-												summary.microStatsSummary[s].printSummary(console);
-											}
-											//subgroups
-											for(int g=0; g<numSubgroups; g++){
-												console.print("\nSubgroup Results: "+summary.subgroupNames[g]+"\n");
-												for(int s=0; s<numStrat; s++){
-													console.print("Strategy: "+myModel.strategyNames[s]+"\n");
-													summary.microStatsSummaryGroup[g][s].printSummary(console);
-												}
+												summary.microStatsSummaryGroup[g][s].printSummary(console);
 											}
 										}
-										console.print("\n");
-										console.newLine();
+									}
+									console.print("\n");
+									console.newLine();
 
 
-									}
-									progress.close();
 								}
-
+								progress.close();
 							} catch (Exception e) {
+								progress.close();
 								e.printStackTrace();
 								JOptionPane.showMessageDialog(frmBatch, e.getMessage());
 								myModel.errorLog.recordError(e);
@@ -733,6 +603,50 @@ public class frmBatch {
 		}
 	}
 
+	/**
+	 * Copies batch results into the chart arrays
+	 */
+	private void getResults(BatchResults results){
+		int numOutcomes=comboDimensions.getItemCount();
+		int analysisType=myModel.dimInfo.analysisType;
+		if(analysisType==1){CEAnotes=new String[numSubgroups+1][numStrat][numIterations];} //CEA
+		else{CEAnotes=null;}
+
+		dataResultsIter=new double[numSubgroups+1][numOutcomes][numStrat][2][numIterations];
+		dataResultsVal=new double[numSubgroups+1][numOutcomes][numStrat][2][numIterations];
+		dataResultsCumDens=new double[numSubgroups+1][numOutcomes][numStrat][2][numIterations];
+
+		dataScatterAbs=new double[numSubgroups+1][numStrat][2][numIterations];
+		dataScatterRel=new double[numSubgroups+1][numStrat][2][numIterations];
+		
+		int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
+		for(int n=0; n<numIterations; n++){
+			Outcomes curOutcomes=results.outcomes[n];
+			for(int g=0; g<numSubgroups+1; g++){
+				for(int d=0; d<numOutcomes; d++){
+					for(int s=0; s<numStrat; s++){
+						double curOutcome=curOutcomes.values[g][d][s];
+						dataResultsIter[g][d][s][0][n]=n; dataResultsVal[g][d][s][0][n]=n;
+						dataResultsIter[g][d][s][1][n]=curOutcome; dataResultsVal[g][d][s][1][n]=curOutcome;
+					}
+				}
+				if(analysisType>0){ //CEA or BCA
+					double baseCost=curOutcomes.getCost(g, baseIndex);
+					double baseBenefit=curOutcomes.getEffect(g, baseIndex);
+					for(int s=0; s<numStrat; s++){
+						if(analysisType==1){CEAnotes[g][s][n]=curOutcomes.notes[g][s];}
+						double cost=curOutcomes.getCost(g, s);
+						double benefit=curOutcomes.getEffect(g, s);
+						dataScatterAbs[g][s][0][n]=benefit;
+						dataScatterAbs[g][s][1][n]=cost;
+						dataScatterRel[g][s][0][n]=benefit-baseBenefit;
+						dataScatterRel[g][s][1][n]=cost-baseCost;
+					}
+				}
+			}
+		}
+	}
+
 	public void updateResultsChart(){
 		DimInfo info=myModel.dimInfo;
 		int dim=comboDimensions.getSelectedIndex();
@@ -58,19 +58,16 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
+import analysis.CalibrationEngine;
+import analysis.CalibrationResults;
 import base.AmuaModel;
-import base.RunReport;
-import main.Constraint;
 import main.DimInfo;
-import main.MersenneTwisterFast;
 import main.Parameter;
 import main.ParameterSet;
 import main.ScaledIcon;
 import main.StyledTextPane;
 import markov.MarkovNode;
-import math.Interpreter;
 import math.KernelSmooth;
-import math.Numeric;
 
 /**
  *
@@ -80,8 +77,6 @@ public class frmCalibrate {
 	public JFrame frmCalibrate;
 	AmuaModel myModel;
 	int numParams;
-	int numConst;
-	Numeric origValues[];
 	StyledTextPane textPaneExpression;
 	ArrayList<MarkovNode> chainRoots;
 	
@@ -90,6 +85,7 @@ public class frmCalibrate {
 		
 	JComboBox comboPlot;
 	private JTextField textNumSets;
+	private JTextField textThreads;
 	String CEAnotes[][];
 	DefaultTableModel modelParamSets;
 	private JTable tableParamSets;
@@ -125,12 +121,9 @@ public class frmCalibrate {
 			frmCalibrate.getContentPane().setLayout(gridBagLayout);
 			
 			numParams=myModel.parameters.size();
-			numConst=myModel.constraints.size();
 			paramNames=new String[numParams];
-			origValues=new Numeric[numParams];
 			for(int i=0; i<numParams; i++){
 				paramNames[i]=myModel.parameters.get(i).name;
-				origValues[i]=myModel.parameters.get(i).value.copy();
 			}
 			
 			JToolBar toolBar = new JToolBar();
@@ -472,6 +465,17 @@ public class frmCalibrate {
 			panel_2.add(textNumSets);
 			textNumSets.setColumns(10);
 			
+			JLabel lblThreads = new JLabel("Threads:");
+			lblThreads.setBounds(198, 84, 52, 16);
+			panel_2.add(lblThreads);
+			
+			textThreads = new JTextField();
+			textThreads.setHorizontalAlignment(SwingConstants.CENTER);
+			textThreads.setText("1");
+			textThreads.setBounds(250, 78, 35, 28);
+			panel_2.add(textThreads);
+			textThreads.setColumns(10);
+			
 			JLabel lblMethod = new JLabel("Method:");
 			lblMethod.setBounds(10, 43, 55, 16);
 			panel_2.add(lblMethod);
@@ -479,19 +483,10 @@ public class frmCalibrate {
 			final JComboBox comboMethod = new JComboBox();
 			comboMethod.addActionListener(new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
-					int method=comboMethod.getSelectedIndex();
-					if(method==0){ //random
-						modelCalibSettings.setRowCount(0);
-						tableCalibSettings.setEnabled(false);
-					}
-					else if(method==1){ //abc
-						modelCalibSettings.setRowCount(1);
-						modelCalibSettings.setValueAt("Score Threshold", 0, 0);
-						tableCalibSettings.setEnabled(true);
-					}
+					setCalibSettings(comboMethod.getSelectedIndex());
 				}
 			});
-			comboMethod.setModel(new DefaultComboBoxModel(new String[] {"Random", "Approximate Bayesian Computation"}));
+			comboMethod.setModel(new DefaultComboBoxModel(new String[] {"Random", "Approximate Bayesian Computation", "ABC - Sequential Monte Carlo", "Nelder-Mead", "CMA-ES"}));
 			comboMethod.setBounds(56, 38, 229, 26);
 			panel_2.add(comboMethod);
 			
@@ -527,6 +522,7 @@ public class frmCalibrate {
 			tableCalibSettings.getColumnModel().getColumn(0).setPreferredWidth(121);
 			tableCalibSettings.getColumnModel().getColumn(1).setPreferredWidth(121);
 			scrollPane_2.setViewportView(tableCalibSettings);
+			setCalibSettings(0);
 			
 			JLabel lblChain = new JLabel("Chain:");
 			lblChain.setBounds(10, 10, 55, 16);
@@ -556,192 +552,79 @@ public class frmCalibrate {
 					Thread SimThread = new Thread(){ //Non-UI
 						public void run(){
 							try{
-								//Check model first
 								MarkovNode curChain=chainRoots.get(comboChain.getSelectedIndex());
-								myModel.panelMarkov.curNode=curChain; //select current chain
-								
-								boolean origShowTrace=true;
-								if(myModel.type==1){
-									origShowTrace=myModel.markov.showTrace;
-									myModel.markov.showTrace=false;
+								CalibrationEngine engine=new CalibrationEngine(myModel,curChain,textPaneExpression.getText());
+								engine.method=comboMethod.getSelectedIndex();
+								engine.numSets=Integer.parseInt(textNumSets.getText());
+								engine.numThreads=Integer.parseInt(textThreads.getText());
+								if(engine.method==1){ //ABC
+									engine.threshold=Double.parseDouble(getCalibSetting("Score Threshold"));
 								}
-								
-								ArrayList<String> errorsBase=myModel.parseModel();
-								if(errorsBase.size()>0){
-									JOptionPane.showMessageDialog(frmCalibrate, "Errors in base case model!");
+								else if(engine.method==2){ //ABC-SMC
+									engine.threshold=Double.parseDouble(getCalibSetting("Final Threshold"));
+									engine.maxGenerations=Integer.parseInt(getCalibSetting("Max Generations"));
 								}
-								else{
-									//initial run to build trace
-									RunReport curReport=new RunReport(myModel);
-									myModel.markov.runModel(false,curReport,false);
+								else if(engine.method>=3){ //Nelder-Mead, CMA-ES
+									engine.maxRuns=Integer.parseInt(getCalibSetting("Max Runs"));
 								}
+								engine.checkpointFile=getCalibSetting("Checkpoint File");
 								
-								//try evaluate score expression
-								String strScore=textPaneExpression.getText();
-								boolean go=true;
-								try{
-									Interpreter.evaluate(strScore, myModel, false);
+								modelParams.setRowCount(0);
+								for(int v=0; v<numParams; v++){
+									modelParams.addRow(new Object[]{null});
+									modelParams.setValueAt(myModel.parameters.get(v).name, v, 0);
+									modelParams.setValueAt(myModel.parameters.get(v).expression, v, 1);
 								}
-								catch(Exception e){
-									go=false;
-									JOptionPane.showMessageDialog(frmCalibrate,"Error in score expression: "+e.toString());
-									if(myModel.type==1){
-										myModel.markov.showTrace=origShowTrace;
-									}
-								}
-								if(go){
-									
-									int method=comboMethod.getSelectedIndex();
-									numSets=Integer.parseInt(textNumSets.getText());
-									progress.setMaximum(numSets+1);
-									params=new ParameterSet[numSets];
-									
-									modelParams.setRowCount(0);
-									
-									myModel.sampleParam=true;
-									myModel.generatorParam=new MersenneTwisterFast();
-									if(myModel.curGenerator==null){myModel.curGenerator=new MersenneTwisterFast[1];}
-									myModel.curGenerator[0]=myModel.generatorParam;
-									
-									
-									//Get orig values for all parameters
-									Numeric origValues[]=new Numeric[numParams];
-									for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters
-										origValues[v]=myModel.parameters.get(v).value.copy();
-										modelParams.addRow(new Object[]{null});
-										modelParams.setValueAt(myModel.parameters.get(v).name, v, 0);
-										modelParams.setValueAt(myModel.parameters.get(v).expression, v, 1);
-									}
-									//Initialize constraint expressions
-									for(int c=0; c<numConst; c++){
-										myModel.constraints.get(c).parseConstraints();
-									}
-									
-									long startTime=System.currentTimeMillis();
-									boolean wasCancelled=false;
-									
-									if(method==0){ //random
-										for(int i=0; i<numSets; i++){
-											progress.setProgress(i+1);
-											sampleAll();
-											RunReport curReport=new RunReport(myModel);
-											myModel.markov.runModel(false,curReport,false);
-											double curScore=Interpreter.evaluate(strScore, myModel, false).getDouble();
-											params[i]=new ParameterSet(myModel);
-											params[i].id=(i+1)+"";
-											params[i].score=curScore;
-											if(progress.isCanceled()){ //listen for cancel
-												numSets=i; //end for loop
-												wasCancelled=true;
-											}
-											//Update progress bar
-											String remTime=estimateTime(startTime,i,numSets);
-											progress.setNote("Time left: "+remTime);
+								
+								CalibrationResults results=engine.run(new ProgressMonitorListener(progress));
+								numSets=results.numSets;
+								params=results.params;
+								
+								//Get parameter values
+								paramVals=new double[numParams][numSets];
+								double scores[]=new double[numSets];
+								modelParamSets.setRowCount(0);
+								for(int i=0; i<numSets; i++){
+									modelParamSets.addRow(new Object[]{null});
+									modelParamSets.setValueAt(Double.parseDouble(params[i].id), i, 0);
+									modelParamSets.setValueAt(params[i].score, i, 1);
+									scores[i]=params[i].score;
+									for(int j=0; j<numParams; j++){
+										double val=Double.NaN;
+										try{
+											val=params[i].values[j].getDouble();
+										} catch(Exception e){
+											val=Double.NaN;
 										}
-									}
-									else if(method==1){ //ABC
-										double thresh=Double.parseDouble((String) tableCalibSettings.getValueAt(0,1));
-										progress.setMillisToPopup(0);
-										progress.setMillisToDecideToPopup(0);
-										progress.setProgress(0);
-										progress.setProgress(1);
-										progress.setNote("Sampling...");
+										modelParamSets.setValueAt(val,i,2+j);
 										
-										for(int i=0; i<numSets; i++){
-											progress.setProgress(i+1);
-											double curScore=thresh+1;
-											while(curScore>thresh){
-												sampleAll();
-												RunReport curReport=new RunReport(myModel);
-												myModel.markov.runModel(false,curReport,false);
-												curScore=Interpreter.evaluate(strScore, myModel, false).getDouble();
-												if(progress.isCanceled()){ //listen for cancel
-													curScore=thresh-1; //end while loop
-													numSets=i; //end for loop
-													wasCancelled=true;
-												}
-											}
-											if(wasCancelled==false){
-												params[i]=new ParameterSet(myModel);
-												params[i].id=(i+1)+"";
-												params[i].score=curScore;
-											}
-											
-											//Update progress bar
-											String remTime=estimateTime(startTime,i,numSets);
-											progress.setNote("Time left: "+remTime);
-											
-										}
-									}
-									
-									if(myModel.type==1){
-										myModel.markov.showTrace=origShowTrace;
-									}
-									
-									//Reset all parameters
-									myModel.sampleParam=false;
-									for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-										Parameter curParam=myModel.parameters.get(v);
-										curParam.locked=false;
-										curParam.value=origValues[v];
+										paramVals[j][i]=val;
 									}
-									myModel.validateModelObjects();
-									
-									//Get parameter values
-									paramVals=new double[numParams][numSets];
-									double scores[]=new double[numSets];
-									modelParamSets.setRowCount(0);
-									for(int i=0; i<numSets; i++){
-										modelParamSets.addRow(new Object[]{null});
-										modelParamSets.setValueAt(Double.parseDouble(params[i].id), i, 0);
-										modelParamSets.setValueAt(params[i].score, i, 1);
-										scores[i]=params[i].score;
-										for(int j=0; j<numParams; j++){
-											//modelParamSets.setValueAt(params[i].values[j].toString(),i,2+j);
-											//update parameter ranges
-											double val=Double.NaN;
-											try{
-												val=params[i].values[j].getDouble();
-											} catch(Exception e){
-												val=Double.NaN;
-											}
-											modelParamSets.setValueAt(val,i,2+j);
-											
-											paramVals[j][i]=val;
-										}
-									}
-									
-									progress.close();
-									
-									//plot scores
-									while(chartDataScores.getSeriesCount()>0){ //clear chart
-										chartDataScores.removeSeries(chartDataScores.getSeriesKey(0));
-									}
-									double scoreData[][]=new double[2][numSets];
-									Arrays.sort(scores);
-									for(int i=0; i<numSets; i++){
-										scoreData[0][i]=i+1;
-										scoreData[1][i]=scores[i];
-									}
-									chartDataScores.addSeries("Scores", scoreData);
-									chartScores.removeLegend();
-									
-									XYPlot plotScores = chartScores.getXYPlot();
-									XYLineAndShapeRenderer rendererScores = new XYLineAndShapeRenderer(true,false);
-									rendererScores.setSeriesPaint(0,Color.RED);
-									plotScores.setRenderer(rendererScores);
-									
-									btnSave.setEnabled(true);
 								}
-							} catch (Exception e) {
-								//Reset all parameters
-								myModel.sampleParam=false;
-								for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-									Parameter curParam=myModel.parameters.get(v);
-									curParam.locked=false;
-									curParam.value=origValues[v];
+								
+								progress.close();
+								
+								//plot scores
+								while(chartDataScores.getSeriesCount()>0){ //clear chart
+									chartDataScores.removeSeries(chartDataScores.getSeriesKey(0));
+								}
+								double scoreData[][]=new double[2][numSets];
+								Arrays.sort(scores);
+								for(int i=0; i<numSets; i++){
+									scoreData[0][i]=i+1;
+									scoreData[1][i]=scores[i];
 								}
-								myModel.validateModelObjects();
+								chartDataScores.addSeries("Scores", scoreData);
+								chartScores.removeLegend();
+								
+								XYPlot plotScores = chartScores.getXYPlot();
+								XYLineAndShapeRenderer rendererScores = new XYLineAndShapeRenderer(true,false);
+								rendererScores.setSeriesPaint(0,Color.RED);
+								plotScores.setRenderer(rendererScores);
+								
+								btnSave.setEnabled(true);
+							} catch (Exception e) {
+								progress.close();
 								e.printStackTrace();
 								JOptionPane.showMessageDialog(frmCalibrate, e.getMessage());
 								myModel.errorLog.recordError(e);
@@ -758,52 +641,35 @@ public class frmCalibrate {
 		}
 	}
 	
-	private String estimateTime(long startTime,int i, int numSets){
-		double prog=((i+1)/(numSets*1.0))*100;
-    	long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-    	remTime=(long) (remTime*(100-prog));
-    	remTime=remTime/1000;
-    	String seconds = Integer.toString((int)(remTime % 60));
-    	String minutes = Integer.toString((int)(remTime/60));
-    	if(seconds.length()<2){seconds="0"+seconds;}
-    	if(minutes.length()<2){minutes="0"+minutes;}
-    	return(minutes+":"+seconds);
-    }
+	/**
+	 * Shows the settings for a calibration method
+	 */
+	private void setCalibSettings(int method){
+		modelCalibSettings.setRowCount(0);
+		if(method==1){ //ABC
+			modelCalibSettings.addRow(new Object[]{"Score Threshold",null});
+		}
+		else if(method==2){ //ABC-SMC
+			modelCalibSettings.addRow(new Object[]{"Final Threshold",null});
+			modelCalibSettings.addRow(new Object[]{"Max Generations","20"});
+		}
+		else if(method>=3){ //Nelder-Mead, CMA-ES
+			modelCalibSettings.addRow(new Object[]{"Max Runs","1000"});
+		}
+		modelCalibSettings.addRow(new Object[]{"Checkpoint File",null});
+	}
 	
-	private void sampleAll(){
-		try{
-		//Sample parameters
-		boolean validParams=false;
-		while(validParams==false){
-			for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-				Parameter curParam=myModel.parameters.get(v);
-				curParam.locked=false;
-				curParam.value=origValues[v];
-			}
-			
-			for(int v=0; v<numParams; v++){ //sample all parameters
-				Parameter curParam=myModel.parameters.get(v);
-				if(curParam.locked==false) {
-					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
-					curParam.locked=true;
-				}
-			}
-			//check constraints
-			validParams=true;
-			int c=0;
-			while(validParams==true && c<numConst){
-				Constraint curConst=myModel.constraints.get(c);
-				validParams=curConst.checkConstraints(myModel);
-				c++;
-			}
-			if(validParams){ //check model for valid params
-				if(myModel.parseModel().size()!=0){validParams=false;}
+	/**
+	 * @return Value of a calibration setting, null if blank
+	 */
+	private String getCalibSetting(String name){
+		for(int r=0; r<modelCalibSettings.getRowCount(); r++){
+			if(name.equals(modelCalibSettings.getValueAt(r, 0))){
+				String value=(String)modelCalibSettings.getValueAt(r, 1);
+				if(value==null || value.trim().isEmpty()){return(null);}
+				return(value.trim());
 			}
 		}
-		}catch(Exception e){
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(frmCalibrate, e.getMessage());
-			myModel.errorLog.recordError(e);
-		}
+		return(null);
 	}
 }
@@ -936,6 +936,7 @@ public class frmDefineTable {
 		if(table.interpolate!=null && table.interpolate.matches("Cubic Splines")){
 			table.constructSplines();
 		}
+		table.clearLookups();
 	}
 
 	private void getTable(){
@@ -32,10 +32,7 @@ import java.awt.geom.Ellipse2D;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.DefaultListModel;
@@ -73,19 +70,18 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
+import analysis.EVPIEngine;
+import analysis.EVPIResults;
+import analysis.Outcomes;
+import analysis.PSAResults;
 import base.AmuaModel;
 import filters.CSVFilter;
-import main.CEAHelper;
-import main.Constraint;
 import main.DimInfo;
 import main.HtmlSelection;
-import main.MersenneTwisterFast;
 import main.Parameter;
 import main.ScaledIcon;
-import math.Interpreter;
 import math.KernelSmooth;
 import math.MathUtils;
-import math.Numeric;
 import javax.swing.JTextPane;
 import java.awt.Font;
 import javax.swing.JToolBar;
@@ -133,8 +129,6 @@ public class frmEVPI {
 	 */
 	double results[][];
 	
-	ArrayList<SortedResult> sortedResults;
-	
 	double evppiBins[][][];
 	boolean exportReady=false;
 	
@@ -655,542 +649,223 @@ public class frmEVPI {
 							try{
 								frmEVPI.setCursor(new Cursor(Cursor.WAIT_CURSOR));
 						
-								//Check model first
-								ArrayList<String> errorsBase=myModel.parseModel();
-								
-								if(errorsBase.size()>0){
-									JOptionPane.showMessageDialog(frmEVPI, "Errors in base case model!");
-								}
-								else{
-									boolean cancelled=false;
-
-									myModel.sampleParam=true;
-									myModel.generatorParam=new MersenneTwisterFast();
-									if(myModel.curGenerator==null){
-										myModel.curGenerator=new MersenneTwisterFast[1];
-									}
-									myModel.curGenerator[0]=myModel.generatorParam;
-									if(chckbxSeed.isSelected()){
-										int seed=Integer.parseInt(textSeed.getText());
-										myModel.generatorParam.setSeed(seed);
-									}
-																		
-									numIterations=Integer.parseInt(textIterations.getText().replaceAll(",", ""));
-									progress.setMaximum(numIterations);
+								//Run EVPI
+								EVPIEngine engine=new EVPIEngine(myModel);
+								engine.numIterations=Integer.parseInt(textIterations.getText().replaceAll(",", ""));
+								engine.seeded=chckbxSeed.isSelected();
+								if(engine.seeded){engine.seed=Integer.parseInt(textSeed.getText());}
+								engine.numBins=Integer.parseInt(textNumBins.getText());
+								EVPIResults evpiResults=engine.run(new ProgressMonitorListener(progress));
 
+								if(evpiResults.psa.cancelled==false){
+									numIterations=evpiResults.psa.numIterations;
 									numStrat=myModel.getStrategies();
 									int numOutcomes=comboDimensions.getItemCount();
 									int numDim=myModel.dimInfo.dimNames.length;
+									getResults(evpiResults.psa);
 									
-									if(myModel.simType==1 && myModel.reportSubgroups){numSubgroups=myModel.subgroupNames.size();}
-									
-									int analysisType=myModel.dimInfo.analysisType;
-									if(analysisType==1){CEAnotes=new String[1+numSubgroups][numStrat][numIterations];} //CEA
-									else{CEAnotes=null;}
+									double meanResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
+									double lbResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
+									double ubResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
+									int bounds[]=MathUtils.getBoundIndices(numIterations);
+									int indexLB=bounds[0], indexUB=bounds[1];
 									
-									dataResultsIter=new double[1+numSubgroups][numOutcomes][numStrat][2][numIterations];
-									dataResultsVal=new double[1+numSubgroups][numOutcomes][numStrat][2][numIterations];
-									dataResultsCumDens=new double[1+numSubgroups][numOutcomes][numStrat][2][numIterations];
+									//Sort ordered arrays
+									for(int d=0; d<numOutcomes; d++){
+										for(int s=0; s<numStrat; s++){
+											for(int g=0; g<numSubgroups+1; g++){
+												Arrays.sort(dataResultsVal[g][d][s][1]);
+												for(int n=0; n<numIterations; n++){
+													dataResultsVal[g][d][s][0][n]=n/(numIterations*1.0);
+													dataResultsCumDens[g][d][s][0][n]=dataResultsVal[g][d][s][1][n];
+													dataResultsCumDens[g][d][s][1][n]=dataResultsVal[g][d][s][0][n];
+													meanResults[g][d][s]+=dataResultsVal[g][d][s][1][n];
+												}
+												meanResults[g][d][s]/=(numIterations*1.0);
+												lbResults[g][d][s]=dataResultsVal[g][d][s][1][indexLB];
+												ubResults[g][d][s]=dataResultsVal[g][d][s][1][indexUB];
+											}
+										}
+									}
+									for(int v=0; v<numParams; v++){
+										Arrays.sort(dataParamsVal[v][1]);
+										for(int n=0; n<numIterations; n++){
+											dataParamsVal[v][0][n]=n/(numIterations*1.0);
+											dataParamsCumDens[v][0][n]=dataParamsVal[v][1][n];
+											dataParamsCumDens[v][1][n]=dataParamsVal[v][0][n];
+										}
+									}
 
-									dataParamsIter=new double[numParams][2][numIterations];
-									dataParamsVal=new double[numParams][2][numIterations];
-									dataParamsCumDens=new double[numParams][2][numIterations];
+									//Get EVPI
+									results=evpiResults.results;
+									int sign=evpiResults.sign;
+									double meanOutcomes[]=evpiResults.meanOutcomes;
+									int numBest[]=evpiResults.numBest;
+									double bestOutcome=evpiResults.bestOutcome;
+									double bestMean=evpiResults.bestMean;
+									int bestStrat=evpiResults.bestStrat;
+									double evpi=evpiResults.evpi;
+									double evppi[]=evpiResults.evppi;
+									double evppiRegression[]=evpiResults.evppiRegression;
+									evppiBins=evpiResults.evppiBins;
+									int reportNumBins=engine.numBins;
 									
-									results=new double[numStrat][numIterations];
-									sortedResults=new ArrayList<SortedResult>();
+									//Update EVPPI chart
+									updateEVPPIChart();
 									
-									//Get orig values for all parameters
-									Numeric origValues[]=new Numeric[numParams];
-									for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters
-										origValues[v]=myModel.parameters.get(v).value.copy();
+									//Update results chart
+									updateResultsChart();
+
+									//Update param chart
+									XYPlot plotParams = chartParams.getXYPlot();
+									XYLineAndShapeRenderer rendererParams = new XYLineAndShapeRenderer(true,false);
+									DefaultDrawingSupplier supplierParams = new DefaultDrawingSupplier();
+									for(int v=0; v<numParams; v++){
+										rendererParams.setSeriesPaint(v, supplierParams.getNextPaint());
 									}
+									plotParams.setRenderer(rendererParams);
+									updateParamChart();
 									
-									//Parse constraints
-									for(int c=0; c<numConstraints; c++){
-										myModel.constraints.get(c).parseConstraints();
-									}
+									btnExport.setEnabled(true);
+									
+									//Print results summary to textpane
+									HTMLEditorKit kit = new HTMLEditorKit();
+									textEVPI.setEditorKit(kit);
 									
-									boolean origShowTrace=true;
-									if(myModel.type==1){
-										origShowTrace=myModel.markov.showTrace;
-										myModel.markov.showTrace=false;
+									//add html styles
+							        StyleSheet styleSheet = kit.getStyleSheet();
+							        styleSheet.addRule("th {border-bottom: 1px solid black}");
+									
+							        String strReport="";
+							        strReport+=("<html><body><b>EVPI Report</b><br>");
+							        
+							        //sim info
+							        strReport+=myModel.getSimInfoHTML();
+							        strReport+=("EVPI Iterations:\t"+numIterations+"<br><br>");
+									String lblObj="max";
+									String lblOutcome="NMB";
+									int numDecimals=4;
+									if(myModel.dimInfo.analysisType==0) { //EV
+										lblOutcome=myModel.dimInfo.dimSymbols[myModel.dimInfo.objectiveDim];
+										numDecimals=myModel.dimInfo.decimals[myModel.dimInfo.objectiveDim];
+										if(myModel.dimInfo.objective==1) {
+											lblObj="min";
+											bestOutcome=-bestOutcome; //flip signs
+											bestMean=-bestMean;
+										}
+									}
+									else { //CEA/BCA
+										numDecimals=myModel.dimInfo.decimals[myModel.dimInfo.costDim];
 									}
 									
-									long startTime=System.currentTimeMillis();
+									//evpi table
+									strReport+=("<table>");
+									strReport+=("<caption>Expected Value of Perfect Information</caption>");
+									strReport+=("<tr><th>Estimand</th><th>"+lblOutcome+"</th></tr>");
+									strReport+=("<tr><td>E["+lblObj+"(\u00B7)] (Perfect Information)</td><td align=\"right\">"+MathUtils.round(bestOutcome,numDecimals)+"</td></tr>");
+									strReport+=("<tr><td>"+lblObj+"(E[\u00B7]) ("+myModel.strategyNames[bestStrat]+")</td><td align=\"right\">"+MathUtils.round(bestMean,numDecimals)+"</td></tr>");
+									strReport+=("<tr><td>EVPI (Difference)</td><td align=\"right\">"+MathUtils.round(evpi,numDecimals)+"</td></tr>");
+									strReport+=("</table>");
+									strReport+=("<br><br>");
 									
-									//reports=new RunReport[numIterations];
+									//p(Best)|PI table
+									strReport+=("<table>");
+									strReport+=("<caption>p(Best)</caption>");
+									strReport+=("<tr><th>Strategy</th><th>p(Best)|Perfect Information</th></tr>");
+									for(int s=0; s<numStrat; s++) {
+										strReport+=("<tr><td>"+myModel.strategyNames[s]+"</td>");
+										strReport+=("<td align=\"right\">"+(numBest[s]/(numIterations*1.0))+"</td></tr>");
+									}
+									strReport+=("</table>");
+									strReport+=("<br><br>");
 									
-									for(int n=0; n<numIterations; n++){
-										//Update progress
-										double prog=((n+1)/(numIterations*1.0))*100;
-										long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-										remTime=(long) (remTime*(100-prog));
-										remTime=remTime/1000;
-										String seconds = Integer.toString((int)(remTime % 60));
-										String minutes = Integer.toString((int)(remTime/60));
-										if(seconds.length()<2){seconds="0"+seconds;}
-										if(minutes.length()<2){minutes="0"+minutes;}
-										progress.setProgress(n+1);
-										progress.setNote("Time left: "+minutes+":"+seconds);
-										
-										//Sample parameters
-										myModel.curGenerator[0]=myModel.generatorParam;
-										boolean validParams=false;
-										while(validParams==false){
-											for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-												Parameter curParam=myModel.parameters.get(v);
-												curParam.locked=false;
-												curParam.value=origValues[v];
-											}
+									//evppi table
+									strReport+=("<table>");
+									strReport+=("<caption>Expected Value of Partial Perfect Information ("+reportNumBins+" bins)</caption>");
+									strReport+=("<tr><th>Parameter</th><th>Expression</th><th>EVPPI</th><th>EVPPI (Regression)</th></tr>");
+									for(int p=0; p<numParams; p++) {
+										Parameter curParam=myModel.parameters.get(p);
+										strReport+=("<tr><td>"+curParam.name+"</td>");
+										strReport+=("<td>"+curParam.expression+"</td>");
+										strReport+=("<td align=\"right\">"+MathUtils.round(evppi[p],numDecimals)+"</td>");
+										strReport+=("<td align=\"right\">"+MathUtils.round(evppiRegression[p],numDecimals)+"</td></tr>");
+									}
+									strReport+=("</table>");
+									strReport+=("<br><br>");
 									
-											for(int v=0; v<numParams; v++){ //sample all parameters
-												Parameter curParam=myModel.parameters.get(v);
-												if(curParam.locked==false) {
-													curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
-													curParam.locked=true;
-												}
-											}
-											//check constraints
-											validParams=true;
-											int c=0;
-											while(validParams==true && c<numConstraints){
-												Constraint curConst=myModel.constraints.get(c);
-												validParams=curConst.checkConstraints(myModel);
-												c++;
-											}
-											if(validParams){ //check model for valid params
-												if(myModel.parseModel().size()!=0){validParams=false;}
-											}
+									
+									//outcome summaries
+									strReport+=("<table>");
+									strReport+=("<caption>Outcome Summaries</caption>");
+									strReport+=("<tr><th>Strategy</th><th>Outcome</th><th>Mean</th><th>95% LB</th><th>95% UB</th></tr>");
+									//strategy results - overall
+									for(int s=0; s<numStrat; s++) {
+										String stratName=myModel.strategyNames[s];
+										if(myModel.dimInfo.analysisType>0) { //NMB
+											String dimName="NMB";
+											double mean=MathUtils.round(meanOutcomes[s]*sign, numDecimals);
+											Arrays.sort(results[s]);
+											double lb=MathUtils.round(results[s][indexLB],numDecimals);
+											double ub=MathUtils.round(results[s][indexUB],numDecimals);
+											strReport+=("<tr><td>"+stratName+"</td><td>"+dimName+"</td>");
+											strReport+=("<td align=\"right\">"+mean+"</td>");
+											strReport+=("<td align=\"right\">"+lb+"</td>");
+											strReport+=("<td align=\"right\">"+ub+"</td></tr>");
 										}
-
-										for(int v=0; v<numParams; v++){ //Record value
-											dataParamsIter[v][0][n]=n; dataParamsVal[v][0][n]=n;
-											try{
-												dataParamsIter[v][1][n]=myModel.parameters.get(v).value.getDouble();
-											} catch(Exception e){
-												dataParamsIter[v][1][n]=Double.NaN;
-											}
-											dataParamsVal[v][1][n]=dataParamsIter[v][1][n];
-										} 
-
-										//Run model
-										myModel.curGenerator=myModel.generatorVar;
-										//reports[n]=myModel.runModel(null, false);
-										myModel.runModel(null, false);
-													
-										//Get EVs
 										for(int d=0; d<numDim; d++){
-											for(int s=0; s<numStrat; s++){
-												//overall
-												dataResultsIter[0][d][s][0][n]=n; dataResultsVal[0][d][s][0][n]=n;
-												double curOutcome=myModel.getStrategyEV(s, d);
-												dataResultsIter[0][d][s][1][n]=curOutcome; dataResultsVal[0][d][s][1][n]=curOutcome;
-												//subgroups
-												for(int g=0; g<numSubgroups; g++){
-													dataResultsIter[g+1][d][s][0][n]=n; dataResultsVal[g+1][d][s][0][n]=n;
-													curOutcome=myModel.getSubgroupEV(g, s, d);
-													dataResultsIter[g+1][d][s][1][n]=curOutcome; dataResultsVal[g+1][d][s][1][n]=curOutcome;
-												}
-											}
-										}
-										if(analysisType>0){ //CEA or BCA
-											if(analysisType==1){ //CEA
-												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateICERs(myModel,g-1,true);
-													//get baseline row
-													int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
-													int baseRow=-1,curRow=0;
-													while(baseRow==-1 && curRow<table.length){
-														if((int)table[curRow][0]==baseIndex){
-															baseRow=curRow;
-														}
-														curRow++;
-													}
-
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														if(origStrat!=-1){
-															dataResultsIter[g][numDim][origStrat][0][n]=n; dataResultsVal[g][numDim][origStrat][0][n]=n;
-															double curOutcome=(double) table[s][4];
-															dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
-															CEAnotes[g][origStrat][n]=(String) table[s][5];
-														}
-													}
-												}
-											}
-											else if(analysisType==2){ //BCA
-												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateNMB(myModel,g-1,true);
-													//use first row as baseline
-													//int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
-													int baseIndex=0;
-													int baseRow=-1,curRow=0;
-													while(baseRow==-1 && curRow<table.length){
-														if((int)table[curRow][0]==baseIndex){
-															baseRow=curRow;
-														}
-														curRow++;
-													}
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														dataResultsIter[g][numDim][origStrat][0][n]=n;	dataResultsVal[g][numDim][origStrat][0][n]=n;
-														double curOutcome=(double) table[s][4];
-														dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
-													}
-												}
-											}
-										}
-										
-										
-										//Get EVPI results
-										SortedResult curResult=new SortedResult(n,numStrat,numParams);
-										for(int p=0; p<numParams; p++){ //Record parameter value
-											curResult.paramVals[p]=dataParamsIter[p][1][n];
-										} 
-										if(analysisType==0) { //EV
-											for(int s=0; s<numStrat; s++) {
-												results[s][n]=myModel.getStrategyEV(s, myModel.dimInfo.objectiveDim);
-												curResult.outcomes[s]=results[s][n];
-											}
-										}
-										else { //CEA or BCA
-											for(int s=0; s<numStrat; s++) {
-												double cost=myModel.getStrategyEV(s, myModel.dimInfo.costDim);
-												double effect=myModel.getStrategyEV(s, myModel.dimInfo.effectDim);
-												double NMB=myModel.dimInfo.WTP*effect-cost;
-												results[s][n]=NMB;
-												curResult.outcomes[s]=results[s][n];
-											}
-										}
-										
-										sortedResults.add(curResult);
-																		
-										if(progress.isCanceled()){  //End loop
-											n=numIterations;
-											cancelled=true;
+											String dimName=myModel.dimInfo.dimNames[d];
+											if(myModel.type==1 && myModel.markov.discountRewards){dimName+=" (Dis)";}
+											double mean=MathUtils.round(meanResults[0][d][s],myModel.dimInfo.decimals[d]);
+											double lb=MathUtils.round(lbResults[0][d][s],myModel.dimInfo.decimals[d]);
+											double ub=MathUtils.round(ubResults[0][d][s],myModel.dimInfo.decimals[d]);
+											strReport+=("<tr><td>"+stratName+"</td><td>"+dimName+"</td>");
+											strReport+=("<td align=\"right\">"+mean+"</td>");
+											strReport+=("<td align=\"right\">"+lb+"</td>");
+											strReport+=("<td align=\"right\">"+ub+"</td></tr>");
 										}
 									}
-
-									//Reset all parameters
-									myModel.sampleParam=false;
-									for(int v=0; v<numParams; v++){ //Reset 'locked' for all parameter and orig values
-										Parameter curParam=myModel.parameters.get(v);
-										curParam.locked=false;
-										curParam.value=origValues[v];
-									}
-									myModel.validateModelObjects();
+									strReport+=("</table>");
+									strReport+=("<br><br>");
 									
-									if(myModel.type==1){
-										myModel.markov.showTrace=origShowTrace;
-									}
+									//end EVPI report
+									strReport+=("</body></html>");
+							        
+									Document doc = kit.createDefaultDocument();
+									textEVPI.setDocument(doc);
+									textEVPI.setText(strReport);
 									
-									if(cancelled==false){
-										double meanResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
-										double lbResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
-										double ubResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
-										int bounds[]=MathUtils.getBoundIndices(numIterations);
-										int indexLB=bounds[0], indexUB=bounds[1];
-										
-										//Sort ordered arrays
-										for(int d=0; d<numOutcomes; d++){
-											for(int s=0; s<numStrat; s++){
-												for(int g=0; g<numSubgroups+1; g++){
-													Arrays.sort(dataResultsVal[g][d][s][1]);
-													for(int n=0; n<numIterations; n++){
-														dataResultsVal[g][d][s][0][n]=n/(numIterations*1.0);
-														dataResultsCumDens[g][d][s][0][n]=dataResultsVal[g][d][s][1][n];
-														dataResultsCumDens[g][d][s][1][n]=dataResultsVal[g][d][s][0][n];
-														meanResults[g][d][s]+=dataResultsVal[g][d][s][1][n];
-													}
-													meanResults[g][d][s]/=(numIterations*1.0);
-													lbResults[g][d][s]=dataResultsVal[g][d][s][1][indexLB];
-													ubResults[g][d][s]=dataResultsVal[g][d][s][1][indexUB];
-												}
-											}
-										}
-										for(int v=0; v<numParams; v++){
-											Arrays.sort(dataParamsVal[v][1]);
-											for(int n=0; n<numIterations; n++){
-												dataParamsVal[v][0][n]=n/(numIterations*1.0);
-												dataParamsCumDens[v][0][n]=dataParamsVal[v][1][n];
-												dataParamsCumDens[v][1][n]=dataParamsVal[v][0][n];
-											}
-										}
-
-										//Calculate EVPI
-										int sign=1; //objective is to maximize outcome
-										if(analysisType==0 && myModel.dimInfo.objective==1) { //EV, minimize - change to maximize negative
-											sign=-1;
-										}
-										
-										double meanOutcomes[]=new double[numStrat];
-										int numBest[]=new int[numStrat];
-										double bestOutcome=0; //mean of max
-										for(int n=0; n<numIterations; n++) {
-											double curBest=Double.NEGATIVE_INFINITY;
-											int bestS=-1;
-											for(int s=0; s<numStrat; s++) {
-												double curRes=sign*results[s][n];
-												meanOutcomes[s]+=curRes;
-												if(curRes>curBest) {
-													curBest=curRes;
-													bestS=s;
-												}
-											}
-											bestOutcome+=curBest;
-											numBest[bestS]++;
-										}
-										bestOutcome/=(numIterations*1.0);
-										double bestMean=Double.NEGATIVE_INFINITY;
-										int bestStrat=-1;
-										for(int s=0; s<numStrat; s++) {
-											double curMean=meanOutcomes[s]/=(numIterations*1.0);
-											if(curMean>bestMean) {
-												bestMean=curMean;
-												bestStrat=s;
-											}
-										}
-										
-										//EVPI: E[max] - max E[]
-										double evpi=bestOutcome-bestMean;
-																				
-										//Calculate EVPPI (for each parameter)
-										double bestPPI[]=new double[numParams];
-										double evppi[]=new double[numParams];
-										
-										int numBins=Integer.parseInt(textNumBins.getText());
-										int reportNumBins=numBins;
-										
-										int numSamp=numIterations/numBins;
-										for(int p=0; p<numParams; p++) {
-											Collections.sort(sortedResults, new ResultComparator(-1)); //order by iteration (reset previous ordering)
-											Collections.sort(sortedResults, new ResultComparator(p)); //re-sort ascending by parameter
-											double curMax[]=new double[numBins];
-											double avgMax=0;
-											for(int k=0; k<numBins; k++) {
-												int index0=k*numSamp;
-												int index1=index0+numSamp;
-												//calculate strategy mean within bin
-												double binMeans[]=new double[numStrat];
-												for(int i=index0; i<index1; i++) {
-													for(int s=0; s<numStrat; s++) {
-														binMeans[s]+=sortedResults.get(i).outcomes[s];
-													}
-												}
-												//get best strategy among bin means
-												double binMax=Double.NEGATIVE_INFINITY;
-												for(int s=0; s<numStrat; s++) {
-													binMeans[s]/=(numSamp*1.0);
-													binMax=Math.max(binMax, sign*binMeans[s]);
-												}
-												curMax[k]=binMax;
-												avgMax+=binMax;
-											}
-											avgMax/=(numBins*1.0);
-											bestPPI[p]=avgMax;
-											evppi[p]=avgMax-bestMean;
-										}
-										
-										//Calculate EVPPI for varying bin sizes
-										ArrayList<Integer> binSizes=new ArrayList<Integer>();
-										for(int b=1; b<numIterations/2; b++) {
-											if(numIterations%b==0) { //divides evenly
-												binSizes.add(b);
-											}
-										}
-										
-										evppiBins=new double[numParams][2][binSizes.size()];
-										
-										for(int p=0; p<numParams; p++) {
-											Collections.sort(sortedResults, new ResultComparator(-1)); //order by iteration (reset previous ordering)
-											Collections.sort(sortedResults, new ResultComparator(p)); //re-sort ascending by parameter
-										
-											for(int b=0; b<binSizes.size(); b++) { //number of bins
-												numBins=binSizes.get(b);
-												evppiBins[p][0][b]=numBins;
-												numSamp=numIterations/numBins;
-												double curMax[]=new double[numBins];
-												double avgMax=0;
-												for(int k=0; k<numBins; k++) {
-													int index0=k*numSamp;
-													int index1=index0+numSamp;
-													//calculate strategy mean within bin
-													double binMeans[]=new double[numStrat];
-													for(int i=index0; i<index1; i++) {
-														for(int s=0; s<numStrat; s++) {
-															binMeans[s]+=sortedResults.get(i).outcomes[s];
-														}
-													}
-													//get best strategy among bin means
-													double binMax=Double.NEGATIVE_INFINITY;
-													for(int s=0; s<numStrat; s++) {
-														binMeans[s]/=(numSamp*1.0);
-														binMax=Math.max(binMax, sign*binMeans[s]);
-													}
-													curMax[k]=binMax;
-													avgMax+=binMax;
-												}
-												avgMax/=(numBins*1.0);
-												evppiBins[p][1][b]=avgMax-bestMean;
-											}
-										}
-										
-										
-										//Update EVPPI chart
-										updateEVPPIChart();
-										
-										//Update results chart
-										updateResultsChart();
-
-										//Update param chart
-										XYPlot plotParams = chartParams.getXYPlot();
-										XYLineAndShapeRenderer rendererParams = new XYLineAndShapeRenderer(true,false);
-										DefaultDrawingSupplier supplierParams = new DefaultDrawingSupplier();
-										for(int v=0; v<numParams; v++){
-											rendererParams.setSeriesPaint(v, supplierParams.getNextPaint());
-										}
-										plotParams.setRenderer(rendererParams);
-										updateParamChart();
-										
-										btnExport.setEnabled(true);
-										
-										//Print results summary to textpane
-										HTMLEditorKit kit = new HTMLEditorKit();
-										textEVPI.setEditorKit(kit);
-										
-										//add html styles
-								        StyleSheet styleSheet = kit.getStyleSheet();
-								        styleSheet.addRule("th {border-bottom: 1px solid black}");
-										
-								        String strReport="";
-								        strReport+=("<html><body><b>EVPI Report</b><br>");
-								        
-								        //sim info
-								        strReport+=myModel.getSimInfoHTML();
-								        strReport+=("EVPI Iterations:\t"+numIterations+"<br><br>");
-										String lblObj="max";
-										String lblOutcome="NMB";
-										int numDecimals=4;
-										if(myModel.dimInfo.analysisType==0) { //EV
-											lblOutcome=myModel.dimInfo.dimSymbols[myModel.dimInfo.objectiveDim];
-											numDecimals=myModel.dimInfo.decimals[myModel.dimInfo.objectiveDim];
-											if(myModel.dimInfo.objective==1) {
-												lblObj="min";
-												bestOutcome=-bestOutcome; //flip signs
-												bestMean=-bestMean;
-											}
-										}
-										else { //CEA/BCA
-											numDecimals=myModel.dimInfo.decimals[myModel.dimInfo.costDim];
-										}
-										
-										//evpi table
-										strReport+=("<table>");
-										strReport+=("<caption>Expected Value of Perfect Information</caption>");
-										strReport+=("<tr><th>Estimand</th><th>"+lblOutcome+"</th></tr>");
-										strReport+=("<tr><td>E["+lblObj+"(\u00B7)] (Perfect Information)</td><td align=\"right\">"+MathUtils.round(bestOutcome,numDecimals)+"</td></tr>");
-										strReport+=("<tr><td>"+lblObj+"(E[\u00B7]) ("+myModel.strategyNames[bestStrat]+")</td><td align=\"right\">"+MathUtils.round(bestMean,numDecimals)+"</td></tr>");
-										strReport+=("<tr><td>EVPI (Difference)</td><td align=\"right\">"+MathUtils.round(evpi,numDecimals)+"</td></tr>");
-										strReport+=("</table>");
-										strReport+=("<br><br>");
-										
-										//p(Best)|PI table
-										strReport+=("<table>");
-										strReport+=("<caption>p(Best)</caption>");
-										strReport+=("<tr><th>Strategy</th><th>p(Best)|Perfect Information</th></tr>");
-										for(int s=0; s<numStrat; s++) {
-											strReport+=("<tr><td>"+myModel.strategyNames[s]+"</td>");
-											strReport+=("<td align=\"right\">"+(numBest[s]/(numIterations*1.0))+"</td></tr>");
-										}
-										strReport+=("</table>");
-										strReport+=("<br><br>");
-										
-										//evppi table
-										strReport+=("<table>");
-										strReport+=("<caption>Expected Value of Partial Perfect Information ("+reportNumBins+" bins)</caption>");
-										strReport+=("<tr><th>Parameter</th><th>Expression</th><th>EVPPI</th></tr>");
-										for(int p=0; p<numParams; p++) {
-											Parameter curParam=myModel.parameters.get(p);
-											strReport+=("<tr><td>"+curParam.name+"</td>");
-											strReport+=("<td>"+curParam.expression+"</td>");
-											strReport+=("<td align=\"right\">"+MathUtils.round(evppi[p],numDecimals)+"</td></tr>");
-										}
-										strReport+=("</table>");
-										strReport+=("<br><br>");
-										
-										
-										//outcome summaries
-										strReport+=("<table>");
-										strReport+=("<caption>Outcome Summaries</caption>");
-										strReport+=("<tr><th>Strategy</th><th>Outcome</th><th>Mean</th><th>95% LB</th><th>95% UB</th></tr>");
-										//strategy results - overall
-										for(int s=0; s<numStrat; s++) {
+									textEVPI.setCaretPosition(0); //go to top
+									
+									exportReady=true;
+									btnCopy.setEnabled(true);
+									
+									//subgroups
+									/*for(int g=0; g<numSubgroups; g++){
+										console.print("\nSubgroup Results: "+myModel.subgroupNames.get(g)+"\n");
+										curTable=new ConsoleTable(console,colTypes);
+										curTable.addRow(headers);
+										for(int s=0; s<numStrat; s++){
 											String stratName=myModel.strategyNames[s];
-											if(myModel.dimInfo.analysisType>0) { //NMB
-												String dimName="NMB";
-												double mean=MathUtils.round(meanOutcomes[s]*sign, numDecimals);
-												Arrays.sort(results[s]);
-												double lb=MathUtils.round(results[s][indexLB],numDecimals);
-												double ub=MathUtils.round(results[s][indexUB],numDecimals);
-												strReport+=("<tr><td>"+stratName+"</td><td>"+dimName+"</td>");
-												strReport+=("<td align=\"right\">"+mean+"</td>");
-												strReport+=("<td align=\"right\">"+lb+"</td>");
-												strReport+=("<td align=\"right\">"+ub+"</td></tr>");
-											}
 											for(int d=0; d<numDim; d++){
 												String dimName=myModel.dimInfo.dimNames[d];
 												if(myModel.type==1 && myModel.markov.discountRewards){dimName+=" (Dis)";}
-												double mean=MathUtils.round(meanResults[0][d][s],myModel.dimInfo.decimals[d]);
-												double lb=MathUtils.round(lbResults[0][d][s],myModel.dimInfo.decimals[d]);
-												double ub=MathUtils.round(ubResults[0][d][s],myModel.dimInfo.decimals[d]);
-												strReport+=("<tr><td>"+stratName+"</td><td>"+dimName+"</td>");
-												strReport+=("<td align=\"right\">"+mean+"</td>");
-												strReport+=("<td align=\"right\">"+lb+"</td>");
-												strReport+=("<td align=\"right\">"+ub+"</td></tr>");
+												double mean=MathUtils.round(meanResults[g+1][d][s],myModel.dimInfo.decimals[d]);
+												double lb=MathUtils.round(lbResults[g+1][d][s],myModel.dimInfo.decimals[d]);
+												double ub=MathUtils.round(ubResults[g+1][d][s],myModel.dimInfo.decimals[d]);
+												String curRow[]=new String[]{stratName,dimName,mean+"",lb+"",ub+""};
+												curTable.addRow(curRow);
 											}
 										}
-										strReport+=("</table>");
-										strReport+=("<br><br>");
-										
-										//end EVPI report
-										strReport+=("</body></html>");
-								        
-										Document doc = kit.createDefaultDocument();
-										textEVPI.setDocument(doc);
-										textEVPI.setText(strReport);
-										
-										textEVPI.setCaretPosition(0); //go to top
-										
-										exportReady=true;
-										btnCopy.setEnabled(true);
-										
-										//subgroups
-										/*for(int g=0; g<numSubgroups; g++){
-											console.print("\nSubgroup Results: "+myModel.subgroupNames.get(g)+"\n");
-											curTable=new ConsoleTable(console,colTypes);
-											curTable.addRow(headers);
-											for(int s=0; s<numStrat; s++){
-												String stratName=myModel.strategyNames[s];
-												for(int d=0; d<numDim; d++){
-													String dimName=myModel.dimInfo.dimNames[d];
-													if(myModel.type==1 && myModel.markov.discountRewards){dimName+=" (Dis)";}
-													double mean=MathUtils.round(meanResults[g+1][d][s],myModel.dimInfo.decimals[d]);
-													double lb=MathUtils.round(lbResults[g+1][d][s],myModel.dimInfo.decimals[d]);
-													double ub=MathUtils.round(ubResults[g+1][d][s],myModel.dimInfo.decimals[d]);
-													String curRow[]=new String[]{stratName,dimName,mean+"",lb+"",ub+""};
-													curTable.addRow(curRow);
-												}
-											}
-											curTable.print();
-										}*/
-										
-									}
-									progress.close();
+										curTable.print();
+									}*/
+									
 								}
+								progress.close();
 								frmEVPI.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
 								
 							} catch (Exception e) {
 								e.printStackTrace();
+								progress.close();
 								frmEVPI.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
 								JOptionPane.showMessageDialog(frmEVPI, e.getMessage());
 								myModel.errorLog.recordError(e);
@@ -1207,6 +882,45 @@ public class frmEVPI {
 		}
 	}
 
+	/**
+	 * Copies PSA results into the chart arrays
+	 */
+	private void getResults(PSAResults results){
+		int numOutcomes=comboDimensions.getItemCount();
+		numSubgroups=Outcomes.getNumSubgroups(myModel);
+		
+		if(myModel.dimInfo.analysisType==1){CEAnotes=new String[1+numSubgroups][numStrat][numIterations];} //CEA
+		else{CEAnotes=null;}
+		
+		dataResultsIter=new double[1+numSubgroups][numOutcomes][numStrat][2][numIterations];
+		dataResultsVal=new double[1+numSubgroups][numOutcomes][numStrat][2][numIterations];
+		dataResultsCumDens=new double[1+numSubgroups][numOutcomes][numStrat][2][numIterations];
+
+		dataParamsIter=new double[numParams][2][numIterations];
+		dataParamsVal=new double[numParams][2][numIterations];
+		dataParamsCumDens=new double[numParams][2][numIterations];
+		
+		for(int n=0; n<numIterations; n++){
+			for(int v=0; v<numParams; v++){
+				dataParamsIter[v][0][n]=n; dataParamsVal[v][0][n]=n;
+				dataParamsIter[v][1][n]=results.paramValues[v][n]; dataParamsVal[v][1][n]=results.paramValues[v][n];
+			}
+			Outcomes curOutcomes=results.outcomes[n];
+			for(int g=0; g<numSubgroups+1; g++){
+				for(int d=0; d<numOutcomes; d++){
+					for(int s=0; s<numStrat; s++){
+						double curOutcome=curOutcomes.values[g][d][s];
+						dataResultsIter[g][d][s][0][n]=n; dataResultsVal[g][d][s][0][n]=n;
+						dataResultsIter[g][d][s][1][n]=curOutcome; dataResultsVal[g][d][s][1][n]=curOutcome;
+					}
+				}
+				if(CEAnotes!=null){
+					for(int s=0; s<numStrat; s++){CEAnotes[g][s][n]=curOutcomes.notes[g][s];}
+				}
+			}
+		}
+	}
+
 	public void updateEVPPIChart(){
 		if(chartDataEVPPI.getSeriesCount()>0){
 			for(int p=0; p<numParams; p++){
@@ -1352,32 +1066,3 @@ public class frmEVPI {
 		}
 	}
 }
-
-class SortedResult{
-	int iteration;
-	double outcomes[]; //strategy outcome of interest (e.g. NMB)
-	double paramVals[];
-	
-	SortedResult(int i, int numStrat, int numParams){ //constructor
-		iteration=i;
-		outcomes=new double[numStrat];
-		paramVals=new double[numParams];
-	}
-}
-
-class ResultComparator implements Comparator<SortedResult> {
-	int pIndex; //parameter index to sort by
-	
-	ResultComparator(int p){ //Constructor
-		this.pIndex=p;
-	}
-	
-	@Override public int compare(SortedResult o1, SortedResult o2) {
-		if(pIndex==-1) { //sort by iteration
-			return(Double.compare(o1.iteration, o2.iteration));
-		}
-		else { //sort by parameter value
-			return(Double.compare(o1.paramVals[pIndex], o2.paramVals[pIndex]));
-		}
-	}
-}
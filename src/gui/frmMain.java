@@ -2079,6 +2079,7 @@ public class frmMain {
 		}
 		if(proceed){
 			//close tab
+			modelList.get(index).releaseWorkerPool();
 			modelTypes.remove(index);
 			modelList.remove(index);
 			tabbedPaneCanvas.removeTabAt(index);
@@ -68,6 +68,9 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
+import analysis.Outcomes;
+import analysis.PSAEngine;
+import analysis.PSAResults;
 import base.AmuaModel;
 import base.RunReport;
 import base.RunReportSummary;
@@ -75,17 +78,12 @@ import filters.CSVFilter;
 import main.CEAHelper;
 import main.Console;
 import main.ConsoleTable;
-import main.Constraint;
 import main.DimInfo;
-import main.MersenneTwisterFast;
 import main.Parameter;
-import markov.MarkovNode;
 import markov.MarkovTrace;
 import markov.MarkovTraceSummary;
-import math.Interpreter;
 import math.KernelSmooth;
 import math.MathUtils;
-import math.Numeric;
 
 /**
  *
@@ -137,6 +135,7 @@ public class frmPSA {
 	int numIterations;
 	JCheckBox chckbxSeed;
 	private JTextField textSeed;
+	private JTextField textThreads;
 	String outcome;
 	
 	
@@ -402,6 +401,17 @@ public class frmPSA {
 			textSeed.setBounds(223, 6, 59, 28);
 			panel_2.add(textSeed);
 			textSeed.setColumns(10);
+			
+			JLabel lblThreads = new JLabel("# Threads:");
+			lblThreads.setBounds(6, 42, 69, 16);
+			panel_2.add(lblThreads);
+			
+			textThreads = new JTextField();
+			textThreads.setHorizontalAlignment(SwingConstants.CENTER);
+			textThreads.setText("1");
+			textThreads.setBounds(73, 36, 69, 28);
+			panel_2.add(textThreads);
+			textThreads.setColumns(10);
 
 			tabbedPane = new JTabbedPane(JTabbedPane.TOP);
 			GridBagConstraints gbc_tabbedPane = new GridBagConstraints();
@@ -726,356 +736,154 @@ public class frmPSA {
 								tabbedPane.setEnabledAt(2, false);
 								tabbedPane.setEnabledAt(3, false);
 
-								//Check model first
-								ArrayList<String> errorsBase=myModel.parseModel();
-								
-								if(errorsBase.size()>0){
-									JOptionPane.showMessageDialog(frmPSA, "Errors in base case model!");
-								}
-								else{
-									boolean cancelled=false;
-
-									myModel.sampleParam=true;
-									myModel.generatorParam=new MersenneTwisterFast();
-									if(myModel.curGenerator==null){
-										myModel.curGenerator=new MersenneTwisterFast[1];
-									}
-									myModel.curGenerator[0]=myModel.generatorParam;
-									if(chckbxSeed.isSelected()){
-										int seed=Integer.parseInt(textSeed.getText());
-										myModel.generatorParam.setSeed(seed);
-									}
-																		
-									numIterations=Integer.parseInt(textIterations.getText().replaceAll(",", ""));
-									progress.setMaximum(numIterations);
-
+								//Run PSA
+								PSAEngine engine=new PSAEngine(myModel);
+								engine.numIterations=Integer.parseInt(textIterations.getText().replaceAll(",", ""));
+								engine.seeded=chckbxSeed.isSelected();
+								if(engine.seeded){engine.seed=Integer.parseInt(textSeed.getText());}
+								engine.numThreads=Integer.parseInt(textThreads.getText());
+								PSAResults results=engine.run(new ProgressMonitorListener(progress));
+
+								if(results.cancelled==false){
+									numIterations=results.numIterations;
+									reports=results.reports;
+									MarkovTrace traces[][][]=results.traces;
+									int numChains=results.numChains;
 									numStrat=myModel.getStrategies();
 									int numOutcomes=comboDimensions.getItemCount();
 									int numDim=myModel.dimInfo.dimNames.length;
-									
-									if(myModel.simType==1 && myModel.reportSubgroups){numSubgroups=myModel.subgroupNames.size();}
-									
 									int analysisType=myModel.dimInfo.analysisType;
-									if(analysisType==1){CEAnotes=new String[1+numSubgroups][numStrat][numIterations];} //CEA
-									else{CEAnotes=null;}
+									getResults(results);
 									
-									dataResultsIter=new double[1+numSubgroups][numOutcomes][numStrat][2][numIterations];
-									dataResultsVal=new double[1+numSubgroups][numOutcomes][numStrat][2][numIterations];
-									dataResultsCumDens=new double[1+numSubgroups][numOutcomes][numStrat][2][numIterations];
-
-									dataParamsIter=new double[numParams][2][numIterations];
-									dataParamsVal=new double[numParams][2][numIterations];
-									dataParamsCumDens=new double[numParams][2][numIterations];
-
-									dataScatterAbs=new double[1+numSubgroups][numStrat][2][numIterations];
-									dataScatterRel=new double[1+numSubgroups][numStrat][2][numIterations];
-									
-									dataCEAC=new double[numStrat][][];
-									
-									//Get orig values for all parameters
-									Numeric origValues[]=new Numeric[numParams];
-									for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters
-										origValues[v]=myModel.parameters.get(v).value.copy();
-									}
+									double meanResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
+									double lbResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
+									double ubResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
+									int bounds[]=MathUtils.getBoundIndices(numIterations);
+									int indexLB=bounds[0], indexUB=bounds[1];
 									
-									//Parse constraints
-									for(int c=0; c<numConstraints; c++){
-										myModel.constraints.get(c).parseConstraints();
-									}
-									
-									MarkovTrace traces[][][]=null;
-									ArrayList<MarkovNode> chainRoots=null;
-									int numChains = 0;
-									boolean origShowTrace=true;
-									if(myModel.type==1){
-										//get number of chains
-										chainRoots=new ArrayList<MarkovNode>();
-										for(int n=0; n<myModel.markov.nodes.size(); n++){
-											MarkovNode curNode=myModel.markov.nodes.get(n);
-											if(curNode.type==1){chainRoots.add(curNode);}
-										}
-										numChains=chainRoots.size();
-										traces=new MarkovTrace[numChains][numSubgroups+1][numIterations];
-										origShowTrace=myModel.markov.showTrace;
-										myModel.markov.showTrace=false;
-									}
-									
-									long startTime=System.currentTimeMillis();
-									
-									reports=new RunReport[numIterations];
-									
-									for(int n=0; n<numIterations; n++){
-										//Update progress
-										double prog=((n+1)/(numIterations*1.0))*100;
-										long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-										remTime=(long) (remTime*(100-prog));
-										remTime=remTime/1000;
-										String seconds = Integer.toString((int)(remTime % 60));
-										String minutes = Integer.toString((int)(remTime/60));
-										if(seconds.length()<2){seconds="0"+seconds;}
-										if(minutes.length()<2){minutes="0"+minutes;}
-										progress.setProgress(n+1);
-										progress.setNote("Time left: "+minutes+":"+seconds);
-										
-										//Sample parameters
-										myModel.curGenerator[0]=myModel.generatorParam;
-										boolean validParams=false;
-										while(validParams==false){
-											for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-												Parameter curParam=myModel.parameters.get(v);
-												curParam.locked=false;
-												curParam.value=origValues[v];
-											}
-									
-											for(int v=0; v<numParams; v++){ //sample all parameters
-												Parameter curParam=myModel.parameters.get(v);
-												if(curParam.locked==false) {
-													curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
-													curParam.locked=true;
-												}
-											}
-											//check constraints
-											validParams=true;
-											int c=0;
-											while(validParams==true && c<numConstraints){
-												Constraint curConst=myModel.constraints.get(c);
-												validParams=curConst.checkConstraints(myModel);
-												c++;
-											}
-											if(validParams){ //check model for valid params
-												ArrayList<String> errors=myModel.parseModel();
-												if(errors.size()!=0) {
-													validParams=false;
+									//Sort ordered arrays
+									for(int d=0; d<numOutcomes; d++){
+										for(int s=0; s<numStrat; s++){
+											for(int g=0; g<numSubgroups+1; g++){
+												Arrays.sort(dataResultsVal[g][d][s][1]);
+												for(int n=0; n<numIterations; n++){
+													dataResultsVal[g][d][s][0][n]=n/(numIterations*1.0);
+													dataResultsCumDens[g][d][s][0][n]=dataResultsVal[g][d][s][1][n];
+													dataResultsCumDens[g][d][s][1][n]=dataResultsVal[g][d][s][0][n];
+													meanResults[g][d][s]+=dataResultsVal[g][d][s][1][n];
 												}
+												meanResults[g][d][s]/=(numIterations*1.0);
+												lbResults[g][d][s]=dataResultsVal[g][d][s][1][indexLB];
+												ubResults[g][d][s]=dataResultsVal[g][d][s][1][indexUB];
 											}
 										}
+									}
+									for(int v=0; v<numParams; v++){
+										Arrays.sort(dataParamsVal[v][1]);
+										for(int n=0; n<numIterations; n++){
+											dataParamsVal[v][0][n]=n/(numIterations*1.0);
+											dataParamsCumDens[v][0][n]=dataParamsVal[v][1][n];
+											dataParamsCumDens[v][1][n]=dataParamsVal[v][0][n];
+										}
+									}
 
-										for(int v=0; v<numParams; v++){ //Record value
-											dataParamsIter[v][0][n]=n; dataParamsVal[v][0][n]=n;
-											try{
-												dataParamsIter[v][1][n]=myModel.parameters.get(v).value.getDouble();
-											} catch(Exception e){
-												dataParamsIter[v][1][n]=Double.NaN;
-											}
-											dataParamsVal[v][1][n]=dataParamsIter[v][1][n];
-										} 
+									//Update results chart
+									updateResultsChart();
 
-										//Run model
-										myModel.curGenerator=myModel.generatorVar;
-										reports[n]=myModel.runModel(null, false);
+									//Update param chart
+									XYPlot plotParams = chartParams.getXYPlot();
+									XYLineAndShapeRenderer rendererParams = new XYLineAndShapeRenderer(true,false);
+									DefaultDrawingSupplier supplierParams = new DefaultDrawingSupplier();
+									for(int v=0; v<numParams; v++){
+										rendererParams.setSeriesPaint(v, supplierParams.getNextPaint());
+									}
+									plotParams.setRenderer(rendererParams);
+									updateParamChart();
+
+									//Update scatter chart and CEAC
+									if(analysisType>0){
+										tabbedPane.setEnabledAt(2, true);
+										XYPlot plotScatter = chartScatter.getXYPlot();
+										XYLineAndShapeRenderer rendererScatter = new XYLineAndShapeRenderer(false,true);
+										Shape dot=new Ellipse2D.Double(0,0,3,3);
+										DefaultDrawingSupplier supplier = new DefaultDrawingSupplier();
+										for(int s=0; s<numStrat; s++){
+											rendererScatter.setSeriesPaint(s, supplier.getNextPaint());
+											rendererScatter.setSeriesShape(s, dot);
+										}
+										plotScatter.setRenderer(rendererScatter);
+										updateScatter();
+										
+										tabbedPane.setEnabledAt(3, true);
+										if(comboCEACGroup.isVisible()){comboCEACGroup.setSelectedIndex(0);}
+										updateCEAC(0);
 										
-										if(myModel.type==1){ //Markov model
+									}
+									btnExport.setEnabled(true);
+									
+									//Get trace summary
+									if(myModel.type==1 && myModel.markov.showTrace){
+										if(myModel.markov.compileTraces==false) {
+											//get mean and bounds of results
 											for(int c=0; c<numChains; c++){
-												traces[c][0][n]=reports[n].markovTraces.get(c); //overall
-												for(int g=0; g<numSubgroups; g++){
-													traces[c][g+1][n]=reports[n].markovTracesGroup[g].get(c);
-												}
-											}
-										}
-																																								
-										//Get EVs
-										for(int d=0; d<numDim; d++){
-											for(int s=0; s<numStrat; s++){
-												//overall
-												dataResultsIter[0][d][s][0][n]=n; dataResultsVal[0][d][s][0][n]=n;
-												double curOutcome=myModel.getStrategyEV(s, d);
-												dataResultsIter[0][d][s][1][n]=curOutcome; dataResultsVal[0][d][s][1][n]=curOutcome;
-												//subgroups
-												for(int g=0; g<numSubgroups; g++){
-													dataResultsIter[g+1][d][s][0][n]=n; dataResultsVal[g+1][d][s][0][n]=n;
-													curOutcome=myModel.getSubgroupEV(g, s, d);
-													dataResultsIter[g+1][d][s][1][n]=curOutcome; dataResultsVal[g+1][d][s][1][n]=curOutcome;
-												}
-											}
-										}
-										if(analysisType>0){ //CEA or BCA
-											if(analysisType==1){ //CEA
-												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateICERs(myModel,g-1,true);
-													//get baseline row
-													int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
-													int baseRow=-1,curRow=0;
-													while(baseRow==-1 && curRow<table.length){
-														if((int)table[curRow][0]==baseIndex){
-															baseRow=curRow;
-														}
-														curRow++;
-													}
-
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														if(origStrat!=-1){
-															dataResultsIter[g][numDim][origStrat][0][n]=n; dataResultsVal[g][numDim][origStrat][0][n]=n;
-															double curOutcome=(double) table[s][4];
-															dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
-															CEAnotes[g][origStrat][n]=(String) table[s][5];
-															double cost=(double) table[s][2];
-															double benefit=(double) table[s][3];
-															dataScatterAbs[g][origStrat][0][n]=benefit;
-															dataScatterAbs[g][origStrat][1][n]=cost;
-															double baseCost=(double) table[baseRow][2];
-															double baseBenefit=(double) table[baseRow][3];
-															dataScatterRel[g][origStrat][0][n]=benefit-baseBenefit;
-															dataScatterRel[g][origStrat][1][n]=cost-baseCost;
-														}
-													}
-												}
-											}
-											else if(analysisType==2){ //BCA
+												MarkovTraceSummary traceSummaries[]=new MarkovTraceSummary[numSubgroups+1];
 												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateNMB(myModel,g-1,true);
-													//use first row as baseline
-													//int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
-													int baseIndex=0;
-													int baseRow=-1,curRow=0;
-													while(baseRow==-1 && curRow<table.length){
-														if((int)table[curRow][0]==baseIndex){
-															baseRow=curRow;
-														}
-														curRow++;
-													}
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														dataResultsIter[g][numDim][origStrat][0][n]=n;	dataResultsVal[g][numDim][origStrat][0][n]=n;
-														double curOutcome=(double) table[s][4];
-														dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
-														double benefit=(double) table[s][2];
-														double cost=(double) table[s][3];
-														dataScatterAbs[g][origStrat][0][n]=benefit;
-														dataScatterAbs[g][origStrat][1][n]=cost;
-														double baseBenefit=(double) table[baseRow][2]; 
-														double baseCost=(double) table[baseRow][3];
-														dataScatterRel[g][origStrat][0][n]=benefit-baseBenefit;
-														dataScatterRel[g][origStrat][1][n]=cost-baseCost;
-														
-													}
+													traceSummaries[g]=new MarkovTraceSummary(traces[c][g]);
 												}
+												frmTraceSummary showSummary=new frmTraceSummary(traceSummaries,myModel.errorLog,subgroupNames);
+												showSummary.frmTraceSummary.setVisible(true);
 											}
 										}
-								
-										if(progress.isCanceled()){  //End loop
-											n=numIterations;
-											cancelled=true;
+										else {
+											RunReportSummary reportSummary=new RunReportSummary(reports);
+											frmTraceSummaryMulti window=new frmTraceSummaryMulti(reportSummary,myModel.errorLog);
+											window.frmTraceSummaryMulti.setVisible(true);
 										}
 									}
-
-									//Reset all parameters
-									myModel.sampleParam=false;
-									for(int v=0; v<numParams; v++){ //Reset 'locked' for all parameter and orig values
-										Parameter curParam=myModel.parameters.get(v);
-										curParam.locked=false;
-										curParam.value=origValues[v];
+									
+									//Print results summary to console
+									Console console=myModel.mainForm.console;
+									myModel.printSimInfo(console);
+									console.print("PSA Iterations:\t"+numIterations+"\n\n");
+									boolean colTypes[]=new boolean[]{false,false,true,true,true}; //is column number (true), or text (false)
+									ConsoleTable curTable=new ConsoleTable(console,colTypes);
+									String headers[]=new String[]{"Strategy","Outcome","Mean","95% LB","95% UB"};
+									curTable.addRow(headers);
+									//strategy results - overall
+									for(int s=0; s<numStrat; s++){
+										String stratName=myModel.strategyNames[s];
+										for(int d=0; d<numDim; d++){
+											String dimName=myModel.dimInfo.dimNames[d];
+											if(myModel.type==1 && myModel.markov.discountRewards){dimName+=" (Dis)";}
+											double mean=MathUtils.round(meanResults[0][d][s],myModel.dimInfo.decimals[d]);
+											double lb=MathUtils.round(lbResults[0][d][s],myModel.dimInfo.decimals[d]);
+											double ub=MathUtils.round(ubResults[0][d][s],myModel.dimInfo.decimals[d]);
+											String curRow[]=new String[]{stratName,dimName,mean+"",lb+"",ub+""};
+											curTable.addRow(curRow);
+										}
 									}
-									myModel.validateModelObjects();
+									curTable.print();
 									
-									if(myModel.type==1){
-										myModel.markov.showTrace=origShowTrace;
+									if(myModel.dimInfo.analysisType==1) { //CEA - get mean ICERS
+										printCEAResults(console, 0);
+									}
+									else if(myModel.dimInfo.analysisType==2) { //BCA - get mean NMB
+										printBCAResults(console, 0);
 									}
 									
-									if(cancelled==false){
-										double meanResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
-										double lbResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
-										double ubResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
-										int bounds[]=MathUtils.getBoundIndices(numIterations);
-										int indexLB=bounds[0], indexUB=bounds[1];
-										
-										//Sort ordered arrays
-										for(int d=0; d<numOutcomes; d++){
-											for(int s=0; s<numStrat; s++){
-												for(int g=0; g<numSubgroups+1; g++){
-													Arrays.sort(dataResultsVal[g][d][s][1]);
-													for(int n=0; n<numIterations; n++){
-														dataResultsVal[g][d][s][0][n]=n/(numIterations*1.0);
-														dataResultsCumDens[g][d][s][0][n]=dataResultsVal[g][d][s][1][n];
-														dataResultsCumDens[g][d][s][1][n]=dataResultsVal[g][d][s][0][n];
-														meanResults[g][d][s]+=dataResultsVal[g][d][s][1][n];
-													}
-													meanResults[g][d][s]/=(numIterations*1.0);
-													lbResults[g][d][s]=dataResultsVal[g][d][s][1][indexLB];
-													ubResults[g][d][s]=dataResultsVal[g][d][s][1][indexUB];
-												}
-											}
-										}
-										for(int v=0; v<numParams; v++){
-											Arrays.sort(dataParamsVal[v][1]);
-											for(int n=0; n<numIterations; n++){
-												dataParamsVal[v][0][n]=n/(numIterations*1.0);
-												dataParamsCumDens[v][0][n]=dataParamsVal[v][1][n];
-												dataParamsCumDens[v][1][n]=dataParamsVal[v][0][n];
-											}
-										}
-
-										//Update results chart
-										updateResultsChart();
-
-										//Update param chart
-										XYPlot plotParams = chartParams.getXYPlot();
-										XYLineAndShapeRenderer rendererParams = new XYLineAndShapeRenderer(true,false);
-										DefaultDrawingSupplier supplierParams = new DefaultDrawingSupplier();
-										for(int v=0; v<numParams; v++){
-											rendererParams.setSeriesPaint(v, supplierParams.getNextPaint());
-										}
-										plotParams.setRenderer(rendererParams);
-										updateParamChart();
-
-										//Update scatter chart and CEAC
-										if(analysisType>0){
-											tabbedPane.setEnabledAt(2, true);
-											XYPlot plotScatter = chartScatter.getXYPlot();
-											XYLineAndShapeRenderer rendererScatter = new XYLineAndShapeRenderer(false,true);
-											Shape dot=new Ellipse2D.Double(0,0,3,3);
-											DefaultDrawingSupplier supplier = new DefaultDrawingSupplier();
-											for(int s=0; s<numStrat; s++){
-												rendererScatter.setSeriesPaint(s, supplier.getNextPaint());
-												rendererScatter.setSeriesShape(s, dot);
-											}
-											plotScatter.setRenderer(rendererScatter);
-											updateScatter();
-											
-											tabbedPane.setEnabledAt(3, true);
-											if(comboCEACGroup.isVisible()){comboCEACGroup.setSelectedIndex(0);}
-											updateCEAC(0);
-											
-										}
-										btnExport.setEnabled(true);
-										
-										//Get trace summary
-										if(myModel.type==1 && myModel.markov.showTrace){
-											if(myModel.markov.compileTraces==false) {
-												//get mean and bounds of results
-												for(int c=0; c<numChains; c++){
-													MarkovTraceSummary traceSummaries[]=new MarkovTraceSummary[numSubgroups+1];
-													for(int g=0; g<numSubgroups+1; g++){
-														traceSummaries[g]=new MarkovTraceSummary(traces[c][g]);
-													}
-													frmTraceSummary showSummary=new frmTraceSummary(traceSummaries,myModel.errorLog,subgroupNames);
-													showSummary.frmTraceSummary.setVisible(true);
-												}
-											}
-											else {
-												RunReportSummary reportSummary=new RunReportSummary(reports);
-												frmTraceSummaryMulti window=new frmTraceSummaryMulti(reportSummary,myModel.errorLog);
-												window.frmTraceSummaryMulti.setVisible(true);
-											}
-										}
-										
-										//Print results summary to console
-										Console console=myModel.mainForm.console;
-										myModel.printSimInfo(console);
-										console.print("PSA Iterations:\t"+numIterations+"\n\n");
-										boolean colTypes[]=new boolean[]{false,false,true,true,true}; //is column number (true), or text (false)
-										ConsoleTable curTable=new ConsoleTable(console,colTypes);
-										String headers[]=new String[]{"Strategy","Outcome","Mean","95% LB","95% UB"};
+									//subgroups
+									for(int g=0; g<numSubgroups; g++){
+										console.print("\nSubgroup Results: "+myModel.subgroupNames.get(g)+"\n");
+										curTable=new ConsoleTable(console,colTypes);
 										curTable.addRow(headers);
-										//strategy results - overall
 										for(int s=0; s<numStrat; s++){
 											String stratName=myModel.strategyNames[s];
 											for(int d=0; d<numDim; d++){
 												String dimName=myModel.dimInfo.dimNames[d];
 												if(myModel.type==1 && myModel.markov.discountRewards){dimName+=" (Dis)";}
-												double mean=MathUtils.round(meanResults[0][d][s],myModel.dimInfo.decimals[d]);
-												double lb=MathUtils.round(lbResults[0][d][s],myModel.dimInfo.decimals[d]);
-												double ub=MathUtils.round(ubResults[0][d][s],myModel.dimInfo.decimals[d]);
+												double mean=MathUtils.round(meanResults[g+1][d][s],myModel.dimInfo.decimals[d]);
+												double lb=MathUtils.round(lbResults[g+1][d][s],myModel.dimInfo.decimals[d]);
+												double ub=MathUtils.round(ubResults[g+1][d][s],myModel.dimInfo.decimals[d]);
 												String curRow[]=new String[]{stratName,dimName,mean+"",lb+"",ub+""};
 												curTable.addRow(curRow);
 											}
@@ -1083,62 +891,36 @@ public class frmPSA {
 										curTable.print();
 										
 										if(myModel.dimInfo.analysisType==1) { //CEA - get mean ICERS
-											printCEAResults(console, 0);
+											printCEAResults(console, g+1);
 										}
 										else if(myModel.dimInfo.analysisType==2) { //BCA - get mean NMB
-											printBCAResults(console, 0);
+											printBCAResults(console, g+1);
 										}
 										
-										//subgroups
-										for(int g=0; g<numSubgroups; g++){
-											console.print("\nSubgroup Results: "+myModel.subgroupNames.get(g)+"\n");
-											curTable=new ConsoleTable(console,colTypes);
-											curTable.addRow(headers);
-											for(int s=0; s<numStrat; s++){
-												String stratName=myModel.strategyNames[s];
-												for(int d=0; d<numDim; d++){
-													String dimName=myModel.dimInfo.dimNames[d];
-													if(myModel.type==1 && myModel.markov.discountRewards){dimName+=" (Dis)";}
-													double mean=MathUtils.round(meanResults[g+1][d][s],myModel.dimInfo.decimals[d]);
-													double lb=MathUtils.round(lbResults[g+1][d][s],myModel.dimInfo.decimals[d]);
-													double ub=MathUtils.round(ubResults[g+1][d][s],myModel.dimInfo.decimals[d]);
-													String curRow[]=new String[]{stratName,dimName,mean+"",lb+"",ub+""};
-													curTable.addRow(curRow);
-												}
-											}
-											curTable.print();
-											
-											if(myModel.dimInfo.analysisType==1) { //CEA - get mean ICERS
-												printCEAResults(console, g+1);
-											}
-											else if(myModel.dimInfo.analysisType==2) { //BCA - get mean NMB
-												printBCAResults(console, g+1);
-											}
-											
-											
-										}
 										
-										if(myModel.simType==1 && myModel.displayIndResults==true){
-											console.print("\nIndividual-level Results:\n");
-											RunReportSummary summary=new RunReportSummary(reports);
-											for(int s=0; s<numStrat; s++){
-												console.print("Strategy: "+myModel.strategyNames[s]+"\n");
-												summary.microStatsSummary[s].printSummary(console);
-											}
-											
-											//subgroups
-											
-											
-											
+									}
+									
+									if(myModel.simType==1 && myModel.displayIndResults==true){
+										console.print("\nIndividual-level Results:\n");
+										RunReportSummary summary=new RunReportSummary(reports);
+										for(int s=0; s<numStrat; s++){
+											console.print("Strategy: "+myModel.strategyNames[s]+"\n");
+											summary.microStatsSummary[s].printSummary(console);
 										}
-										console.newLine();
+										
+										//subgroups
+										
+										
+										
 									}
-									progress.close();
+									console.newLine();
 								}
+								progress.close();
 								frmPSA.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
 								
 							} catch (Exception e) {
 								e.printStackTrace();
+								progress.close();
 								frmPSA.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
 								JOptionPane.showMessageDialog(frmPSA, e.getMessage());
 								myModel.errorLog.recordError(e);
@@ -1155,6 +937,66 @@ public class frmPSA {
 		}
 	}
 
+	/**
+	 * Copies PSA results into the chart arrays
+	 */
+	private void getResults(PSAResults results){
+		int numOutcomes=comboDimensions.getItemCount();
+		int numDim=myModel.dimInfo.dimNames.length;
+		int analysisType=myModel.dimInfo.analysisType;
+		numSubgroups=Outcomes.getNumSubgroups(myModel);
+		
+		if(analysisType==1){CEAnotes=new String[1+numSubgroups][numStrat][numIterations];} //CEA
+		else{CEAnotes=null;}
+		
+		dataResultsIter=new double[1+numSubgroups][numOutcomes][numStrat][2][numIterations];
+		dataResultsVal=new double[1+numSubgroups][numOutcomes][numStrat][2][numIterations];
+		dataResultsCumDens=new double[1+numSubgroups][numOutcomes][numStrat][2][numIterations];
+
+		dataParamsIter=new double[numParams][2][numIterations];
+		dataParamsVal=new double[numParams][2][numIterations];
+		dataParamsCumDens=new double[numParams][2][numIterations];
+
+		dataScatterAbs=new double[1+numSubgroups][numStrat][2][numIterations];
+		dataScatterRel=new double[1+numSubgroups][numStrat][2][numIterations];
+		
+		dataCEAC=new double[numStrat][][];
+		
+		//CE plane baseline: base scenario for CEA, first strategy for BCA
+		int baseIndex=0;
+		if(analysisType==1){baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);}
+		
+		for(int n=0; n<numIterations; n++){
+			for(int v=0; v<numParams; v++){
+				dataParamsIter[v][0][n]=n; dataParamsVal[v][0][n]=n;
+				dataParamsIter[v][1][n]=results.paramValues[v][n]; dataParamsVal[v][1][n]=results.paramValues[v][n];
+			}
+			Outcomes curOutcomes=results.outcomes[n];
+			for(int g=0; g<numSubgroups+1; g++){
+				for(int d=0; d<numOutcomes; d++){
+					for(int s=0; s<numStrat; s++){
+						double curOutcome=curOutcomes.values[g][d][s];
+						dataResultsIter[g][d][s][0][n]=n; dataResultsVal[g][d][s][0][n]=n;
+						dataResultsIter[g][d][s][1][n]=curOutcome; dataResultsVal[g][d][s][1][n]=curOutcome;
+					}
+				}
+				if(analysisType>0){ //CEA or BCA
+					double baseCost=curOutcomes.getCost(g, baseIndex);
+					double baseBenefit=curOutcomes.getEffect(g, baseIndex);
+					for(int s=0; s<numStrat; s++){
+						if(analysisType==1){CEAnotes[g][s][n]=curOutcomes.notes[g][s];}
+						double cost=curOutcomes.getCost(g, s);
+						double benefit=curOutcomes.getEffect(g, s);
+						dataScatterAbs[g][s][0][n]=benefit;
+						dataScatterAbs[g][s][1][n]=cost;
+						dataScatterRel[g][s][0][n]=benefit-baseBenefit;
+						dataScatterRel[g][s][1][n]=cost-baseCost;
+					}
+				}
+			}
+		}
+	}
+	
 	public void updateResultsChart(){
 		DimInfo info=myModel.dimInfo;
 		int dim=comboDimensions.getSelectedIndex();
@@ -108,6 +108,9 @@ public class frmProperties {
 	JLabel lblCohortSize;
 	private JTextField textCohortSize;
 	JCheckBox chckbxCRN;
+	JCheckBox chckbxRNGStreams;
+	JCheckBox chckbxDirectSampling;
+	JCheckBox chckbxBatchSim;
 	private JTextField textCRNSeed;
 	JCheckBox chckbxDisplayIndResults;
 	JCheckBox chckbxMultithread;
@@ -456,6 +459,9 @@ public class frmProperties {
 						chckbxCRN.setEnabled(false);
 						textCRNSeed.setEnabled(false);
 						chckbxDisplayIndResults.setEnabled(false);
+						chckbxRNGStreams.setEnabled(false);
+						chckbxDirectSampling.setEnabled(false);
+						chckbxBatchSim.setEnabled(false);
 						tabbedPane.setEnabledAt(4, false); //no subgroups
 					}
 					else if(selected==1){ //Monte Carlo
@@ -464,6 +470,9 @@ public class frmProperties {
 						if(chckbxCRN.isSelected()){textCRNSeed.setEnabled(true);}
 						else{textCRNSeed.setEnabled(false);}
 						chckbxDisplayIndResults.setEnabled(true);
+						chckbxRNGStreams.setEnabled(true);
+						chckbxDirectSampling.setEnabled(true);
+						chckbxBatchSim.setEnabled(true);
 						tabbedPane.setEnabledAt(4, true);
 					}
 				}
@@ -514,6 +523,24 @@ public class frmProperties {
 			chckbxDisplayIndResults.setEnabled(false);
 			chckbxDisplayIndResults.setBounds(15, 105, 193, 18);
 			panelSimulation.add(chckbxDisplayIndResults);
+			
+			chckbxRNGStreams = new JCheckBox("Per-person RNG streams");
+			chckbxRNGStreams.setToolTipText("Same results for any number of threads");
+			chckbxRNGStreams.setEnabled(false);
+			chckbxRNGStreams.setBounds(230, 78, 200, 18);
+			panelSimulation.add(chckbxRNGStreams);
+			
+			chckbxDirectSampling = new JCheckBox("Fast sampling");
+			chckbxDirectSampling.setToolTipText("Direct sampling (not inverse CDF) - faster, but draws are not coupled by seeding");
+			chckbxDirectSampling.setEnabled(false);
+			chckbxDirectSampling.setBounds(230, 105, 200, 18);
+			panelSimulation.add(chckbxDirectSampling);
+			
+			chckbxBatchSim = new JCheckBox("Batch evaluation");
+			chckbxBatchSim.setToolTipText("Markov: evaluate nodes for all people in a state at once");
+			chckbxBatchSim.setEnabled(false);
+			chckbxBatchSim.setBounds(230, 132, 200, 18);
+			panelSimulation.add(chckbxBatchSim);
 						
 			lblThreads = new JLabel("threads");
 			lblThreads.setEnabled(false);
@@ -808,6 +835,9 @@ public class frmProperties {
 			textCRNSeed.setText(myModel.crnSeed+"");
 		}
 		chckbxDisplayIndResults.setSelected(myModel.displayIndResults);
+		chckbxRNGStreams.setSelected(myModel.rngStreams);
+		chckbxDirectSampling.setSelected(myModel.directSampling);
+		chckbxBatchSim.setSelected(myModel.batchSim);
 		if(myModel.numThreads>1){
 			chckbxMultithread.setSelected(true);
 			textNumThreads.setText(myModel.numThreads+"");
@@ -1048,6 +1078,9 @@ public class frmProperties {
 		boolean CRN=false;
 		int crnSeed=-1;
 		boolean displayIndResults=false;
+		boolean rngStreams=false;
+		boolean directSampling=false;
+		boolean batchSim=false;
 		int numThreads=1;
 		if(simType==0){ //Cohort
 			try{
@@ -1077,6 +1110,9 @@ public class frmProperties {
 			
 			CRN=chckbxCRN.isSelected(); //CRN
 			displayIndResults=chckbxDisplayIndResults.isSelected();
+			rngStreams=chckbxRNGStreams.isSelected();
+			directSampling=chckbxDirectSampling.isSelected();
+			batchSim=chckbxBatchSim.isSelected();
 			if(CRN){ //get seed
 				try{
 					String text=textCRNSeed.getText().replaceAll(",",""); //remove commas
@@ -1206,6 +1242,9 @@ public class frmProperties {
 			myModel.CRN=CRN;
 			myModel.crnSeed=crnSeed;
 			myModel.displayIndResults=displayIndResults;
+			myModel.rngStreams=rngStreams;
+			myModel.directSampling=directSampling;
+			myModel.batchSim=batchSim;
 			myModel.numThreads=numThreads;
 			
 			//markov settings
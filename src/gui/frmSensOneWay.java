@@ -28,6 +28,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.awt.event.ActionEvent;
 
 import javax.swing.DefaultComboBoxModel;
@@ -51,12 +52,14 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
+import analysis.GridListener;
+import analysis.OneWayEngine;
+import analysis.OneWayResults;
+import analysis.Outcomes;
 import base.AmuaModel;
 import filters.CSVFilter;
-import main.CEAHelper;
 import main.DimInfo;
 import main.Parameter;
-import math.Numeric;
 
 import javax.swing.border.LineBorder;
 
@@ -69,6 +72,7 @@ import javax.swing.ListSelectionModel;
 import javax.swing.ProgressMonitor;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 
 /**
  *
@@ -92,6 +96,7 @@ public class frmSensOneWay {
 	int numSubgroups=0;
 	double resultsGroup[][][][][];
 	private JTextField textIntervals;
+	private JTextField textThreads;
 	String CEAnotes[][], CEAnotesGroup[][][];
 	Parameter curParam;
 	double baselineParamValue;
@@ -209,7 +214,7 @@ public class frmSensOneWay {
 			panel_1.add(panel_2, gbc_panel_2);
 
 			JButton btnRun = new JButton("Run");
-			btnRun.setBounds(184, 5, 90, 28);
+			btnRun.setBounds(264, 5, 90, 28);
 			panel_2.add(btnRun);
 
 			final JButton btnExport = new JButton("Export");
@@ -331,6 +336,17 @@ public class frmSensOneWay {
 			textIntervals.setBounds(62, 5, 55, 28);
 			panel_2.add(textIntervals);
 			textIntervals.setColumns(10);
+			
+			JLabel lblThreads = new JLabel("Threads:");
+			lblThreads.setBounds(126, 11, 55, 16);
+			panel_2.add(lblThreads);
+			
+			textThreads = new JTextField();
+			textThreads.setHorizontalAlignment(SwingConstants.CENTER);
+			textThreads.setText("1");
+			textThreads.setBounds(180, 5, 55, 28);
+			panel_2.add(textThreads);
+			textThreads.setColumns(10);
 
 
 			btnRun.addActionListener(new ActionListener() {
@@ -367,177 +383,51 @@ public class frmSensOneWay {
 								
 								if(proceed==true) {
 									//Get parameter
-									int intervals=Integer.parseInt(textIntervals.getText());
 									int row=tableParams.getSelectedRow();
 									String strMin=(String)tableParams.getValueAt(row, 2);
 									String strMax=(String)tableParams.getValueAt(row, 3);
 									strMin=strMin.replaceAll(",", ""); //Replace any commas
 									strMax=strMax.replaceAll(",", "");
-									double min=Double.parseDouble(strMin);
-									double max=Double.parseDouble(strMax);
-									double step=(max-min)/(intervals*1.0);
 									curParam=myModel.parameters.get(row);
-									curParam.locked=true;
-									Numeric origValue=curParam.value.copy();
-									baselineParamValue=origValue.getValue();
+									baselineParamValue=curParam.value.getValue();
+									//record min/max
+									curParam.sensMin=strMin;
+									curParam.sensMax=strMax;
 									
-									//Test parameter at min and max...
-									boolean error=false;
-									curParam.value.setDouble(min);
-									ArrayList<String> errorsMin=myModel.parseModel();
-									curParam.value.setDouble(max);
-									ArrayList<String> errorsMax=myModel.parseModel();
-									curParam.value=origValue; //Reset
-									if(errorsMin.size()>0){
-										error=true;
-										curParam.locked=false;
-										myModel.validateModelObjects();
-										JOptionPane.showMessageDialog(frmSensOneWay, "Error: Min value");
-									}
-									if(errorsMax.size()>0){
-										error=true;
-										curParam.locked=false;
-										myModel.validateModelObjects();
-										JOptionPane.showMessageDialog(frmSensOneWay, "Error: Max value");
-									}
-
-									if(error==false){
-										boolean cancelled=false;
-										//Run model...
-										numStrat=myModel.getStrategies();
-										int numOutcomes=comboDimensions.getItemCount();
-										int numDim=myModel.dimInfo.dimNames.length;
-										results=new double[numOutcomes][numStrat][2][intervals+1];
-										resultsGroup=new double[numSubgroups][numOutcomes][numStrat][2][intervals+1];
-										progress.setMaximum(intervals+1);
-										int analysisType=myModel.dimInfo.analysisType;
-										if(analysisType==1){ //CEA
-											CEAnotes=new String[numStrat][intervals+1];
-											CEAnotesGroup=new String[numSubgroups][numStrat][intervals+1];
-										}
-										else{
-											CEAnotes=null; CEAnotesGroup=null;
-										}
-										//record min/max
-										curParam.sensMin=strMin;
-										curParam.sensMax=strMax;
-										
-										long startTime=System.currentTimeMillis();
-										
-										boolean origShowTrace=false;
-										if(myModel.type==1) {
-											origShowTrace=myModel.markov.showTrace;
-											myModel.markov.showTrace=false;
-										}
-										
-										for(int i=0; i<=intervals; i++){
-											double curVal=min+(step*i);
-											curParam.value.setDouble(curVal);
-											curParam.locked=true;
-											myModel.parseModel();
-											myModel.runModel(null, false);
-											
-											//Get EVs
-											for(int d=0; d<numDim; d++){
-												for(int s=0; s<numStrat; s++){
-													results[d][s][0][i]=curVal;
-													results[d][s][1][i]=myModel.getStrategyEV(s, d);
-													//subgroups
-													for(int g=0; g<numSubgroups; g++){
-														resultsGroup[g][d][s][0][i]=curVal;
-														resultsGroup[g][d][s][1][i]=myModel.getSubgroupEV(g,s,d);
-													}
-												}
-											}
-											if(analysisType>0){ //CEA or BCA
-												if(analysisType==1){ //CEA
-													//overall
-													Object table[][]=new CEAHelper().calculateICERs(myModel,-1,true);
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														if(origStrat!=-1){
-															results[numDim][origStrat][0][i]=curVal;
-															results[numDim][origStrat][1][i]=(double) table[s][4];
-															CEAnotes[origStrat][i]=(String) table[s][5];
-														}
-													}
-													//subgroups
-													for(int g=0; g<numSubgroups; g++){
-														table=new CEAHelper().calculateICERs(myModel, g, true);
-														for(int s=0; s<table.length; s++){
-															int origStrat=(int) table[s][0];
-															if(origStrat!=-1){
-																resultsGroup[g][numDim][origStrat][0][i]=curVal;
-																resultsGroup[g][numDim][origStrat][1][i]=(double) table[s][4];
-																CEAnotesGroup[g][origStrat][i]=(String) table[s][5];
-															}
-														}
-													}
-												}
-												else if(analysisType==2){
-													Object table[][]=new CEAHelper().calculateNMB(myModel,-1,true);
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														results[numDim][origStrat][0][i]=curVal;
-														results[numDim][origStrat][1][i]=(double) table[s][4];
-													}
-													//subgroups
-													for(int g=0; g<numSubgroups; g++){
-														table=new CEAHelper().calculateNMB(myModel, g, true);
-														for(int s=0; s<table.length; s++){
-															int origStrat=(int) table[s][0];
-															resultsGroup[g][numDim][origStrat][0][i]=curVal;
-															resultsGroup[g][numDim][origStrat][1][i]=(double) table[s][4];
-														}
-													}
+									OneWayEngine engine=new OneWayEngine(myModel,row);
+									engine.min=Double.parseDouble(strMin);
+									engine.max=Double.parseDouble(strMax);
+									engine.intervals=Integer.parseInt(textIntervals.getText());
+									engine.numThreads=Integer.parseInt(textThreads.getText());
+									initResults(engine.intervals+1);
+									engine.listener=new GridListener(){ //update chart as intervals complete
+										public void pointComplete(final int index, final double paramValues[], final Outcomes outcomes){
+											SwingUtilities.invokeLater(new Runnable(){
+												public void run(){
+													setPoint(index,paramValues[0],outcomes);
+													updateChart();
 												}
-											}
-											
-											//Update progress
-											double prog=(i/(intervals*1.0))*100;
-											long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-											remTime=(long) (remTime*(100-prog));
-											remTime=remTime/1000;
-											String seconds = Integer.toString((int)(remTime % 60));
-											String minutes = Integer.toString((int)(remTime/60));
-											if(seconds.length()<2){seconds="0"+seconds;}
-											if(minutes.length()<2){minutes="0"+minutes;}
-											progress.setProgress(i);
-											progress.setNote("Time left: "+minutes+":"+seconds);
-											
-											
-											if(progress.isCanceled()){ //End loop
-												cancelled=true;
-												i=intervals+1;
-											}
-										}
-										//Reset param value
-										curParam.value=origValue;
-										curParam.locked=false;
-										myModel.validateModelObjects();
-										
-										if(myModel.type==1) {
-											myModel.markov.showTrace=origShowTrace;
+											});
 										}
-										
-										if(cancelled==false){
-											updateChart();
-											if(numOutcomes>1){
-												comboDimensions.setEnabled(true);
-											}
-											comboGroup.setEnabled(true);
-											btnExport.setEnabled(true);
+									};
+									OneWayResults oneWay=engine.run(new ProgressMonitorListener(progress));
+									
+									if(oneWay.cancelled==false){
+										getResults(oneWay);
+										updateChart();
+										if(comboDimensions.getItemCount()>1){
+											comboDimensions.setEnabled(true);
 										}
-										progress.close();
+										comboGroup.setEnabled(true);
+										btnExport.setEnabled(true);
 									}
+									progress.close();
 								}
 							} catch (Exception e) {
+								progress.close();
 								myModel.errorLog.recordError(e);
 								e.printStackTrace();
 								JOptionPane.showMessageDialog(frmSensOneWay, e.getMessage());
-								
-								curParam.locked=false;
-								myModel.validateModelObjects();
 							}
 						}
 					};
@@ -597,6 +487,67 @@ public class frmSensOneWay {
 		}
 	}
 	
+	/**
+	 * Copies one-way results into the chart arrays
+	 */
+	private void getResults(OneWayResults oneWay){
+		int numPoints=oneWay.paramValues.length;
+		initResults(numPoints);
+		for(int i=0; i<numPoints; i++){
+			setPoint(i,oneWay.paramValues[i],oneWay.outcomes[i]);
+		}
+	}
+	
+	/**
+	 * Allocates the chart arrays, with no results yet (NaN)
+	 */
+	private void initResults(int numPoints){
+		numStrat=myModel.getStrategies();
+		int numOutcomes=comboDimensions.getItemCount();
+		results=new double[numOutcomes][numStrat][2][numPoints];
+		resultsGroup=new double[numSubgroups][numOutcomes][numStrat][2][numPoints];
+		if(myModel.dimInfo.analysisType==1){ //CEA
+			CEAnotes=new String[numStrat][numPoints];
+			CEAnotesGroup=new String[numSubgroups][numStrat][numPoints];
+		}
+		else{
+			CEAnotes=null; CEAnotesGroup=null;
+		}
+		for(int d=0; d<numOutcomes; d++){
+			for(int s=0; s<numStrat; s++){
+				Arrays.fill(results[d][s][0], Double.NaN); Arrays.fill(results[d][s][1], Double.NaN);
+				for(int g=0; g<numSubgroups; g++){
+					Arrays.fill(resultsGroup[g][d][s][0], Double.NaN); Arrays.fill(resultsGroup[g][d][s][1], Double.NaN);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Copies the results at one interval into the chart arrays
+	 */
+	private void setPoint(int i, double curVal, Outcomes curOutcomes){
+		if(curOutcomes==null){return;} //not run (cancelled)
+		int numOutcomes=comboDimensions.getItemCount();
+		for(int d=0; d<numOutcomes; d++){
+			for(int s=0; s<numStrat; s++){
+				results[d][s][0][i]=curVal;
+				results[d][s][1][i]=curOutcomes.values[0][d][s];
+				//subgroups
+				for(int g=0; g<numSubgroups; g++){
+					resultsGroup[g][d][s][0][i]=curVal;
+					resultsGroup[g][d][s][1][i]=curOutcomes.values[g+1][d][s];
+				}
+			}
+		}
+		if(CEAnotes!=null){
+			for(int s=0; s<numStrat; s++){
+				CEAnotes[s][i]=curOutcomes.notes[0][s];
+				for(int g=0; g<numSubgroups; g++){CEAnotesGroup[g][s][i]=curOutcomes.notes[g+1][s];}
+			}
+		}
+	}
+	
 	private void updateChart(){
 		DimInfo info=myModel.dimInfo;
 		
@@ -512,15 +512,16 @@ public class frmSensOneWayStacked {
 											double step=(max-min)/(intervals*1.0);
 											curParam=myModel.parameters.get(pIndex);
 											paramNames[p]=curParam.name;
-											curParam.locked=true;
 											Numeric origValue=curParam.value.copy();
 											paramValsBase[p]=origValue.getValue();
 
 											boolean error=false;
 											//Test parameter at min and max...
-											curParam.value.setDouble(min);
+											curParam.value=new Numeric(min);
+											curParam.locked=true;
 											ArrayList<String> errorsMin=myModel.parseModel();
-											curParam.value.setDouble(max);
+											curParam.value=new Numeric(max);
+											curParam.locked=true;
 											ArrayList<String> errorsMax=myModel.parseModel();
 											curParam.value=origValue; //Reset
 											if(errorsMin.size()>0){
@@ -543,7 +544,7 @@ public class frmSensOneWayStacked {
 
 												for(int i=0; i<=intervals; i++){
 													double curVal=min+(step*i);
-													curParam.value.setDouble(curVal);
+													curParam.value=new Numeric(curVal);
 													curParam.locked=true;
 													myModel.parseModel();
 													myModel.runModel(null, false);
@@ -37,7 +37,6 @@ import java.awt.geom.Rectangle2D;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
-import java.util.ArrayList;
 
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JButton;
@@ -74,12 +73,13 @@ import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.Range;
 import org.jfree.data.xy.DefaultXYDataset;
 
+import analysis.Outcomes;
+import analysis.TwoWayEngine;
+import analysis.TwoWayResults;
 import base.AmuaModel;
 import filters.CSVFilter;
-import main.CEAHelper;
 import main.DimInfo;
 import main.Parameter;
-import math.Numeric;
 import surface.SurfaceModel;
 import surface.SurfacePanel;
 
@@ -106,6 +106,7 @@ public class frmSensTwoWay {
 	double param1Vals[][], param2Vals[][];
 	SurfaceModel surfaceModel;
 	private JTextField textIntervals;
+	private JTextField textThreads;
 	JComboBox<String> comboMinMax;
 	JLabel lblCEThresh;
 	private JTextField textCEThresh;
@@ -238,7 +239,7 @@ public class frmSensTwoWay {
 			panel_2.add(comboDimensions);
 
 			JButton btnRun = new JButton("Run");
-			btnRun.setBounds(353, 27, 90, 28);
+			btnRun.setBounds(353, 3, 90, 28);
 			panel_2.add(btnRun);
 
 			final JButton btnExport = new JButton("Export");
@@ -331,6 +332,17 @@ public class frmSensTwoWay {
 			textIntervals.setBounds(388, 94, 55, 28);
 			panel_2.add(textIntervals);
 			textIntervals.setColumns(10);
+			
+			JLabel lblThreads = new JLabel("Threads:");
+			lblThreads.setBounds(333, 39, 55, 16);
+			panel_2.add(lblThreads);
+			
+			textThreads = new JTextField();
+			textThreads.setHorizontalAlignment(SwingConstants.CENTER);
+			textThreads.setText("1");
+			textThreads.setBounds(388, 33, 55, 28);
+			panel_2.add(textThreads);
+			textThreads.setColumns(10);
 
 			lblCEThresh = new JLabel("Cost-Effectiveness Threshold:");
 			lblCEThresh.setEnabled(false);
@@ -409,7 +421,6 @@ public class frmSensTwoWay {
 								}
 
 								if(proceed==true) {
-									boolean error=false;
 									//Get parameters
 									int intervals=Integer.parseInt(textIntervals.getText());
 
@@ -435,16 +446,13 @@ public class frmSensTwoWay {
 									curParam2.sensMin=strMin2;
 									curParam2.sensMax=strMax2;
 
-									Numeric origValue1=curParam1.value.copy();
-									Numeric origValue2=curParam2.value.copy();
-									baselineParamValue1=origValue1.getValue();
-									baselineParamValue2=origValue2.getValue();
+									baselineParamValue1=curParam1.value.getValue();
+									baselineParamValue2=curParam2.value.getValue();
 
 									int dim=comboDimensions.getSelectedIndex();
 									DimInfo info=myModel.dimInfo;
 									int analysisType=0; //Analysis type for current 2-way, default EV
 
-									double ceThresh=0;
 									String lblOutcome="";
 									if(info.analysisType==0){ //EV
 										lblOutcome = info.dimNames[dim];
@@ -453,7 +461,6 @@ public class frmSensTwoWay {
 										if(dim==comboDimensions.getItemCount()-1){ //ICER or NMB selected
 											if(info.analysisType==1){
 												lblOutcome="ICER ("+info.dimSymbols[info.costDim]+"/"+info.dimSymbols[info.effectDim]+")";
-												ceThresh=Double.parseDouble(textCEThresh.getText().replaceAll(",", ""));
 												analysisType=1;
 											}
 											else if(info.analysisType==2){
@@ -469,255 +476,126 @@ public class frmSensTwoWay {
 									boolean max=true;
 									if(comboMinMax.getSelectedIndex()==0){max=false;}
 
-									//Test parameters at min and max...
-									curParam1.value.setDouble(min1); curParam2.value.setDouble(min2);
-									curParam1.locked=true; curParam2.locked=true;
-									ArrayList<String> errorsMin=myModel.parseModel();
-									curParam1.value.setDouble(max1); curParam2.value.setDouble(max2);
-									curParam1.locked=true; curParam2.locked=true;
-									ArrayList<String> errorsMax=myModel.parseModel();
-									curParam1.value=origValue1; curParam2.value=origValue2; //Reset
-									if(errorsMin.size()>0){
-										error=true;
-										curParam1.locked=false; curParam2.locked=false;
-										myModel.validateModelObjects();
-										JOptionPane.showMessageDialog(frmSensTwoWay, "Error: Min value");
-									}
-									if(errorsMax.size()>0){
-										error=true;
-										curParam1.locked=false; curParam2.locked=false;
-										myModel.validateModelObjects();
-										JOptionPane.showMessageDialog(frmSensTwoWay, "Error: Max value");
-									}
-
-									if(error==false){
-										boolean cancelled=false;
-										//Run model...
+									//Run model...
+									TwoWayEngine engine=new TwoWayEngine(myModel,row1,row2);
+									engine.min1=min1; engine.max1=max1;
+									engine.min2=min2; engine.max2=max2;
+									engine.intervals=intervals;
+									engine.numThreads=Integer.parseInt(textThreads.getText());
+									TwoWayResults twoWay=engine.run(new ProgressMonitorListener(progress));
 
-										boolean origShowTrace=false;
-										if(myModel.type==1) {
-											origShowTrace=myModel.markov.showTrace;
-											myModel.markov.showTrace=false;
-										}
-
-										int group=-1;
-										if(comboGroup.isEnabled()){group=comboGroup.getSelectedIndex()-1;}
+									if(twoWay.cancelled==false){
+										int group=0; //overall
+										if(comboGroup.isEnabled()){group=comboGroup.getSelectedIndex();}
 
 										int numStrat=myModel.strategyNames.length;
-										//dataEV=new double[numStrat][2][(intervals+1)*(intervals+1)];
 										dataSurface=new double[numStrat][intervals+1][intervals+1];
 										bestStrategy=new int[intervals+1][intervals+1];
 										param1Vals=new double[intervals+1][intervals+1];
 										param2Vals=new double[intervals+1][intervals+1];
-										int numRuns=(intervals+1)*(intervals+1);
-										progress.setMaximum(numRuns);
-
-										long startTime=System.currentTimeMillis();
-
-										int count=0;
 										for(int i=0; i<=intervals; i++){
-											double curVal1=min1+(step1*i);
-											curParam1.value.setDouble(curVal1);
 											for(int j=0; j<=intervals; j++){
-												double curVal2=min2+(step2*j);
-												param1Vals[i][j]=curVal1;
-												param2Vals[i][j]=curVal2;
-												
-												curParam2.value.setDouble(curVal2);
-												curParam1.locked=true; curParam2.locked=true;
-												myModel.parseModel();
-												myModel.runModel(null, false);
-
+												param1Vals[i][j]=twoWay.param1Values[i];
+												param2Vals[i][j]=twoWay.param2Values[j];
+												Outcomes curOutcomes=twoWay.outcomes[i][j];
 												if(analysisType==0){ //EV
 													double maxEV=Double.NEGATIVE_INFINITY;
 													double minEV=Double.POSITIVE_INFINITY;
 													int maxStrat=-1, minStrat=-1;
 													for(int s=0; s<numStrat; s++){
-														//dataEV[s][0][count]=curVal1;
-														//dataEV[s][1][count]=Double.NaN;
-														double curOutcome;
-														if(group==-1){curOutcome=myModel.getStrategyEV(s, dim);}
-														else{curOutcome=myModel.getSubgroupEV(group, s, dim);}
+														double curOutcome=curOutcomes.values[group][dim][s];
 														if(curOutcome>maxEV){maxEV=curOutcome; maxStrat=s;}
 														if(curOutcome<minEV){minEV=curOutcome; minStrat=s;}
 														dataSurface[s][i][j]=curOutcome;
 													}
-													if(max){
-														//dataEV[maxStrat][1][count]=curVal2;
-														bestStrategy[i][j]=maxStrat;
-													}
-													else{
-														//dataEV[minStrat][1][count]=curVal2;
-														bestStrategy[i][j]=minStrat;
-													}
+													if(max){bestStrategy[i][j]=maxStrat;}
+													else{bestStrategy[i][j]=minStrat;}
 												}
 												else { //CEA or BCA
 													//get best strategy
-													double wtp=myModel.dimInfo.WTP;
-													int costDim=myModel.dimInfo.costDim;
-													int effectDim=myModel.dimInfo.effectDim;
 													double maxNMB=Double.NEGATIVE_INFINITY;
 													int bestStrat=-1;
-
 													for(int s=0; s<numStrat; s++) {
-														double cost=0, effect=0;
-														if(group==-1){
-															cost=myModel.getStrategyEV(s, costDim);
-															effect=myModel.getStrategyEV(s, effectDim);
-														}
-														else{
-															cost=myModel.getSubgroupEV(group, s, costDim);
-															effect=myModel.getSubgroupEV(group, s, effectDim);
-														}
-														double curNMB=(effect*wtp)-cost;
+														double curNMB=curOutcomes.getNMB(group, s, myModel.dimInfo.WTP);
 														if(curNMB>maxNMB) {
 															maxNMB=curNMB;
 															bestStrat=s;
 														}
+														dataSurface[s][i][j]=curOutcomes.values[group][dim][s]; //ICER or NMB
 													}
 													bestStrategy[i][j]=bestStrat;
-
-													//get ICERs or NMBs
-													if(analysisType==1){ //CEA
-														Object table[][]=new CEAHelper().calculateICERs(myModel,group,true);
-														double bestICER=Double.NEGATIVE_INFINITY;
-														bestStrat=-1;
-														for(int s=0; s<table.length; s++){	
-															int origStrat=(int) table[s][0];
-															if(origStrat!=-1){
-																//dataEV[origStrat][0][count]=curVal1;
-																//dataEV[origStrat][1][count]=Double.NaN;
-																double curICER=(double)table[s][4];
-																if(curICER>bestICER && curICER<=ceThresh){
-																	bestICER=curICER;
-																	bestStrat=origStrat;
-																}
-																dataSurface[origStrat][i][j]=curICER;
-															}
-														}
-														if(bestStrat!=-1){
-															//dataEV[bestStrat][1][count]=curVal2;
-														}
-													}
-													else if(analysisType==2){ //BCA
-														Object table[][]=new CEAHelper().calculateNMB(myModel,group,true);
-														maxNMB=Double.NEGATIVE_INFINITY;
-														int maxStrat=-1;
-														for(int s=0; s<table.length; s++){	
-															int origStrat=(int) table[s][0];
-															//dataEV[origStrat][0][count]=curVal1;
-															//dataEV[origStrat][1][count]=Double.NaN;
-															double curNMB=(double)table[s][4];
-															if(curNMB>maxNMB){
-																maxNMB=curNMB;
-																maxStrat=origStrat;
-															}
-															dataSurface[origStrat][i][j]=curNMB;
-														}
-														//dataEV[maxStrat][1][count]=curVal2;
-													}
-												}
-
-												count++;
-												//Update progress
-												double prog=(count/(numRuns*1.0))*100;
-												long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-												remTime=(long) (remTime*(100-prog));
-												remTime=remTime/1000;
-												String seconds = Integer.toString((int)(remTime % 60));
-												String minutes = Integer.toString((int)(remTime/60));
-												if(seconds.length()<2){seconds="0"+seconds;}
-												if(minutes.length()<2){minutes="0"+minutes;}
-												progress.setProgress(count);
-												progress.setNote("Time left: "+minutes+":"+seconds);
-
-												if(progress.isCanceled()){ //End loop
-													cancelled=true;
-													j=intervals+1;
-													i=intervals+1;
 												}
 											}
 										}
-										//Reset parameter values
-										curParam1.value=origValue1; curParam2.value=origValue2;
-										curParam1.locked=false; curParam2.locked=false;
-										myModel.validateModelObjects();
-
-										if(myModel.type==1) {
-											myModel.markov.showTrace=origShowTrace;
-										}
-
-										if(cancelled==false){
-											//Update chart
-											chart.getXYPlot().getDomainAxis().setLabel(curParam1.name);
-											chart.getXYPlot().getRangeAxis().setLabel(curParam2.name);
+										
+										//Update chart
+										chart.getXYPlot().getDomainAxis().setLabel(curParam1.name);
+										chart.getXYPlot().getRangeAxis().setLabel(curParam2.name);
 
-											if(chartData.getSeriesCount()>0){
-												for(int s=0; s<numStrat; s++){
-													chartData.removeSeries(myModel.strategyNames[s]);
-												}
-											}
-											
-											double blank[][]=new double[2][1];
-											blank[0][0]=Double.NaN;
-											blank[1][0]=Double.NaN;
-											for(int s=0; s<numStrat; s++){ //add series so legend will be created
-												chartData.addSeries(myModel.strategyNames[s],blank);
-											}
-
-											XYPlot plot = chart.getXYPlot();
-											XYLineAndShapeRenderer renderer1 = new XYLineAndShapeRenderer(false,true);
-											Shape square=new Rectangle(-3,-3,6,6);
-											Paint paints[]=new Paint[numStrat];
-											DefaultDrawingSupplier supplier = new DefaultDrawingSupplier();
+										if(chartData.getSeriesCount()>0){
 											for(int s=0; s<numStrat; s++){
-												paints[s]=supplier.getNextPaint();
-												renderer1.setSeriesPaint(s, paints[s]);
-												renderer1.setSeriesShape(s, square);
-											}
-											plot.setRenderer(renderer1);
-											
-											plot.getDomainAxis().setRange(min1,max1);
-											plot.getRangeAxis().setRange(min2,max2);
-											plot.getDomainAxis().setDefaultAutoRange(new Range(min1,max1));
-											plot.getRangeAxis().setDefaultAutoRange(new Range(min2,max2));
-																																	
-											plot.clearAnnotations();
-											double w1=step1, w2=step2;
-											
-											for(int i=0; i<=intervals; i++){
-												double curVal1=min1+(step1*i);
-												for(int j=0; j<=intervals; j++){
-													double curVal2=min2+(step2*j);
-													Shape shape =  new Rectangle.Double(curVal1-w1/2.0, curVal2-w2/2.0, w1, w2);
-													XYShapeAnnotation annotation=new XYShapeAnnotation(shape,new BasicStroke(1.f),Color.LIGHT_GRAY,paints[bestStrategy[i][j]]);
-													plot.addAnnotation(annotation);
-												}
+												chartData.removeSeries(myModel.strategyNames[s]);
 											}
+										}
+										
+										double blank[][]=new double[2][1];
+										blank[0][0]=Double.NaN;
+										blank[1][0]=Double.NaN;
+										for(int s=0; s<numStrat; s++){ //add series so legend will be created
+											chartData.addSeries(myModel.strategyNames[s],blank);
+										}
 
-											//add baseline value
-											XYLineAnnotation annotation=new XYLineAnnotation(baselineParamValue1,baselineParamValue2-w2/4.0,baselineParamValue1,baselineParamValue2+w2/4.0, new BasicStroke(3.f),Color.black);
-											plot.addAnnotation(annotation);
-											
-											XYLineAnnotation annotation1=new XYLineAnnotation(baselineParamValue1-w1/4.0,baselineParamValue2,baselineParamValue1+w1/4.0,baselineParamValue2, new BasicStroke(3.f),Color.black);
-											plot.addAnnotation(annotation1);
-											
-
-											//Update surface chart
-											int strat=comboStrategy.getSelectedIndex();
-											surfaceModel = new SurfaceModel(dataSurface,strat,intervals,min1,max1,min2,max2,curParam1.name,curParam2.name,lblOutcome);
-											surfacePanel.setModel(surfaceModel);
-											surfacePanel.repaint();
-
-											btnExport.setEnabled(true);
-											tabbedPane.setEnabledAt(1, true);
+										XYPlot plot = chart.getXYPlot();
+										XYLineAndShapeRenderer renderer1 = new XYLineAndShapeRenderer(false,true);
+										Shape square=new Rectangle(-3,-3,6,6);
+										Paint paints[]=new Paint[numStrat];
+										DefaultDrawingSupplier supplier = new DefaultDrawingSupplier();
+										for(int s=0; s<numStrat; s++){
+											paints[s]=supplier.getNextPaint();
+											renderer1.setSeriesPaint(s, paints[s]);
+											renderer1.setSeriesShape(s, square);
+										}
+										plot.setRenderer(renderer1);
+										
+										plot.getDomainAxis().setRange(min1,max1);
+										plot.getRangeAxis().setRange(min2,max2);
+										plot.getDomainAxis().setDefaultAutoRange(new Range(min1,max1));
+										plot.getRangeAxis().setDefaultAutoRange(new Range(min2,max2));
+																																
+										plot.clearAnnotations();
+										double w1=step1, w2=step2;
+										
+										for(int i=0; i<=intervals; i++){
+											double curVal1=min1+(step1*i);
+											for(int j=0; j<=intervals; j++){
+												double curVal2=min2+(step2*j);
+												Shape shape =  new Rectangle.Double(curVal1-w1/2.0, curVal2-w2/2.0, w1, w2);
+												XYShapeAnnotation annotation=new XYShapeAnnotation(shape,new BasicStroke(1.f),Color.LIGHT_GRAY,paints[bestStrategy[i][j]]);
+												plot.addAnnotation(annotation);
+											}
 										}
-										progress.close();
+
+										//add baseline value
+										XYLineAnnotation annotation=new XYLineAnnotation(baselineParamValue1,baselineParamValue2-w2/4.0,baselineParamValue1,baselineParamValue2+w2/4.0, new BasicStroke(3.f),Color.black);
+										plot.addAnnotation(annotation);
+										
+										XYLineAnnotation annotation1=new XYLineAnnotation(baselineParamValue1-w1/4.0,baselineParamValue2,baselineParamValue1+w1/4.0,baselineParamValue2, new BasicStroke(3.f),Color.black);
+										plot.addAnnotation(annotation1);
+										
+
+										//Update surface chart
+										int strat=comboStrategy.getSelectedIndex();
+										surfaceModel = new SurfaceModel(dataSurface,strat,intervals,min1,max1,min2,max2,curParam1.name,curParam2.name,lblOutcome);
+										surfacePanel.setModel(surfaceModel);
+										surfacePanel.repaint();
+
+										btnExport.setEnabled(true);
+										tabbedPane.setEnabledAt(1, true);
 									}
+									progress.close();
 								}
 							} catch (Exception e) {
-								curParam1.locked=false; curParam2.locked=false;
-								myModel.validateModelObjects();
+								progress.close();
 								e.printStackTrace();
 								JOptionPane.showMessageDialog(frmSensTwoWay, e.getMessage());
 								myModel.errorLog.recordError(e);
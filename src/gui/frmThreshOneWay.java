@@ -48,12 +48,13 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
+import analysis.Outcomes;
+import analysis.ThresholdEngine;
+import analysis.ThresholdResults;
 import base.AmuaModel;
-import main.CEAHelper;
 import main.DimInfo;
 import main.Parameter;
 import math.MathUtils;
-import math.Numeric;
 
 import javax.swing.border.LineBorder;
 
@@ -85,6 +86,7 @@ public class frmThreshOneWay {
 	double dataEV[][][];
 	private JTextField textThresh;
 	private JTextField textIntervals;
+	private JTextField textThreads;
 	String CEAnotes[][];
 	Parameter curParam;
 	private JTextField textTolerance;
@@ -248,9 +250,20 @@ public class frmThreshOneWay {
 			
 			final JComboBox<String> comboGroup = new JComboBox<String>(new DefaultComboBoxModel(new String[]{"Overall"}));
 			comboGroup.setEnabled(false);
-			comboGroup.setBounds(88, 98, 227, 26);
+			comboGroup.setBounds(88, 98, 130, 26);
 			panel_2.add(comboGroup);
 			
+			JLabel lblThreads = new JLabel("Threads:");
+			lblThreads.setBounds(226, 103, 55, 16);
+			panel_2.add(lblThreads);
+			
+			textThreads = new JTextField();
+			textThreads.setHorizontalAlignment(SwingConstants.CENTER);
+			textThreads.setText("1");
+			textThreads.setBounds(280, 98, 35, 26);
+			panel_2.add(textThreads);
+			textThreads.setColumns(10);
+			
 			JLabel lblTolerance = new JLabel("Tolerance:");
 			lblTolerance.setBounds(327, 44, 66, 16);
 			panel_2.add(lblTolerance);
@@ -348,20 +361,15 @@ public class frmThreshOneWay {
 								
 								if(proceed==true){
 									//Get parameter
-									int intervals=Integer.parseInt(textIntervals.getText());
 									int row=tableParams.getSelectedRow();
 									String strMin=(String)tableParams.getValueAt(row, 2);
 									String strMax=(String)tableParams.getValueAt(row, 3);
 									strMin=strMin.replaceAll(",", ""); //Replace any commas
 									strMax=strMax.replaceAll(",", ""); 
-									double min=Double.parseDouble(strMin);
-									double max=Double.parseDouble(strMax);
-									double step=(max-min)/(intervals*1.0);
 									curParam=myModel.parameters.get(row);
 									curParam.sensMin=strMin; //record min/max
 									curParam.sensMax=strMax;
-									Numeric origValue=curParam.value.copy();
-									baselineParamValue=origValue.getValue();
+									baselineParamValue=curParam.value.getValue();
 									
 									int dim=comboDimensions.getSelectedIndex();
 									int decimalDim=dim;
@@ -373,278 +381,78 @@ public class frmThreshOneWay {
 										}
 									} 
 									
-									int group=-1;
-									if(comboGroup.isEnabled()){group=comboGroup.getSelectedIndex()-1;}
+									ThresholdEngine engine=new ThresholdEngine(myModel,row);
+									engine.min=Double.parseDouble(strMin);
+									engine.max=Double.parseDouble(strMax);
+									engine.intervals=Integer.parseInt(textIntervals.getText());
+									engine.numThreads=Integer.parseInt(textThreads.getText());
+									engine.strat1=strat1;
+									engine.strat2=strat2;
+									engine.outcome=dim;
+									if(comboGroup.isEnabled()){engine.group=comboGroup.getSelectedIndex();}
+									engine.tol=tol;
+									frmThreshOneWay.setCursor(new Cursor(Cursor.WAIT_CURSOR));
+									ThresholdResults thresh=engine.run(new ProgressMonitorListener(progress));
+									frmThreshOneWay.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
 									
-									boolean error=false;
-									//Test parameter at min and max...
-									curParam.value.setDouble(min);
-									curParam.locked=true;
-									ArrayList<String> errorsMin=myModel.parseModel();
-									curParam.value.setDouble(max);
-									curParam.locked=true;
-									ArrayList<String> errorsMax=myModel.parseModel();
-									curParam.value=origValue; //Reset
-									if(errorsMin.size()>0){
-										error=true;
-										curParam.locked=false;
-										myModel.validateModelObjects();
-										JOptionPane.showMessageDialog(frmThreshOneWay, "Error: Min value");
-									}
-									if(errorsMax.size()>0){
-										error=true;
-										curParam.locked=false;
-										myModel.validateModelObjects();
-										JOptionPane.showMessageDialog(frmThreshOneWay, "Error: Max value");
-									}
-
-									if(error==false){
-										boolean cancelled=false;
-										//Run model...
-										int numStrat=myModel.strategyNames.length;
-										double minDist=Double.POSITIVE_INFINITY;
-										int minIndex=-1;
-
-										dataEV=new double[numStrat][2][intervals+1];
-										progress.setMaximum(intervals+1);
-										if(analysisType==1){CEAnotes=new String[numStrat][intervals+1];} //CEA
-										else{CEAnotes=null;}
-										
-										boolean origShowTrace=false;
-										if(myModel.type==1) {
-											origShowTrace=myModel.markov.showTrace;
-											myModel.markov.showTrace=false;
+									if(thresh.cancelled==false){
+										if(thresh.crossed==false){
+											JOptionPane.showMessageDialog(frmThreshOneWay, "No intersection found in current range!");
 										}
-										
-										double diffs[]=new double[intervals+1];
-										for(int i=0; i<=intervals; i++){
-											double curVal=min+(step*i);
-											curParam.value.setDouble(curVal);
-											curParam.locked=true;
-											myModel.parseModel();
-											myModel.runModel(null, false);
-											
-											if(analysisType==0){ //EV
-												for(int s=0; s<numStrat; s++){
-													dataEV[s][0][i]=curVal;
-													if(group==-1){dataEV[s][1][i]=myModel.getStrategyEV(s, dim);}
-													else{dataEV[s][1][i]=myModel.getSubgroupEV(group, s, dim);}
-												}
-											}
-											else if(analysisType==1){ //CEA
-												Object table[][]=new CEAHelper().calculateICERs(myModel,group,true);
-												for(int s=0; s<table.length; s++){	
-													int origStrat=(int) table[s][0];
-													if(origStrat!=-1){
-														dataEV[origStrat][0][i]=curVal;
-														dataEV[origStrat][1][i]=(double) table[s][4];
-														CEAnotes[origStrat][i]=(String) table[s][5];
-													}
-												}
-											}
-											else if(analysisType==2){ //BCA
-												Object table[][]=new CEAHelper().calculateNMB(myModel,group,true);
-												for(int s=0; s<table.length; s++){	
-													int origStrat=(int) table[s][0];
-													dataEV[origStrat][0][i]=curVal;
-													dataEV[origStrat][1][i]=(double) table[s][4];
-												}
-											}
-											
-											
-											diffs[i]=dataEV[strat1][1][i]-dataEV[strat2][1][i];
-											double curDist=Math.abs(diffs[i]);
-											if(curDist<minDist){
-												minDist=curDist;
-												minIndex=i;
-											}
-											progress.setProgress(i);
-											if(progress.isCanceled()){ //End loop
-												cancelled=true;
-												i=intervals+1;
-											}
+										else if(Double.isNaN(thresh.intersection)){
+											JOptionPane.showMessageDialog(frmThreshOneWay, "No intersection found! Try increasing tolerance.");
 										}
-
-										if(cancelled==false){
-											//Find intersection
-											double intersection=Double.NaN;
-											if(minDist==0){ //Intersection coincides with interval
-												intersection=dataEV[0][0][minIndex];
-											}
-											else{ //No exact intersection found
-												//Check if lines cross
-												boolean cross=false;
-												for(int i=1; i<=intervals; i++) {
-													if(Math.signum(diffs[i-1])!=Math.signum(diffs[i])) {
-														cross=true;
-													}
-												}
-												if(cross==false) {
-													JOptionPane.showMessageDialog(frmThreshOneWay, "No intersection found in current range!");
-												}
-												else{ //Search neighbourhood for intersection
-													frmThreshOneWay.setCursor(new Cursor(Cursor.WAIT_CURSOR));
-													
-													double minVal=dataEV[0][0][minIndex];
-													//if min dist is at either extreme move to the midpoint of the interval
-													//if(minIndex==0) {minVal+=(step/2.0);}
-													//else if(minIndex==intervals) {minVal-=(step/2.0);}
-													
-													int dec=myModel.dimInfo.decimals[decimalDim]+1;
-													int i=0;
-													progress.setMaximum(100);
-													while(minDist>tol && i<100){ //Binary search of neighbourhood until convergence
-														progress.setProgress(i);
-														progress.setNote("Distance: "+MathUtils.round(minDist, dec));
-														
-														//Left
-														double valL=minVal-(step/2.0);
-														valL=Math.max(valL, min); //floor of min
-														curParam.value.setDouble(valL);
-														curParam.locked=true;
-														myModel.parseModel();
-														myModel.runModel(null, false);
-														
-														double result1L=0, result2L=0;
-														if(analysisType==0){ //EV
-															if(group==-1){
-																result1L=myModel.getStrategyEV(strat1, dim);
-																result2L=myModel.getStrategyEV(strat2, dim);
-															}
-															else{
-																result1L=myModel.getSubgroupEV(group,strat1, dim);
-																result2L=myModel.getSubgroupEV(group,strat2, dim);
-															}
-														}
-														else if(analysisType==1){ //CEA
-															Object table[][]=new CEAHelper().calculateICERs(myModel,group,true);
-															for(int s=0; s<table.length; s++){	
-																int origStrat=(int) table[s][0];
-																if(origStrat==strat1){result1L=(double) table[s][4];}
-																if(origStrat==strat2){result2L=(double) table[s][4];}
-															}
-														}
-														else if(analysisType==2){ //BCA
-															Object table[][]=new CEAHelper().calculateNMB(myModel,group,true);
-															for(int s=0; s<table.length; s++){	
-																int origStrat=(int) table[s][0];
-																if(origStrat==strat1){result1L=(double) table[s][4];}
-																if(origStrat==strat2){result2L=(double) table[s][4];}
-															}
-														}
-														double distL=Math.abs(result1L-result2L);
-														
-														//Right
-														double valR=minVal+(step/2.0);
-														valR=Math.min(valR, max); //ceiling of max
-														curParam.value.setDouble(valR);
-														curParam.locked=true;
-														myModel.parseModel();
-														myModel.runModel(null, false);
-														
-														double result1R=0, result2R=0;
-														if(analysisType==0){ //EV
-															if(group==-1){
-																result1R=myModel.getStrategyEV(strat1, dim);
-																result2R=myModel.getStrategyEV(strat2, dim);
-															}
-															else{
-																result1R=myModel.getSubgroupEV(group,strat1, dim);
-																result2R=myModel.getSubgroupEV(group,strat2, dim);
-															}
-														}
-														else if(analysisType==1){ //CEA
-															Object table[][]=new CEAHelper().calculateICERs(myModel,group,true);
-															for(int s=0; s<table.length; s++){	
-																int origStrat=(int) table[s][0];
-																if(origStrat==strat1){result1R=(double) table[s][4];}
-																if(origStrat==strat2){result2R=(double) table[s][4];}
-															}
-														}
-														else if(analysisType==2){ //BCA
-															Object table[][]=new CEAHelper().calculateNMB(myModel,group,true);
-															for(int s=0; s<table.length; s++){	
-																int origStrat=(int) table[s][0];
-																if(origStrat==strat1){result1R=(double) table[s][4];}
-																if(origStrat==strat2){result2R=(double) table[s][4];}
-															}
-														}
-														double distR=Math.abs(result1R-result2R);
-														
-														//Move to lowest dist (or stay)
-														if(distL<minDist){
-															minVal=valL;
-															minDist=distL;
-														}
-														if(distR<minDist){
-															minVal=valR;
-															minDist=distR;
-														}
-														step/=2.0;
-														
-														i++;
-														if(progress.isCanceled()){ //End loop
-															cancelled=true;
-															i=1000; //end
-														}
-													}
-													if(minDist<tol){ //Convergence achieved
-														intersection=minVal;
-													}
-													else{
-														JOptionPane.showMessageDialog(frmThreshOneWay, "No intersection found! Try increasing tolerance.");
-													}
-													frmThreshOneWay.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
-												}
-											}
-											textThresh.setText(MathUtils.round(intersection,myModel.dimInfo.decimals[decimalDim])+"");
-
-											//Update chart
-											DimInfo info=myModel.dimInfo;
-											chart.getXYPlot().getDomainAxis().setLabel(curParam.name);
-											if(analysisType==0){chart.getXYPlot().getRangeAxis().setLabel("EV ("+info.dimSymbols[dim]+")");}
-											else if(analysisType==1){chart.getXYPlot().getRangeAxis().setLabel("ICER ("+info.dimSymbols[info.costDim]+"/"+info.dimSymbols[info.effectDim]+")");}
-											else if(analysisType==2){chart.getXYPlot().getRangeAxis().setLabel("NMB ("+info.dimSymbols[info.effectDim]+"-"+info.dimSymbols[info.costDim]+")");}
-											
-											if(chartData.getSeriesCount()>0){
-												for(int s=0; s<numStrat; s++){
-													chartData.removeSeries(myModel.strategyNames[s]);
-												}
-											}
+										textThresh.setText(MathUtils.round(thresh.intersection,myModel.dimInfo.decimals[decimalDim])+"");
+										
+										//Get results
+										int numStrat=myModel.strategyNames.length;
+										int numPoints=thresh.paramValues.length;
+										dataEV=new double[numStrat][2][numPoints];
+										if(analysisType==1){CEAnotes=new String[numStrat][numPoints];} //CEA
+										else{CEAnotes=null;}
+										for(int i=0; i<numPoints; i++){
+											Outcomes curOutcomes=thresh.outcomes[i];
 											for(int s=0; s<numStrat; s++){
-												chartData.addSeries(myModel.strategyNames[s],dataEV[s]);
+												dataEV[s][0][i]=thresh.paramValues[i];
+												dataEV[s][1][i]=curOutcomes.values[engine.group][dim][s];
+												if(CEAnotes!=null){CEAnotes[s][i]=curOutcomes.notes[engine.group][s];}
 											}
-											XYPlot plot = chart.getXYPlot();
-
-											XYLineAndShapeRenderer renderer1 = new XYLineAndShapeRenderer(true,false);
-											DefaultDrawingSupplier supplier = new DefaultDrawingSupplier();
+										}
+										
+										//Update chart
+										DimInfo info=myModel.dimInfo;
+										chart.getXYPlot().getDomainAxis().setLabel(curParam.name);
+										if(analysisType==0){chart.getXYPlot().getRangeAxis().setLabel("EV ("+info.dimSymbols[dim]+")");}
+										else if(analysisType==1){chart.getXYPlot().getRangeAxis().setLabel("ICER ("+info.dimSymbols[info.costDim]+"/"+info.dimSymbols[info.effectDim]+")");}
+										else if(analysisType==2){chart.getXYPlot().getRangeAxis().setLabel("NMB ("+info.dimSymbols[info.effectDim]+"-"+info.dimSymbols[info.costDim]+")");}
+										
+										if(chartData.getSeriesCount()>0){
 											for(int s=0; s<numStrat; s++){
-												renderer1.setSeriesPaint(s, supplier.getNextPaint());
+												chartData.removeSeries(myModel.strategyNames[s]);
 											}
-											plot.setRenderer(renderer1);
-											
-											//add baseline marker
-											plot.clearDomainMarkers();
-											Stroke fill = new BasicStroke(1f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{10.0f, 10.0f}, 0);
-											plot.addDomainMarker(new ValueMarker(baselineParamValue, Color.BLACK, fill));
 										}
+										for(int s=0; s<numStrat; s++){
+											chartData.addSeries(myModel.strategyNames[s],dataEV[s]);
+										}
+										XYPlot plot = chart.getXYPlot();
 
-										//Reset param value
-										curParam.value=origValue;
-										curParam.locked=false;
-										myModel.validateModelObjects();
-										
-										if(myModel.type==1) {
-											myModel.markov.showTrace=origShowTrace;
+										XYLineAndShapeRenderer renderer1 = new XYLineAndShapeRenderer(true,false);
+										DefaultDrawingSupplier supplier = new DefaultDrawingSupplier();
+										for(int s=0; s<numStrat; s++){
+											renderer1.setSeriesPaint(s, supplier.getNextPaint());
 										}
+										plot.setRenderer(renderer1);
 										
-										progress.close();
+										//add baseline marker
+										plot.clearDomainMarkers();
+										Stroke fill = new BasicStroke(1f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{10.0f, 10.0f}, 0);
+										plot.addDomainMarker(new ValueMarker(baselineParamValue, Color.BLACK, fill));
 									}
+									progress.close();
 								}
 							} catch (Exception e) {
+								progress.close();
 								frmThreshOneWay.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
-								curParam.locked=false;
-								myModel.validateModelObjects();
 								e.printStackTrace();
 								JOptionPane.showMessageDialog(frmThreshOneWay, e.getMessage());
 								myModel.errorLog.recordError(e);
@@ -369,7 +369,7 @@ public class frmTornadoDiagramOLD {
 											double minOutcome=baseOutcome, maxOutcome=baseOutcome;
 
 											//Min
-											curParam.value.setDouble(min);
+											curParam.value=new Numeric(min);
 											curParam.locked=true;
 											ArrayList<String> errorsMin=myModel.parseModel();
 											if(errorsMin.size()>0){
@@ -410,7 +410,7 @@ public class frmTornadoDiagramOLD {
 											result.minVal=minOutcome;
 
 											//Max
-											curParam.value.setDouble(max);
+											curParam.value=new Numeric(max);
 											curParam.locked=true;
 											ArrayList<String> errorsMax=myModel.parseModel();
 											if(errorsMax.size()>0){
@@ -20,7 +20,6 @@ package gui;
 
 import javax.swing.JFrame;
 import javax.swing.JScrollPane;
-import java.util.ArrayList;
 import java.awt.GridBagLayout;
 import java.awt.GridBagConstraints;
 import java.awt.Insets;
@@ -46,6 +45,7 @@ import filters.CSVFilter;
 import main.ErrorLog;
 import main.ScaledIcon;
 import markov.MarkovTrace;
+import markov.TraceColumn;
 
 import javax.swing.border.LineBorder;
 import java.awt.Color;
@@ -142,7 +142,7 @@ public class frmTraceMulti {
 					int selected=comboGroup.getSelectedIndex();
 					if(selected<=0){curTrace=runReport.markovTraces.get(chainIndex);}
 					else{curTrace=runReport.markovTracesGroup[selected-1].get(chainIndex);}
-					table.setModel(curTrace.modelTraceRounded);
+					table.setModel(curTrace.getTableModel());
 					updateChart(comboPlot.getSelectedIndex());
 				}
 			});
@@ -181,7 +181,7 @@ public class frmTraceMulti {
 					else{
 						curTrace=runReport.markovTracesGroup[selected-1].get(chainIndex);
 					}
-					table.setModel(curTrace.modelTraceRounded);
+					table.setModel(curTrace.getTableModel());
 					
 					updateChart(comboPlot.getSelectedIndex());
 				}
@@ -235,19 +235,19 @@ public class frmTraceMulti {
 							BufferedWriter out = new BufferedWriter(fstream);
 							
 							//Write headers
-							int numCol=curTrace.modelTraceRounded.getColumnCount();
-							int numRow=curTrace.modelTraceRounded.getRowCount();
+							int numCol=curTrace.getTableModel().getColumnCount();
+							int numRow=curTrace.getTableModel().getRowCount();
 							for(int c=0; c<numCol-1; c++){
-								out.write(curTrace.modelTraceRounded.getColumnName(c)+",");
+								out.write(curTrace.getTableModel().getColumnName(c)+",");
 							}
-							out.write(curTrace.modelTraceRounded.getColumnName(numCol-1)); out.newLine();
+							out.write(curTrace.getTableModel().getColumnName(numCol-1)); out.newLine();
 							
 							//Write trace rows
 							for(int r=0; r<numRow; r++){
 								for(int c=0; c<numCol-1; c++){
-									out.write(curTrace.modelTraceRounded.getValueAt(r, c)+",");
+									out.write(curTrace.getTableModel().getValueAt(r, c)+",");
 								}
-								out.write(curTrace.modelTraceRounded.getValueAt(r, numCol-1)+""); out.newLine();
+								out.write(curTrace.getTableModel().getValueAt(r, numCol-1)+""); out.newLine();
 							}
 							
 							out.close();
@@ -268,17 +268,17 @@ public class frmTraceMulti {
 			JButton btnCopy = new JButton("Copy");
 			btnCopy.addActionListener(new ActionListener() {
 				public void actionPerformed(ActionEvent arg0) {
-					int numCol=curTrace.modelTraceRounded.getColumnCount();
-					int numRow=curTrace.modelTraceRounded.getRowCount();
+					int numCol=curTrace.getTableModel().getColumnCount();
+					int numRow=curTrace.getTableModel().getRowCount();
 					String data[][]=new String[numRow+1][numCol];
 					//Get headers
 					for(int c=0; c<numCol; c++){
-						data[0][c]=curTrace.modelTraceRounded.getColumnName(c);
+						data[0][c]=curTrace.getTableModel().getColumnName(c);
 					}
 					//Get row
 					for(int r=0; r<numRow; r++){
 						for(int c=0; c<numCol; c++){
-							data[r+1][c]=curTrace.modelTraceRounded.getValueAt(r, c)+"";
+							data[r+1][c]=curTrace.getTableModel().getValueAt(r, c)+"";
 						}
 					}
 					
@@ -303,7 +303,7 @@ public class frmTraceMulti {
 			table = new JTable();
 			table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
 			table.setEnabled(false);
-			table.setModel(curTrace.modelTraceRounded);
+			table.setModel(curTrace.getTableModel());
 			table.setShowVerticalLines(true);
 			table.getTableHeader().setReorderingAllowed(false);
 			scrollPane.setViewportView(table);
@@ -397,7 +397,7 @@ public class frmTraceMulti {
 		}
 	}
 	
-	private double [][] getSeriesData(ArrayList<Integer> cycle, ArrayList<Double> traceData){
+	private double [][] getSeriesData(TraceColumn cycle, TraceColumn traceData){
 		int numCycles=cycle.size();
 		double data[][]=new double[2][numCycles];
 		for(int i=0; i<numCycles; i++){
@@ -31,6 +31,11 @@ public class Amua {
 	 * Launch the application.
 	 */
 	public static void main(String[] args) {
+		if(args.length>0){ //run from command line
+			System.setProperty("java.awt.headless", "true");
+			System.exit(AmuaCLI.run(args));
+		}
+		
 		//get current OS
 		String curOS=System.getProperty("os.name").toLowerCase();
 		if(curOS.contains("mac")){ //if Mac
@@ -0,0 +1,396 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+
+import analysis.OneWayEngine;
+import analysis.OneWayResults;
+import analysis.PSAEngine;
+import analysis.PSAResults;
+import analysis.ParameterSampler;
+import analysis.ProgressListener;
+import base.AmuaModel;
+import base.RunReport;
+import markov.MarkovTrace;
+
+/**
+ * Runs a model without the GUI and writes results to CSV files.
+ * Usage: Amua model.amua [-analysis base|scenarios|psa|oneway] [options]
+ */
+public class AmuaCLI{
+	public static final int EXIT_OK=0;
+	public static final int EXIT_USAGE=1; //invalid arguments
+	public static final int EXIT_MODEL_ERROR=2; //model can't be opened or has errors
+	public static final int EXIT_RUN_ERROR=3; //error while running
+
+	String modelPath;
+	String analysis="base";
+	String outDir;
+	int iterations=1000;
+	boolean seeded=false;
+	int seed;
+	ArrayList<String> scenarioNames=new ArrayList<String>();
+	String paramName;
+	String strMin, strMax;
+	int intervals=10;
+	int numThreads=1;
+	boolean writeTraces=false;
+
+	AmuaModel myModel;
+	ErrorLog errorLog;
+	String outPrefix;
+
+	public static void printUsage(){
+		System.out.println("Usage: Amua <model.amua> [options]");
+		System.out.println("  -analysis <base|scenarios|psa|oneway>  Analysis to run (default: base)");
+		System.out.println("  -out <dir>                             Output directory (default: model directory)");
+		System.out.println("  -traces                                Write traces for each scenario/PSA iteration");
+		System.out.println("  -threads <n>                           Model replicas to run at once for PSA/one-way (default: 1)");
+		System.out.println("Scenarios:");
+		System.out.println("  -scenario <name>                       Scenario to run (repeatable, default: all)");
+		System.out.println("PSA:");
+		System.out.println("  -iterations <n>                        Number of iterations (default: 1000)");
+		System.out.println("  -seed <n>                              Seed for parameter sampling");
+		System.out.println("One-way sensitivity:");
+		System.out.println("  -param <name>                          Parameter to vary");
+		System.out.println("  -min <x> -max <x>                      Bounds (default: parameter's saved bounds)");
+		System.out.println("  -intervals <n>                         Number of intervals (default: 10)");
+	}
+
+	/**
+	 * Parses arguments and runs the analysis
+	 * @param args Command line arguments
+	 * @return Exit code
+	 */
+	public static int run(String args[]){
+		AmuaCLI cli=new AmuaCLI();
+		try{
+			cli.parseArgs(args);
+		} catch(IllegalArgumentException e){
+			System.err.println("Error: "+e.getMessage());
+			printUsage();
+			return(EXIT_USAGE);
+		}
+		return(cli.run());
+	}
+
+	private void parseArgs(String args[]){
+		int i=0;
+		while(i<args.length){
+			String arg=args[i];
+			if(arg.equals("-traces")){writeTraces=true; i++;}
+			else if(arg.startsWith("-")){
+				if(i+1>=args.length){throw new IllegalArgumentException("Missing value for "+arg);}
+				String value=args[i+1];
+				try{
+					if(arg.equals("-analysis")){analysis=value.toLowerCase();}
+					else if(arg.equals("-out")){outDir=value;}
+					else if(arg.equals("-scenario")){scenarioNames.add(value);}
+					else if(arg.equals("-iterations")){iterations=Integer.parseInt(value.replaceAll(",", ""));}
+					else if(arg.equals("-seed")){seeded=true; seed=Integer.parseInt(value);}
+					else if(arg.equals("-param")){paramName=value;}
+					else if(arg.equals("-min")){strMin=value;}
+					else if(arg.equals("-max")){strMax=value;}
+					else if(arg.equals("-intervals")){intervals=Integer.parseInt(value);}
+					else if(arg.equals("-threads")){numThreads=Integer.parseInt(value);}
+					else{throw new IllegalArgumentException("Unknown option: "+arg);}
+				} catch(NumberFormatException e){
+					throw new IllegalArgumentException("Invalid number for "+arg+": "+value);
+				}
+				i+=2;
+			}
+			else{
+				if(modelPath!=null){throw new IllegalArgumentException("Unexpected argument: "+arg);}
+				modelPath=arg;
+				i++;
+			}
+		}
+		if(modelPath==null){throw new IllegalArgumentException("No model specified");}
+		if(!analysis.equals("base") && !analysis.equals("scenarios") && !analysis.equals("psa") && !analysis.equals("oneway")){
+			throw new IllegalArgumentException("Unknown analysis: "+analysis);
+		}
+		if(analysis.equals("oneway") && paramName==null){throw new IllegalArgumentException("One-way sensitivity requires -param");}
+		if(iterations<1 || intervals<1){throw new IllegalArgumentException("Iterations and intervals must be positive");}
+		if(numThreads<1){throw new IllegalArgumentException("Threads must be positive");}
+	}
+
+	private int run(){
+		long startTime=System.currentTimeMillis();
+		errorLog=new ErrorLog("CLI");
+
+		//Open model
+		try{
+			File file=new File(modelPath);
+			JAXBContext context = JAXBContext.newInstance(AmuaModel.class);
+			Unmarshaller un = context.createUnmarshaller();
+			myModel = (AmuaModel) un.unmarshal(file);
+			myModel.name=file.getName().replaceAll(".amua", "");
+			myModel.filepath=file.getAbsolutePath();
+			myModel.openModelHeadless(errorLog);
+
+			if(outDir==null){outDir=file.getAbsoluteFile().getParent();}
+			new File(outDir).mkdirs();
+			outPrefix=outDir+File.separator+myModel.name;
+		} catch(Exception e){
+			System.err.println("Error opening model: "+e.toString());
+			return(EXIT_MODEL_ERROR);
+		}
+		printTime("Model opened",startTime);
+
+		ArrayList<String> errors=myModel.parseModel();
+		if(errors.size()>0){
+			System.err.println(errors.size()+" errors in base case model:");
+			for(int i=0; i<errors.size(); i++){System.err.println(errors.get(i));}
+			return(EXIT_MODEL_ERROR);
+		}
+
+		int exitCode=EXIT_OK;
+		long runStart=System.currentTimeMillis();
+		try{
+			if(analysis.equals("base")){exitCode=runBaseCase();}
+			else if(analysis.equals("scenarios")){exitCode=runScenarios();}
+			else if(analysis.equals("psa")){exitCode=runPSA();}
+			else if(analysis.equals("oneway")){exitCode=runOneWay();}
+		} catch(Exception e){
+			System.err.println("Error: "+e.toString());
+			errorLog.recordError(e);
+			exitCode=EXIT_RUN_ERROR;
+		}
+		if(exitCode==EXIT_OK && errorLog.errors.size()>0){exitCode=EXIT_RUN_ERROR;} //errors caught while running
+		for(int i=0; i<errorLog.errors.size(); i++){System.err.println(errorLog.errors.get(i));}
+
+		printTime("Analysis ("+analysis+")",runStart);
+		printTime("Total",startTime);
+		return(exitCode);
+	}
+
+	private int runBaseCase() throws Exception{
+		RunReport report=runModel(myModel);
+		report.write(outPrefix);
+		BufferedWriter out=new BufferedWriter(new FileWriter(outPrefix+"_Results.csv"));
+		report.writeEVHeaders(out, "");
+		report.writeEVs(out, "");
+		out.close();
+		return(EXIT_OK);
+	}
+
+	private int runScenarios() throws Exception{
+		ArrayList<Scenario> scenarios=new ArrayList<Scenario>();
+		if(myModel.scenarios!=null){
+			for(int s=0; s<myModel.scenarios.size(); s++){
+				Scenario curScenario=myModel.scenarios.get(s);
+				if(scenarioNames.isEmpty() || scenarioNames.contains(curScenario.name)){scenarios.add(curScenario);}
+			}
+		}
+		if(scenarios.isEmpty()){
+			System.err.println("No scenarios to run");
+			return(EXIT_USAGE);
+		}
+
+		BufferedWriter out=new BufferedWriter(new FileWriter(outPrefix+"_Scenarios.csv"));
+		boolean headers=true;
+		for(int n=0; n<scenarios.size(); n++){
+			long scenarioStart=System.currentTimeMillis();
+			//Run each scenario on a fresh copy so updates don't carry over
+			AmuaModel curModel=myModel.createReplica();
+			Scenario curScenario=scenarios.get(n);
+			curScenario.parseUpdates(curModel);
+			curScenario.applyUpdates(curModel);
+			applySettings(curModel,curScenario);
+			ArrayList<String> errors=curModel.parseModel();
+			if(errors.size()>0){
+				out.close();
+				System.err.println("Errors found in scenario: "+curScenario.name);
+				for(int i=0; i<errors.size(); i++){System.err.println(errors.get(i));}
+				return(EXIT_MODEL_ERROR);
+			}
+
+			ParameterSampler sampler=null;
+			if(curScenario.sampleParams){
+				sampler=new ParameterSampler(curModel,curScenario.crn2,curScenario.seed2);
+			}
+
+			for(int i=0; i<curScenario.numIterations; i++){
+				if(curScenario.sampleParams){
+					sampler.sample();
+				}
+				else if(curScenario.useParamSets && curModel.parameterSets!=null){
+					int curSet=i%curModel.parameterSets.length; //keep looping over sets
+					curModel.parameterSets[curSet].setParameters(curModel);
+					curScenario.overwriteParams(curModel);
+				}
+				RunReport report=runModel(curModel);
+				if(headers){report.writeEVHeaders(out, "Scenario,Iteration,"); headers=false;}
+				report.writeEVs(out, curScenario.name+","+i+",");
+				if(writeTraces){writeTraces(report,outPrefix+"_"+curScenario.name+"_",i);}
+			}
+			curModel.releaseWorkerPool();
+			printTime("Scenario "+curScenario.name,scenarioStart);
+		}
+		out.close();
+		return(EXIT_OK);
+	}
+
+	private int runPSA() throws Exception{
+		PSAEngine engine=new PSAEngine(myModel);
+		engine.numIterations=iterations;
+		engine.seeded=seeded;
+		engine.seed=seed;
+		engine.numThreads=numThreads;
+		PSAResults results=engine.run(new ConsoleProgress("Iterations"));
+		int numParams=myModel.parameters.size();
+
+		BufferedWriter outParams=new BufferedWriter(new FileWriter(outPrefix+"_PSA_Parameters.csv"));
+		outParams.write("Iteration");
+		for(int v=0; v<numParams; v++){outParams.write(","+myModel.parameters.get(v).name);}
+		outParams.newLine();
+		BufferedWriter outResults=new BufferedWriter(new FileWriter(outPrefix+"_PSA_Results.csv"));
+		for(int n=0; n<iterations; n++){
+			outParams.write(n+"");
+			for(int v=0; v<numParams; v++){
+				outParams.write(","+results.paramValues[v][n]);
+			}
+			outParams.newLine();
+
+			RunReport report=results.reports[n];
+			if(n==0){report.writeEVHeaders(outResults, "Iteration,");}
+			report.writeEVs(outResults, n+",");
+			if(writeTraces){writeTraces(report,outPrefix+"_PSA_",n);}
+		}
+		outParams.close();
+		outResults.close();
+		return(EXIT_OK);
+	}
+
+	private int runOneWay() throws Exception{
+		int paramIndex=myModel.getParameterIndex(paramName);
+		if(paramIndex==-1){
+			System.err.println("Parameter not found: "+paramName);
+			return(EXIT_USAGE);
+		}
+		Parameter curParam=myModel.parameters.get(paramIndex);
+		if(strMin==null){strMin=curParam.sensMin;}
+		if(strMax==null){strMax=curParam.sensMax;}
+		if(strMin==null || strMin.isEmpty() || strMax==null || strMax.isEmpty()){
+			System.err.println("No min/max values for parameter: "+paramName);
+			return(EXIT_USAGE);
+		}
+		OneWayEngine engine=new OneWayEngine(myModel,paramIndex);
+		engine.min=Double.parseDouble(strMin.replaceAll(",", ""));
+		engine.max=Double.parseDouble(strMax.replaceAll(",", ""));
+		engine.intervals=intervals;
+		engine.numThreads=numThreads;
+		OneWayResults results=engine.run(new ConsoleProgress("Intervals"));
+
+		BufferedWriter out=new BufferedWriter(new FileWriter(outPrefix+"_OneWay_"+paramName+".csv"));
+		for(int i=0; i<=intervals; i++){
+			RunReport report=results.reports[i];
+			if(i==0){report.writeEVHeaders(out, paramName+",");}
+			report.writeEVs(out, results.paramValues[i]+",");
+		}
+		out.close();
+		return(EXIT_OK);
+	}
+
+	private RunReport runModel(AmuaModel curModel){
+		long runStart=System.currentTimeMillis();
+		RunReport report=curModel.runModel(null, false);
+		printTime("Run "+curModel.name,runStart);
+		return(report);
+	}
+
+	/**
+	 * Applies scenario settings (see frmScenarios)
+	 */
+	private void applySettings(AmuaModel curModel, Scenario curScenario){
+		curModel.cohortSize=curScenario.cohortSize;
+		curModel.CRN=curScenario.crn1;
+		curModel.crnSeed=curScenario.seed1;
+
+		//analysis
+		curModel.dimInfo.analysisType=curScenario.analysisType;
+		curModel.dimInfo.objective=curScenario.objective;
+		curModel.dimInfo.objectiveDim=curScenario.objectiveDim;
+		curModel.dimInfo.costDim=curScenario.costDim;
+		curModel.dimInfo.effectDim=curScenario.effectDim;
+		curModel.dimInfo.WTP=curScenario.WTP;
+		curModel.dimInfo.baseScenario=curScenario.baseScenario;
+		curModel.dimInfo.extendedDim=curScenario.extendedDim;
+
+		//markov
+		if(curModel.type==1) {
+			curModel.markov.halfCycleCorrection=curScenario.halfCycleCorrection;
+			curModel.markov.discountRewards=curScenario.discountRewards;
+			int numDim=curModel.dimInfo.dimNames.length;
+			if(curScenario.discountRewards && curScenario.discountRates!=null && curScenario.discountRates.length==numDim) {
+				for(int d=0; d<numDim; d++) {
+					curModel.markov.discountRates[d]=curScenario.discountRates[d];
+				}
+				curModel.markov.discountStartCycle=curScenario.discountStartCycle;
+			}
+			curModel.markov.showTrace=false;
+		}
+	}
+
+	private void writeTraces(RunReport report, String filepath, int index) throws IOException{
+		if(report.markovTraces!=null){
+			for(int c=0; c<report.markovTraces.size(); c++){
+				MarkovTrace curTrace=report.markovTraces.get(c);
+				curTrace.write(filepath, index);
+			}
+		}
+	}
+
+	private void printTime(String label, long startTime){
+		long time=System.currentTimeMillis()-startTime;
+		System.out.println(label+": "+time+" ms");
+	}
+
+	/**
+	 * Prints progress every 100 runs
+	 */
+	private class ConsoleProgress implements ProgressListener{
+		String label;
+		long startTime=System.currentTimeMillis();
+
+		ConsoleProgress(String label){
+			this.label=label;
+		}
+
+		public void setProgress(int numComplete, int total){
+			if(numComplete%100==0 || numComplete==total){printTime(label+": "+numComplete+"/"+total,startTime);}
+		}
+
+		public void setNote(String note){
+			System.out.println(note);
+		}
+
+		public boolean isCancelled(){
+			return(false);
+		}
+	}
+}
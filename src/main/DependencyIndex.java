@@ -0,0 +1,197 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import base.AmuaModel;
+import markov.MarkovNode;
+import math.Interpreter;
+import tree.TreeNode;
+
+/**
+ * Index from parameters, variables, and tables to the model nodes whose expressions reference them, either directly
+ * or through other parameters and variables.  Lets sensitivity analyses re-run only the Markov chains affected by a parameter.
+ */
+public class DependencyIndex{
+	AmuaModel myModel;
+	int numNodes;
+	/**Node index of the Markov chain containing each node (-1 if none)*/
+	int chainIndices[];
+	/**Parameters, variables, and tables referenced by each parameter or variable expression*/
+	IdentityHashMap<Object,ArrayList<Object>> references;
+	/**Indices of nodes that depend on each parameter, variable, and table*/
+	IdentityHashMap<Object,BitSet> dependents;
+	HashMap<String,Object> names;
+	
+	/**
+	 * Builds the index for the current model.  Parse the model first so Markov chains are known.
+	 * @param myModel Model
+	 */
+	public DependencyIndex(AmuaModel myModel){
+		this.myModel=myModel;
+		names=new HashMap<String,Object>();
+		dependents=new IdentityHashMap<Object,BitSet>();
+		for(int t=0; t<myModel.tables.size(); t++){
+			Table curTable=myModel.tables.get(t);
+			names.put(curTable.name, curTable);
+			dependents.put(curTable, new BitSet());
+		}
+		for(int p=0; p<myModel.parameters.size(); p++){
+			Parameter curParam=myModel.parameters.get(p);
+			names.put(curParam.name, curParam);
+			dependents.put(curParam, new BitSet());
+		}
+		for(int v=0; v<myModel.variables.size(); v++){
+			Variable curVar=myModel.variables.get(v);
+			names.put(curVar.name, curVar);
+			dependents.put(curVar, new BitSet());
+		}
+		
+		//Direct references of parameters and variables
+		references=new IdentityHashMap<Object,ArrayList<Object>>();
+		for(int p=0; p<myModel.parameters.size(); p++){
+			Parameter curParam=myModel.parameters.get(p);
+			ArrayList<Object> refs=new ArrayList<Object>();
+			addReferences(curParam.expression, refs);
+			references.put(curParam, refs);
+		}
+		for(int v=0; v<myModel.variables.size(); v++){
+			Variable curVar=myModel.variables.get(v);
+			ArrayList<Object> refs=new ArrayList<Object>();
+			addReferences(curVar.expression, refs);
+			references.put(curVar, refs);
+		}
+		
+		//Nodes
+		if(myModel.type==0){ //Decision tree
+			numNodes=myModel.tree.nodes.size();
+			chainIndices=new int[numNodes];
+			for(int n=0; n<numNodes; n++){
+				TreeNode curNode=myModel.tree.nodes.get(n);
+				chainIndices[n]=-1;
+				ArrayList<Object> refs=new ArrayList<Object>();
+				addReferences(curNode.prob, refs);
+				addReferences(curNode.cost, refs);
+				addReferences(curNode.payoff, refs);
+				addReferences(curNode.varUpdates, refs);
+				addDependent(n, refs);
+			}
+		}
+		else if(myModel.type==1){ //Markov
+			numNodes=myModel.markov.nodes.size();
+			chainIndices=new int[numNodes];
+			for(int n=0; n<numNodes; n++){
+				MarkovNode curNode=myModel.markov.nodes.get(n);
+				chainIndices[n]=-1;
+				if(curNode.chain!=null){chainIndices[n]=myModel.markov.nodes.indexOf(curNode.chain);}
+				ArrayList<Object> refs=new ArrayList<Object>();
+				addReferences(curNode.prob, refs);
+				addReferences(curNode.cost, refs);
+				addReferences(curNode.transition, refs);
+				addReferences(curNode.rewards, refs);
+				addReferences(curNode.varUpdatesT0, refs);
+				addReferences(curNode.terminationCondition, refs);
+				addReferences(curNode.varUpdates, refs);
+				addDependent(n, refs);
+			}
+		}
+	}
+	
+	/**
+	 * Whether Markov chains can be run separately, i.e. a cohort model run at the base case.
+	 * Monte Carlo chains share a simulated population, and parameter sets are run together.
+	 */
+	public static boolean canFilterChains(AmuaModel myModel){
+		return(myModel.type==1 && myModel.simType==0 && myModel.simParamSets==false);
+	}
+	
+	/**
+	 * @param source Parameter, variable, or table
+	 * @return Indices of nodes whose expressions depend on the source
+	 */
+	public BitSet getNodes(Object source){
+		BitSet nodes=dependents.get(source);
+		if(nodes==null){ //unknown, assume all
+			nodes=new BitSet();
+			nodes.set(0, numNodes);
+			return(nodes);
+		}
+		return((BitSet)nodes.clone());
+	}
+	
+	/**
+	 * @param source Parameter, variable, or table
+	 * @return Node indices of the Markov chains that depend on the source
+	 */
+	public BitSet getChains(Object source){
+		BitSet nodes=getNodes(source);
+		BitSet chains=new BitSet();
+		for(int n=nodes.nextSetBit(0); n>=0; n=nodes.nextSetBit(n+1)){
+			if(chainIndices[n]!=-1){chains.set(chainIndices[n]);}
+		}
+		return(chains);
+	}
+	
+	/**
+	 * Marks the node as dependent on each reference and everything it references in turn
+	 */
+	private void addDependent(int nodeIndex, ArrayList<Object> refs){
+		IdentityHashMap<Object,Boolean> visited=new IdentityHashMap<Object,Boolean>();
+		ArrayList<Object> stack=new ArrayList<Object>(refs);
+		while(stack.size()>0){
+			Object curRef=stack.remove(stack.size()-1);
+			if(visited.containsKey(curRef)){continue;}
+			visited.put(curRef, true);
+			dependents.get(curRef).set(nodeIndex);
+			ArrayList<Object> next=references.get(curRef); //null for tables
+			if(next!=null){stack.addAll(next);}
+		}
+	}
+	
+	private void addReferences(String expressions[], ArrayList<Object> refs){
+		if(expressions==null){return;}
+		for(int i=0; i<expressions.length; i++){
+			addReferences(expressions[i], refs);
+		}
+	}
+	
+	/**
+	 * Adds the parameters, variables, and tables named in the expression (word by word, see Variable.getDependents)
+	 */
+	private void addReferences(String expression, ArrayList<Object> refs){
+		if(expression==null){return;}
+		String text=expression;
+		int len=text.length();
+		while(len>0){
+			int index=Interpreter.getNextBreakIndex(text);
+			Object ref=names.get(text.substring(0, index));
+			if(ref!=null && !refs.contains(ref)){refs.add(ref);}
+			
+			if(index==len){len=0;} //End of word
+			else{
+				text=text.substring(index+1);
+				len=text.length();
+			}
+		}
+	}
+}
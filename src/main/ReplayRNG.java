@@ -0,0 +1,61 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+/**
+ * Replays a given sequence of draws, then continues with new random draws.
+ * With inverse-CDF sampling each parameter uses a fixed number of draws, so a search can work directly on the draws
+ * behind sampled parameter values (see CalibrationEngine).  Direct sampling (AmuaModel.directSampling) uses rejection loops
+ * with a variable number of draws, so it must be turned off while replaying.  Only nextDouble() is replayed.
+ */
+public class ReplayRNG extends MersenneTwisterFast{
+	private static final long serialVersionUID=1L;
+	double draws[];
+	int numDraws;
+	
+	public ReplayRNG(long seed){
+		super(seed);
+		draws=new double[0];
+	}
+	
+	/**
+	 * Restarts replay from the first draw
+	 * @param draws Draws to replay, each in (0,1)
+	 */
+	public void replay(double draws[]){
+		this.draws=draws;
+		numDraws=0;
+	}
+	
+	/**
+	 * @return Number of draws since replay started
+	 */
+	public int getNumDraws(){
+		return(numDraws);
+	}
+	
+	@Override
+	public double nextDouble(){
+		double draw;
+		if(numDraws<draws.length){draw=draws[numDraws];}
+		else{draw=super.nextDouble();}
+		numDraws++;
+		return(draw);
+	}
+}
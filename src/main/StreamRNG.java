@@ -0,0 +1,77 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package main;
+
+/**
+ * Counter-based random number streams (SplitMix64 mixing).
+ * Each draw depends only on the seed, the stream (e.g. person and purpose) and the draw number, so results don't depend on which thread simulates a person.
+ * Only nextDouble() is stream-based - it is used for all sampling in models.
+ */
+public class StreamRNG extends MersenneTwisterFast{
+	private static final long serialVersionUID=1L;
+	private static final long GOLDEN_GAMMA=0x9e3779b97f4a7c15L;
+	long seed;
+	long key;
+	long counter;
+	
+	public StreamRNG(long seed){
+		super(seed);
+		this.seed=seed;
+		setStream(-1,0);
+	}
+	
+	/**
+	 * Selects the stream and restarts it
+	 * @param person Person index, -1 for draws shared by all people
+	 * @param purpose Purpose of the draws (e.g. initialization, chain cycle)
+	 */
+	public void setStream(long person, long purpose){
+		key=mix(mix(seed+GOLDEN_GAMMA*(person+2))+GOLDEN_GAMMA*(purpose+1));
+		counter=0;
+	}
+	
+	/**
+	 * Selects the stream and continues it after the given number of draws
+	 */
+	public void setStream(long person, long purpose, long draws){
+		setStream(person,purpose);
+		counter=draws;
+	}
+	
+	/**
+	 * @return Number of draws from the current stream
+	 */
+	public long getDraws(){
+		return(counter);
+	}
+	
+	@Override
+	public double nextDouble(){
+		counter++;
+		long z=mix(key+GOLDEN_GAMMA*counter);
+		return((z>>>11)*0x1.0p-53); //[0,1)
+	}
+	
+	private static long mix(long z){
+		z=(z^(z>>>30))*0xbf58476d1ce4e5b9L;
+		z=(z^(z>>>27))*0x94d049bb133111ebL;
+		return(z^(z>>>31));
+	}
+}
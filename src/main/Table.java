@@ -19,6 +19,7 @@
 package main;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
@@ -46,6 +47,10 @@ public class Table{
 	@XmlTransient double value;
 	@XmlTransient public CubicSpline splines[];
 	@XmlTransient public AmuaModel myModel;
+	/**
+	 * Lookups by column text, built on first use and cleared when the table is edited
+	 */
+	@XmlTransient ConcurrentHashMap<String,TableLookup> lookups=new ConcurrentHashMap<String,TableLookup>();
 
 	//Constructor
 	public Table(){
@@ -99,66 +104,24 @@ public class Table{
 	}
 	
 	public double getLookupValue(double index, String colText){
-		//Get column index
-		int col=getColumnIndex(colText);
-		if(col<1 || col>(numCols-1)){return(Double.NaN);} //Throw error
-
-		double val=Double.NaN;
-		if(lookupMethod.matches("Exact")){
-			int row=-1;
-			boolean found=false;
-			while(found==false && row<numRows){
-				row++;
-				if(index==data[row][0]){found=true;}
-			}
-			if(found){val=data[row][col];}
-		}
-		else if(lookupMethod.matches("Truncate")){
-			if(index<data[0][0]){val=Double.NaN;} //Below first value - error
-			else if(index>=data[numRows-1][0]){val=data[numRows-1][col];} //Above last value
-			else{
-				int row=0;
-				while(data[row][0]<index){row++;}
-				if(index==data[row][0]){val=data[row][col];}
-				else{val=data[row-1][col];}
-			}
-		}
-		else if(lookupMethod.matches("Interpolate")){
-			if(interpolate.matches("Linear")){
-				if(index<=data[0][0]){ //Below or at first index
-					double slope=(data[1][col]-data[0][col])/(data[1][0]-data[0][0]);
-					val=data[0][col]-(data[0][0]-index)*slope;
-				}
-				else if(index>data[numRows-1][0]){ //Above last index
-					double slope=(data[numRows-1][col]-data[numRows-2][col])/(data[numRows-1][0]-data[numRows-2][0]);
-					val=data[numRows-1][col]+(index-data[numRows-1][0])*slope;
-				}
-				else{ //Between
-					int row=0;
-					while(data[row][0]<index){row++;}
-					double slope=(data[row][col]-data[row-1][col])/(data[row][0]-data[row-1][0]);
-					val=data[row-1][col]+(index-data[row-1][0])*slope;
-				}
-			}
-			else if(interpolate.matches("Cubic Splines")){
-				val=splines[col-1].evaluate(index);
-			}
-
-			//Check extrapolation conditions
-			if(extrapolate.matches("No")){
-				if(index<=data[0][0]){val=data[0][col];} //Below or at first index
-				else if(index>data[numRows-1][0]){val=data[numRows-1][col];} //Above last index
-			}
-			else if(extrapolate.matches("Left only")){ //truncate right
-				if(index>data[numRows-1][0]){val=data[numRows-1][col];} //Above last index
-			}
-			else if(extrapolate.matches("Right only")){ //truncate left
-				if(index<=data[0][0]){val=data[0][col];} //Below or at first index
-			}
-
+		return(getLookup(colText).getValue(index));
+	}
+	
+	public TableLookup getLookup(String colText){
+		TableLookup lookup=lookups.get(colText);
+		if(lookup==null){
+			lookup=new TableLookup(this,colText);
+			TableLookup prev=lookups.putIfAbsent(colText,lookup);
+			if(prev!=null){lookup=prev;}
 		}
-
-		return(val);
+		return(lookup);
+	}
+	
+	/**
+	 * Discards cached lookups, must be called after the data or lookup method changes
+	 */
+	public void clearLookups(){
+		lookups.clear();
 	}
 
 	public void constructSplines(){
@@ -0,0 +1,147 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package main;
+
+import math.MathUtils;
+
+/**
+ * Lookup on a table column, resolved once when the expression is parsed.
+ * Rows are found by direct indexing if the keys are evenly spaced, otherwise by binary search.
+ */
+public class TableLookup{
+	enum Method{EXACT,TRUNCATE,LINEAR,SPLINE}
+	enum Extrapolate{YES,NO,LEFT_ONLY,RIGHT_ONLY}
+	
+	Table table;
+	Method method;
+	Extrapolate extrapolate;
+	int numRows;
+	double keys[];
+	boolean uniform;
+	double step;
+	/**
+	 * Resolved column, or -1 if the column is an expression evaluated on each lookup
+	 */
+	int col=-1;
+	String colText;
+	
+	public TableLookup(Table table, String colText){
+		this.table=table;
+		this.colText=colText;
+		
+		if(table.lookupMethod.equals("Exact")){method=Method.EXACT;}
+		else if(table.lookupMethod.equals("Truncate")){method=Method.TRUNCATE;}
+		else if(table.lookupMethod.equals("Interpolate")){
+			if(table.interpolate.equals("Linear")){method=Method.LINEAR;}
+			else if(table.interpolate.equals("Cubic Splines")){method=Method.SPLINE;}
+			extrapolate=Extrapolate.YES;
+			if(table.extrapolate.equals("No")){extrapolate=Extrapolate.NO;}
+			else if(table.extrapolate.equals("Left only")){extrapolate=Extrapolate.LEFT_ONLY;}
+			else if(table.extrapolate.equals("Right only")){extrapolate=Extrapolate.RIGHT_ONLY;}
+		}
+		
+		//Resolve column
+		if(colText.contains("\"") || colText.contains("\'")){ //header
+			col=table.getColumnIndex(colText);
+		}
+		else{
+			try{
+				col=Integer.parseInt(colText.trim());
+			} catch(NumberFormatException e){
+				col=-1; //evaluate on each lookup
+			}
+		}
+		
+		//Keys
+		numRows=table.numRows;
+		keys=new double[numRows];
+		for(int r=0; r<numRows; r++){
+			keys[r]=table.data[r][0];
+		}
+		if(numRows>1){
+			step=(keys[numRows-1]-keys[0])/(numRows-1);
+			uniform=(step>0);
+			double tol=step*1e-9;
+			for(int r=1; r<numRows && uniform; r++){
+				if(Math.abs(keys[r]-(keys[0]+r*step))>tol){uniform=false;}
+			}
+		}
+	}
+	
+	public double getValue(double index){
+		int curCol=col;
+		if(curCol==-1){curCol=table.getColumnIndex(colText);}
+		if(curCol<1 || curCol>(table.numCols-1)){return(Double.NaN);} //Throw error
+		
+		double data[][]=table.data;
+		double val=Double.NaN;
+		if(method==Method.EXACT){
+			int row=findRow(index,true);
+			if(row>=0 && keys[row]==index){val=data[row][curCol];}
+		}
+		else if(method==Method.TRUNCATE){
+			int row=findRow(index,true);
+			if(row>=0){val=data[row][curCol];} //NaN if below first value
+		}
+		else if(method==Method.LINEAR || method==Method.SPLINE){
+			if(method==Method.LINEAR){
+				if(index>keys[numRows-1]){ //Above last index
+					int row=numRows-1;
+					double slope=(data[row][curCol]-data[row-1][curCol])/(keys[row]-keys[row-1]);
+					val=data[row][curCol]+(index-keys[row])*slope;
+				}
+				else{ //Below or at first index, or between
+					int row=0;
+					if(index>keys[0]){row=findRow(index,false);}
+					double slope=(data[row+1][curCol]-data[row][curCol])/(keys[row+1]-keys[row]);
+					val=data[row][curCol]+(index-keys[row])*slope;
+				}
+			}
+			else{
+				val=table.splines[curCol-1].evaluate(index);
+			}
+			
+			//Check extrapolation conditions
+			boolean below=(index<=keys[0]), above=(index>keys[numRows-1]);
+			if(below && (extrapolate==Extrapolate.NO || extrapolate==Extrapolate.RIGHT_ONLY)){val=data[0][curCol];}
+			else if(above && (extrapolate==Extrapolate.NO || extrapolate==Extrapolate.LEFT_ONLY)){val=data[numRows-1][curCol];}
+		}
+		return(val);
+	}
+	
+	/**
+	 * @param inclusive If true, finds keys<=index, otherwise keys<index
+	 * @return Last row with a key below the index, -1 if none
+	 */
+	private int findRow(double index, boolean inclusive){
+		if(uniform==false){
+			return(MathUtils.searchSorted(keys, index, inclusive));
+		}
+		//direct index, corrected for rounding
+		double pos=Math.floor((index-keys[0])/step);
+		int row;
+		if(!(pos>=-1)){row=-1;} //also catches NaN
+		else if(pos>numRows-1){row=numRows-1;}
+		else{row=(int)pos;}
+		while(row<numRows-1 && (keys[row+1]<index || (inclusive && keys[row+1]==index))){row++;}
+		while(row>=0 && !(keys[row]<index || (inclusive && keys[row]==index))){row--;}
+		return(row);
+	}
+}
@@ -24,6 +24,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
 
 import base.AmuaModel;
+import math.CompiledExpression;
 import math.Interpreter;
 import math.Numeric;
 import math.Token;
@@ -36,16 +37,20 @@ public class Variable{
 	
 	@XmlTransient public boolean valid=true;
 	@XmlTransient public ArrayList<Variable> dependents; //variables that depend on me
+	@XmlTransient public int id=-1; //topological order (see VariableGraph)
+	@XmlTransient public Variable downstream[]; //all variables that depend on me, in topological order
 	@XmlTransient public boolean independent;
 		
 	@XmlTransient public Numeric value[]; //thread-specific
 	@XmlTransient public boolean locked[]; //thread-specific
 	@XmlTransient public Token parsedTokens[];
+	@XmlTransient public CompiledExpression compiledExpr;
 	
 	//Constructor
 	public Variable(){
 		value=new Numeric[1]; //construct test values
 		locked=new boolean[1];
+		downstream=new Variable[0];
 	}
 
 	public Variable copy(){
@@ -54,6 +59,7 @@ public class Variable{
 		copyVar.expression=expression;
 		copyVar.notes=notes;
 		copyVar.parsedTokens=parsedTokens;
+		copyVar.compiledExpr=compiledExpr;
 		copyVar.value=value;
 		return(copyVar);
 	}
@@ -89,24 +95,38 @@ public class Variable{
 		}
 	}
 	
+	/**
+	 * Re-evaluates all downstream variables that aren't current.  Downstream variables are in topological order,
+	 * so each is evaluated after the variables it depends on.
+	 */
 	public void updateDependents(AmuaModel myModel, int curThread) throws Exception{
-		for(int d=0; d<dependents.size(); d++){
-			Variable curDep=dependents.get(d);
+		for(int d=0; d<downstream.length; d++){
+			Variable curDep=downstream[d];
 			if(curDep.locked[curThread]==false){
 				curDep.locked[curThread]=true;
-				curDep.value[curThread]=Interpreter.evaluateTokens(curDep.parsedTokens, curThread, false);
-				curDep.updateDependents(myModel, curThread);
+				curDep.updateValue(curThread, false);
 			}
 		}
 	}
 	
+	/**
+	 * Re-evaluates the expression for the current thread. Scalar values are updated in place.
+	 * @param curThread
+	 * @param sample
+	 * @throws Exception
+	 */
+	public void updateValue(int curThread, boolean sample) throws Exception{
+		if(compiledExpr!=null){
+			value[curThread]=compiledExpr.evaluateInPlace(value[curThread], curThread, sample);
+		}
+		else{
+			value[curThread]=Interpreter.evaluateTokens(parsedTokens, curThread, sample);
+		}
+	}
+	
 	public void unlockDependents(int curThread) {
-		for(int d=0; d<dependents.size(); d++) {
-			Variable curDep=dependents.get(d);
-			if(curDep.locked[curThread]==true) {
-				curDep.locked[curThread]=false;
-				curDep.unlockDependents(curThread);
-			}
+		for(int d=0; d<downstream.length; d++) {
+			downstream[d].locked[curThread]=false;
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package main;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * Dependency graph of model variables, built once when the model objects are validated.
+ * Variables are numbered in topological order (after every variable they depend on), and each variable keeps its
+ * downstream variables in that order, so an update can be propagated in one forward pass.
+ */
+public class VariableGraph{
+	/**Variables in topological order (index = Variable.id)*/
+	public Variable order[];
+	/**Variables that are part of, or depend on, a circular definition*/
+	public ArrayList<Variable> circular;
+	
+	/**
+	 * @param variables Model variables.  Only valid variables (with dependents found) are included.
+	 * @param curT Innate variable t (null if not used)
+	 */
+	public VariableGraph(ArrayList<Variable> variables, Variable curT){
+		ArrayList<Variable> nodes=new ArrayList<Variable>();
+		if(curT!=null){nodes.add(curT);}
+		for(int v=0; v<variables.size(); v++){
+			Variable curVar=variables.get(v);
+			curVar.id=-1;
+			curVar.downstream=new Variable[0];
+			if(curVar.valid){nodes.add(curVar);}
+		}
+		int numNodes=nodes.size();
+		for(int i=0; i<numNodes; i++){
+			nodes.get(i).id=i; //temporary index
+		}
+		
+		//order by Kahn's algorithm
+		int inDegree[]=new int[numNodes];
+		for(int i=0; i<numNodes; i++){
+			ArrayList<Variable> deps=nodes.get(i).dependents;
+			if(deps==null){continue;}
+			for(int d=0; d<deps.size(); d++){
+				Variable curDep=deps.get(d);
+				if(curDep.id!=-1){inDegree[curDep.id]++;}
+			}
+		}
+		int queue[]=new int[numNodes];
+		int head=0, tail=0;
+		for(int i=0; i<numNodes; i++){
+			if(inDegree[i]==0){queue[tail]=i; tail++;}
+		}
+		while(head<tail){
+			Variable curVar=nodes.get(queue[head]); head++;
+			ArrayList<Variable> deps=curVar.dependents;
+			if(deps==null){continue;}
+			for(int d=0; d<deps.size(); d++){
+				Variable curDep=deps.get(d);
+				if(curDep.id==-1){continue;}
+				inDegree[curDep.id]--;
+				if(inDegree[curDep.id]==0){queue[tail]=curDep.id; tail++;}
+			}
+		}
+		
+		//variables left over are in (or downstream of) a cycle
+		circular=new ArrayList<Variable>();
+		for(int i=0; i<numNodes; i++){
+			if(inDegree[i]>0){circular.add(nodes.get(i));}
+		}
+		
+		order=new Variable[tail];
+		for(int i=0; i<tail; i++){
+			order[i]=nodes.get(queue[i]);
+		}
+		for(int i=0; i<numNodes; i++){
+			nodes.get(i).id=-1;
+		}
+		for(int i=0; i<tail; i++){
+			order[i].id=i;
+		}
+		
+		//downstream sets, in reverse order so dependents are complete first
+		BitSet downstream[]=new BitSet[tail];
+		for(int i=tail-1; i>=0; i--){
+			downstream[i]=new BitSet(tail);
+			ArrayList<Variable> deps=order[i].dependents;
+			if(deps!=null){
+				for(int d=0; d<deps.size(); d++){
+					Variable curDep=deps.get(d);
+					if(curDep.id==-1){continue;}
+					downstream[i].set(curDep.id);
+					downstream[i].or(downstream[curDep.id]);
+				}
+			}
+			Variable list[]=new Variable[downstream[i].cardinality()];
+			int k=0;
+			for(int j=downstream[i].nextSetBit(0); j>=0; j=downstream[i].nextSetBit(j+1)){
+				list[k]=order[j]; k++;
+			}
+			order[i].downstream=list;
+		}
+	}
+}
@@ -19,6 +19,7 @@
 package main;
 
 import base.AmuaModel;
+import math.CompiledExpression;
 import math.Interpreter;
 import math.Numeric;
 import math.NumericException;
@@ -29,6 +30,7 @@ public class VariableUpdate{
 	public Variable variable;
 	String exprUpdate; //expression to evaluate when updating
 	Token exprTokens[];
+	CompiledExpression exprCompiled;
 	
 	/**
 	 * 0:=, 1:++, 2:--, 3:+=, 4:-=, 5:*=, 6:/=
@@ -93,6 +95,7 @@ public class VariableUpdate{
 		//validate expression
 		exprTokens=Interpreter.parse(exprUpdate, myModel);
 		testVal=Interpreter.evaluateTokens(exprTokens, 0, false);
+		exprCompiled=CompiledExpression.compile(exprTokens);
 	}
 			
 	private static boolean isOperator(char ch){ //operators: =, +, -, *, /
@@ -112,31 +115,41 @@ public class VariableUpdate{
 			else{value.setDouble(value.getDouble()-1);}
 		} 
 		else{
-			Numeric eval=Interpreter.evaluateTokens(exprTokens, curThread,sample);
+			double eval;
+			boolean evalInt;
+			if(exprCompiled.isNumeric()){ //scalar, evaluate without allocating
+				eval=exprCompiled.evaluate(curThread, sample);
+				evalInt=exprCompiled.isInteger(eval);
+			}
+			else{
+				Numeric result=Interpreter.evaluateTokens(exprTokens, curThread,sample);
+				eval=result.getDouble();
+				evalInt=result.isInteger();
+			}
 			if(operation==0){
-				if(eval.isInteger()){value.setInt(eval.getInt());}
-				else{value.setDouble(eval.getDouble());}
+				if(evalInt){value.setInt((int)eval);}
+				else{value.setDouble(eval);}
 			}
 			else{
 				if(operation<6){ //not division
-					if(value.isInteger() && eval.isInteger()){ //preseve integer type
+					if(value.isInteger() && evalInt){ //preseve integer type
 						int curVal=value.getInt();
-						if(operation==3){curVal+=eval.getInt();}
-						else if(operation==4){curVal-=eval.getInt();}
-						else if(operation==5){curVal*=eval.getInt();}
+						if(operation==3){curVal+=(int)eval;}
+						else if(operation==4){curVal-=(int)eval;}
+						else if(operation==5){curVal*=(int)eval;}
 						value.setInt(curVal);
 					}
 					else{ //treat all as double
 						double curVal=value.getDouble();
-						if(operation==3){curVal+=eval.getDouble();}
-						else if(operation==4){curVal-=eval.getDouble();}
-						else if(operation==5){curVal*=eval.getDouble();}
+						if(operation==3){curVal+=eval;}
+						else if(operation==4){curVal-=eval;}
+						else if(operation==5){curVal*=eval;}
 						value.setDouble(curVal);
 					}
 				}
 				else if(operation==6){ //division, treat all as double
 					double curVal=value.getDouble();
-					curVal/=eval.getDouble();
+					curVal/=eval;
 					value.setDouble(curVal);
 				}
 			}
@@ -0,0 +1,207 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package main;
+
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed set of long-lived worker threads, owned by one model and reused across its runs (see AmuaModel.getWorkerPool).
+ * Each task is run once by every worker with the worker's thread index, and the caller waits on a phaser
+ * until all workers are done, so there is no thread start/join per call or per run.
+ * Each model replica has its own pool, so replicas run in parallel don't wait on each other.
+ */
+public class WorkerPool{
+	int numThreads;
+	Phaser phaser; //workers + caller
+	Thread workers[];
+	volatile Task curTask;
+	volatile Exception taskError;
+	volatile boolean shutdown;
+	
+	public interface Task{
+		/**
+		 * @param curThread Index of the worker running the task (0 to numThreads-1)
+		 * @throws Exception
+		 */
+		void run(int curThread) throws Exception;
+	}
+	
+	/**
+	 * Splits items into blocks for the workers.  With work-stealing, items are split into many small blocks that are
+	 * claimed by whichever worker is free.  Otherwise each worker gets one fixed block (the last block takes the remainder).
+	 * Work-stealing blocks depend only on the number of items, so sums kept per block and reduced in block order
+	 * are the same for any number of threads.
+	 */
+	public static class Blocks{
+		static final int maxBlocks=128, minBlockSize=256;
+		int numItems, numBlocks, blockSize;
+		boolean steal;
+		AtomicInteger nextBlock=new AtomicInteger();
+		
+		public Blocks(int numItems, int numThreads, boolean steal){
+			this.numItems=numItems;
+			this.steal=steal;
+			if(steal){
+				blockSize=Math.max(minBlockSize, (numItems+maxBlocks-1)/maxBlocks);
+				numBlocks=Math.max(1, (numItems+blockSize-1)/blockSize);
+			}
+			else{
+				blockSize=numItems/numThreads;
+				numBlocks=numThreads;
+			}
+		}
+		
+		/**
+		 * @return First block for this worker, or -1 if there is none
+		 */
+		public int first(int curThread){
+			if(steal){return(claim());}
+			if(curThread<numBlocks){return(curThread);}
+			return(-1);
+		}
+		
+		/**
+		 * @return Next block for this worker, or -1 when all blocks are claimed
+		 */
+		public int next(int curThread){
+			if(steal){return(claim());}
+			return(-1);
+		}
+		
+		/**
+		 * Marks all blocks as unclaimed
+		 */
+		public void reset(){
+			nextBlock.set(0);
+		}
+		
+		private int claim(){
+			int b=nextBlock.getAndIncrement();
+			if(b<numBlocks){return(b);}
+			return(-1);
+		}
+		
+		public int getBegin(int b){
+			return(b*blockSize);
+		}
+		
+		public int getEnd(int b){
+			if(b==numBlocks-1){return(numItems);}
+			return((b+1)*blockSize);
+		}
+		
+		public int getNumBlocks(){
+			return(numBlocks);
+		}
+		
+		public int getMaxBlockSize(){
+			if(steal){return(blockSize);}
+			return(numItems-(numBlocks-1)*blockSize);
+		}
+	}
+	
+	public WorkerPool(int numThreads){
+		this.numThreads=numThreads;
+		if(numThreads>1){ //single thread runs tasks on the caller
+			phaser=new Phaser(numThreads+1);
+			workers=new Thread[numThreads];
+			for(int n=0; n<numThreads; n++){
+				final int finalN=n;
+				Thread worker=new Thread("Amua worker "+n){
+					public void run(){
+						while(true){
+							phaser.arriveAndAwaitAdvance(); //wait for task
+							if(shutdown){
+								phaser.arriveAndDeregister();
+								return;
+							}
+							try{
+								curTask.run(finalN);
+							}catch(Throwable e){
+								if(taskError==null){
+									if(e instanceof Exception){taskError=(Exception) e;}
+									else{taskError=new Exception(e);}
+								}
+							}
+							phaser.arriveAndAwaitAdvance(); //task done
+						}
+					}
+				};
+				worker.setDaemon(true);
+				worker.start();
+				workers[n]=worker;
+			}
+		}
+	}
+	
+	/**
+	 * Runs the task on all workers and waits for them to finish
+	 * @param task
+	 * @throws Exception The first exception thrown by a worker
+	 */
+	public synchronized void run(Task task) throws Exception{
+		if(shutdown){throw new IllegalStateException("Worker pool is shut down");}
+		if(numThreads==1){
+			task.run(0);
+			return;
+		}
+		curTask=task;
+		taskError=null;
+		phaser.arriveAndAwaitAdvance(); //start workers
+		phaser.arriveAndAwaitAdvance(); //wait for workers
+		curTask=null;
+		if(taskError!=null){
+			throw taskError;
+		}
+	}
+	
+	/**
+	 * Runs the task on all workers, with all blocks unclaimed
+	 * @throws Exception The first exception thrown by a worker
+	 */
+	public void run(Task task, Blocks blocks) throws Exception{
+		blocks.reset();
+		run(task);
+	}
+	
+	/**
+	 * Stops the worker threads and waits for them to exit.  The pool can't be used afterwards.
+	 */
+	public synchronized void shutdown(){
+		if(shutdown){return;}
+		shutdown=true;
+		if(numThreads>1){
+			phaser.arriveAndAwaitAdvance(); //release workers, which exit
+			for(int n=0; n<numThreads; n++){
+				try{
+					workers[n].join();
+				} catch(InterruptedException e){
+					Thread.currentThread().interrupt(); //workers exit anyway
+					return;
+				}
+			}
+		}
+	}
+	
+	public int getNumThreads(){
+		return(numThreads);
+	}
+}
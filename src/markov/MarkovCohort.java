@@ -41,6 +41,9 @@ public class MarkovCohort{
 	Variable curT;
 	AmuaModel myModel;
 	int curThread;
+	MarkovMatrix matrix; //chains with no state-dependent expressions
+	/**Matrix values shared by the chains in the run (null if not shared)*/
+	MarkovMatrix.Cache matrixCache;
 	
 	//Constructor
 	public MarkovCohort(MarkovNode chainRoot, int curThread){
@@ -83,7 +86,7 @@ public class MarkovCohort{
 		//Initialize variables
 		myModel.unlockVarsAll(curThread);
 		for(int c=0; c<numVariables; c++){
-			variables[c].value[curThread]=Interpreter.evaluateTokens(variables[c].parsedTokens, curThread, false);
+			variables[c].value[curThread]=Interpreter.evaluateTokens(variables[c].parsedTokens, curThread, false).copy(); //value may be updated in place
 			variables[c].locked[curThread]=true;
 		}
 		
@@ -103,12 +106,12 @@ public class MarkovCohort{
 		double sumProb=0;
 		int indexCompProb=-1;
 		for(int s=0; s<numStates; s++){
-			if(states[s].prob.matches("C") || states[s].prob.matches("c")){ //Complementary
+			if(states[s].prob.equals("C") || states[s].prob.equals("c")){ //Complementary
 				states[s].curProb[0]=-1;
 				indexCompProb=s;
 			}
 			else{ //Evaluate text
-				states[s].curProb[0]=Interpreter.evaluateTokens(states[s].curProbTokens, curThread, false).getDouble();
+				states[s].curProb[0]=states[s].curProbExpr.evaluate(curThread, false);
 				sumProb+=states[s].curProb[0];
 			}
 		}
@@ -132,6 +135,14 @@ public class MarkovCohort{
 			curPrev[s]=myModel.cohortSize*states[s].curProb[0];
 		}
 		
+		//Flatten chain into transition matrix
+		matrix=null;
+		if(chainRoot.matrixForm){
+			MarkovMatrix.Cache cache=matrixCache;
+			if(chainRoot.hasVarUpdates && chainRoot.curVariableUpdatesT0!=null){cache=null;} //variables may differ from other chains
+			matrix=new MarkovMatrix(states,numDim,curThread,cache);
+		}
+		
 		//Simulate cycles
 		int t=0;
 		
@@ -141,6 +152,7 @@ public class MarkovCohort{
 			if(t>0) {
 				curT.unlockDependents(curThread);
 				curT.updateDependents(myModel, curThread);
+				if(matrix!=null){matrix.update(t);} //values for time-dependent states
 			}
 			
 			//chain root variable updates
@@ -156,12 +168,17 @@ public class MarkovCohort{
 				}
 			}
 			
-			for(int s=0; s<numStates; s++){ //Update each state
-				for(int d=0; d<numDim; d++){ //Update state rewards
-					double curReward=Interpreter.evaluateTokens(states[s].curRewardTokens[d], curThread, false).getDouble();
-					cycleRewards[d]+=curReward*curPrev[s];
+			if(matrix!=null){
+				matrix.step(curPrev, newPrev, cycleRewards);
+			}
+			else{
+				for(int s=0; s<numStates; s++){ //Update each state
+					for(int d=0; d<numDim; d++){ //Update state rewards
+						double curReward=states[s].curRewardExprs[d].evaluate(curThread, false);
+						cycleRewards[d]+=curReward*curPrev[s];
+					}
+					traverseNode(states[s],curPrev[s]);
 				}
-				traverseNode(states[s],curPrev[s]);
 			}
 			updateTrace(t);
 			terminate=checkTerminationCondition(); //check condition
@@ -180,6 +197,8 @@ public class MarkovCohort{
 			curT.value[curThread].setInt(t);
 		}
 
+		trace.trimToSize();
+
 		//Get chain EVs
 		chainRoot.expectedValues=new double[numDim];
 		chainRoot.expectedValuesDis=new double[numDim];
@@ -189,7 +208,7 @@ public class MarkovCohort{
 		}
 		if(chainRoot.hasCost) {
 			for(int d=0; d<numDim; d++){
-				double curCost=Interpreter.evaluateTokens(chainRoot.curCostTokens[d],curThread,false).getDouble();
+				double curCost=chainRoot.curCostExprs[d].evaluate(curThread, false);
 				curCost*=myModel.cohortSize;
 				chainRoot.expectedValues[d]+=curCost;
 				chainRoot.expectedValuesDis[d]+=curCost;
@@ -204,13 +223,12 @@ public class MarkovCohort{
 	private boolean checkTerminationCondition(){
 		boolean terminate=false;
 		try{
-			Numeric check=Interpreter.evaluateTokens(chainRoot.curTerminationTokens, curThread, false);
-			if(check.getBool()){ //termination condition true
+			if(chainRoot.curTerminationExpr.evaluateBool(curThread, false)){ //termination condition true
 				terminate=true;
 			}
 		}catch(Exception e){
 			e.printStackTrace();
-			chainRoot.panel.errorLog.recordError(e);
+			myModel.errorLog.recordError(e);
 			curT.value[curThread].setInt(0);
 		}
 		return(terminate);
@@ -231,7 +249,7 @@ public class MarkovCohort{
 		//Update costs
 		if(node.hasCost){
 			for(int d=0; d<numDim; d++){
-				double curCost=Interpreter.evaluateTokens(node.curCostTokens[d],curThread,false).getDouble();
+				double curCost=node.curCostExprs[d].evaluate(curThread, false);
 				cycleRewards[d]+=curCost*nodePrev;
 			}
 		}
@@ -254,12 +272,12 @@ public class MarkovCohort{
 			int indexCompProb=-1;
 			for(int c=0; c<node.numChildren; c++){
 				MarkovNode curChild=node.children[c];
-				if(curChild.prob.matches("C") || curChild.prob.matches("c")){ //Complementary
+				if(curChild.prob.equals("C") || curChild.prob.equals("c")){ //Complementary
 					curChild.curProb[0]=-1;
 					indexCompProb=c;
 				}
 				else{ //Evaluate text
-					curChild.curProb[0]=Interpreter.evaluateTokens(curChild.curProbTokens, curThread, false).getDouble();
+					curChild.curProb[0]=curChild.curProbExpr.evaluate(curThread, false);
 					sumProb+=curChild.curProb[0];
 				}
 			}
@@ -332,13 +350,12 @@ public class MarkovCohort{
 			cycleVariables[c]=variables[c].value[curThread].getDouble();
 			trace.cycleVariables[c].add(cycleVariables[c]);
 		}
-		
-		trace.updateTable(t);
 	}
 	
 	private void getTransitionIndex(MarkovNode node){
 		if(node.type==4){ //get transition to
-			String nextState=(String) node.comboTransition.getSelectedItem();
+			String nextState=node.transition;
+			if(node.comboTransition!=null){nextState=(String) node.comboTransition.getSelectedItem();}
 			node.transTo=getStateIndex(nextState);
 		}
 		else{
@@ -0,0 +1,281 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package markov;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import math.MathUtils;
+
+/**
+ * Matrix form of a Markov chain with no state-dependent expressions.
+ * Each state subtree is flattened into its transition paths.  Probabilities, costs, and rewards are evaluated once
+ * for constant states and once per cycle for time-dependent states, and can be shared by chains with the same subtree.
+ * Each cycle applies the paths in traversal order, so the trace is identical to MarkovCohort's traversal.
+ */
+public class MarkovMatrix{
+	MarkovNode states[];
+	int numStates, numDim;
+	int curThread;
+	StatePaths paths[];
+	boolean hasTime;
+	Cache cache; //null if values aren't shared
+	
+	/**
+	 * @param cache Values shared with other chains in the run, null to evaluate all values for this chain
+	 */
+	public MarkovMatrix(MarkovNode states[], int numDim, int curThread, Cache cache) throws Exception{
+		this.states=states;
+		this.numStates=states.length;
+		this.numDim=numDim;
+		this.curThread=curThread;
+		this.cache=cache;
+		paths=new StatePaths[numStates];
+		for(int s=0; s<numStates; s++){
+			paths[s]=new StatePaths(states[s]);
+			if(paths[s].time){hasTime=true;}
+		}
+		for(int s=0; s<numStates; s++){
+			paths[s].setCycle(0);
+		}
+	}
+	
+	/**
+	 * Gets values for time-dependent states.  Call after 't' and its dependent variables have been updated.
+	 * @param t Cycle
+	 * @throws Exception
+	 */
+	public void update(int t) throws Exception{
+		if(hasTime){
+			for(int s=0; s<numStates; s++){
+				if(paths[s].time){paths[s].setCycle(t);}
+			}
+		}
+	}
+	
+	/**
+	 * Runs one cycle
+	 * @param curPrev Prevalence at the beginning of the cycle
+	 * @param newPrev Prevalence at the end of the cycle (updated in place, as in MarkovCohort)
+	 * @param cycleRewards Rewards accrued during the cycle are added
+	 */
+	public void step(double curPrev[], double newPrev[], double cycleRewards[]){
+		for(int s=0; s<numStates; s++){
+			paths[s].step(curPrev[s], newPrev, cycleRewards);
+		}
+	}
+	
+	/**
+	 * State subtree flattened in traversal order
+	 */
+	private class StatePaths{
+		boolean time; //values depend on t
+		String key; //subtree expressions
+		int numNodes;
+		MarkovNode nodes[];
+		int parent[], children[][];
+		int probIndex[], costIndex[]; //index in values, -1 if none
+		int numValues;
+		/**
+		 * State rewards, then the prob and costs of each node
+		 */
+		double values[];
+		double nodePrev[];
+		
+		StatePaths(MarkovNode state){
+			time=state.subtreeHasTime;
+			ArrayList<MarkovNode> nodeList=new ArrayList<MarkovNode>();
+			ArrayList<Integer> parentList=new ArrayList<Integer>();
+			addNode(state,-1,nodeList,parentList);
+			numNodes=nodeList.size();
+			nodes=new MarkovNode[numNodes];
+			parent=new int[numNodes];
+			children=new int[numNodes][];
+			probIndex=new int[numNodes];
+			costIndex=new int[numNodes];
+			nodePrev=new double[numNodes];
+			numValues=numDim; //state rewards
+			StringBuilder keyBuilder=new StringBuilder();
+			for(int d=0; d<numDim; d++){keyBuilder.append(state.rewards[d]).append('\n');}
+			for(int k=0; k<numNodes; k++){
+				nodes[k]=nodeList.get(k);
+				parent[k]=parentList.get(k);
+				children[k]=new int[nodes[k].numChildren];
+				probIndex[k]=-1;
+				if(k>0){
+					probIndex[k]=numValues;
+					numValues++;
+				}
+				costIndex[k]=-1;
+				if(nodes[k].hasCost){
+					costIndex[k]=numValues;
+					numValues+=numDim;
+				}
+				keyBuilder.append(nodes[k].type).append(' ').append(nodes[k].numChildren).append('\n');
+				if(k>0){keyBuilder.append(nodes[k].prob).append('\n');}
+				if(nodes[k].hasCost){
+					for(int d=0; d<numDim; d++){keyBuilder.append(nodes[k].cost[d]).append('\n');}
+				}
+			}
+			for(int k=1; k<numNodes; k++){ //children are added in order
+				int p=parent[k];
+				int c=0;
+				while(children[p][c]!=0){c++;}
+				children[p][c]=k;
+			}
+			key=keyBuilder.toString();
+			if(cache==null){values=new double[numValues];}
+		}
+		
+		private void addNode(MarkovNode node, int parentIndex, ArrayList<MarkovNode> nodeList, ArrayList<Integer> parentList){
+			int index=nodeList.size();
+			nodeList.add(node);
+			parentList.add(parentIndex);
+			if(node.type!=4){
+				for(int c=0; c<node.numChildren; c++){
+					addNode(node.children[c],index,nodeList,parentList);
+				}
+			}
+		}
+		
+		void setCycle(int t) throws Exception{
+			if(cache==null){
+				evaluate(values);
+				return;
+			}
+			double shared[]=cache.get(key, t);
+			if(shared==null){
+				shared=new double[numValues];
+				evaluate(shared);
+				shared=cache.put(key, t, shared);
+			}
+			values=shared;
+		}
+		
+		private void evaluate(double curValues[]) throws Exception{
+			for(int d=0; d<numDim; d++){ //state rewards
+				curValues[d]=nodes[0].curRewardExprs[d].evaluate(curThread, false);
+			}
+			for(int k=0; k<numNodes; k++){
+				MarkovNode node=nodes[k];
+				if(costIndex[k]!=-1){
+					for(int d=0; d<numDim; d++){
+						curValues[costIndex[k]+d]=node.curCostExprs[d].evaluate(curThread, false);
+					}
+				}
+				//Calculate probabilities for children (see MarkovCohort)
+				if(node.type!=4 && node.numChildren>0){
+					double sumProb=0;
+					int indexCompProb=-1;
+					for(int c=0; c<node.numChildren; c++){
+						MarkovNode curChild=node.children[c];
+						if(curChild.prob.equals("C") || curChild.prob.equals("c")){ //Complementary
+							indexCompProb=c;
+						}
+						else{ //Evaluate text
+							double curProb=curChild.curProbExpr.evaluate(curThread, false);
+							curValues[probIndex[children[k][c]]]=curProb;
+							sumProb+=curProb;
+						}
+					}
+					if(indexCompProb==-1){
+						if(Math.abs(1.0-sumProb)>MathUtils.tolerance){ //throw error
+							throw new Exception("Error: Probabilities sum to "+sumProb+" ("+node.name+")");
+						}
+					}
+					else{
+						if(sumProb>1.0 || sumProb<0.0){ //throw error
+							throw new Exception("Error: Probabilities sum to "+sumProb+" ("+node.name+")");
+						}
+						else{
+							curValues[probIndex[children[k][indexCompProb]]]=1.0-sumProb;
+						}
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Same operations in the same order as MarkovCohort.traverseNode
+		 */
+		void step(double prev, double newPrev[], double cycleRewards[]){
+			for(int d=0; d<numDim; d++){ //state rewards
+				cycleRewards[d]+=values[d]*prev;
+			}
+			for(int k=0; k<numNodes; k++){
+				double curPrev=prev;
+				if(k>0){curPrev=nodePrev[parent[k]]*values[probIndex[k]];}
+				nodePrev[k]=curPrev;
+				int curCost=costIndex[k];
+				if(curCost!=-1){
+					for(int d=0; d<numDim; d++){
+						cycleRewards[d]+=values[curCost+d]*curPrev;
+					}
+				}
+				MarkovNode node=nodes[k];
+				if(node.type==4){ //Transition node, end of branch
+					newPrev[node.transFrom]-=curPrev; //from state
+					newPrev[node.transTo]+=curPrev; //next state
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Subtree values by cycle, shared by the chains in a cohort run.  Chains with the same subtree expressions
+	 * get the same values for a cycle, so each cycle is evaluated once for all of them.
+	 * Only chains whose variables are the same at each cycle (no t=0 variable updates) should share a cache.
+	 */
+	public static class Cache{
+		ConcurrentHashMap<String,ArrayList<double[]>> entries=new ConcurrentHashMap<String,ArrayList<double[]>>();
+		
+		/**
+		 * @return Values for the cycle, or null if they haven't been evaluated
+		 */
+		double[] get(String key, int t){
+			ArrayList<double[]> cycles=entries.get(key);
+			if(cycles==null){return(null);}
+			synchronized(cycles){
+				if(t<cycles.size()){return(cycles.get(t));}
+			}
+			return(null);
+		}
+		
+		/**
+		 * @return Values stored for the cycle (another chain may have stored them first)
+		 */
+		double[] put(String key, int t, double values[]){
+			ArrayList<double[]> cycles=entries.get(key);
+			if(cycles==null){
+				ArrayList<double[]> newCycles=new ArrayList<double[]>();
+				cycles=entries.putIfAbsent(key, newCycles);
+				if(cycles==null){cycles=newCycles;}
+			}
+			synchronized(cycles){
+				if(t<cycles.size()){return(cycles.get(t));}
+				if(t==cycles.size()){cycles.add(values);} //cycles are evaluated in order
+			}
+			return(values);
+		}
+		
+		public int size(){
+			return(entries.size());
+		}
+	}
+}
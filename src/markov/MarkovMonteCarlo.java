@@ -0,0 +1,1370 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package markov;
+
+import javax.swing.ProgressMonitor;
+
+import base.AmuaModel;
+import base.MicroStats;
+import base.PersonStore;
+import base.RunReport;
+import main.MersenneTwisterFast;
+import main.StreamRNG;
+import main.Variable;
+import main.WorkerPool;
+import math.BatchContext;
+import math.Interpreter;
+import math.MathUtils;
+import math.Numeric;
+import math.NumericException;
+
+/**
+ * Markov microsimulation.  Each phase (initialization, cycles, individual results) is run on the model's WorkerPool,
+ * which is kept between runs.  With per-person RNG streams a person's draws don't depend on the thread, so people are
+ * split into small blocks that idle workers steal.  Otherwise each thread gets one fixed block so that seeded runs
+ * are reproducible.
+ */
+public class MarkovMonteCarlo{
+	AmuaModel myModel;
+	MarkovTree markovTree;
+	RunReport runReport;
+	
+	int numDim;
+	int numVars;
+	Variable variables[];
+	Numeric origVariableVals[];
+	
+	//people
+	int numPeople;
+	PersonStore people;
+	int numSubgroups;
+	int subgroupSize[];
+	boolean personGroups[][]; //[thread][subgroup] - current person
+	
+	//Markov chain
+	int numChains;
+	int numStates;
+	MarkovNode states[];
+	double initPrev[][]; //[curThread][state]
+	//Sums are kept per block of people [...][block] and reduced in block order, so they don't depend on the thread that ran the block
+	double curPrev[][], newPrev[][], curPrevGroup[][][], newPrevGroup[][][];
+	double cycleRewards[][],cumRewards[];
+	double cycleRewardsDis[],cumRewardsDis[];
+	double cycleRewardsGroup[][][], cumRewardsGroup[][], cycleRewardsDisGroup[][], cumRewardsDisGroup[][];
+	double cycleVariables[][]; int cycleVariablesDenom[][];
+	double cycleVariablesGroup[][][]; int cycleVariablesDenomGroup[][][];
+	
+	MarkovTrace trace, traceGroup[];
+	MicroStats microStats, microStatsGroup[];
+	Variable curT;
+	
+	MersenneTwisterFast generator[];
+	/**Per-person RNG streams (null if not used)*/
+	StreamRNG streams[];
+	/**Batch mode: state subtrees that are simulated in batches, draws used by each person from their stream this cycle*/
+	boolean batchState[];
+	long streamDraws[];
+	ProgressMonitor progress;
+	double discountFactor[];
+	
+	
+	int numThreads=1;
+	WorkerPool pool;
+	WorkerPool.Blocks blocks;
+	int numBlocks;
+	double maxProg;
+	long startTime, endTime;
+	volatile boolean cancelled;
+	int guessMaxCycles=100;
+	int curProg=0;
+	
+	//Constructor
+	public MarkovMonteCarlo(MarkovTree tree, RunReport runReport){
+		this.markovTree=tree;
+		this.myModel=tree.myModel;
+		this.runReport=runReport;
+		
+		numChains=tree.chains.size();
+		numDim=myModel.dimInfo.dimNames.length;
+		
+		//threads
+		numThreads=myModel.numThreads;
+		
+		//Get innate variable 't'
+		int indexT=myModel.getInnateVariableIndex("t");
+		curT=myModel.innateVariables.get(indexT);
+		curT.value=new Numeric[numThreads];
+		curT.locked=new boolean[numThreads];
+		for(int n=0; n<numThreads; n++){
+			curT.value[n]=new Numeric(0);
+			curT.locked[n]=true;
+		}
+		
+		numVars=myModel.variables.size();
+		variables=new Variable[numVars];
+		origVariableVals=new Numeric[numVars];
+		for(int v=0; v<numVars; v++){ //get pointers
+			variables[v]=myModel.variables.get(v);
+			origVariableVals[v]=variables[v].value[0];
+			variables[v].value=new Numeric[numThreads];
+			variables[v].locked=new boolean[numThreads];
+		}
+	}
+	
+	public void simulate(boolean showProgress) throws NumericException, Exception{
+		cancelled=false;
+		maxProg=(numChains+1)*guessMaxCycles; //initialize + simulate
+		progress=new ProgressMonitor(myModel.getFrame(), "Monte Carlo simulation", "", 0, (int) maxProg);
+		startTime=System.currentTimeMillis();
+		
+		pool=myModel.getWorkerPool(numThreads);
+		initializePeople(showProgress); //create people and assign subgroups
+		if(cancelled==false){
+			runChains(showProgress); //simulate each Markov chain
+		}
+		
+		progress.close();
+		endTime=System.currentTimeMillis();
+	}
+	
+	
+	private void initializePeople(final boolean showProgress) throws Exception{
+		numPeople=myModel.cohortSize;
+		
+		numSubgroups=0;
+		if(myModel.reportSubgroups){
+			numSubgroups=myModel.subgroupNames.size();
+			myModel.parseSubgroups();
+		}
+		
+		//Initialize random number generator
+		generator=new MersenneTwisterFast[numThreads];
+		myModel.generatorVar=new MersenneTwisterFast[numThreads];
+		myModel.curGenerator=new MersenneTwisterFast[numThreads];
+		streams=null;
+		if(myModel.rngStreams){streams=new StreamRNG[numThreads];}
+		long streamSeed=System.currentTimeMillis();
+		if(myModel.CRN){streamSeed=myModel.crnSeed;}
+		for(int i=0; i<numThreads; i++){
+			if(myModel.rngStreams){ //same seed for all threads, stream is selected for each person
+				streams[i]=new StreamRNG(streamSeed);
+				generator[i]=streams[i];
+			}
+			else{
+				generator[i]=new MersenneTwisterFast(System.currentTimeMillis()+i); //offset so that not all get the same time in millis
+				if(myModel.CRN){ //Common random numbers
+					generator[i].setSeed(myModel.crnSeed+i+555); //initialization seed
+				}
+			}
+			myModel.generatorVar[i]=generator[i];
+			myModel.curGenerator[i]=myModel.generatorVar[i];
+		}
+		
+		//Initialize people
+		people=new PersonStore(numPeople, variables, origVariableVals, numSubgroups, numThreads);
+		people.initMarkov(numDim);
+		personGroups=new boolean[numThreads][numSubgroups];
+		blocks=new WorkerPool.Blocks(numPeople, numThreads, streams!=null);
+		numBlocks=blocks.getNumBlocks();
+		pool.run(new WorkerPool.Task(){
+			public void run(int finalN) throws Exception{
+				int threadProg=0;
+				for(int b=blocks.first(finalN); b!=-1 && cancelled==false; b=blocks.next(finalN)){
+					final int beginIndex = blocks.getBegin(b);
+					final int endIndex = blocks.getEnd(b);
+					for(int p=beginIndex; p<endIndex; p++){
+						setStream(finalN,p,-1,-1);
+						//eval independent vars
+						myModel.unlockVarsAll(finalN);
+						for(int v=0; v<numVars; v++){
+							if(variables[v].independent){
+								variables[v].locked[finalN]=true;
+								variables[v].value[finalN]=Interpreter.evaluateTokens(variables[v].parsedTokens, finalN, true).copy(); //value may be updated in place
+							}
+						}
+						//Update any dependent variables
+						for(int v=0; v<numVars; v++){
+							variables[v].updateDependents(myModel,finalN);
+						}
+						//assign vals to person
+						people.setInitValues(p, finalN);
+					
+
+						//get subgroup
+						if(myModel.reportSubgroups){
+							for(int g=0; g<numSubgroups; g++){
+								Numeric curVal=Interpreter.evaluateTokens(myModel.subgroupTokens[g], finalN, false);
+								if(curVal.getBool()){people.setInSubgroup(g, p);}
+							}
+						}
+
+						if(finalN==0 && showProgress){ //update progress from thread 0
+							threadProg++;
+							int prog=threadProg*numThreads;
+							double curProg=(prog/(numPeople*1.0))*guessMaxCycles; //convert to cycle prog
+							updateProgress((int)curProg);
+							if(progress.isCanceled()){
+								cancelled=true;	p=numPeople;
+							}
+						}
+
+					}
+				}
+			}
+		}, blocks);
+		
+		//Get subgroup indices
+		subgroupSize=new int[numSubgroups];
+		for(int g=0; g<numSubgroups; g++){
+			subgroupSize[g]=people.getSubgroupSize(g);
+			runReport.subgroupSizes[g]=subgroupSize[g];
+		}
+	}
+	
+	private void runChains(final boolean showProgress) throws NumericException, Exception{
+		//set threads
+		for(int i=0; i<markovTree.nodes.size(); i++){
+			MarkovNode curNode=markovTree.nodes.get(i);
+			curNode.curProb=new double[numThreads];
+			curNode.curCosts=new double[numDim][numThreads];
+			curNode.curChildProbs=new double[numThreads][curNode.numChildren];
+		}
+		
+		//Chain
+		curProg=guessMaxCycles;
+		for(int c=0; c<numChains; c++){
+			final MarkovNode curChain=markovTree.chains.get(c);
+			final int finalC=c;
+			
+			//Reset t
+			for(int n=0; n<numThreads; n++){
+				curT.value[n].setInt(0);
+			}
+			
+			//initialize RNG
+			for(int n=0; n<numThreads; n++){
+				if(myModel.CRN && streams==null){ //Common random numbers
+					myModel.generatorVar[n].setSeed(myModel.crnSeed+n);
+				}
+				myModel.curGenerator[n]=myModel.generatorVar[n];
+				setStream(n,-1,c,-1);
+			
+				evalCosts(curChain,n); //Update expressions for costs/rewards
+				evalChildProbs(curChain,true,n); //Update probs
+			}
+			
+			//Get Markov States
+			numStates=curChain.stateNames.size();
+			states=new MarkovNode[numStates];
+			for(int s=0; s<numStates; s++){ //get pointers
+				int index=curChain.childIndices.get(s);
+				states[s]=markovTree.nodes.get(index);
+				states[s].curRewards=new double[numDim][numThreads];
+			}
+
+			//Prev/rewards - overall
+			curPrev=new double[numStates][numBlocks]; newPrev=new double[numStates][numBlocks];
+			cycleRewards=new double[numDim][numBlocks]; cycleRewardsDis=new double[numDim];
+			cumRewards=new double[numDim]; cumRewardsDis=new double[numDim];
+			cycleVariables=new double[numVars][numBlocks]; cycleVariablesDenom=new int[numVars][numBlocks];
+
+			//subgroup
+			curPrevGroup=new double[numSubgroups][numStates][numBlocks]; newPrevGroup=new double[numSubgroups][numStates][numBlocks];
+			cycleRewardsGroup=new double[numSubgroups][numDim][numBlocks]; cycleRewardsDisGroup=new double[numSubgroups][numDim];
+			cumRewardsGroup=new double[numSubgroups][numDim]; cumRewardsDisGroup=new double[numSubgroups][numDim];
+			cycleVariablesGroup=new double[numSubgroups][numVars][numBlocks]; cycleVariablesDenomGroup=new int[numSubgroups][numVars][numBlocks];
+
+			trace=new MarkovTrace(curChain);
+			myModel.traceMarkov=trace;
+			if(myModel.displayIndResults){
+				microStats=new MicroStats(myModel, numPeople, !showProgress, numBlocks); //keep individuals only for displayed runs
+			}
+			
+			//Subgroups
+			traceGroup=null;
+			if(myModel.reportSubgroups){
+				traceGroup=new MarkovTrace[numSubgroups];
+				for(int g=0; g<numSubgroups; g++){
+					traceGroup[g]=new MarkovTrace(curChain);
+				}
+				if(myModel.displayIndResults){
+					microStatsGroup=new MicroStats[numSubgroups];
+					for(int g=0; g<numSubgroups; g++){
+						microStatsGroup[g]=new MicroStats(myModel,subgroupSize[g],!showProgress,numBlocks);
+					}
+				}
+			}
+			
+			//Get state indices for all transition nodes
+			curChain.transFrom=-1;
+			getTransitionIndex(curChain);
+			//Get evaluation tree - check for variables
+			checkForVariables(curChain);
+			
+			//Initialize state prevalence probabilities (assume static probs initially, will be updated for each person if depends on variable)
+			initPrev=new double[numThreads][numStates];
+			for(int n=0; n<numThreads; n++){
+				initPrev[n][0]=states[0].curProb[0];
+				for(int s=1; s<numStates; s++){
+					initPrev[n][s]=initPrev[n][s-1]+states[s].curProb[0];
+				}
+			}
+			
+			initializeChain(curChain,showProgress,finalC);
+			
+			//Simulate chain cycles
+			int t=0;
+			discountFactor=new double[numDim];
+			
+			boolean terminate=false;
+			
+			CycleTask cycleTask;
+			if(myModel.batchSim){
+				batchState=new boolean[numStates];
+				for(int s=0; s<numStates; s++){
+					batchState[s]=canBatch(states[s]);
+				}
+				streamDraws=null;
+				if(streams!=null){streamDraws=new long[numPeople];}
+				cycleTask=new BatchCycleTask(curChain,c);
+			}
+			else{
+				cycleTask=new CycleTask(curChain,c);
+			}
+			
+			while(terminate==false && t<markovTree.maxCycles){
+				if(showProgress){
+					curProg++;
+					updateProgress(curProg);
+				}
+				
+				//Update discount factor
+				if(markovTree.discountRewards){
+					int disCycle=t;
+					if(t<markovTree.discountStartCycle){disCycle=0;} //don't discount yet
+					else{disCycle=(t-markovTree.discountStartCycle)+1;}
+					
+					for(int d=0; d<numDim; d++){
+						double discountRate=markovTree.discountRates[d]/100.0;
+						discountFactor[d]=1.0/Math.pow(1+discountRate, disCycle);
+					}
+				}
+				
+				//Sim cycle
+				cycleTask.t=t;
+				pool.run(cycleTask, blocks);
+				
+				updateTrace(t);
+				for(int g=0; g<numSubgroups; g++){updateTraceGroup(g,t);}
+				
+								
+				terminate=checkTerminationCondition(curChain); //check condition
+				if(terminate && markovTree.halfCycleCorrection==true){
+					trace.updateHalfCycle();
+					for(int d=0; d<numDim; d++){ //adjust cum rewards
+						cumRewards[d]=trace.cumRewards[d].get(t);
+						if(markovTree.discountRewards){
+							cumRewardsDis[d]=trace.cumRewardsDis[d].get(t);
+						}
+					}
+					//subgroups
+					for(int g=0; g<numSubgroups; g++){
+						traceGroup[g].updateHalfCycle();
+						for(int d=0; d<numDim; d++){
+							cumRewardsGroup[g][d]=traceGroup[g].cumRewards[d].get(t);
+							if(markovTree.discountRewards){
+								cumRewardsDisGroup[g][d]=traceGroup[g].cumRewardsDis[d].get(t);
+							}
+						}
+					}
+				}
+
+				t++; //next cycle
+				for(int n=0; n<numThreads; n++){
+					curT.value[n].setInt(t);
+				}
+				
+				if(progress.isCanceled()){
+					cancelled=true;
+					terminate=true;
+				}
+				
+			} //end cycle loop
+			
+			//Update max cycle guess
+			guessMaxCycles=t;
+			maxProg=(numChains+1)*guessMaxCycles; //initialize + simulate
+			progress.setMaximum((int) maxProg);
+			
+			//Reset variable 't'
+			for(int n=0; n<numThreads; n++){
+				curT.value[n].setInt(0);
+			}
+			
+			//repoint variable vals
+			for(int v=0; v<numVars; v++){
+				variables[v].value[0]=origVariableVals[v];
+			}
+			
+			//Get chain EVs
+			if(cancelled==false){
+				final double chainCosts[]=new double[numDim]; //up-front costs
+				if(curChain.hasCost) {
+					for(int d=0; d<numDim; d++){
+						double curCost=curChain.curCostExprs[d].evaluate(0, false);
+						chainCosts[d]=curCost;
+					}
+				}
+				
+				curChain.expectedValues=new double[numDim];
+				curChain.expectedValuesDis=new double[numDim];
+				for(int d=0; d<numDim; d++){
+					curChain.expectedValues[d]=cumRewards[d]+(chainCosts[d]*numPeople);
+					curChain.expectedValuesDis[d]=cumRewardsDis[d]+(chainCosts[d]*numPeople);
+				}
+				//subgroups
+				curChain.expectedValuesGroup=new double[numSubgroups][numDim];
+				curChain.expectedValuesDisGroup=new double[numSubgroups][numDim];
+				for(int g=0; g<numSubgroups; g++){
+					for(int d=0; d<numDim; d++){
+						curChain.expectedValuesGroup[g][d]=cumRewardsGroup[g][d]+(chainCosts[d]*subgroupSize[g]);
+						curChain.expectedValuesDisGroup[g][d]=cumRewardsDisGroup[g][d]+(chainCosts[d]*subgroupSize[g]);
+					}
+				}
+			
+				//record individual results
+				if(myModel.displayIndResults){
+					pool.run(new WorkerPool.Task(){
+						public void run(int finalN){
+							for(int b=blocks.first(finalN); b!=-1; b=blocks.next(finalN)){
+								recordBlock(blocks.getBegin(b), blocks.getEnd(b), b);
+							}
+						}
+						
+						void recordBlock(int beginIndex, int endIndex, int b){
+							double personRewards[][]=people.rewards;
+							if(markovTree.discountRewards){personRewards=people.rewardsDis;}
+							int subgroupIndex[]=new int[numSubgroups]; //cur index in each subgroup
+							for(int g=0; g<numSubgroups; g++){
+								subgroupIndex[g]=people.getSubgroupIndex(g, beginIndex);
+							}
+							//Update each person
+							for(int p=beginIndex; p<endIndex; p++){ 
+								//overall
+								for(int d=0; d<numDim; d++){
+									microStats.setOutcome(b, d, p, personRewards[d][p]+chainCosts[d]);
+								}
+								for(int v=0; v<numVars; v++){
+									microStats.setVariable(b, v, p, people.getValue(v, p));
+								}
+								//subgroups
+								for(int g=0; g<numSubgroups; g++){
+									if(people.inSubgroup(g, p)){
+										int z=subgroupIndex[g];
+										for(int d=0; d<numDim; d++){
+											microStatsGroup[g].setOutcome(b, d, z, personRewards[d][p]+chainCosts[d]);
+										}
+										for(int v=0; v<numVars; v++){
+											microStatsGroup[g].setVariable(b, v, z, people.getValue(v, p));
+										}
+										subgroupIndex[g]++;
+									}
+								}
+							}
+						}
+					}, blocks);
+				}
+				
+				trace.trimToSize();
+				for(int g=0; g<numSubgroups; g++){traceGroup[g].trimToSize();}
+				
+				//update run report
+				runReport.names.add(curChain.name);
+				runReport.markovTraces.add(trace);
+				for(int g=0; g<runReport.numSubgroups; g++){
+					runReport.markovTracesGroup[g].add(traceGroup[g]);
+				}
+				if(myModel.displayIndResults){
+					runReport.microStats.add(microStats);
+					for(int g=0; g<runReport.numSubgroups; g++){
+						runReport.microStatsGroup[g].add(microStatsGroup[g]);
+					}
+				}
+				
+			}
+			else{ //was cancelled
+				c=numChains; //end loop
+			}
+		} //end chain Loop
+	}
+	
+	private void initializeChain(final MarkovNode curChain, final boolean showProgress, final int finalC) throws Exception{
+		//Initialize state for all people - multithread
+		pool.run(new WorkerPool.Task(){
+			public void run(int finalN) throws Exception{
+				for(int b=blocks.first(finalN); b!=-1; b=blocks.next(finalN)){
+					initializeBlock(blocks.getBegin(b), blocks.getEnd(b), b, finalN);
+				}
+			}
+			
+			void initializeBlock(int beginIndex, int endIndex, int b, int finalN) throws Exception{
+				for(int p=beginIndex; p<endIndex; p++){
+					setStream(finalN,p,finalC,-1);
+					people.loadInitValues(p, finalN); //get person-specific variables
+					for(int d=0; d<numDim; d++){ //reset rewards
+						people.rewards[d][p]=0;	people.rewardsDis[d][p]=0;
+					}
+	
+					//initialize state
+					if(curChain.hasVarUpdates && curChain.curVariableUpdatesT0!=null){
+						//Perform variable updates
+						for(int u=0; u<curChain.curVariableUpdatesT0.length; u++){
+							curChain.curVariableUpdatesT0[u].update(true,finalN);
+						}
+						//Update any dependent variables
+						for(int u=0; u<curChain.curVariableUpdatesT0.length; u++){
+							curChain.curVariableUpdatesT0[u].variable.updateDependents(myModel,finalN);
+						}
+					}
+					people.storeValues(p, finalN);
+					//assign starting state
+					if(curChain.childHasProbVariables){
+						evalChildProbs(curChain,false,finalN);
+						initPrev[finalN][0]=states[0].curProb[finalN];
+						for(int s=1; s<numStates; s++){
+							initPrev[finalN][s]=initPrev[finalN][s-1]+states[s].curProb[finalN];
+						}
+					}
+	
+					double rand=generator[finalN].nextDouble();
+					int k=MathUtils.selectIndex(initPrev[finalN], rand);
+					people.state[p]=k;
+					
+					curPrev[k][b]++; newPrev[k][b]++;
+					for(int g=0; g<numSubgroups; g++){
+						if(people.inSubgroup(g, p)){
+							curPrevGroup[g][k][b]++; newPrevGroup[g][k][b]++;
+						}
+					}
+				} //end simulate loop
+			}
+		}, blocks);
+	}
+
+	/**
+	 * Selects the RNG stream for this thread, if per-person streams are used
+	 * @param p Person index, -1 for draws shared by all people
+	 * @param c Chain index, -1 for initializing people
+	 * @param t Cycle, -1 for initializing the chain
+	 */
+	private void setStream(int curThread, int p, int c, int t){
+		if(streams!=null){
+			streams[curThread].setStream(p, ((long)(c+1)<<32)+(t+1));
+		}
+	}
+	
+	/**
+	 * Continues the person's RNG stream for this cycle after the given number of draws
+	 */
+	private void setStream(int curThread, int p, int c, int t, long draws){
+		streams[curThread].setStream(p, ((long)(c+1)<<32)+(t+1), draws);
+	}
+	
+	private void updateProgress(int curProg){
+		progress.setProgress(curProg);
+		//Update progress
+		double prog=((curProg+1)/maxProg)*100;
+		long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
+		remTime=(long) (remTime*(100-prog));
+		remTime=remTime/1000;
+		String seconds = Integer.toString((int)(remTime % 60));
+		String minutes = Integer.toString((int)(remTime/60));
+		if(seconds.length()<2){seconds="0"+seconds;}
+		if(minutes.length()<2){minutes="0"+minutes;}
+		progress.setProgress(curProg+1);
+		progress.setNote("Time left: "+minutes+":"+seconds);
+	}
+	
+		
+	private boolean checkTerminationCondition(MarkovNode curChain) throws Exception{
+		boolean terminate=false;
+		if(curChain.curTerminationExpr.evaluateBool(0, false)){ //termination condition true
+			terminate=true;
+		}
+		return(terminate);
+	}
+		
+	
+	/**
+	 * Recursively traverse tree
+	 * @throws Exception 
+	 */
+	
+	/**
+	 * @param p Person index
+	 * @param inSubgroup Subgroup membership of the person
+	 * @param b Block of the person
+	 */
+	private void traverseNode(MarkovNode node, int p, boolean inSubgroup[], int b, int curThread) throws Exception{
+		//Update variables
+		if(node.hasVarUpdates){
+			//myModel.unlockVars(curThread);
+			//Perform variable updates
+			for(int u=0; u<node.curVariableUpdates.length; u++){
+				node.curVariableUpdates[u].update(true,curThread);
+			}
+			//Update any dependent variables
+			for(int u=0; u<node.curVariableUpdates.length; u++){
+				node.curVariableUpdates[u].variable.updateDependents(myModel,curThread);
+			}
+		}
+		
+		//Update costs
+		if(node.hasCost){
+			for(int d=0; d<numDim; d++){
+				if(node.costHasVariables[d]==false){ //use pre-calculated cost
+					cycleRewards[d][b]+=node.curCosts[d][curThread];
+					for(int g=0; g<numSubgroups; g++){
+						if(inSubgroup[g]){cycleRewardsGroup[g][d][b]+=node.curCosts[d][curThread];}
+					}
+					people.rewards[d][p]+=node.curCosts[d][curThread];
+					people.rewardsDis[d][p]+=node.curCosts[d][curThread]*discountFactor[d];
+				}
+				else{ //has variable, re-evaluate cost
+					double curCost=node.curCostExprs[d].evaluate(curThread, false);
+					cycleRewards[d][b]+=curCost;
+					for(int g=0; g<numSubgroups; g++){
+						if(inSubgroup[g]){cycleRewardsGroup[g][d][b]+=curCost;}
+					}
+					people.rewards[d][p]+=curCost;
+					people.rewardsDis[d][p]+=curCost*discountFactor[d];
+				}
+			}
+		}
+		
+		if(node.type==4){ //Transition node, end of branch
+			newPrev[node.transFrom][b]--; //from state
+			newPrev[node.transTo][b]++; //next state
+			for(int g=0; g<numSubgroups; g++){
+				if(inSubgroup[g]){
+					newPrevGroup[g][node.transFrom][b]--;
+					newPrevGroup[g][node.transTo][b]++;
+				}
+			}
+			people.state[p]=node.transTo;
+		}
+		else{ //sim chance node
+			double rand=generator[curThread].nextDouble();
+			if(node.childHasProbVariables==true){ //re-evaluate child probs
+				evalChildProbs(node,false,curThread);
+			}
+			int k=MathUtils.selectIndex(node.curChildProbs[curThread], rand);
+			MarkovNode curChild=node.children[k];
+			traverseNode(curChild,p,inSubgroup,b,curThread);
+		}
+	}
+	
+	/**
+	 * Re-evaluates costs each cycle
+	 * @param node
+	 * @throws NumericException
+	 * @throws Exception
+	 */
+	private void evalCosts(MarkovNode node,int curThread) throws NumericException, Exception{
+		if(node.hasCost){
+			for(int d=0; d<numDim; d++){
+				double curCost=node.curCostExprs[d].evaluate(curThread, false);
+				node.curCosts[d][curThread]=curCost;
+			}
+		}
+		for(int c=0; c<node.numChildren; c++){
+			evalCosts(node.children[c],curThread);
+		}
+	}
+	
+	/**
+	 * Re-evaluates child probs
+	 * @param node
+	 * @throws NumericException
+	 * @throws Exception
+	 */
+	private void evalChildProbs(MarkovNode node, boolean recursive, int curThread) throws NumericException, Exception{
+		if(node.type!=4){ //not transition node
+			//Calculate probabilities for children
+			double sumProb=0;
+			int indexCompProb=-1;
+			for(int c=0; c<node.numChildren; c++){
+				MarkovNode curChild=node.children[c];
+				if(curChild.prob.equals("C") || curChild.prob.equals("c")){ //Complementary
+					curChild.curProb[curThread]=-1;
+					indexCompProb=c;
+				}
+				else{ //Evaluate text
+					curChild.curProb[curThread]=curChild.curProbExpr.evaluate(curThread, false);
+					sumProb+=curChild.curProb[curThread];
+				}
+			}
+			if(indexCompProb==-1){
+				if(Math.abs(1.0-sumProb)>MathUtils.tolerance){ //throw error
+					throw new Exception("Error: Probabilities sum to "+sumProb+" ("+node.name+")");
+				}
+			}
+			else{
+				if(sumProb>1.0 || sumProb<0.0){ //throw error
+					throw new Exception("Error: Probabilities sum to "+sumProb+" ("+node.name+")");
+				}
+				else{
+					MarkovNode curChild=node.children[indexCompProb];
+					curChild.curProb[curThread]=1.0-sumProb;
+				}
+			}
+
+			//Get cum. child probs
+			MarkovNode curChild=node.children[0];
+			node.curChildProbs[curThread][0]=curChild.curProb[curThread];
+			for(int c=1; c<node.numChildren; c++){
+				curChild=node.children[c];
+				node.curChildProbs[curThread][c]=node.curChildProbs[curThread][c-1]+curChild.curProb[curThread];
+			}
+
+			if(recursive==true){ //move down tree
+				for(int c=0; c<node.numChildren; c++){
+					curChild=node.children[c];
+					evalChildProbs(curChild,recursive,curThread);
+				}
+			}
+		}
+	}
+
+	
+	//Sum across blocks and update trace
+	private void updateTrace(int t){
+		trace.cycles.add(t);
+		//Update prev
+		for(int s=0; s<numStates; s++){
+			double totalPrev=0;
+			for(int b=0; b<numBlocks; b++){
+				totalPrev+=curPrev[s][b];
+				curPrev[s][b]=newPrev[s][b];
+			}
+			trace.prev[s].add(totalPrev); //prev at beginning of cycle
+		}
+		//Check for half-cycle correction - first and last cycle
+		if(t==0 && markovTree.halfCycleCorrection==true){
+			for(int d=0; d<numDim; d++){
+				for(int b=0; b<numBlocks; b++){
+					cycleRewards[d][b]*=0.5; //half-cycle correction
+				}
+			}
+		}
+		//Update rewards
+		for(int d=0; d<numDim; d++){
+			double curCycleRewards=0;
+			for(int b=0; b<numBlocks; b++){
+				curCycleRewards+=cycleRewards[d][b];
+			}
+			cumRewards[d]+=curCycleRewards;
+			trace.cycleRewards[d].add(curCycleRewards);
+			trace.cumRewards[d].add(cumRewards[d]);
+			if(markovTree.discountRewards){
+				cycleRewardsDis[d]=curCycleRewards*discountFactor[d];
+				cumRewardsDis[d]+=cycleRewardsDis[d];
+				trace.cycleRewardsDis[d].add(cycleRewardsDis[d]);
+				trace.cumRewardsDis[d].add(cumRewardsDis[d]);
+			}
+			//reset
+			for(int b=0; b<numBlocks; b++){cycleRewards[d][b]=0;} 
+			cycleRewardsDis[d]=0;
+		}
+		//Update variables
+		for(int v=0; v<numVars; v++){
+			double num=0, denom=0;
+			for(int b=0; b<numBlocks; b++){
+				num+=cycleVariables[v][b]; cycleVariables[v][b]=0;
+				denom+=cycleVariablesDenom[v][b]; cycleVariablesDenom[v][b]=0;
+			}
+			double mean=num/(denom*1.0);
+			trace.cycleVariables[v].add(mean);
+		}
+	}
+	
+	private void updateTraceGroup(int g, int t){
+		traceGroup[g].cycles.add(t);
+		//Update prev
+		for(int s=0; s<numStates; s++){
+			double totalPrev=0;
+			for(int b=0; b<numBlocks; b++){
+				totalPrev+=curPrevGroup[g][s][b];
+				curPrevGroup[g][s][b]=newPrevGroup[g][s][b];
+			}
+			traceGroup[g].prev[s].add(totalPrev); //prev at beginning of cycle
+		}
+		//Check for half-cycle correction - first and last cycle
+		if(t==0 && markovTree.halfCycleCorrection==true){
+			for(int d=0; d<numDim; d++){
+				for(int b=0; b<numBlocks; b++){
+					cycleRewardsGroup[g][d][b]*=0.5; //half-cycle correction
+				}
+			}
+		}
+		//Update rewards
+		for(int d=0; d<numDim; d++){
+			double curCycleRewards=0;
+			for(int b=0; b<numBlocks; b++){
+				curCycleRewards+=cycleRewardsGroup[g][d][b];
+			}
+			cumRewardsGroup[g][d]+=curCycleRewards;
+			traceGroup[g].cycleRewards[d].add(curCycleRewards);
+			traceGroup[g].cumRewards[d].add(cumRewardsGroup[g][d]);
+			if(markovTree.discountRewards){
+				cycleRewardsDisGroup[g][d]=curCycleRewards*discountFactor[d];
+				cumRewardsDisGroup[g][d]+=cycleRewardsDisGroup[g][d];
+				traceGroup[g].cycleRewardsDis[d].add(cycleRewardsDisGroup[g][d]);
+				traceGroup[g].cumRewardsDis[d].add(cumRewardsDisGroup[g][d]);
+			}
+			//reset
+			for(int b=0; b<numBlocks; b++){cycleRewardsGroup[g][d][b]=0;} 
+			cycleRewardsDisGroup[g][d]=0;
+		}
+		//Update variables
+		for(int v=0; v<numVars; v++){
+			double num=0, denom=0;
+			for(int b=0; b<numBlocks; b++){
+				num+=cycleVariablesGroup[g][v][b]; cycleVariablesGroup[g][v][b]=0;
+				denom+=cycleVariablesDenomGroup[g][v][b]; cycleVariablesDenomGroup[g][v][b]=0;
+			}
+			double mean=num/(denom*1.0);
+			traceGroup[g].cycleVariables[v].add(mean);
+		}
+	}
+	
+	private void getTransitionIndex(MarkovNode node){
+		if(node.type==4){ //get transition to
+			String nextState=node.transition;
+			if(node.comboTransition!=null){nextState=(String) node.comboTransition.getSelectedItem();}
+			node.transTo=getStateIndex(nextState);
+		}
+		else{
+			if(node.type==2){ //state, get transition from
+				node.transFrom=getStateIndex(node.name);
+			}
+			for(int c=0; c<node.numChildren; c++){
+				MarkovNode curChild=node.children[c];
+				curChild.transFrom=node.transFrom; //pass to child
+				getTransitionIndex(curChild);
+			}
+		}
+	}
+	
+	private int getStateIndex(String name){
+		int index=-1;
+		boolean found=false;
+		while(found==false){
+			index++;
+			if(states[index].name.equals(name)){
+				found=true;
+			}
+		}
+		return(index);
+	}
+	
+	private void checkForVariables(MarkovNode node){
+		if(node.hasCost){ //cost
+			node.costHasVariables=new boolean[numDim];
+			for(int d=0; d<numDim; d++){
+				node.costHasVariables[d]=myModel.textHasVariable(node.cost[d]);
+			}
+		}
+		if(node.type==2){ //state, check rewards
+			node.rewardHasVariables=new boolean[numDim];
+			for(int d=0; d<numDim; d++){
+				node.rewardHasVariables[d]=myModel.textHasVariable(node.rewards[d]);
+			}
+		}
+		
+		node.probHasVariables=myModel.textHasVariable(node.prob); //prob
+		node.childHasProbVariables=false;
+		
+		//move down tree
+		for(int c=0; c<node.numChildren; c++){
+			MarkovNode curChild=node.children[c];
+			checkForVariables(curChild);
+			if(curChild.probHasVariables==true){node.childHasProbVariables=true;}
+		}
+	}
+	
+	
+	/**
+	 * Simulates one cycle for each block of people claimed by the worker
+	 */
+	private class CycleTask implements WorkerPool.Task{
+		MarkovNode curChain;
+		int c;
+		int t;
+		
+		public CycleTask(MarkovNode curChain, int c){
+			this.curChain=curChain;
+			this.c=c;
+		}
+		
+		@Override
+		public void run(int finalN) throws Exception{
+			evalCycle(finalN);
+			for(int b=blocks.first(finalN); b!=-1; b=blocks.next(finalN)){
+				runBlock(b, finalN);
+			}
+		}
+		
+		/**
+		 * Simulates one cycle for the people in block b
+		 */
+		void runBlock(int b, int finalN) throws Exception{
+			int beginIndex=blocks.getBegin(b), endIndex=blocks.getEnd(b);
+			//Update each person
+			for(int p=beginIndex; p<endIndex; p++){ 
+				setStream(finalN,p,c,t);
+				people.loadValues(p, finalN);
+				boolean inSubgroup[]=getSubgroups(p,finalN);
+				
+				if(t>0){
+					updatePerson(finalN);
+				}
+				simulatePerson(p,inSubgroup,b,finalN);
+
+				//update variables
+				for(int v=0; v<numVars; v++){
+					double val=variables[v].value[finalN].getDouble();
+					cycleVariables[v][b]+=val; cycleVariablesDenom[v][b]++;
+					for(int g=0; g<numSubgroups; g++){
+						if(inSubgroup[g]){
+							cycleVariablesGroup[g][v][b]+=val; cycleVariablesDenomGroup[g][v][b]++;
+						}
+					}
+				}
+				people.storeValues(p, finalN);
+			}
+		}
+		
+		/**
+		 * Updates expressions for costs/rewards and probs (same for all people)
+		 */
+		void evalCycle(int finalN) throws Exception{
+			setStream(finalN,-1,c,t);
+			evalCosts(curChain,finalN);
+			for(int s=0; s<numStates; s++){
+				for(int d=0; d<numDim; d++){
+					states[s].curRewards[d][finalN]=states[s].curRewardExprs[d].evaluate(finalN, false);
+				}
+			}
+			evalChildProbs(curChain,true,finalN);
+		}
+		
+		boolean[] getSubgroups(int p, int finalN){
+			boolean inSubgroup[]=personGroups[finalN];
+			for(int g=0; g<numSubgroups; g++){
+				inSubgroup[g]=people.inSubgroup(g, p);
+			}
+			return(inSubgroup);
+		}
+		
+		/**
+		 * Updates time dependent variables and chain root variable updates for the loaded person (after the first cycle)
+		 */
+		void updatePerson(int finalN) throws Exception{
+			//update time dependent variables
+			curT.unlockDependents(finalN);
+			curT.updateDependents(myModel, finalN);
+
+			//chain root variable updates
+			if(curChain.hasVarUpdates && curChain.curVariableUpdates!=null){
+				//Perform variable updates
+				for(int u=0; u<curChain.curVariableUpdates.length; u++){
+					curChain.curVariableUpdates[u].update(true,finalN);
+				}
+				//Update any dependent variables
+				for(int u=0; u<curChain.curVariableUpdates.length; u++){
+					curChain.curVariableUpdates[u].variable.updateDependents(myModel,finalN);
+				}
+			}
+		}
+		
+		/**
+		 * Adds state rewards and moves the loaded person through their current state
+		 */
+		void simulatePerson(int p, boolean inSubgroup[], int b, int finalN) throws Exception{
+			//rewards
+			int curState=people.state[p];
+			for(int d=0; d<numDim; d++){ //Update state rewards
+				if(states[curState].rewardHasVariables[d]==false){ //use pre-calculated reward
+					cycleRewards[d][b]+=states[curState].curRewards[d][finalN];
+					for(int g=0; g<numSubgroups; g++){
+						if(inSubgroup[g]){cycleRewardsGroup[g][d][b]+=states[curState].curRewards[d][finalN];}
+					}
+					people.rewards[d][p]+=states[curState].curRewards[d][finalN];
+					people.rewardsDis[d][p]+=states[curState].curRewards[d][finalN]*discountFactor[d];
+				}
+				else{ //has variable, re-evaluate reward
+					double curReward=states[curState].curRewardExprs[d].evaluate(finalN, false);
+					cycleRewards[d][b]+=curReward;
+					for(int g=0; g<numSubgroups; g++){
+						if(inSubgroup[g]){cycleRewardsGroup[g][d][b]+=curReward;}
+					}
+					people.rewards[d][p]+=curReward;
+					people.rewardsDis[d][p]+=curReward*discountFactor[d];
+				}
+			}
+
+			//state transition
+			traverseNode(states[curState],p,inSubgroup,b,finalN);
+		}
+	}
+	
+	/**
+	 * Simulates one cycle with people grouped by state.  States without variable updates in their subtree are
+	 * evaluated over all of the worker's people in the state at once, other states person by person.
+	 * With per-person RNG streams each person gets the same draws as in CycleTask.
+	 */
+	private class BatchCycleTask extends CycleTask{
+		boolean updatePeople; //time dependent variables or chain root updates
+		BatchBuffers buffers[];
+		
+		public BatchCycleTask(MarkovNode curChain, int c){
+			super(curChain,c);
+			updatePeople=(curT.downstream.length>0 || (curChain.hasVarUpdates && curChain.curVariableUpdates!=null));
+			buffers=new BatchBuffers[numThreads];
+			double cols[][]=people.getColumns();
+			for(int n=0; n<numThreads; n++){
+				buffers[n]=new BatchBuffers(cols, blocks.getMaxBlockSize());
+			}
+		}
+		
+		@Override
+		void runBlock(int b, int finalN) throws Exception{
+			int beginIndex=blocks.getBegin(b), endIndex=blocks.getEnd(b);
+			//update variables person by person
+			if(t>0 && updatePeople){
+				for(int p=beginIndex; p<endIndex; p++){
+					setStream(finalN,p,c,t);
+					people.loadValues(p, finalN);
+					updatePerson(finalN);
+					people.storeValues(p, finalN);
+					if(streams!=null){streamDraws[p]=streams[finalN].getDraws();}
+				}
+			}
+			else if(streams!=null){
+				for(int p=beginIndex; p<endIndex; p++){streamDraws[p]=0;}
+			}
+			
+			//group people by state
+			int count[]=new int[numStates];
+			for(int p=beginIndex; p<endIndex; p++){count[people.state[p]]++;}
+			int stateIdx[][]=new int[numStates][];
+			for(int s=0; s<numStates; s++){
+				stateIdx[s]=new int[count[s]];
+				count[s]=0;
+			}
+			for(int p=beginIndex; p<endIndex; p++){
+				int s=people.state[p];
+				stateIdx[s][count[s]]=p;
+				count[s]++;
+			}
+			
+			for(int s=0; s<numStates; s++){
+				int n=count[s];
+				if(n==0){continue;}
+				int idx[]=stateIdx[s];
+				if(batchState[s]){
+					for(int d=0; d<numDim; d++){ //state rewards
+						if(states[s].rewardHasVariables[d]==false){
+							addRewardsBatch(d,idx,n,states[s].curRewards[d][finalN],null,b);
+						}
+						else{
+							BatchBuffers buf=buffers[finalN];
+							buf.context.setBatch(idx, n);
+							states[s].curRewardExprs[d].evaluateBatch(finalN, buf.context, buf.values);
+							addRewardsBatch(d,idx,n,0,buf.values,b);
+						}
+					}
+					traverseBatch(states[s],idx,n,b,finalN);
+				}
+				else{
+					for(int i=0; i<n; i++){
+						int p=idx[i];
+						if(streams!=null){setStream(finalN,p,c,t,streamDraws[p]);}
+						people.loadValues(p, finalN);
+						boolean inSubgroup[]=getSubgroups(p,finalN);
+						simulatePerson(p,inSubgroup,b,finalN);
+						people.storeValues(p, finalN);
+					}
+				}
+			}
+			
+			//update variables
+			for(int v=0; v<numVars; v++){
+				double sum=0;
+				for(int p=beginIndex; p<endIndex; p++){sum+=people.getDouble(v, p);}
+				cycleVariables[v][b]+=sum; cycleVariablesDenom[v][b]+=(endIndex-beginIndex);
+				for(int g=0; g<numSubgroups; g++){
+					double sumGroup=0;
+					int denomGroup=0;
+					for(int p=beginIndex; p<endIndex; p++){
+						if(people.inSubgroup(g, p)){sumGroup+=people.getDouble(v, p); denomGroup++;}
+					}
+					cycleVariablesGroup[g][v][b]+=sumGroup; cycleVariablesDenomGroup[g][v][b]+=denomGroup;
+				}
+			}
+		}
+		
+		/**
+		 * Moves a batch of people at the same node through its subtree
+		 * @param idx Person indices
+		 * @param n Number of people
+		 * @param b Block of the people
+		 */
+		private void traverseBatch(MarkovNode node, int idx[], int n, int b, int finalN) throws Exception{
+			BatchBuffers buf=buffers[finalN];
+			
+			//Update costs
+			if(node.hasCost){
+				for(int d=0; d<numDim; d++){
+					if(node.costHasVariables[d]==false){ //use pre-calculated cost
+						addRewardsBatch(d,idx,n,node.curCosts[d][finalN],null,b);
+					}
+					else{ //has variable, re-evaluate cost
+						buf.context.setBatch(idx, n);
+						node.curCostExprs[d].evaluateBatch(finalN, buf.context, buf.values);
+						addRewardsBatch(d,idx,n,0,buf.values,b);
+					}
+				}
+			}
+			
+			if(node.type==4){ //Transition node, end of branch
+				newPrev[node.transFrom][b]-=n; //from state
+				newPrev[node.transTo][b]+=n; //next state
+				for(int g=0; g<numSubgroups; g++){
+					int countGroup=0;
+					for(int i=0; i<n; i++){
+						if(people.inSubgroup(g, idx[i])){countGroup++;}
+					}
+					newPrevGroup[g][node.transFrom][b]-=countGroup;
+					newPrevGroup[g][node.transTo][b]+=countGroup;
+				}
+				for(int i=0; i<n; i++){people.state[idx[i]]=node.transTo;}
+				return;
+			}
+			
+			//sim chance node
+			double rand[]=buf.rand;
+			if(streams!=null){ //each person's next draw
+				for(int i=0; i<n; i++){
+					int p=idx[i];
+					setStream(finalN,p,c,t,streamDraws[p]);
+					rand[i]=streams[finalN].nextDouble();
+					streamDraws[p]++;
+				}
+			}
+			else{
+				MersenneTwisterFast curGenerator=generator[finalN];
+				for(int i=0; i<n; i++){rand[i]=curGenerator.nextDouble();}
+			}
+			int choice[]=buf.choice;
+			if(node.childHasProbVariables==false){ //use pre-calculated probs
+				double cumProbs[]=node.curChildProbs[finalN];
+				for(int i=0; i<n; i++){choice[i]=MathUtils.selectIndex(cumProbs, rand[i]);}
+			}
+			else{
+				selectChildren(node,idx,n,finalN);
+			}
+			
+			//split batch by child
+			int numChildren=node.numChildren;
+			int count[]=new int[numChildren];
+			for(int i=0; i<n; i++){count[choice[i]]++;}
+			int childIdx[][]=new int[numChildren][];
+			for(int k=0; k<numChildren; k++){
+				childIdx[k]=new int[count[k]];
+				count[k]=0;
+			}
+			for(int i=0; i<n; i++){
+				int k=choice[i];
+				childIdx[k][count[k]]=idx[i];
+				count[k]++;
+			}
+			for(int k=0; k<numChildren; k++){
+				if(count[k]>0){traverseBatch(node.children[k],childIdx[k],count[k],b,finalN);}
+			}
+		}
+		
+		/**
+		 * Evaluates child probs for each person in the batch and selects a child using buf.rand (see evalChildProbs)
+		 */
+		private void selectChildren(MarkovNode node, int idx[], int n, int finalN) throws Exception{
+			BatchBuffers buf=buffers[finalN];
+			int numChildren=node.numChildren;
+			double sumProb[]=buf.values;
+			for(int i=0; i<n; i++){sumProb[i]=0;}
+			int indexCompProb=-1;
+			for(int k=0; k<numChildren; k++){
+				MarkovNode curChild=node.children[k];
+				if(curChild.prob.equals("C") || curChild.prob.equals("c")){ //Complementary
+					indexCompProb=k;
+					continue;
+				}
+				double prob[]=buf.getProbs(k);
+				if(curChild.probHasVariables){
+					buf.context.setBatch(idx, n);
+					curChild.curProbExpr.evaluateBatch(finalN, buf.context, prob);
+				}
+				else{
+					double curProb=curChild.curProb[finalN];
+					for(int i=0; i<n; i++){prob[i]=curProb;}
+				}
+				for(int i=0; i<n; i++){sumProb[i]+=prob[i];}
+			}
+			for(int i=0; i<n; i++){
+				if(indexCompProb==-1){
+					if(Math.abs(1.0-sumProb[i])>MathUtils.tolerance){ //throw error
+						throw new Exception("Error: Probabilities sum to "+sumProb[i]+" ("+node.name+")");
+					}
+				}
+				else if(sumProb[i]>1.0 || sumProb[i]<0.0){ //throw error
+					throw new Exception("Error: Probabilities sum to "+sumProb[i]+" ("+node.name+")");
+				}
+			}
+			
+			//select first child with rand <= cum. prob (see MathUtils.selectIndex)
+			double rand[]=buf.rand, cumProb[]=buf.cumProb;
+			int choice[]=buf.choice;
+			for(int i=0; i<n; i++){
+				cumProb[i]=0;
+				choice[i]=numChildren-1;
+			}
+			for(int k=0; k<numChildren-1; k++){
+				if(k==indexCompProb){
+					for(int i=0; i<n; i++){
+						cumProb[i]+=1.0-sumProb[i];
+						if(rand[i]<=cumProb[i] && choice[i]==numChildren-1){choice[i]=k;}
+					}
+				}
+				else{
+					double prob[]=buf.getProbs(k);
+					for(int i=0; i<n; i++){
+						cumProb[i]+=prob[i];
+						if(rand[i]<=cumProb[i] && choice[i]==numChildren-1){choice[i]=k;}
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Adds a reward to each person in the batch
+		 * @param value Reward for all people (if values is null)
+		 * @param values Reward for each person
+		 * @param b Block of the people
+		 */
+		private void addRewardsBatch(int d, int idx[], int n, double value, double values[], int b){
+			double rewards[]=people.rewards[d], rewardsDis[]=people.rewardsDis[d];
+			double curDiscount=discountFactor[d];
+			double sum=0;
+			if(values==null){
+				for(int i=0; i<n; i++){
+					int p=idx[i];
+					rewards[p]+=value;
+					rewardsDis[p]+=value*curDiscount;
+				}
+				sum=value*n;
+			}
+			else{
+				for(int i=0; i<n; i++){
+					int p=idx[i];
+					rewards[p]+=values[i];
+					rewardsDis[p]+=values[i]*curDiscount;
+					sum+=values[i];
+				}
+			}
+			cycleRewards[d][b]+=sum;
+			for(int g=0; g<numSubgroups; g++){
+				double sumGroup=0;
+				for(int i=0; i<n; i++){
+					if(people.inSubgroup(g, idx[i])){
+						if(values==null){sumGroup+=value;}
+						else{sumGroup+=values[i];}
+					}
+				}
+				cycleRewardsGroup[g][d][b]+=sumGroup;
+			}
+		}
+	}
+	
+	/**
+	 * Per-thread working arrays for BatchCycleTask
+	 */
+	private static class BatchBuffers{
+		BatchContext context;
+		int size;
+		double rand[], values[], cumProb[];
+		int choice[];
+		double probs[][]; //[child][person]
+		
+		BatchBuffers(double cols[][], int size){
+			context=new BatchContext(cols);
+			this.size=size;
+			rand=new double[size]; values=new double[size]; cumProb=new double[size];
+			choice=new int[size];
+			probs=new double[0][];
+		}
+		
+		double[] getProbs(int k){
+			if(k>=probs.length){
+				double newProbs[][]=new double[k+1][];
+				System.arraycopy(probs, 0, newProbs, 0, probs.length);
+				probs=newProbs;
+			}
+			if(probs[k]==null){probs[k]=new double[size];}
+			return(probs[k]);
+		}
+	}
+	
+	/**
+	 * Checks if people in this node's subtree can be simulated in batches (no variable updates, expressions can be
+	 * evaluated over batches)
+	 */
+	private boolean canBatch(MarkovNode node){
+		if(node.hasVarUpdates){return(false);}
+		if(node.hasCost){
+			for(int d=0; d<numDim; d++){
+				if(node.costHasVariables[d] && node.curCostExprs[d].isBatchable()==false){return(false);}
+			}
+		}
+		if(node.type==2){ //state rewards
+			for(int d=0; d<numDim; d++){
+				if(node.rewardHasVariables[d] && node.curRewardExprs[d].isBatchable()==false){return(false);}
+			}
+		}
+		if(node.type!=4){
+			for(int c=0; c<node.numChildren; c++){
+				MarkovNode curChild=node.children[c];
+				boolean comp=(curChild.prob.equals("C") || curChild.prob.equals("c"));
+				if(curChild.probHasVariables && comp==false && curChild.curProbExpr.isBatchable()==false){return(false);}
+				if(canBatch(curChild)==false){return(false);}
+			}
+		}
+		return(true);
+	}
+}
\ No newline at end of file
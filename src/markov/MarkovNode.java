@@ -45,6 +45,7 @@ import javax.xml.bind.annotation.XmlTransient;
 
 import base.ModelNode;
 import main.VariableUpdate;
+import math.CompiledExpression;
 import math.MathUtils;
 import math.Token;
 
@@ -63,10 +64,12 @@ public class MarkovNode extends ModelNode{
 	@XmlTransient Token curProbTokens[]; //[token]
 	@XmlTransient Token curCostTokens[][], curRewardTokens[][]; //[dim][token]
 	@XmlTransient Token curTerminationTokens[];
+	@XmlTransient CompiledExpression curProbExpr, curTerminationExpr; //compiled from tokens
+	@XmlTransient CompiledExpression curCostExprs[], curRewardExprs[]; //[dim]
 	@XmlTransient double curProb[]; //Current probability used to run the model - not saved
 	@XmlTransient double curCosts[][]; //thread-specific
 	@XmlTransient double curRewards[][];
-	@XmlTransient double curChildProbs[][]; //cumulative
+	@XmlTransient double curChildProbs[][]; //[thread][child] cumulative
 	@XmlTransient int transFrom, transTo; //Index of cur state and next state
 	@XmlTransient public double expectedValues[], expectedValuesDis[]; //For each chain
 	@XmlTransient public double expectedValuesGroup[][], expectedValuesDisGroup[][];
@@ -77,6 +80,8 @@ public class MarkovNode extends ModelNode{
 	
 	@XmlTransient boolean probHasTime, childHasProbTime;
 	@XmlTransient boolean costHasTime[], rewardHasTime[];
+	@XmlTransient boolean matrixForm; //chain: can be run as matrix-vector products (no state-dependent expressions)
+	@XmlTransient boolean subtreeHasTime; //state: transitions or rewards depend on t
 	
 	//Visual Attributes
 	@XmlTransient PanelMarkov panel;
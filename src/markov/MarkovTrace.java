@@ -21,186 +21,175 @@ package markov;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.HashMap;
 
 import javax.swing.table.DefaultTableModel;
 
 import base.AmuaModel;
-import math.Interpreter;
 import math.MathUtils;
 import math.Numeric;
 import math.NumericException;
 
 public class MarkovTrace{
 	public String traceName;
-	public ArrayList<Integer> cycles;
+	public TraceColumn cycles;
 	int numStates;
 	public String stateNames[];
-	public ArrayList<Double> prev[];
+	public TraceColumn prev[];
 	String dimSymbols[];
 	public String dimNames[];
 	public int numDim;
 	public boolean discounted;
-	public ArrayList<Double> cycleRewards[], cycleRewardsDis[];
-	public ArrayList<Double> cumRewards[], cumRewardsDis[];
+	public TraceColumn cycleRewards[], cycleRewardsDis[];
+	public TraceColumn cumRewards[], cumRewardsDis[];
 	public int numVariables;
 	public String varNames[];
-	public ArrayList<Double> cycleVariables[];
-	public DefaultTableModel modelTraceRounded;
-	DefaultTableModel modelTraceRaw;
+	public TraceColumn cycleVariables[];
+	//Columns in table order
+	int numCols;
+	String colNames[];
+	TraceColumn cols[];
+	int colDecimals[]; //-1 if not rounded
+	HashMap<String,Integer> colIndices;
+	DefaultTableModel modelTraceRounded; //built when displayed
 	AmuaModel myModel;
 	
 	//Constructor
 	public MarkovTrace(MarkovNode chainRoot){
 		traceName=chainRoot.name;
 		myModel=chainRoot.myModel;
-		cycles=new ArrayList<Integer>();
+		MarkovTree tree=chainRoot.tree;
+		cycles=new TraceColumn();
 		numStates=chainRoot.stateNames.size();
 		stateNames=new String[numStates];
-		prev=new ArrayList[numStates];
-		MarkovTree tree=chainRoot.tree;
+		prev=new TraceColumn[numStates];
 		for(int s=0; s<numStates; s++){
 			int index=chainRoot.childIndices.get(s);
 			stateNames[s]=tree.nodes.get(index).name;
-			prev[s]=new ArrayList<Double>();
+			prev[s]=new TraceColumn();
 		}
 		numDim=chainRoot.numDimensions;
 		dimSymbols=chainRoot.myModel.dimInfo.dimSymbols;
 		dimNames=chainRoot.myModel.dimInfo.dimNames;
-		cycleRewards=new ArrayList[numDim]; cycleRewardsDis=new ArrayList[numDim];
-		cumRewards=new ArrayList[numDim]; cumRewardsDis=new ArrayList[numDim];
+		cycleRewards=new TraceColumn[numDim]; cycleRewardsDis=new TraceColumn[numDim];
+		cumRewards=new TraceColumn[numDim]; cumRewardsDis=new TraceColumn[numDim];
 		discounted=myModel.markov.discountRewards;
 		for(int d=0; d<numDim; d++){
-			cycleRewards[d]=new ArrayList<Double>(); cycleRewardsDis[d]=new ArrayList<Double>();
-			cumRewards[d]=new ArrayList<Double>(); cumRewardsDis[d]=new ArrayList<Double>();
+			cycleRewards[d]=new TraceColumn(); cycleRewardsDis[d]=new TraceColumn();
+			cumRewards[d]=new TraceColumn(); cumRewardsDis[d]=new TraceColumn();
 		}
 		numVariables=chainRoot.myModel.variables.size();
 		varNames=new String[numVariables];
-		cycleVariables=new ArrayList[numVariables];
+		cycleVariables=new TraceColumn[numVariables];
 		for(int c=0; c<numVariables; c++){
 			varNames[c]=chainRoot.myModel.variables.get(c).name;
-			cycleVariables[c]=new ArrayList<Double>();
+			cycleVariables[c]=new TraceColumn();
 		}
-		//Build Model headers
-		modelTraceRaw=new DefaultTableModel(); modelTraceRounded=new DefaultTableModel();
-		modelTraceRaw.addColumn("Cycle"); modelTraceRounded.addColumn("Cycle");
+		
+		//Table columns
+		numCols=1+numStates+numDim*2+numVariables;
+		if(discounted){numCols+=numDim*2;}
+		colNames=new String[numCols];
+		cols=new TraceColumn[numCols];
+		colDecimals=new int[numCols];
+		colIndices=new HashMap<String,Integer>();
+		int curCol=0;
+		addColumn(curCol++,"Cycle",cycles,-1);
 		for(int s=0; s<numStates; s++){
-			modelTraceRaw.addColumn(stateNames[s]);
-			modelTraceRounded.addColumn(stateNames[s]);
+			addColumn(curCol++,stateNames[s],prev[s],myModel.markov.stateDecimals);
 		}
 		//undiscounted
 		for(int d=0; d<numDim; d++){
-			modelTraceRaw.addColumn("Cycle_"+dimSymbols[d]);
-			modelTraceRounded.addColumn("Cycle_"+dimSymbols[d]);
+			addColumn(curCol++,"Cycle_"+dimSymbols[d],cycleRewards[d],myModel.dimInfo.decimals[d]);
 		}
 		for(int d=0; d<numDim; d++){
-			modelTraceRaw.addColumn("Cum_"+dimSymbols[d]);
-			modelTraceRounded.addColumn("Cum_"+dimSymbols[d]);
+			addColumn(curCol++,"Cum_"+dimSymbols[d],cumRewards[d],myModel.dimInfo.decimals[d]);
 		}
 		//discounted
 		if(discounted==true){
 			for(int d=0; d<numDim; d++){
-				modelTraceRaw.addColumn("Cycle_Dis_"+dimSymbols[d]);
-				modelTraceRounded.addColumn("Cycle_Dis_"+dimSymbols[d]);
+				addColumn(curCol++,"Cycle_Dis_"+dimSymbols[d],cycleRewardsDis[d],myModel.dimInfo.decimals[d]);
 			}
 			for(int d=0; d<numDim; d++){
-				modelTraceRaw.addColumn("Cum_Dis_"+dimSymbols[d]);
-				modelTraceRounded.addColumn("Cum_Dis_"+dimSymbols[d]);
+				addColumn(curCol++,"Cum_Dis_"+dimSymbols[d],cumRewardsDis[d],myModel.dimInfo.decimals[d]);
 			}
 		}
 		//variables
 		for(int c=0; c<numVariables; c++){
-			modelTraceRaw.addColumn(chainRoot.myModel.variables.get(c).name);
-			modelTraceRounded.addColumn(chainRoot.myModel.variables.get(c).name);
+			addColumn(curCol++,varNames[c],cycleVariables[c],-1);
 		}
 	}
 	
-	public void updateTable(int t){
-		modelTraceRaw.addRow(new Object[]{null}); modelTraceRounded.addRow(new Object[]{null});
-		int curCol=0;
-		modelTraceRaw.setValueAt(cycles.get(t), t, curCol); modelTraceRounded.setValueAt(cycles.get(t), t, curCol); //cycle
-		curCol++;
-		//state prevalence
-		for(int s=0; s<numStates; s++){
-			modelTraceRaw.setValueAt(prev[s].get(t), t, curCol);
-			double roundedPrev=MathUtils.round(prev[s].get(t),myModel.markov.stateDecimals);
-			modelTraceRounded.setValueAt(roundedPrev, t, curCol);
-			curCol++;
-		}
-		//undiscounted
-		for(int d=0; d<numDim; d++){
-			modelTraceRaw.setValueAt(cycleRewards[d].get(t),t,curCol);
-			modelTraceRounded.setValueAt(MathUtils.round(cycleRewards[d].get(t),myModel.dimInfo.decimals[d]),t,curCol);
-			curCol++;
-		}
-		for(int d=0; d<numDim; d++){
-			modelTraceRaw.setValueAt(cumRewards[d].get(t),t,curCol);
-			modelTraceRounded.setValueAt(MathUtils.round(cumRewards[d].get(t),myModel.dimInfo.decimals[d]),t,curCol);
-			curCol++;
-		}
-		//discounted
-		if(discounted==true){
-			for(int d=0; d<numDim; d++){
-				modelTraceRaw.setValueAt(cycleRewardsDis[d].get(t),t,curCol);
-				modelTraceRounded.setValueAt(MathUtils.round(cycleRewardsDis[d].get(t),myModel.dimInfo.decimals[d]),t,curCol);
-				curCol++;
-			}
-			for(int d=0; d<numDim; d++){
-				modelTraceRaw.setValueAt(cumRewardsDis[d].get(t),t,curCol);
-				modelTraceRounded.setValueAt(MathUtils.round(cumRewardsDis[d].get(t),myModel.dimInfo.decimals[d]),t,curCol);
-				curCol++;
+	private void addColumn(int col, String name, TraceColumn values, int decimals){
+		colNames[col]=name;
+		cols[col]=values;
+		colDecimals[col]=decimals;
+		if(!colIndices.containsKey(name)){colIndices.put(name, col);} //first match
+	}
+	
+	/**
+	 * Builds the rounded table for display.  Most traces (e.g. PSA iterations) are never displayed, so the table is only built when needed.
+	 * @return Table model
+	 */
+	public DefaultTableModel getTableModel(){
+		int numRows=cycles.size();
+		if(modelTraceRounded==null || modelTraceRounded.getRowCount()!=numRows){
+			Object data[][]=new Object[numRows][numCols];
+			for(int r=0; r<numRows; r++){
+				data[r][0]=(int)cycles.get(r);
+				for(int c=1; c<numCols; c++){
+					double val=cols[c].get(r);
+					if(colDecimals[c]==-1){data[r][c]=val;}
+					else{data[r][c]=MathUtils.round(val,colDecimals[c]);}
+				}
 			}
+			modelTraceRounded=new DefaultTableModel(data,colNames);
 		}
-		//variables
-		for(int c=0; c<numVariables; c++){
-			modelTraceRaw.setValueAt(cycleVariables[c].get(t), t, curCol);
-			modelTraceRounded.setValueAt(cycleVariables[c].get(t), t, curCol);
-			curCol++;
-		}
-	}	
+		return(modelTraceRounded);
+	}
 	
 	public void updateHalfCycle(){
-		int row=modelTraceRaw.getRowCount()-1; //get last row
+		int row=cycles.size()-1; //get last row
 		//update cycle rewards and cum rewards
-		int curCol=numStates+1;
 		
 		//undiscounted
 		for(int d=0; d<numDim; d++){
 			double halfReward=cycleRewards[d].get(row)*0.5;
 			cycleRewards[d].set(row, halfReward); //update with half-cycle reward
-			modelTraceRaw.setValueAt(halfReward,row,curCol);
-			modelTraceRounded.setValueAt(MathUtils.round(halfReward,myModel.dimInfo.decimals[d]),row,curCol);
-			curCol++;
 		}
 		for(int d=0; d<numDim; d++){
 			double rewardPrev=cumRewards[d].get(row-1);
 			double halfReward=cycleRewards[d].get(row);
 			cumRewards[d].set(row, rewardPrev+halfReward); //update with half-cycle reward
-			modelTraceRaw.setValueAt(rewardPrev+halfReward,row,curCol);
-			modelTraceRounded.setValueAt(MathUtils.round(rewardPrev+halfReward,myModel.dimInfo.decimals[d]),row,curCol);
-			curCol++;
 		}
 		//discounted
 		if(discounted==true){
 			for(int d=0; d<numDim; d++){
 				double halfReward=cycleRewardsDis[d].get(row)*0.5;
 				cycleRewardsDis[d].set(row, halfReward); //update with half-cycle reward
-				modelTraceRaw.setValueAt(halfReward,row,curCol);
-				modelTraceRounded.setValueAt(MathUtils.round(halfReward,myModel.dimInfo.decimals[d]),row,curCol);
-				curCol++;
 			}
 			for(int d=0; d<numDim; d++){
 				double rewardPrev=cumRewardsDis[d].get(row-1);
 				double halfReward=cycleRewardsDis[d].get(row);
 				cumRewardsDis[d].set(row, rewardPrev+halfReward); //update with half-cycle reward
-				modelTraceRaw.setValueAt(rewardPrev+halfReward,row,curCol);
-				modelTraceRounded.setValueAt(MathUtils.round(rewardPrev+halfReward,myModel.dimInfo.decimals[d]),row,curCol);
-				curCol++;
 			}
 		}
 		
 	}	
 	
+	/**
+	 * Releases unused column capacity at the end of a run
+	 */
+	public void trimToSize(){
+		cycles.trimToSize();
+		for(int s=0; s<numStates; s++){prev[s].trimToSize();}
+		for(int d=0; d<numDim; d++){
+			cycleRewards[d].trimToSize(); cycleRewardsDis[d].trimToSize();
+			cumRewards[d].trimToSize(); cumRewardsDis[d].trimToSize();
+		}
+		for(int c=0; c<numVariables; c++){cycleVariables[c].trimToSize();}
+	}
+	
 	public void setT0(MarkovNode chainRoot){
 		cycles.add(0);
 		//Update prev
@@ -220,7 +209,6 @@ public class MarkovTrace{
 		for(int c=0; c<numVariables; c++){
 			cycleVariables[c].add(0.0);
 		}
-		updateTable(0);
 	}
 	
 	/*public double getValue(int t, String colText){
@@ -233,77 +221,47 @@ public class MarkovTrace{
 		}
 	}*/
 	
-	public Numeric getValue(String row, String col) throws NumericException, Exception{
-		double traceVals[][];
-		int numRows=modelTraceRaw.getRowCount();
-		int numCols=modelTraceRaw.getColumnCount();
-		int startRow, endRow;
-		int startCol, endCol;
-		if(row.contains(":")){ //Multiple rows
-			if(row.length()==1){ //":" all rows
-				startRow=0; endRow=numRows-1;
-			}
-			else{ //"x:y" Sequence of rows
-				int index=row.indexOf(":");
-				startRow=Interpreter.evaluate(row.substring(0, index),myModel,false).getInt();
-				endRow=Interpreter.evaluate(row.substring(index+1),myModel,false).getInt();
-			}
-		}
-		else{
-			startRow=Interpreter.evaluate(row,myModel,false).getInt();
-			endRow=startRow;
-		}
-		
-		if(col.contains(":")){ //Multiple cols
-			if(col.length()==1){ //":" all cols
-				startCol=0; endCol=numCols-1;
-			}
-			else{ //"x:y" Sequence of cols
-				int index=col.indexOf(":");
-				startCol=Interpreter.evaluate(col.substring(0, index),myModel,false).getInt();
-				endCol=Interpreter.evaluate(col.substring(index+1),myModel,false).getInt();
-			}
-		}
-		else{
-			startCol=getColumnIndex(col);
-			endCol=startCol;
-		}
-		
-		traceVals=new double[endRow-startRow+1][endCol-startCol+1];
-		for(int i=startRow; i<=endRow; i++){
-			for(int j=startCol; j<=endCol; j++){
-				traceVals[i-startRow][j-startCol]=(double) modelTraceRaw.getValueAt(i, j);
-			}
+	public int getNumRows(){
+		return(cycles.size());
+	}
+	
+	public int getNumCols(){
+		return(numCols);
+	}
+	
+	/**
+	 * @param colName Column name
+	 * @return Column index
+	 * @throws NumericException If the column doesn't exist
+	 */
+	public int getColumnIndex(String colName) throws NumericException{
+		Integer col=colIndices.get(colName);
+		if(col==null){
+			throw new NumericException("Can't find column: "+colName,"trace");
 		}
-		
-		return(new Numeric(traceVals));
+		return(col);
 	}
 	
-	private int getColumnIndex(String colText) throws NumericException{
-		int col=-1;
-		if(colText.contains("\"") || colText.contains("\'")){ //String
-			//Trim quotes
-			colText=colText.replace("\"","");
-			colText=colText.replace("\'","");
-			boolean found=false;
-			while(found==false && col<modelTraceRaw.getColumnCount()){
-				col++;
-				if(colText.equals(modelTraceRaw.getColumnName(col))){found=true;}
-			}
-			if(found==false){
-				throw new NumericException("Can't find column: "+colText,"trace");
-			}
+	/**
+	 * @return Trace values for the given rows and columns (inclusive)
+	 * @throws NumericException If the rows or columns are out of bounds
+	 */
+	public Numeric getValue(int startRow, int endRow, int startCol, int endCol) throws NumericException{
+		int numRows=cycles.size();
+		if(startRow<0 || endRow>=numRows || startRow>endRow){
+			throw new NumericException("Invalid row index: "+startRow+":"+endRow,"trace");
 		}
-		else{ //Try evaluate as integer
-			try{
-				col=Interpreter.evaluate(colText,myModel,false).getInt();
-			}
-			catch(Exception  e){
-				col=-1;
-				throw new NumericException("Invalid column index: "+colText,"trace");
+		if(startCol<0 || endCol>=numCols || startCol>endCol){
+			throw new NumericException("Invalid column index: "+startCol+":"+endCol,"trace");
+		}
+		double traceVals[][]=new double[endRow-startRow+1][endCol-startCol+1];
+		for(int j=startCol; j<=endCol; j++){
+			double col[]=cols[j].values;
+			for(int i=startRow; i<=endRow; i++){
+				traceVals[i-startRow][j-startCol]=col[i];
 			}
 		}
-		return(col);
+		return(new Numeric(traceVals));
 	}
 	
 	public void write(String filepath, int index) throws IOException{
@@ -315,21 +273,20 @@ public class MarkovTrace{
 		FileWriter fstream = new FileWriter(curFilepath+".csv"); //Create new file
 		BufferedWriter out = new BufferedWriter(fstream);
 		
-		int numRows=modelTraceRaw.getRowCount();
-		int numCols=modelTraceRaw.getColumnCount();
+		int numRows=cycles.size();
 		
 		//Headers
-		out.write(modelTraceRaw.getColumnName(0));
+		out.write(colNames[0]);
 		for(int i=1; i<numCols; i++){
-			out.write(","+modelTraceRaw.getColumnName(i));
+			out.write(","+colNames[i]);
 		}
 		out.newLine();
 		
 		//Data
 		for(int r=0; r<numRows; r++){
-			out.write(modelTraceRaw.getValueAt(r, 0)+"");
+			out.write((int)cycles.get(r)+"");
 			for(int i=1; i<numCols; i++){
-				out.write(","+modelTraceRaw.getValueAt(r,i));
+				out.write(","+cols[i].get(r));
 			}
 			out.newLine();
 		}
@@ -20,6 +20,8 @@ package markov;
 import java.awt.Color;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
 
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
@@ -34,6 +36,7 @@ import main.ConsoleTable;
 import main.DimInfo;
 import main.Variable;
 import main.VariableUpdate;
+import math.CompiledExpression;
 import math.Interpreter;
 import math.MathUtils;
 import math.Numeric;
@@ -63,6 +66,10 @@ public class MarkovTree{
 	@XmlTransient ArrayList<String> errors;
 	@XmlTransient public AmuaModel myModel;
 	@XmlTransient ArrayList<MarkovNode> chains;
+	/**
+	 * Node indices of the chains to run in a cohort simulation (null runs all).  Other chains keep their last results.
+	 */
+	@XmlTransient public BitSet chainFilter;
 	@XmlTransient Exception threadError; //caught inside multithread and thrown outside
 	
 	//Constructor
@@ -128,6 +135,36 @@ public class MarkovTree{
 		}
 		return(copy);
 	}
+	
+	/**
+	 * Initializes node references without a panel (e.g. model replicas)
+	 * @param myModel
+	 */
+	public void initTree(AmuaModel myModel){
+		this.myModel=myModel;
+		MarkovNode root=nodes.get(0);
+		root.myModel=myModel;
+		root.tree=this;
+		root.cost=new String[myModel.dimInfo.dimNames.length];
+		root.numDimensions=myModel.dimInfo.dimNames.length;
+		int numChildren=root.childIndices.size();
+		for(int i=0; i<numChildren; i++){ //Skip root
+			initNode(nodes.get(root.childIndices.get(i)));
+		}
+	}
+	
+	private void initNode(MarkovNode node){
+		node.myModel=myModel;
+		node.tree=this;
+		if(node.type==1){node.chain=node;} //set chain
+		node.numDimensions=myModel.dimInfo.dimNames.length;
+		int numChildren=node.childIndices.size();
+		for(int i=0; i<numChildren; i++){
+			MarkovNode child=nodes.get(node.childIndices.get(i));
+			child.chain=node.chain; //pass chain reference
+			initNode(child);
+		}
+	}
 
 	/**
 	 * Parse text entries and ensure tree inputs are plausible.
@@ -167,6 +204,9 @@ public class MarkovTree{
 				checkTerminationCondition(nodes.get(i));
 			}
 		}
+		for(int c=0; c<chains.size(); c++){
+			checkMatrixForm(chains.get(c));
+		}
 
 		return(errors);
 	}
@@ -184,6 +224,7 @@ public class MarkovTree{
 			checkProbs(chainRoot);
 			checkTerminationCondition(chainRoot);
 		}
+		checkMatrixForm(chainRoot);
 		return(errors);
 	}
 
@@ -192,6 +233,9 @@ public class MarkovTree{
 		curNode.curProb=null;
 		curNode.curCostTokens=null;
 		curNode.curRewardTokens=null;
+		curNode.curProbExpr=null;
+		curNode.curCostExprs=null;
+		curNode.curRewardExprs=null;
 		curNode.curVariableUpdates=null;
 		curNode.curVariableUpdatesT0=null;
 		
@@ -203,6 +247,7 @@ public class MarkovTree{
 				try{
 					curNode.curProbTokens=Interpreter.parse(curNode.prob, myModel);
 					curNode.curProb[0]=Interpreter.evaluateTokens(curNode.curProbTokens, 0, false).getDouble();
+					curNode.curProbExpr=CompiledExpression.compile(curNode.curProbTokens);
 				}catch(Exception e){
 					validProbs=false;
 					curNode.highlightTextField(0, Color.YELLOW); //Prob
@@ -222,12 +267,16 @@ public class MarkovTree{
 			}
 		}
 		else{ //Transition, validate next state
-			curNode.comboTransition.setBackground(new Color(0,0,0,0));
-			curNode.comboTransition.setBorder(null);
+			if(curNode.comboTransition!=null){
+				curNode.comboTransition.setBackground(new Color(0,0,0,0));
+				curNode.comboTransition.setBorder(null);
+			}
 			int index=curNode.chain.stateNames.indexOf(curNode.transition);
 			if(index==-1){
-				curNode.comboTransition.setBackground(Color.YELLOW);
-				curNode.comboTransition.setBorder(null);
+				if(curNode.comboTransition!=null){
+					curNode.comboTransition.setBackground(Color.YELLOW);
+					curNode.comboTransition.setBorder(null);
+				}
 				errors.add("Node "+curNode.name+": State Transition not found ("+curNode.transition+")");
 			}
 		}
@@ -236,10 +285,12 @@ public class MarkovTree{
 			curNode.highlightTextField(1,null); //Cost
 			int numDim=myModel.dimInfo.dimNames.length;
 			curNode.curCostTokens=new Token[numDim][];
+			curNode.curCostExprs=new CompiledExpression[numDim];
 			for(int c=0; c<numDim; c++){
 				try{
 					curNode.curCostTokens[c]=Interpreter.parse(curNode.cost[c], myModel);
 					double testVal=Interpreter.evaluateTokens(curNode.curCostTokens[c], 0, false).getDouble();
+					curNode.curCostExprs[c]=CompiledExpression.compile(curNode.curCostTokens[c]);
 					
 					if(Double.isNaN(testVal)){
 						curNode.highlightTextField(1, Color.YELLOW); //Cost
@@ -255,10 +306,12 @@ public class MarkovTree{
 			curNode.highlightTextField(3, null); //rewards
 			int numDim=myModel.dimInfo.dimNames.length;
 			curNode.curRewardTokens=new Token[numDim][];
+			curNode.curRewardExprs=new CompiledExpression[numDim];
 			for(int c=0; c<numDim; c++){
 				try{
 					curNode.curRewardTokens[c]=Interpreter.parse(curNode.rewards[c], myModel);
 					double testVal=Interpreter.evaluateTokens(curNode.curRewardTokens[c], 0, false).getDouble();
+					curNode.curRewardExprs[c]=CompiledExpression.compile(curNode.curRewardTokens[c]);
 					
 					if(Double.isNaN(testVal)){
 						curNode.highlightTextField(3, Color.YELLOW); //rewards
@@ -416,7 +469,7 @@ public class MarkovTree{
 			}
 		}
 		int numChildren=curNode.childIndices.size();
-		curNode.curChildProbs=new double[numChildren][1];
+		curNode.curChildProbs=new double[1][numChildren];
 		for(int c=0; c<numChildren; c++){
 			int childIndex=curNode.childIndices.get(c);
 			MarkovNode child=nodes.get(childIndex);
@@ -424,6 +477,85 @@ public class MarkovTree{
 		}
 	}
 	
+	/**
+	 * Classifies chain expressions by dependence.  Chains with no state-dependent expressions (variable updates
+	 * during cycles or the trace) can be run in matrix form (see MarkovMatrix).  States whose probabilities, costs,
+	 * or rewards depend on t (directly or through variables) are flagged so only their values are evaluated each cycle.
+	 * @param chainRoot
+	 */
+	private void checkMatrixForm(MarkovNode chainRoot){
+		chainRoot.matrixForm=false;
+		if(chainRoot.curVariableUpdates!=null || chainRoot.children==null){return;}
+		//get variables that change with t
+		HashSet<Variable> timeVars=new HashSet<Variable>();
+		Variable curT=myModel.innateVariables.get(myModel.getInnateVariableIndex("t"));
+		for(int d=0; d<curT.downstream.length; d++){
+			timeVars.add(curT.downstream[d]);
+		}
+		
+		boolean matrixForm=true;
+		for(int s=0; s<chainRoot.numChildren && matrixForm; s++){
+			MarkovNode state=chainRoot.children[s];
+			state.subtreeHasTime=false;
+			matrixForm=checkDependence(state,state,timeVars);
+		}
+		chainRoot.matrixForm=matrixForm;
+	}
+	
+	/**
+	 * @return false if any expression in the subtree is state-dependent
+	 */
+	private boolean checkDependence(MarkovNode node, MarkovNode state, HashSet<Variable> timeVars){
+		if(node.hasVarUpdates){return(false);}
+		if(node.type==2){ //state, check rewards
+			for(int d=0; d<node.rewards.length; d++){
+				int dep=getDependence(node.rewards[d],timeVars);
+				if(dep==2){return(false);}
+				if(dep==1){state.subtreeHasTime=true;}
+			}
+		}
+		else{
+			int dep=getDependence(node.prob,timeVars);
+			if(dep==2){return(false);}
+			if(dep==1){state.subtreeHasTime=true;}
+			if(node.hasCost){
+				for(int d=0; d<node.cost.length; d++){
+					dep=getDependence(node.cost[d],timeVars);
+					if(dep==2){return(false);}
+					if(dep==1){state.subtreeHasTime=true;}
+				}
+			}
+		}
+		for(int c=0; c<node.numChildren; c++){
+			if(checkDependence(node.children[c],state,timeVars)==false){return(false);}
+		}
+		return(true);
+	}
+	
+	/**
+	 * @return 0: Constant, 1: Depends on t, 2: Depends on the trace
+	 */
+	private int getDependence(String text, HashSet<Variable> timeVars){
+		int dep=0;
+		int len=text.length();
+		while(len>0){
+			int index=Interpreter.getNextBreakIndex(text);
+			String word=text.substring(0, index);
+			if(word.equals("trace")){return(2);}
+			if(word.equals("t")){dep=1;}
+			else{
+				int varIndex=myModel.getVariableIndex(word);
+				if(varIndex!=-1 && timeVars.contains(myModel.variables.get(varIndex))){dep=1;}
+			}
+			if(index==len){len=0;} //End of word
+			else{
+				text=text.substring(index+1);
+				len=text.length();
+			}
+		}
+		return(dep);
+	}
+	
 	private void checkTerminationCondition(MarkovNode curNode){
 		if(curNode.type==1){ //Chain, check termination condition
 			try{
@@ -441,6 +573,7 @@ public class MarkovTree{
 					//curNode.lblTermination.setBackground(Color.YELLOW);
 					errors.add("Node "+curNode.name+": Termination Condition true at t=0 ("+curNode.terminationCondition+")");
 				}
+				curNode.curTerminationExpr=CompiledExpression.compile(curNode.curTerminationTokens);
 			
 			}catch(Exception e){
 				//curNode.lblTermination.setBackground(Color.YELLOW);
@@ -463,7 +596,7 @@ public class MarkovTree{
 		if(node.curCosts==null || node.curCosts.length!=numDim){node.curCosts=new double[numDim][1];}
 		if(node.hasCost){
 			for(int c=0; c<numDim; c++){
-				node.curCosts[c][0]=Interpreter.evaluateTokens(node.curCostTokens[c], 0, false).getDouble();
+				node.curCosts[c][0]=node.curCostExprs[c].evaluate(0, false);
 				node.curCosts[c][0]*=myModel.cohortSize; //scale costs by cohort size
 			}
 		}
@@ -542,7 +675,7 @@ public class MarkovTree{
 					indexCompProb=c;
 				}
 				else{ //Evaluate text
-					curChild.curProb[0]=Interpreter.evaluateTokens(curChild.curProbTokens, 0, false).getDouble();
+					curChild.curProb[0]=curChild.curProbExpr.evaluate(0, false);
 					sumProb+=curChild.curProb[0];
 				}
 			}
@@ -608,9 +741,7 @@ public class MarkovTree{
 			runCohort(runReport,display);
 		}
 		else if(myModel.simType==1){ //Monte Carlo
-			//MarkovMonteCarlo microModel=new MarkovMonteCarlo(this, runReport); //orig
-			//MarkovMonteCarloTEST microModel=new MarkovMonteCarloTEST(this, runReport); //flip loops
-			MarkovMonteCarloPOOL microModel=new MarkovMonteCarloPOOL(this, runReport); //thread pool
+			MarkovMonteCarlo microModel=new MarkovMonteCarlo(this, runReport);
 			microModel.simulate(display);
 			
 			if(display && showTrace) {
@@ -652,9 +783,16 @@ public class MarkovTree{
 	}
 	
 	private void runCohort(final RunReport runReport, final boolean display) throws Exception{
+		//Get chains to run
+		final ArrayList<MarkovNode> runChains=new ArrayList<MarkovNode>();
+		for(int c=0; c<chains.size(); c++){
+			MarkovNode curChain=chains.get(c);
+			if(chainFilter==null || chainFilter.get(nodes.indexOf(curChain))){runChains.add(curChain);}
+		}
+		
 		//multithread
-		final int numChains=chains.size();
-		final int numThreads=Math.min(myModel.numThreads,numChains);
+		final int numChains=runChains.size();
+		final int numThreads=Math.max(1,Math.min(myModel.numThreads,numChains));
 		for(int v=0; v<myModel.variables.size(); v++){
 			myModel.variables.get(v).value=new Numeric[numThreads];
 		}
@@ -663,6 +801,7 @@ public class MarkovTree{
 		curT.value=new Numeric[numThreads];
 		curT.locked=new boolean[numThreads];
 		
+		final MarkovMatrix.Cache matrixCache=new MarkovMatrix.Cache(); //chains with the same subtrees share matrix values
 		final int blockSize= numChains/numThreads;
 		Thread[] threads = new Thread[numThreads];
 		for(int n=0; n<numThreads; n++){
@@ -673,8 +812,9 @@ public class MarkovTree{
 						final int beginIndex = finalN * blockSize;
 						final int endIndex = (finalN==numThreads-1) ? numChains :(finalN+1)*blockSize;
 						for(int c=beginIndex; c<endIndex; c++){
-							MarkovNode curChain=chains.get(c);
+							MarkovNode curChain=runChains.get(c);
 							MarkovCohort cohortModel=new MarkovCohort(curChain,finalN);
+							cohortModel.matrixCache=matrixCache;
 							cohortModel.simulate();
 							runReport.names.add(curChain.name);
 							runReport.markovTraces.add(cohortModel.trace);
@@ -0,0 +1,72 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package math;
+
+/**
+ * Working storage for evaluating compiled expressions over a batch of people (see CompiledExpression.evaluateBatch).
+ * Person variables are read from columns, so each node of the expression is evaluated with one loop over the batch.
+ * One context per thread.
+ */
+public class BatchContext{
+	/**
+	 * [Variable][Person] - Scalar variable values in model variable order (null for matrix variables)
+	 */
+	public double cols[][];
+	/**
+	 * Indices of the people in the current batch
+	 */
+	public int idx[];
+	/**
+	 * Number of people in the current batch
+	 */
+	public int n;
+	double temp[][]; //scratch arrays for operator and function arguments
+	int top;
+	
+	public BatchContext(double cols[][]){
+		this.cols=cols;
+		temp=new double[8][];
+	}
+	
+	/**
+	 * Sets the people in the current batch
+	 * @param idx Person indices
+	 * @param n Number of people
+	 */
+	public void setBatch(int idx[], int n){
+		this.idx=idx;
+		this.n=n;
+	}
+	
+	double[] push(){
+		if(top==temp.length){
+			double newTemp[][]=new double[top*2][];
+			System.arraycopy(temp, 0, newTemp, 0, top);
+			temp=newTemp;
+		}
+		if(temp[top]==null || temp[top].length<n){temp[top]=new double[n];}
+		top++;
+		return(temp[top-1]);
+	}
+	
+	void pop(){
+		top--;
+	}
+}
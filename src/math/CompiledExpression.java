@@ -0,0 +1,232 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package math;
+
+/**
+ * Scalar expression compiled from parsed tokens into a tree of primitive closures.
+ * Tokens must have been evaluated once (thread 0) before compiling so that value types are known.
+ * Expressions that can't be compiled (e.g. matrices, type mismatches) are evaluated with the Interpreter.
+ * Compiled arithmetic is performed in double precision, so results differ from the interpreter only
+ * where integer overflow would occur.
+ */
+public class CompiledExpression{
+	Token tokens[];
+	CompiledNode root;
+
+	private CompiledExpression(Token tokens[], CompiledNode root){
+		this.tokens=tokens;
+		this.root=root;
+	}
+
+	/**
+	 * Compiles parsed tokens. Never returns null - falls back to the interpreter if the expression can't be compiled.
+	 * @param tokens Parsed tokens (postfix)
+	 * @return
+	 */
+	public static CompiledExpression compile(Token tokens[]){
+		CompiledNode root=null;
+		try{
+			root=compileTokens(tokens);
+		} catch(Exception e){
+			root=null; //use interpreter
+		}
+		return(new CompiledExpression(tokens,root));
+	}
+
+	public boolean isCompiled(){
+		return(root!=null);
+	}
+
+	/**
+	 * True if the expression is compiled and evaluates to a number (not a boolean)
+	 */
+	public boolean isNumeric(){
+		return(root!=null && root.bool==false);
+	}
+
+	public Token[] getTokens(){
+		return(tokens);
+	}
+
+	public double evaluate(int curThread, boolean sample) throws Exception{
+		if(root!=null && root.bool==false){
+			return(root.eval(curThread, sample));
+		}
+		return(Interpreter.evaluateTokens(tokens, curThread, sample).getDouble());
+	}
+
+	/**
+	 * True if the expression can be evaluated over a batch of people (see evaluateBatch)
+	 */
+	public boolean isBatchable(){
+		return(root!=null && root.bool==false && root.batchable());
+	}
+
+	/**
+	 * Evaluates the expression for each person in the batch, without sampling.  Must be batchable.
+	 * @param batch People and their variable values
+	 * @param out Result for each person in the batch (length at least batch.n)
+	 */
+	public void evaluateBatch(int curThread, BatchContext batch, double out[]) throws Exception{
+		batch.top=0; //scratch arrays left by an error are reused
+		root.evalBatch(curThread, batch, out);
+	}
+
+	public boolean evaluateBool(int curThread, boolean sample) throws Exception{
+		if(root!=null && root.bool){
+			return(root.evalBool(curThread, sample));
+		}
+		return(Interpreter.evaluateTokens(tokens, curThread, sample).getBool());
+	}
+
+	/**
+	 * Evaluates the expression and writes a scalar result into 'value' without allocating.
+	 * @param value Numeric to update (may be null)
+	 * @return The updated value, or a new Numeric if 'value' is null or the expression isn't compiled
+	 */
+	public Numeric evaluateInPlace(Numeric value, int curThread, boolean sample) throws Exception{
+		if(root==null || (value!=null && value.isMatrix())){ //evaluate with interpreter
+			return(Interpreter.evaluateTokens(tokens, curThread, sample).copy());
+		}
+		if(value==null){value=new Numeric(0);}
+		if(root.bool){
+			value.setBool(root.evalBool(curThread, sample));
+		}
+		else{
+			double result=root.eval(curThread, sample);
+			if(isInteger(result)){value.setInt((int)result);}
+			else{value.setDouble(result);}
+		}
+		return(value);
+	}
+
+	/**
+	 * Checks if the interpreter would return this result as an integer
+	 * @param result Compiled result
+	 * @return
+	 */
+	public boolean isInteger(double result){
+		if(root==null || root.integer==false){return(false);}
+		if(result<Integer.MIN_VALUE || result>Integer.MAX_VALUE){return(false);}
+		return(result==Math.rint(result));
+	}
+
+	/**
+	 * Compiles postfix tokens. Returns null if the expression can't be compiled.
+	 */
+	private static CompiledNode compileTokens(Token tokens[]) throws NumericException{
+		if(tokens==null || tokens.length==0){return(null);}
+		int numTokens=tokens.length;
+		CompiledNode operands[]=new CompiledNode[numTokens];
+		int size=0;
+		for(int i=0; i<numTokens; i++){
+			Token curToken=tokens[i];
+			if(curToken.type==Type.OPERATOR){
+				if(size<2){return(null);}
+				CompiledNode arg2=operands[--size];
+				CompiledNode arg1=operands[--size];
+				int op=CompiledNode.getOperatorCode(curToken.word);
+				if(op==-1){return(null);}
+				if(op>=CompiledNode.AND){ //logical, both boolean
+					if(arg1.bool==false || arg2.bool==false){return(null);}
+				}
+				else{ //arithmetic or comparison, both numbers
+					if(arg1.bool || arg2.bool){return(null);}
+				}
+				operands[size++]=new CompiledNode.OperatorNode(op,arg1,arg2);
+			}
+			else{ //operand
+				CompiledNode operand=compileOperand(curToken);
+				if(operand==null){return(null);}
+				operands[size++]=operand;
+			}
+		}
+		if(size!=1){return(null);}
+		return(operands[0]);
+	}
+
+	private static CompiledNode compileOperand(Token token) throws NumericException{
+		Numeric value=token.numeric[0];
+		if(value==null || value.isMatrix()){return(null);} //not evaluated or not scalar
+		boolean bool=value.isBoolean();
+		boolean integer=value.isInteger();
+
+		if(token.objectType==ObjectType.NUMBER){
+			return(new CompiledNode.Constant(CompiledNode.getValue(value,bool),bool,integer));
+		}
+		else if(token.objectType==ObjectType.PARAMETER){
+			if(token.curParam.value==null || token.curParam.value.isMatrix()){return(null);}
+			return(new CompiledNode.ParameterNode(token,bool,integer));
+		}
+		else if(token.objectType==ObjectType.VARIABLE){
+			return(new CompiledNode.VariableNode(token,bool,integer));
+		}
+		else if(token.objectType==ObjectType.FUNCTION){
+			int fx=CompiledNode.getFunctionCode(token.word, token.args.length);
+			if(fx!=-1){
+				CompiledNode args[]=compileArgs(token);
+				if(args!=null && checkFunctionArgs(fx,args)){
+					return(new CompiledNode.FunctionNode(fx,token,args));
+				}
+			}
+		}
+		else if(token.objectType==ObjectType.DISTRIBUTION){
+			if(bool==false && CompiledNode.isRealDistribution(token.word)){
+				CompiledNode args[]=compileArgs(token);
+				if(args!=null && checkNumberArgs(args,0)){
+					return(new CompiledNode.DistributionNode(token,args));
+				}
+			}
+		}
+		else if(token.objectType==ObjectType.TABLE_LOOKUP){
+			CompiledNode index=compileTokens(token.args[0]);
+			if(bool==false && index!=null && index.bool==false){
+				return(new CompiledNode.LookupNode(token,index));
+			}
+		}
+		//evaluate token with interpreter
+		return(new CompiledNode.TokenNode(token,bool,integer));
+	}
+
+	private static CompiledNode[] compileArgs(Token token) throws NumericException{
+		int numArgs=token.args.length;
+		CompiledNode args[]=new CompiledNode[numArgs];
+		for(int i=0; i<numArgs; i++){
+			args[i]=compileTokens(token.args[i]);
+			if(args[i]==null){return(null);}
+		}
+		return(args);
+	}
+
+	private static boolean checkFunctionArgs(int fx, CompiledNode args[]){
+		if(fx==CompiledNode.FX_IF){
+			if(args[0].bool==false){return(false);}
+			return(args[1].bool==args[2].bool);
+		}
+		return(checkNumberArgs(args,0));
+	}
+
+	private static boolean checkNumberArgs(CompiledNode args[], int start){
+		for(int i=start; i<args.length; i++){
+			if(args[i].bool){return(false);}
+		}
+		return(true);
+	}
+
+}
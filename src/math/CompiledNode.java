@@ -0,0 +1,611 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package math;
+
+import main.Parameter;
+import main.TableLookup;
+import main.Variable;
+
+/**
+ * Node of a compiled expression tree.  Each node evaluates to a primitive double.
+ * Boolean nodes return 1.0 (true) or 0.0 (false).
+ */
+abstract class CompiledNode{
+	/**
+	 * True if this node evaluates to a boolean
+	 */
+	boolean bool;
+	/**
+	 * True if the interpreter may return an integer for this node (i.e. when the result is integral)
+	 */
+	boolean integer;
+
+	abstract double eval(int curThread, boolean sample) throws Exception;
+
+	boolean evalBool(int curThread, boolean sample) throws Exception{
+		return(eval(curThread,sample)!=0);
+	}
+
+	/**
+	 * True if this node can be evaluated over a batch of people
+	 */
+	boolean batchable(){
+		return(false);
+	}
+
+	/**
+	 * Evaluates this node for each person in the batch (without sampling)
+	 * @param out Result for each person (length at least batch.n)
+	 */
+	void evalBatch(int curThread, BatchContext batch, double out[]) throws Exception{
+		throw new NumericException("Expression can't be evaluated in batches","CompiledExpression");
+	}
+
+	//Operator codes
+	static final int ADD=0, SUBTRACT=1, MULTIPLY=2, DIVIDE=3, POWER=4, MODULUS=5;
+	static final int EQUAL=6, NOT_EQUAL=7, LESS=8, GREATER=9, LESS_EQ=10, GREATER_EQ=11;
+	static final int AND=12, OR=13, XOR=14;
+
+	static int getOperatorCode(String operator){
+		switch(operator){
+		case "+": return(ADD);
+		case "-": return(SUBTRACT);
+		case "*": return(MULTIPLY);
+		case "/": return(DIVIDE);
+		case "^": return(POWER);
+		case "%": return(MODULUS);
+		//Logical
+		case "==": return(EQUAL);
+		case "!=": return(NOT_EQUAL);
+		case "<": return(LESS);
+		case ">": return(GREATER);
+		case "<=": return(LESS_EQ);
+		case ">=": return(GREATER_EQ);
+		case "&": return(AND);
+		case "|": return(OR);
+		case "^|": return(XOR);
+		}
+		return(-1); //fell through
+	}
+
+	//Function codes
+	static final int FX_ABS=0, FX_EXP=1, FX_LOG=2, FX_SQRT=3, FX_FLOOR=4, FX_CEIL=5, FX_MIN=6, FX_MAX=7;
+	static final int FX_LOGIT=8, FX_LOGISTIC=9, FX_PROB_TO_RATE=10, FX_RATE_TO_PROB=11, FX_BOUND=12, FX_IF=13;
+
+	static int getFunctionCode(String fx, int numArgs){
+		switch(fx){
+		case "abs": if(numArgs==1){return(FX_ABS);} break;
+		case "exp": if(numArgs==1){return(FX_EXP);} break;
+		case "log": if(numArgs==1){return(FX_LOG);} break;
+		case "sqrt": if(numArgs==1){return(FX_SQRT);} break;
+		case "floor": if(numArgs==1){return(FX_FLOOR);} break;
+		case "ceil": if(numArgs==1){return(FX_CEIL);} break;
+		case "min": if(numArgs==2){return(FX_MIN);} break;
+		case "max": if(numArgs==2){return(FX_MAX);} break;
+		case "logit": if(numArgs==1){return(FX_LOGIT);} break;
+		case "logistic": if(numArgs==1){return(FX_LOGISTIC);} break;
+		case "probToRate": if(numArgs==1){return(FX_PROB_TO_RATE);} break;
+		case "rateToProb": if(numArgs==1){return(FX_RATE_TO_PROB);} break;
+		case "bound": if(numArgs==3){return(FX_BOUND);} break;
+		case "if": if(numArgs==3){return(FX_IF);} break;
+		}
+		return(-1); //not compiled, evaluate with interpreter
+	}
+
+	/**
+	 * Distributions that only take real-valued parameters can be evaluated from compiled arguments
+	 */
+	static boolean isRealDistribution(String dist){
+		switch(dist){
+		case "Beta": return(true);
+		case "Cauchy": return(true);
+		case "Expo": return(true);
+		case "Gamma": return(true);
+		case "Gumbel": return(true);
+		case "HalfCauchy": return(true);
+		case "HalfNorm": return(true);
+		case "Laplace": return(true);
+		case "Logistic": return(true);
+		case "LogNorm": return(true);
+		case "Norm": return(true);
+		case "Pareto": return(true);
+		case "PERT": return(true);
+		case "StudentT": return(true);
+		case "Tri": return(true);
+		case "Unif": return(true);
+		case "Weibull": return(true);
+		case "TruncNorm": return(true);
+		}
+		return(false);
+	}
+
+	//Node types
+
+	static final class Constant extends CompiledNode{
+		double value;
+
+		Constant(double value, boolean bool, boolean integer){
+			this.value=value;
+			this.bool=bool;
+			this.integer=integer;
+		}
+
+		double eval(int curThread, boolean sample){
+			return(value);
+		}
+
+		boolean batchable(){
+			return(true);
+		}
+
+		void evalBatch(int curThread, BatchContext batch, double out[]){
+			fill(out,batch.n,value);
+		}
+	}
+
+	static final class ParameterNode extends CompiledNode{
+		Token token;
+		Parameter curParam;
+		boolean negate;
+
+		ParameterNode(Token token, boolean bool, boolean integer){
+			this.token=token;
+			this.curParam=token.curParam;
+			this.negate=token.negate;
+			this.bool=bool;
+			this.integer=integer;
+		}
+
+		double eval(int curThread, boolean sample) throws Exception{
+			if(curParam.locked==false){ //evaluate with interpreter
+				token.updateValue(curThread, sample);
+				return(getValue(token.numeric[curThread],bool));
+			}
+			double value=getValue(curParam.value,bool);
+			if(negate){value=negateValue(value,bool);}
+			return(value);
+		}
+
+		boolean batchable(){
+			return(true);
+		}
+
+		void evalBatch(int curThread, BatchContext batch, double out[]) throws Exception{
+			fill(out,batch.n,eval(curThread,false)); //same for all people
+		}
+	}
+
+	static final class VariableNode extends CompiledNode{
+		Token token;
+		Variable curVar;
+		boolean negate;
+		int varIndex=-2; //index in model variables, -1 if innate (e.g. t), -2 if not found yet
+
+		VariableNode(Token token, boolean bool, boolean integer){
+			this.token=token;
+			this.curVar=token.curVar;
+			this.negate=token.negate;
+			this.bool=bool;
+			this.integer=integer;
+		}
+
+		double eval(int curThread, boolean sample) throws Exception{
+			Numeric value=curVar.value[curThread];
+			if(value==null){ //not initialized, evaluate with interpreter
+				token.updateValue(curThread, sample);
+				return(getValue(token.numeric[curThread],bool));
+			}
+			if(curVar.locked[curThread]==false && curVar.independent==false){ //re-evaluate
+				curVar.updateValue(curThread, sample);
+				curVar.locked[curThread]=true;
+				value=curVar.value[curThread];
+			}
+			double curVal=getValue(value,bool);
+			if(negate){curVal=negateValue(curVal,bool);}
+			return(curVal);
+		}
+
+		boolean batchable(){
+			return(true);
+		}
+
+		void evalBatch(int curThread, BatchContext batch, double out[]) throws Exception{
+			if(varIndex==-2){varIndex=token.myModel.variables.indexOf(curVar);}
+			int n=batch.n;
+			if(varIndex==-1){ //innate, same for all people
+				fill(out,n,eval(curThread,false));
+				return;
+			}
+			double col[]=batch.cols[varIndex];
+			if(col==null){throw new NumericException("Variable "+curVar.name+" is a matrix","CompiledExpression");}
+			int idx[]=batch.idx;
+			for(int i=0; i<n; i++){out[i]=col[idx[i]];}
+			if(negate){
+				if(bool){for(int i=0; i<n; i++){out[i]=1.0-out[i];}}
+				else{for(int i=0; i<n; i++){out[i]=-out[i];}}
+			}
+		}
+	}
+
+	/**
+	 * Evaluates a single token with the interpreter (constructs that can't be compiled)
+	 */
+	static final class TokenNode extends CompiledNode{
+		Token token;
+
+		TokenNode(Token token, boolean bool, boolean integer){
+			this.token=token;
+			this.bool=bool;
+			this.integer=integer;
+		}
+
+		double eval(int curThread, boolean sample) throws Exception{
+			token.updateValue(curThread, sample);
+			return(getValue(token.numeric[curThread],bool));
+		}
+	}
+
+	static final class OperatorNode extends CompiledNode{
+		int operator;
+		CompiledNode arg1, arg2;
+
+		OperatorNode(int operator, CompiledNode arg1, CompiledNode arg2){
+			this.operator=operator;
+			this.arg1=arg1;
+			this.arg2=arg2;
+			this.bool=(operator>=EQUAL);
+			if(operator==DIVIDE){this.integer=true;} //integer if result is integral
+			else if(bool==false){this.integer=(arg1.integer && arg2.integer);}
+		}
+
+		double eval(int curThread, boolean sample) throws Exception{
+			//evaluate both arguments in order (preserves RNG draws)
+			double a=arg1.eval(curThread, sample);
+			double b=arg2.eval(curThread, sample);
+			switch(operator){
+			case ADD: return(a+b);
+			case SUBTRACT: return(a-b);
+			case MULTIPLY: return(a*b);
+			case DIVIDE:{
+				double result=a/b;
+				int test=(int) Math.round(result); //check if integer
+				if(Math.abs(test-result)<MathUtils.tolerance){result=test;}
+				return(result);
+			}
+			case POWER: return(Math.pow(a, b));
+			case MODULUS: return(a % b);
+			//Logical
+			case EQUAL: return(toDouble(a==b));
+			case NOT_EQUAL: return(toDouble(a!=b));
+			case LESS: return(toDouble(a<b));
+			case GREATER: return(toDouble(a>b));
+			case LESS_EQ: return(toDouble(a<=b));
+			case GREATER_EQ: return(toDouble(a>=b));
+			case AND: return(toDouble(a!=0 && b!=0));
+			case OR: return(toDouble(a!=0 || b!=0));
+			case XOR: return(toDouble((a!=0)!=(b!=0)));
+			}
+			throw new NumericException("Unknown operator","CompiledExpression");
+		}
+
+		boolean batchable(){
+			return(arg1.batchable() && arg2.batchable());
+		}
+
+		void evalBatch(int curThread, BatchContext batch, double out[]) throws Exception{
+			int n=batch.n;
+			arg1.evalBatch(curThread, batch, out);
+			double b[]=batch.push();
+			arg2.evalBatch(curThread, batch, b);
+			switch(operator){
+			case ADD: for(int i=0; i<n; i++){out[i]+=b[i];} break;
+			case SUBTRACT: for(int i=0; i<n; i++){out[i]-=b[i];} break;
+			case MULTIPLY: for(int i=0; i<n; i++){out[i]*=b[i];} break;
+			case DIVIDE:
+				for(int i=0; i<n; i++){
+					double result=out[i]/b[i];
+					int test=(int) Math.round(result); //check if integer
+					if(Math.abs(test-result)<MathUtils.tolerance){result=test;}
+					out[i]=result;
+				}
+				break;
+			case POWER: for(int i=0; i<n; i++){out[i]=Math.pow(out[i], b[i]);} break;
+			case MODULUS: for(int i=0; i<n; i++){out[i]=out[i]%b[i];} break;
+			//Logical
+			case EQUAL: for(int i=0; i<n; i++){out[i]=toDouble(out[i]==b[i]);} break;
+			case NOT_EQUAL: for(int i=0; i<n; i++){out[i]=toDouble(out[i]!=b[i]);} break;
+			case LESS: for(int i=0; i<n; i++){out[i]=toDouble(out[i]<b[i]);} break;
+			case GREATER: for(int i=0; i<n; i++){out[i]=toDouble(out[i]>b[i]);} break;
+			case LESS_EQ: for(int i=0; i<n; i++){out[i]=toDouble(out[i]<=b[i]);} break;
+			case GREATER_EQ: for(int i=0; i<n; i++){out[i]=toDouble(out[i]>=b[i]);} break;
+			case AND: for(int i=0; i<n; i++){out[i]=toDouble(out[i]!=0 && b[i]!=0);} break;
+			case OR: for(int i=0; i<n; i++){out[i]=toDouble(out[i]!=0 || b[i]!=0);} break;
+			case XOR: for(int i=0; i<n; i++){out[i]=toDouble((out[i]!=0)!=(b[i]!=0));} break;
+			default: throw new NumericException("Unknown operator","CompiledExpression");
+			}
+			batch.pop();
+		}
+	}
+
+	static final class FunctionNode extends CompiledNode{
+		int fx;
+		String word;
+		CompiledNode args[];
+		boolean negate;
+
+		FunctionNode(int fx, Token token, CompiledNode args[]){
+			this.fx=fx;
+			this.word=token.word;
+			this.args=args;
+			this.negate=token.negate;
+			if(fx==FX_IF){
+				this.bool=args[1].bool;
+				this.integer=(args[1].integer || args[2].integer);
+			}
+			else if(fx==FX_FLOOR || fx==FX_CEIL){this.integer=true;}
+			else if(fx==FX_ABS){this.integer=args[0].integer;}
+			else if(fx==FX_MIN || fx==FX_MAX){this.integer=(args[0].integer && args[1].integer);}
+		}
+
+		double eval(int curThread, boolean sample) throws Exception{
+			double value=evalFx(curThread,sample);
+			if(negate){value=negateValue(value,bool);}
+			return(value);
+		}
+
+		private double evalFx(int curThread, boolean sample) throws Exception{
+			double x=args[0].eval(curThread, sample);
+			switch(fx){
+			case FX_ABS: return(Math.abs(x));
+			case FX_EXP: return(Math.exp(x));
+			case FX_LOG:{
+				if(x<=0){throw new NumericException("x should be >0","log");}
+				return(Math.log(x));
+			}
+			case FX_SQRT:{
+				if(x<0){throw new NumericException("x should be ≥0","sqrt");}
+				return(Math.sqrt(x));
+			}
+			case FX_FLOOR: return((int)Math.floor(x));
+			case FX_CEIL: return((int)Math.ceil(x));
+			case FX_MIN: return(Math.min(x, args[1].eval(curThread, sample)));
+			case FX_MAX: return(Math.max(x, args[1].eval(curThread, sample)));
+			case FX_LOGIT:{
+				if(x<0 || x>1){throw new NumericException("p should be in [0,1]","logit");}
+				return(Math.log(x/(1.0-x)));
+			}
+			case FX_LOGISTIC: return(1.0/(1+Math.exp(-x)));
+			case FX_PROB_TO_RATE:{
+				if(x<0 || x>1){throw new NumericException("Invalid probability: "+x,"Numeric");}
+				return(-Math.log(1-x));
+			}
+			case FX_RATE_TO_PROB:{
+				if(x<0){throw new NumericException("Rate should be ≥0","rateToProb");}
+				return(1-Math.exp(-x));
+			}
+			case FX_BOUND:{
+				double a=args[1].eval(curThread, sample), b=args[2].eval(curThread, sample);
+				if(a>=b){throw new NumericException("a should be <b","bound");}
+				if(x<a){x=a;} //min
+				if(x>b){x=b;} //max
+				return(x);
+			}
+			case FX_IF:{ //all arguments are evaluated, as in the interpreter
+				double a=args[1].eval(curThread, sample), b=args[2].eval(curThread, sample);
+				if(x!=0){return(a);}
+				else{return(b);}
+			}
+			}
+			throw new NumericException("Function not compiled: "+word,"CompiledExpression");
+		}
+
+		boolean batchable(){
+			for(int i=0; i<args.length; i++){
+				if(args[i].batchable()==false){return(false);}
+			}
+			return(true);
+		}
+
+		void evalBatch(int curThread, BatchContext batch, double out[]) throws Exception{
+			int n=batch.n;
+			args[0].evalBatch(curThread, batch, out);
+			double a[]=null, b[]=null;
+			if(args.length>1){
+				a=batch.push();
+				args[1].evalBatch(curThread, batch, a);
+			}
+			if(args.length>2){
+				b=batch.push();
+				args[2].evalBatch(curThread, batch, b);
+			}
+			evalFxBatch(out,a,b,n);
+			if(b!=null){batch.pop();}
+			if(a!=null){batch.pop();}
+			if(negate){
+				if(bool){for(int i=0; i<n; i++){out[i]=1.0-out[i];}}
+				else{for(int i=0; i<n; i++){out[i]=-out[i];}}
+			}
+		}
+
+		private void evalFxBatch(double x[], double a[], double b[], int n) throws Exception{
+			switch(fx){
+			case FX_ABS: for(int i=0; i<n; i++){x[i]=Math.abs(x[i]);} return;
+			case FX_EXP: for(int i=0; i<n; i++){x[i]=Math.exp(x[i]);} return;
+			case FX_LOG:
+				for(int i=0; i<n; i++){
+					if(x[i]<=0){throw new NumericException("x should be >0","log");}
+					x[i]=Math.log(x[i]);
+				}
+				return;
+			case FX_SQRT:
+				for(int i=0; i<n; i++){
+					if(x[i]<0){throw new NumericException("x should be ≥0","sqrt");}
+					x[i]=Math.sqrt(x[i]);
+				}
+				return;
+			case FX_FLOOR: for(int i=0; i<n; i++){x[i]=(int)Math.floor(x[i]);} return;
+			case FX_CEIL: for(int i=0; i<n; i++){x[i]=(int)Math.ceil(x[i]);} return;
+			case FX_MIN: for(int i=0; i<n; i++){x[i]=Math.min(x[i], a[i]);} return;
+			case FX_MAX: for(int i=0; i<n; i++){x[i]=Math.max(x[i], a[i]);} return;
+			case FX_LOGIT:
+				for(int i=0; i<n; i++){
+					if(x[i]<0 || x[i]>1){throw new NumericException("p should be in [0,1]","logit");}
+					x[i]=Math.log(x[i]/(1.0-x[i]));
+				}
+				return;
+			case FX_LOGISTIC: for(int i=0; i<n; i++){x[i]=1.0/(1+Math.exp(-x[i]));} return;
+			case FX_PROB_TO_RATE:
+				for(int i=0; i<n; i++){
+					if(x[i]<0 || x[i]>1){throw new NumericException("Invalid probability: "+x[i],"Numeric");}
+					x[i]=-Math.log(1-x[i]);
+				}
+				return;
+			case FX_RATE_TO_PROB:
+				for(int i=0; i<n; i++){
+					if(x[i]<0){throw new NumericException("Rate should be ≥0","rateToProb");}
+					x[i]=1-Math.exp(-x[i]);
+				}
+				return;
+			case FX_BOUND:
+				for(int i=0; i<n; i++){
+					if(a[i]>=b[i]){throw new NumericException("a should be <b","bound");}
+					if(x[i]<a[i]){x[i]=a[i];} //min
+					if(x[i]>b[i]){x[i]=b[i];} //max
+				}
+				return;
+			case FX_IF:
+				for(int i=0; i<n; i++){
+					if(x[i]!=0){x[i]=a[i];}
+					else{x[i]=b[i];}
+				}
+				return;
+			}
+			throw new NumericException("Function not compiled: "+word,"CompiledExpression");
+		}
+	}
+
+	static final class DistributionNode extends CompiledNode{
+		Token token;
+		CompiledNode args[];
+		Numeric argsNumeric[][]; //[thread][arg] scratch
+		double lastArgs[][], lastValue[]; //[thread] last evaluated (not sampled) value
+		boolean hasLast[];
+
+		DistributionNode(Token token, CompiledNode args[]){
+			this.token=token;
+			this.args=args;
+			int numThreads=token.numThreads, numArgs=args.length;
+			argsNumeric=new Numeric[numThreads][numArgs];
+			lastArgs=new double[numThreads][numArgs];
+			lastValue=new double[numThreads];
+			hasLast=new boolean[numThreads];
+			for(int n=0; n<numThreads; n++){
+				for(int i=0; i<numArgs; i++){argsNumeric[n][i]=new Numeric(0.0);}
+			}
+		}
+
+		double eval(int curThread, boolean sample) throws Exception{
+			int numArgs=args.length;
+			Numeric curArgs[]=argsNumeric[curThread];
+			for(int i=0; i<numArgs; i++){
+				curArgs[i].setDouble(args[i].eval(curThread, sample));
+			}
+			double value;
+			if(sample==false || token.distFx!=-1 || token.myModel.curGenerator[curThread]==null){ //not a random variable
+				value=evaluate(curArgs,curThread);
+			}
+			else{ //RNG available
+				double rand=token.myModel.curGenerator[curThread].nextDouble();
+				value=token.sampler.sampleDouble(token.word,curArgs,rand,token.myModel.curGenerator[curThread],token.myModel.directSampling,curThread);
+			}
+			if(token.negate){value=-value;}
+			return(value);
+		}
+
+		/**
+		 * Distribution functions and moments only depend on the arguments, so the last value is reused while they are unchanged
+		 */
+		private double evaluate(Numeric curArgs[], int curThread) throws Exception{
+			double last[]=lastArgs[curThread];
+			int numArgs=curArgs.length;
+			boolean same=hasLast[curThread];
+			for(int i=0; i<numArgs && same; i++){
+				if(last[i]!=curArgs[i].doubleNum){same=false;}
+			}
+			if(same){return(lastValue[curThread]);}
+			double value=Distributions.evaluate(token.word,curArgs,token.distFx).getDouble();
+			for(int i=0; i<numArgs; i++){last[i]=curArgs[i].doubleNum;}
+			lastValue[curThread]=value;
+			hasLast[curThread]=true;
+			return(value);
+		}
+	}
+
+	static final class LookupNode extends CompiledNode{
+		TableLookup lookup;
+		CompiledNode index;
+		boolean negate;
+
+		LookupNode(Token token, CompiledNode index){
+			this.lookup=token.lookup;
+			this.index=index;
+			this.negate=token.negate;
+		}
+
+		double eval(int curThread, boolean sample) throws Exception{
+			double value=lookup.getValue(index.eval(curThread, sample));
+			if(negate){value=-value;}
+			return(value);
+		}
+
+		boolean batchable(){
+			return(index.batchable());
+		}
+
+		void evalBatch(int curThread, BatchContext batch, double out[]) throws Exception{
+			int n=batch.n;
+			index.evalBatch(curThread, batch, out);
+			for(int i=0; i<n; i++){
+				out[i]=lookup.getValue(out[i]);
+				if(negate){out[i]=-out[i];}
+			}
+		}
+	}
+
+	//Helpers
+
+	static void fill(double out[], int n, double value){
+		for(int i=0; i<n; i++){out[i]=value;}
+	}
+
+	static double toDouble(boolean value){
+		if(value){return(1.0);}
+		else{return(0.0);}
+	}
+
+	static double getValue(Numeric value, boolean bool) throws NumericException{
+		if(bool){return(toDouble(value.getBool()));}
+		else{return(value.getDouble());}
+	}
+
+	static double negateValue(double value, boolean bool){
+		if(bool){return(1.0-value);} //flip
+		else{return(-value);}
+	}
+}
@@ -205,8 +205,9 @@ public class CubicSpline{
 			}
 		}
 		else{ //Interpolate
-			index=0;
-			while(x>knots[index+1] && index<numSplines-1){index++;}
+			index=MathUtils.searchSorted(knots, x, false); //last knot below x
+			if(index<0){index=0;}
+			else if(index>numSplines-1){index=numSplines-1;}
 			x=x-knots[index];
 			y=splineCoeffs[index][0]+splineCoeffs[index][1]*x+splineCoeffs[index][2]*x*x+splineCoeffs[index][3]*x*x*x;
 		}
@@ -0,0 +1,70 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package math;
+
+import java.util.IdentityHashMap;
+
+import base.AmuaModel;
+
+/**
+ * Parsed expressions keyed by the owning object (e.g. Parameter, Variable) and expression text.
+ * The cache is cleared whenever the model is edited, so each expression is parsed once until the next edit.
+ */
+public class ExpressionCache{
+	AmuaModel myModel;
+	IdentityHashMap<Object,Entry> entries;
+
+	private static class Entry{
+		String expression;
+		int numThreads; //tokens hold thread-specific values
+		Token tokens[];
+	}
+
+	public ExpressionCache(AmuaModel myModel){
+		this.myModel=myModel;
+		entries=new IdentityHashMap<Object,Entry>();
+	}
+
+	/**
+	 * Returns the parsed tokens for this owner, parsing the expression if it isn't cached or has changed
+	 * @param owner Object that owns the expression
+	 * @param expression Expression text
+	 * @return Parsed tokens (postfix)
+	 * @throws Exception If the expression can't be parsed (nothing is cached)
+	 */
+	public synchronized Token[] parse(Object owner, String expression) throws Exception{
+		Entry entry=entries.get(owner);
+		if(entry==null || entry.numThreads!=myModel.numThreads || !entry.expression.equals(expression)){
+			Token tokens[]=Interpreter.parse(expression, myModel);
+			entry=new Entry();
+			entry.expression=expression;
+			entry.numThreads=myModel.numThreads;
+			entry.tokens=tokens;
+			entries.put(owner, entry);
+		}
+		return(entry.tokens);
+	}
+
+	/**
+	 * Clears all parsed expressions.  Called when the model is edited.
+	 */
+	public synchronized void invalidate(){
+		entries.clear();
+	}
+}
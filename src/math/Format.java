@@ -16,23 +16,6 @@
  * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-package markov;
+package math;
 
-import math.Numeric;
-
-public class MarkovPerson{
-	int curState;
-	Numeric variableVals[];
-	double rewards[];
-	double rewardsDis[];
-	boolean inSubgroup[];
-	int subgroupIndex[];
-	Numeric initVariableVals[];
-	
-	//Constructor
-	public MarkovPerson(){
-		
-	}
-	
-	
-}
\ No newline at end of file
+enum Format{INTEGER,DOUBLE,BOOL,MATRIX};
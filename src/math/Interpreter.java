@@ -19,6 +19,7 @@
 package math;
 
 import java.util.ArrayList;
+import java.util.EmptyStackException;
 import java.util.Stack;
 
 import base.AmuaModel;
@@ -29,6 +30,20 @@ import math.Distributions;
 
 public final class Interpreter{
 
+	/**
+	 * Thread-specific operand stack, reused across evaluations to avoid allocation
+	 */
+	private static final class OperandStack{
+		Numeric operands[]=new Numeric[64];
+		int size;
+	}
+	private static final ThreadLocal<OperandStack> operandStacks=new ThreadLocal<OperandStack>(){
+		@Override
+		protected OperandStack initialValue(){
+			return(new OperandStack());
+		}
+	};
+
 	//Single-thread, defaults to thread 0
 	public static Numeric evaluate(String expression, AmuaModel myModel, boolean sample) throws Exception{
 		return(evaluate(expression,myModel,sample,0,1));
@@ -57,25 +72,41 @@ public final class Interpreter{
 	 */
 	public static Numeric evaluateTokens(Token tokens[], int curThread, boolean sample) throws NumericException, Exception{
 		int numTokens=tokens.length;
-		Stack<Numeric> operands=new Stack<Numeric>();
-		for(int i=0; i<numTokens; i++){
-			Token curToken=tokens[i];
-			if(curToken.type==Type.OPERATOR){
-				String operator=curToken.word;
-				Numeric operand_2=operands.pop();
-				Numeric operand_1=operands.pop();
-				Numeric result=Operators.evaluate(operator,operand_1,operand_2);
-				operands.push(result);
-			}
-			else{ //operand
-				curToken.updateValue(curThread,sample);
-				Numeric operand=curToken.numeric[curThread];
-				operands.push(operand);
-			}
-		} //end of tokens loop
-		Numeric result=operands.pop();
-				
-		return(result);
+		//re-entrant: nested evaluations (e.g. function arguments) push above the current base
+		OperandStack stack=operandStacks.get();
+		int base=stack.size;
+		if(stack.operands.length<base+numTokens){ //grow stack
+			Numeric newOperands[]=new Numeric[Math.max(stack.operands.length*2, base+numTokens)];
+			System.arraycopy(stack.operands, 0, newOperands, 0, base);
+			stack.operands=newOperands;
+		}
+		int size=base;
+		try{
+			for(int i=0; i<numTokens; i++){
+				Token curToken=tokens[i];
+				if(curToken.type==Type.OPERATOR){
+					if(size-base<2){throw new EmptyStackException();}
+					String operator=curToken.word;
+					Numeric operand_2=stack.operands[--size];
+					Numeric operand_1=stack.operands[--size];
+					Numeric result=Operators.evaluate(operator,operand_1,operand_2);
+					stack.operands[size++]=result;
+				}
+				else{ //operand
+					stack.size=size; //protect operands from nested evaluations
+					curToken.updateValue(curThread,sample);
+					Numeric operand=curToken.numeric[curThread];
+					stack.operands[size++]=operand;
+				}
+			} //end of tokens loop
+			if(size==base){throw new EmptyStackException();}
+			Numeric result=stack.operands[--size];
+			return(result);
+		} finally{
+			int end=Math.min(base+numTokens, stack.operands.length);
+			for(int i=base; i<end; i++){stack.operands[i]=null;} //release references
+			stack.size=base;
+		}
 	}
 	
 	public static String[] splitArgs(String strArgs){
@@ -246,6 +277,7 @@ public final class Interpreter{
 							
 							Token tokenDist=new Token(word,Type.NUMERIC,myModel,false);
 							tokenDist.objectType=ObjectType.DISTRIBUTION;
+							tokenDist.sampler=new Sampler(tokenDist.numThreads);
 							tokenDist.distFx=df;
 							String args=params[0];
 							for(int i=1; i<numParams; i++){args+=","+params[i];}
@@ -372,6 +404,7 @@ public final class Interpreter{
 								tokenLookup.objectType=ObjectType.TABLE_LOOKUP;
 								tokenLookup.curTable=curTable;
 								tokenLookup.strArgs=args;
+								tokenLookup.lookup=curTable.getLookup(args[1]);
 								//tokenize index
 								tokenLookup.args=new Token[1][];
 								tokenLookup.args[0]=parse(args[0],myModel);
@@ -414,6 +447,7 @@ public final class Interpreter{
 							Token tokenTrace=new Token(word,Type.NUMERIC,myModel,false);
 							tokenTrace.objectType=ObjectType.TRACE;
 							tokenTrace.strArgs=args;
+							tokenTrace.parseTraceArgs(args[0],args[1]);
 							tokenTrace.negate=negate;
 							tokens.add(tokenTrace);
 							
@@ -331,7 +331,11 @@ public final class InterpreterOLD{
 								throw new NumericException("Invalid trace arguments","trace");
 								//throw error
 							}
-							Numeric trace=myModel.traceMarkov.getValue(args[0],args[1]);
+							Token tokenTrace=new Token(word,Type.NUMERIC,myModel,false);
+							tokenTrace.objectType=ObjectType.TRACE;
+							tokenTrace.parseTraceArgs(args[0],args[1]);
+							tokenTrace.updateValue(curThread,false);
+							Numeric trace=tokenTrace.getNumeric()[curThread];
 							if(negate){trace.negate();}
 							tokens.add(new TokenOLD(trace));
 							off=(close+1)-pos;
@@ -34,6 +34,48 @@ public final class MathUtils{
 		return(num);
 	}
 	
+	/**
+	 * Binary search of sorted keys
+	 * @param keys Sorted keys (ascending)
+	 * @param x Value to find
+	 * @param inclusive If true, finds keys<=x, otherwise keys<x
+	 * @return Index of the last key below x, -1 if none
+	 */
+	public static int searchSorted(double keys[], double x, boolean inclusive){
+		int low=0, high=keys.length-1;
+		int index=-1;
+		while(low<=high){
+			int mid=(low+high)>>>1;
+			if(keys[mid]<x || (inclusive && keys[mid]==x)){
+				index=mid;
+				low=mid+1;
+			}
+			else{high=mid-1;}
+		}
+		return(index);
+	}
+	
+	/**
+	 * Selects an index from cumulative probabilities - the first index with cumProb>=rand, as in a linear scan.
+	 * Large arrays are searched by bisection.
+	 * @param cumProbs Cumulative probabilities
+	 * @param rand Uniform random number
+	 * @return Selected index (the last index if rand exceeds the total due to rounding)
+	 */
+	public static int selectIndex(double cumProbs[], double rand){
+		int n=cumProbs.length;
+		int k;
+		if(n<=8){ //scan small arrays
+			k=0;
+			while(k<n-1 && rand>cumProbs[k]){k++;}
+		}
+		else{
+			k=searchSorted(cumProbs, rand, false)+1;
+			if(k>n-1){k=n-1;}
+		}
+		return(k);
+	}
+	
 	/**
 	 * 
 	 * @param k
@@ -21,7 +21,6 @@ package math;
 
 import base.AmuaModel;
 
-enum Format{INTEGER,DOUBLE,BOOL,MATRIX};
 public class Numeric{
 	Format format;
 	int intNum;
@@ -263,6 +262,11 @@ public class Numeric{
 		doubleNum=newDouble;
 	}
 	
+	public void setBool(boolean newBool){
+		format=Format.BOOL;
+		bool=newBool;
+	}
+	
 	public String saveAsXMLString(){
 		String str="";
 		str+=format+";";
@@ -344,6 +348,20 @@ public class Numeric{
 		return(copy);
 	}
 	
+	/**
+	 * Copies a scalar value into 'target' without allocating
+	 * @param target Numeric to overwrite (may be null)
+	 * @return target, or a new copy if target is null or either value is a matrix
+	 */
+	public Numeric copyInto(Numeric target){
+		if(target==null || format==Format.MATRIX || target.format==Format.MATRIX){return(copy());}
+		target.format=format;
+		target.intNum=intNum;
+		target.doubleNum=doubleNum;
+		target.bool=bool;
+		return(target);
+	}
+	
 	/**
 	 * Flip sign
 	 */
@@ -0,0 +1,386 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package math;
+
+import org.apache.commons.math3.distribution.BetaDistribution;
+import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+import org.apache.commons.math3.distribution.GammaDistribution;
+import org.apache.commons.math3.distribution.LogNormalDistribution;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.distribution.RealDistribution;
+import org.apache.commons.math3.distribution.TDistribution;
+
+import main.MersenneTwisterFast;
+import math.distributions.Beta;
+import math.distributions.Cauchy;
+import math.distributions.ChiSquare;
+import math.distributions.Dirichlet;
+import math.distributions.Exponential;
+import math.distributions.Gamma;
+import math.distributions.Gumbel;
+import math.distributions.HalfCauchy;
+import math.distributions.HalfNormal;
+import math.distributions.Laplace;
+import math.distributions.LogNormal;
+import math.distributions.Logistic;
+import math.distributions.MultivariateNormal;
+import math.distributions.Normal;
+import math.distributions.PERT;
+import math.distributions.Pareto;
+import math.distributions.StudentT;
+import math.distributions.Triangular;
+import math.distributions.TruncatedNormal;
+import math.distributions.Uniform;
+import math.distributions.Weibull;
+
+/**
+ * Samples a distribution token.  The validated distribution (and Cholesky factor for MvNorm) is cached for each thread while the parameters are unchanged.
+ * By default draws use the inverse CDF of one uniform (same values as Distributions.sample), which keeps CRN draws coupled across strategies.
+ * Direct sampling (ziggurat normals, Marsaglia-Tsang gammas) is faster but uses a variable number of uniforms per draw.
+ */
+public class Sampler{
+	private static final NormalDistribution STD_NORMAL=new NormalDistribution(null,0,1);
+	
+	//Ziggurat tables (Marsaglia & Tsang 2000, as in Doornik 2005)
+	private static final int ZIG_C=128;
+	private static final double ZIG_R=3.442619855899, ZIG_V=9.91256303526217e-3;
+	private static final double zigX[]=new double[ZIG_C+1], zigRatio[]=new double[ZIG_C];
+	static{
+		double f=Math.exp(-0.5*ZIG_R*ZIG_R);
+		zigX[0]=ZIG_V/f;
+		zigX[1]=ZIG_R;
+		zigX[ZIG_C]=0;
+		for(int i=2; i<ZIG_C; i++){
+			zigX[i]=Math.sqrt(-2*Math.log(ZIG_V/zigX[i-1]+f));
+			f=Math.exp(-0.5*zigX[i]*zigX[i]);
+		}
+		for(int i=0; i<ZIG_C; i++){
+			zigRatio[i]=zigX[i+1]/zigX[i];
+		}
+	}
+	
+	/**
+	 * Cached distribution for one thread
+	 */
+	private static class Entry{
+		double key[]; //parameter values of the cached distribution, null if none
+		RealDistribution dist;
+		RealDistribution dists[]; //Dirichlet
+		double chol[][]; //MvNorm
+	}
+	
+	Entry entries[]; //thread-specific
+	
+	public Sampler(int numThreads){
+		entries=new Entry[numThreads];
+		for(int n=0; n<numThreads; n++){
+			entries[n]=new Entry();
+		}
+	}
+	
+	/**
+	 * @param rand Uniform already drawn for this sample (ignored by multivariate distributions, as in Distributions.sample)
+	 * @param direct Use direct sampling instead of inverse CDF where available
+	 */
+	public Numeric sample(String dist, Numeric params[], double rand, MersenneTwisterFast generator, boolean direct, int curThread) throws NumericException{
+		Entry entry=entries[curThread];
+		switch(dist){
+		//Multivariate
+		case "MvNorm":{
+			if(isCached(entry,params)==false){
+				MultivariateNormal.checkParams(params);
+				Numeric sigma=params[1];
+				entry.chol=MatrixFunctions.chol(sigma).matrix; //cholesky decomposition
+				setCache(entry,params,null);
+			}
+			double mu[][]=params[0].matrix, A[][]=entry.chol;
+			int n=mu.length;
+			double z[]=new double[n]; //standard normals
+			for(int i=0; i<n; i++){
+				double curRand=generator.nextDouble();
+				if(direct){z[i]=normal(curRand,generator);}
+				else{z[i]=STD_NORMAL.inverseCumulativeProbability(curRand);}
+			}
+			double x[][]=new double[n][1];
+			for(int i=0; i<n; i++){
+				double sum=0;
+				for(int k=0; k<n; k++){sum+=A[i][k]*z[k];}
+				x[i][0]=mu[i][0]+sum;
+			}
+			return(new Numeric(x));
+		}
+		case "Dir":{
+			int len=params[0].ncol;
+			if(isCached(entry,params)==false){
+				Dirichlet.checkParams(params);
+				entry.dists=new RealDistribution[len];
+				for(int i=0; i<len; i++){
+					entry.dists[i]=new GammaDistribution(null,params[0].matrix[0][i],1.0);
+				}
+				setCache(entry,params,null);
+			}
+			double y[]=new double[len];
+			double sumY=0;
+			for(int i=0; i<len; i++){ //sample using independent Gammas
+				double curRand=generator.nextDouble();
+				if(direct){y[i]=gamma(params[0].matrix[0][i],curRand,generator);}
+				else{y[i]=entry.dists[i].inverseCumulativeProbability(curRand);}
+				sumY+=y[i];
+			}
+			double x[][]=new double[1][len];
+			for(int i=0; i<len; i++){
+				x[0][i]=y[i]/sumY;
+			}
+			return(new Numeric(x));
+		}
+		
+		} //End switch
+		
+		if(CompiledNode.isRealDistribution(dist)){return(new Numeric(sampleDouble(dist,params,rand,generator,direct,curThread)));}
+		//no parameter-dependent setup to cache
+		return(Distributions.sample(dist, params, rand, generator));
+	}
+	
+	/**
+	 * Samples a real-valued distribution without allocating (see CompiledNode.isRealDistribution)
+	 */
+	public double sampleDouble(String dist, Numeric params[], double rand, MersenneTwisterFast generator, boolean direct, int curThread) throws NumericException{
+		Entry entry=entries[curThread];
+		switch(dist){
+		//Normal family
+		case "Norm":{
+			if(isCached(entry,params)==false){setCache(entry,params,Normal.getDistribution(params));}
+			NormalDistribution norm=(NormalDistribution) entry.dist;
+			if(direct){return(norm.getMean()+norm.getStandardDeviation()*normal(rand,generator));}
+			return(norm.inverseCumulativeProbability(rand));
+		}
+		case "HalfNorm":{
+			if(isCached(entry,params)==false){setCache(entry,params,HalfNormal.getDistribution(params));}
+			NormalDistribution norm=(NormalDistribution) entry.dist;
+			if(direct){return(Math.abs(norm.getStandardDeviation()*normal(rand,generator)));}
+			return(Math.abs(norm.inverseCumulativeProbability(rand)));
+		}
+		case "LogNorm":{
+			if(isCached(entry,params)==false){setCache(entry,params,LogNormal.getDistribution(params));}
+			LogNormalDistribution lnorm=(LogNormalDistribution) entry.dist;
+			if(direct){return(Math.exp(lnorm.getScale()+lnorm.getShape()*normal(rand,generator)));}
+			return(lnorm.inverseCumulativeProbability(rand));
+		}
+		//Gamma family
+		case "Gamma":{
+			if(isCached(entry,params)==false){setCache(entry,params,Gamma.getDistribution(params));}
+			GammaDistribution gamma=(GammaDistribution) entry.dist;
+			if(direct){return(gamma.getScale()*gamma(gamma.getShape(),rand,generator));}
+			return(gamma.inverseCumulativeProbability(rand));
+		}
+		case "ChiSq":{
+			if(isCached(entry,params)==false){setCache(entry,params,ChiSquare.getDistribution(params));}
+			ChiSquaredDistribution chiSq=(ChiSquaredDistribution) entry.dist;
+			if(direct){return(2*gamma(chiSq.getDegreesOfFreedom()/2.0,rand,generator));}
+			return(chiSq.inverseCumulativeProbability(rand));
+		}
+		case "StudentT":{
+			if(isCached(entry,params)==false){setCache(entry,params,StudentT.getDistribution(params));}
+			TDistribution stud=(TDistribution) entry.dist;
+			if(direct){
+				double nu=stud.getDegreesOfFreedom();
+				double z=normal(rand,generator);
+				double chiSq=2*gamma(nu/2.0,generator.nextDouble(),generator);
+				return(z/Math.sqrt(chiSq/nu));
+			}
+			return(stud.inverseCumulativeProbability(rand));
+		}
+		case "Beta":{
+			if(isCached(entry,params)==false){setCache(entry,params,Beta.getDistribution(params));}
+			BetaDistribution beta=(BetaDistribution) entry.dist;
+			if(direct){return(beta(beta.getAlpha(),beta.getBeta(),rand,generator));}
+			return(beta.inverseCumulativeProbability(rand));
+		}
+		case "PERT":{
+			if(isCached(entry,params)==false){setCache(entry,params,PERT.getDistribution(params));}
+			BetaDistribution beta=(BetaDistribution) entry.dist;
+			double a=params[0].getDouble(), c=params[2].getDouble();
+			double val;
+			if(direct){val=beta(beta.getAlpha(),beta.getBeta(),rand,generator);}
+			else{val=beta.inverseCumulativeProbability(rand);}
+			return(a+(c-a)*val); //Re-scale back to original min/max
+		}
+		//Closed-form inverse CDFs
+		case "Cauchy":{
+			if(isCached(entry,params)==false){setCache(entry,params,Cauchy.getDistribution(params));}
+			return(entry.dist.inverseCumulativeProbability(rand));
+		}
+		case "HalfCauchy":{
+			if(isCached(entry,params)==false){setCache(entry,params,HalfCauchy.getDistribution(params));}
+			return(Math.abs(entry.dist.inverseCumulativeProbability(rand)));
+		}
+		case "Gumbel":{
+			if(isCached(entry,params)==false){setCache(entry,params,Gumbel.getDistribution(params));}
+			return(entry.dist.inverseCumulativeProbability(rand));
+		}
+		case "Laplace":{
+			if(isCached(entry,params)==false){setCache(entry,params,Laplace.getDistribution(params));}
+			return(entry.dist.inverseCumulativeProbability(rand));
+		}
+		case "Logistic":{
+			if(isCached(entry,params)==false){setCache(entry,params,Logistic.getDistribution(params));}
+			return(entry.dist.inverseCumulativeProbability(rand));
+		}
+		case "Pareto":{
+			if(isCached(entry,params)==false){setCache(entry,params,Pareto.getDistribution(params));}
+			return(entry.dist.inverseCumulativeProbability(rand));
+		}
+		case "Tri":{
+			if(isCached(entry,params)==false){setCache(entry,params,Triangular.getDistribution(params));}
+			return(entry.dist.inverseCumulativeProbability(rand));
+		}
+		case "Weibull":{
+			if(isCached(entry,params)==false){setCache(entry,params,Weibull.getDistribution(params));}
+			return(entry.dist.inverseCumulativeProbability(rand));
+		}
+		//No parameter-dependent setup to cache
+		case "Expo": return(Exponential.sampleValue(params, rand));
+		case "Unif": return(Uniform.sampleValue(params, rand));
+		case "TruncNorm": return(TruncatedNormal.sampleValue(params, rand));
+		
+		} //End switch
+		
+		return(Distributions.sample(dist, params, rand, generator).getDouble());
+	}
+	
+	private static boolean isCached(Entry entry, Numeric params[]){
+		double key[]=entry.key;
+		if(key==null){return(false);}
+		int k=0;
+		for(int i=0; i<params.length; i++){
+			Numeric curParam=params[i];
+			if(k>=key.length || key[k]!=curParam.format.ordinal()){return(false);}
+			k++;
+			if(curParam.format==Format.MATRIX){
+				if(k+2>key.length || key[k]!=curParam.nrow || key[k+1]!=curParam.ncol){return(false);}
+				k+=2;
+				if(k+curParam.nrow*curParam.ncol>key.length){return(false);}
+				for(int r=0; r<curParam.nrow; r++){
+					for(int c=0; c<curParam.ncol; c++){
+						if(key[k]!=curParam.matrix[r][c]){return(false);}
+						k++;
+					}
+				}
+			}
+			else{
+				if(key[k]!=curParam.getValue()){return(false);}
+				k++;
+			}
+		}
+		return(k==key.length);
+	}
+	
+	/**
+	 * Stores the parameter values of a validated distribution
+	 */
+	private static void setCache(Entry entry, Numeric params[], RealDistribution dist){
+		int size=0;
+		for(int i=0; i<params.length; i++){
+			size++; //format
+			if(params[i].format==Format.MATRIX){size+=2+params[i].nrow*params[i].ncol;}
+			else{size++;}
+		}
+		double key[]=new double[size];
+		int k=0;
+		for(int i=0; i<params.length; i++){
+			Numeric curParam=params[i];
+			key[k]=curParam.format.ordinal(); k++;
+			if(curParam.format==Format.MATRIX){
+				key[k]=curParam.nrow; key[k+1]=curParam.ncol; k+=2;
+				for(int r=0; r<curParam.nrow; r++){
+					for(int c=0; c<curParam.ncol; c++){
+						key[k]=curParam.matrix[r][c]; k++;
+					}
+				}
+			}
+			else{
+				key[k]=curParam.getValue(); k++;
+			}
+		}
+		entry.key=key;
+		entry.dist=dist;
+	}
+	
+	/**
+	 * Standard normal by the ziggurat method
+	 * @param rand First uniform (selects the layer and the point within it)
+	 */
+	static double normal(double rand, MersenneTwisterFast generator){
+		while(true){
+			double r=rand*ZIG_C;
+			int i=(int)r;
+			double u=2*(r-i)-1;
+			double x=u*zigX[i];
+			if(Math.abs(u)<zigRatio[i]){return(x);} //inside the layer
+			if(i==0){ //tail beyond R
+				double xt, y;
+				do{
+					xt=Math.log(1-generator.nextDouble())/ZIG_R;
+					y=Math.log(1-generator.nextDouble());
+				} while(-2*y<xt*xt);
+				if(u<0){return(xt-ZIG_R);}
+				else{return(ZIG_R-xt);}
+			}
+			double f0=Math.exp(-0.5*(zigX[i]*zigX[i]-x*x));
+			double f1=Math.exp(-0.5*(zigX[i+1]*zigX[i+1]-x*x));
+			if(f1+generator.nextDouble()*(f0-f1)<1.0){return(x);}
+			rand=generator.nextDouble();
+		}
+	}
+	
+	/**
+	 * Gamma(shape,1) by the method of Marsaglia & Tsang (2000)
+	 * @param rand First uniform
+	 */
+	static double gamma(double shape, double rand, MersenneTwisterFast generator){
+		if(shape<1){ //Gamma(k)=Gamma(k+1)*U^(1/k)
+			double g=gamma(shape+1,rand,generator);
+			return(g*Math.pow(1-generator.nextDouble(), 1.0/shape));
+		}
+		double d=shape-1.0/3.0, c=1.0/Math.sqrt(9*d);
+		while(true){
+			double x=normal(rand,generator);
+			double v=1+c*x;
+			if(v>0){
+				v=v*v*v;
+				double u=generator.nextDouble();
+				double x2=x*x;
+				if(u<1-0.0331*x2*x2){return(d*v);} //squeeze
+				if(Math.log(u)<0.5*x2+d*(1-v+Math.log(v))){return(d*v);}
+			}
+			rand=generator.nextDouble();
+		}
+	}
+	
+	/**
+	 * Beta(a,b) as X/(X+Y) with X~Gamma(a), Y~Gamma(b)
+	 * @param rand First uniform
+	 */
+	static double beta(double a, double b, double rand, MersenneTwisterFast generator){
+		double x=gamma(a,rand,generator);
+		double y=gamma(b,generator.nextDouble(),generator);
+		return(x/(x+y));
+	}
+}
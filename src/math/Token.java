@@ -22,12 +22,10 @@ package math;
 import base.AmuaModel;
 import main.Parameter;
 import main.Table;
+import main.TableLookup;
 import main.Variable;
+import markov.MarkovTrace;
 
-enum Type{NUMERIC,OPERATOR,PAREN_LEFT,PAREN_RIGHT;}
-enum ObjectType{NUMBER,PARAMETER,VARIABLE,MATRIX_STATIC,FUNCTION,MATRIX_FUNCTION,DISTRIBUTION,
-	TABLE_DISTRIBUTION,TABLE_LOOKUP,MATRIX_ELEMENT,TRACE,PARAM_MATRIX,VAR_MATRIX,
-	MATRIX_DYNAMIC};
 public class Token{
 	Type type;
 	ObjectType objectType;
@@ -53,6 +51,7 @@ public class Token{
 	 * -1: ~, 0: f, 1: F, 2: Q, 3: E, 4: V 
 	 */
 	int distFx;
+	Sampler sampler; //caches distributions for sampling
 	
 	int tableType; //0=Lookup, 1=Distribution, 2=Matrix
 	Numeric matrix;
@@ -61,6 +60,7 @@ public class Token{
 	Parameter curParam;
 	Variable curVar;
 	Table curTable;
+	TableLookup lookup;
 	
 	//dynamic matrix
 	int nrow, ncol;
@@ -69,6 +69,13 @@ public class Token{
 	 */
 	Token matrixTokens[][][];
 	
+	//trace
+	/**
+	 * Parsed trace bounds [Row start, Row end, Col start, Col end], null for all rows/cols
+	 */
+	Token traceBounds[][];
+	String traceCol; //column name, null if column is an index
+	
 	
 	public Token(String word, Type type, AmuaModel myModel, boolean parseWord) throws Exception{
 		this.word=word;
@@ -161,22 +168,22 @@ public class Token{
 		if(objectType!=ObjectType.NUMBER && objectType!=ObjectType.MATRIX_STATIC){ //Not static number or matrix
 			if(objectType==ObjectType.PARAMETER){ //Parameter
 				if(curParam.locked==false){
-					curParam.parsedTokens=Interpreter.parse(curParam.expression, myModel);
-					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens,curThread,sample);
+					curParam.parsedTokens=myModel.expressionCache.parse(curParam, curParam.expression);
+					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens,curThread,sample).copy(); //not shared with token values
 					if(sample){curParam.locked=true;}
 				}
-				numeric[curThread]=curParam.value.copy();
+				numeric[curThread]=curParam.value.copyInto(numeric[curThread]);
 			}
 			else if(objectType==ObjectType.VARIABLE){ //Variable
 				if(curVar.value[curThread]==null){ //not initialized
-					curVar.parsedTokens=Interpreter.parse(curVar.expression, myModel);
-					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample);
+					curVar.parsedTokens=myModel.expressionCache.parse(curVar, curVar.expression);
+					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample).copy(); //value may be updated in place
 				}
 				else if(curVar.locked[curThread]==false && curVar.independent==false) {
-					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample);
+					curVar.updateValue(curThread, sample);
 					curVar.locked[curThread]=true;
 				}
-				numeric[curThread]=curVar.value[curThread].copy();
+				numeric[curThread]=curVar.value[curThread].copyInto(numeric[curThread]);
 			}
 			else if(objectType==ObjectType.FUNCTION){
 				Numeric argsNumeric[]=evalArgs(curThread,sample);
@@ -198,7 +205,7 @@ public class Token{
 					else{ //see if can sample
 						if(myModel.curGenerator[curThread]!=null){ //RNG available
 							double rand=myModel.curGenerator[curThread].nextDouble();
-							numeric[curThread]=Distributions.sample(word,argsNumeric,rand,myModel.curGenerator[curThread]);
+							numeric[curThread]=sampler.sample(word,argsNumeric,rand,myModel.curGenerator[curThread],myModel.directSampling,curThread);
 						}
 						else{ //no RNG, shouldn't sample
 							numeric[curThread]=Distributions.evaluate(word,argsNumeric,distFx);
@@ -228,25 +235,25 @@ public class Token{
 			}
 			else if(objectType==ObjectType.TABLE_LOOKUP){
 				Numeric index=Interpreter.evaluateTokens(args[0],curThread,sample);
-				numeric[curThread]=new Numeric(curTable.getLookupValue(index.getDouble(), strArgs[1]));
+				numeric[curThread]=new Numeric(lookup.getValue(index.getDouble()));
 			}
 			else if(objectType==ObjectType.MATRIX_ELEMENT){
 				numeric[curThread]=matrix.getMatrixValue(strArgs, myModel);
 			}
 			else if(objectType==ObjectType.TRACE){
-				numeric[curThread]=myModel.traceMarkov.getValue(strArgs[0],strArgs[1]);
+				numeric[curThread]=getTraceValue(curThread);
 			}
 			else if(objectType==ObjectType.PARAM_MATRIX){
 				if(curParam.locked==false){
-					curParam.parsedTokens=Interpreter.parse(curParam.expression, myModel);
-					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens,curThread,sample);
+					curParam.parsedTokens=myModel.expressionCache.parse(curParam, curParam.expression);
+					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens,curThread,sample).copy(); //not shared with token values
 					if(sample){curParam.locked=true;}
 				}
 				numeric[curThread]=curParam.value.getMatrixValue(strArgs,myModel);
 			}
 			else if(objectType==ObjectType.VAR_MATRIX){
 				if(curVar.value==null){ //not initialized
-					curVar.parsedTokens=Interpreter.parse(curVar.expression, myModel);
+					curVar.parsedTokens=myModel.expressionCache.parse(curVar, curVar.expression);
 					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample);
 				}
 				else if(curVar.locked[curThread]==false && curVar.independent==false) {
@@ -279,4 +286,51 @@ public class Token{
 		return(argsNumeric);
 	}
 	
+	
+	/**
+	 * Parses trace(row,col) arguments once so each evaluation only evaluates the bounds
+	 */
+	void parseTraceArgs(String row, String col) throws Exception{
+		traceBounds=new Token[4][];
+		parseTraceRange(row,0);
+		if(!col.contains(":") && (col.contains("\"") || col.contains("\'"))){ //column name
+			traceCol=col.replace("\"","").replace("\'","");
+		}
+		else{
+			parseTraceRange(col,2);
+		}
+	}
+	
+	private void parseTraceRange(String range, int index) throws Exception{
+		if(range.contains(":")){
+			if(range.length()>1){ //"x:y" sequence, ":" is all
+				int split=range.indexOf(":");
+				traceBounds[index]=Interpreter.parse(range.substring(0, split), myModel);
+				traceBounds[index+1]=Interpreter.parse(range.substring(split+1), myModel);
+			}
+		}
+		else{
+			traceBounds[index]=Interpreter.parse(range, myModel);
+			traceBounds[index+1]=traceBounds[index];
+		}
+	}
+	
+	private Numeric getTraceValue(int curThread) throws Exception{
+		MarkovTrace trace=myModel.traceMarkov;
+		int startRow=0, endRow=trace.getNumRows()-1;
+		int startCol=0, endCol=trace.getNumCols()-1;
+		if(traceBounds[0]!=null){
+			startRow=Interpreter.evaluateTokens(traceBounds[0], curThread, false).getInt();
+			endRow=Interpreter.evaluateTokens(traceBounds[1], curThread, false).getInt();
+		}
+		if(traceCol!=null){
+			startCol=trace.getColumnIndex(traceCol);
+			endCol=startCol;
+		}
+		else if(traceBounds[2]!=null){
+			startCol=Interpreter.evaluateTokens(traceBounds[2], curThread, false).getInt();
+			endCol=Interpreter.evaluateTokens(traceBounds[3], curThread, false).getInt();
+		}
+		return(trace.getValue(startRow, endRow, startCol, endCol));
+	}
 }
\ No newline at end of file
@@ -68,12 +68,19 @@ public final class Beta{
 	}
 	
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		BetaDistribution beta=getDistribution(params);
+		return(new Numeric(beta.inverseCumulativeProbability(rand)));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static BetaDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==2){
 			double a=params[0].getDouble(), b=params[1].getDouble();
 			if(a<=0){throw new NumericException("a should be >0","Beta");}
 			if(b<=0){throw new NumericException("b should be >0","Beta");}
-			BetaDistribution beta=new BetaDistribution(null,a,b);
-			return(new Numeric(beta.inverseCumulativeProbability(rand)));
+			return(new BetaDistribution(null,a,b));
 		}
 		else{throw new NumericException("Incorrect number of parameters","Beta");}
 	}
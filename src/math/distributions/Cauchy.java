@@ -59,11 +59,18 @@ public final class Cauchy{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		CauchyDistribution cauchy=getDistribution(params);
+		return(new Numeric(cauchy.inverseCumulativeProbability(rand)));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static CauchyDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==2){
 			double a=params[0].getDouble(), b=params[1].getDouble();
 			if(b<=0){throw new NumericException("γ should be >0","Cauchy");}
-			CauchyDistribution cauchy=new CauchyDistribution(null,a,b);
-			return(new Numeric(cauchy.inverseCumulativeProbability(rand)));
+			return(new CauchyDistribution(null,a,b));
 		}
 		else{throw new NumericException("Incorrect number of parameters","Cauchy");}
 	}
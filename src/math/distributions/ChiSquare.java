@@ -59,11 +59,18 @@ public final class ChiSquare{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		ChiSquaredDistribution chiSq=getDistribution(params);
+		return(new Numeric(chiSq.inverseCumulativeProbability(rand)));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static ChiSquaredDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==1){
 			double k=params[0].getInt();
 			if(k<1){throw new NumericException("k should be >0","ChiSq");}
-			ChiSquaredDistribution chiSq=new ChiSquaredDistribution(null,k);
-			return(new Numeric(chiSq.inverseCumulativeProbability(rand)));
+			return(new ChiSquaredDistribution(null,k));
 		}
 		else{throw new NumericException("Incorrect number of parameters","ChiSq");}
 	}
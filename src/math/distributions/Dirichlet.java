@@ -117,15 +117,13 @@ public final class Dirichlet{
 	}
 	
 	public static Numeric sample(Numeric params[], MersenneTwisterFast generator) throws NumericException{
-		//Validate parameters
+		checkParams(params);
 		Numeric alpha=params[0];
 		int len=alpha.ncol;
-		if(alpha.nrow!=1){throw new NumericException("α should be a row vector","Dir");}
 		double y[]=new double[len];
 		double sumY=0;
 		for(int i=0; i<len; i++){
 			double curAlpha=alpha.matrix[0][i];
-			if(curAlpha<=0){throw new NumericException("Invalid concentration parameter in α ("+curAlpha+")","Dir");}
 			//Sample using independent Gammas
 			GammaDistribution gamma=new GammaDistribution(null,curAlpha,1.0);
 			double rand=generator.nextDouble();
@@ -139,6 +137,18 @@ public final class Dirichlet{
 		return(new Numeric(x));
 	}
 	
+	/**
+	 * Validates the parameters for sampling
+	 */
+	public static void checkParams(Numeric params[]) throws NumericException{
+		Numeric alpha=params[0];
+		if(alpha.nrow!=1){throw new NumericException("α should be a row vector","Dir");}
+		for(int i=0; i<alpha.ncol; i++){
+			double curAlpha=alpha.matrix[0][i];
+			if(curAlpha<=0){throw new NumericException("Invalid concentration parameter in α ("+curAlpha+")","Dir");}
+		}
+	}
+	
 	public static String description(){
 		String des="<html><b>Dirichlet Distribution</b><br>";
 		des+="A multivariate generalization of the Beta distribution<br><br>";
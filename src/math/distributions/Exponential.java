@@ -55,10 +55,17 @@ public final class Exponential{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		return(new Numeric(sampleValue(params,rand)));
+	}
+	
+	/**
+	 * Samples without allocating a Numeric
+	 */
+	public static double sampleValue(Numeric params[], double rand) throws NumericException{
 		if(params.length==1){
 			double lambda=params[0].getDouble();
 			if(lambda<=0){throw new NumericException("λ should be >0","Expo");}
-			return(new Numeric(-Math.log(1-rand)/lambda));
+			return(-Math.log(1-rand)/lambda);
 		}
 		else{throw new NumericException("Incorrect number of parameters","Expo");}
 	}
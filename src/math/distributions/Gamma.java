@@ -64,12 +64,19 @@ public final class Gamma{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		GammaDistribution gamma=getDistribution(params);
+		return(new Numeric(gamma.inverseCumulativeProbability(rand)));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static GammaDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==2){
 			double k=params[0].getDouble(), theta=params[1].getDouble();
 			if(k<=0){throw new NumericException("k should be >0","Gamma");}
 			if(theta<=0){throw new NumericException("θ should be >0","Gamma");}
-			GammaDistribution gamma=new GammaDistribution(null,k,theta);
-			return(new Numeric(gamma.inverseCumulativeProbability(rand)));
+			return(new GammaDistribution(null,k,theta));
 		}
 		else{throw new NumericException("Incorrect number of parameters","Gamma");}
 	}
@@ -61,11 +61,18 @@ public final class Gumbel{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		GumbelDistribution gumbel=getDistribution(params);
+		return(new Numeric(gumbel.inverseCumulativeProbability(rand))); //mean
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static GumbelDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==2){
 			double mu=params[0].getDouble(), beta=params[1].getDouble();
 			if(beta<=0){throw new NumericException("β should be >0","Gumbel");}
-			GumbelDistribution gumbel=new GumbelDistribution(null,mu,beta);
-			return(new Numeric(gumbel.inverseCumulativeProbability(rand))); //mean
+			return(new GumbelDistribution(null,mu,beta));
 		}
 		else{throw new NumericException("Incorrect number of parameters","Gumbel");}
 	}
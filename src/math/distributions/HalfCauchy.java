@@ -61,11 +61,18 @@ public final class HalfCauchy{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		CauchyDistribution cauchy=getDistribution(params);
+		return(new Numeric(Math.abs(cauchy.inverseCumulativeProbability(rand))));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static CauchyDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==1){
 			double gamma=params[0].getDouble();
 			if(gamma<=0){throw new NumericException("γ should be >0","HalfCauchy");}
-			CauchyDistribution cauchy=new CauchyDistribution(null,0,gamma);
-			return(new Numeric(Math.abs(cauchy.inverseCumulativeProbability(rand))));
+			return(new CauchyDistribution(null,0,gamma));
 		}
 		else{throw new NumericException("Incorrect number of parameters","HalfCauchy");}
 	}
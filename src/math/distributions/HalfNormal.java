@@ -71,11 +71,18 @@ public final class HalfNormal{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		NormalDistribution norm=getDistribution(params);
+		return(new Numeric(Math.abs(norm.inverseCumulativeProbability(rand))));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static NormalDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==1){
 			double sigma=params[0].getDouble(), mu=0;
 			if(sigma<=0){throw new NumericException("σ should be >0","HalfNorm");}
-			NormalDistribution norm=new NormalDistribution(null,mu,sigma);
-			return(new Numeric(Math.abs(norm.inverseCumulativeProbability(rand))));
+			return(new NormalDistribution(null,mu,sigma));
 		}
 		else{throw new NumericException("Incorrect number of parameters","HalfNorm");}
 	}
@@ -60,11 +60,18 @@ public final class Laplace{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		LaplaceDistribution lap=getDistribution(params);
+		return(new Numeric(lap.inverseCumulativeProbability(rand)));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static LaplaceDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==2){
 			double mu=params[0].getDouble(), b=params[1].getDouble();
 			if(b<=0){throw new NumericException("b should be >0","Laplace");}
-			LaplaceDistribution lap=new LaplaceDistribution(null,mu,b);
-			return(new Numeric(lap.inverseCumulativeProbability(rand)));
+			return(new LaplaceDistribution(null,mu,b));
 		}
 		else{throw new NumericException("Incorrect number of parameters","Laplace");}
 	}
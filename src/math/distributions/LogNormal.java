@@ -64,11 +64,18 @@ public final class LogNormal{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		LogNormalDistribution lnorm=getDistribution(params);
+		return(new Numeric(lnorm.inverseCumulativeProbability(rand)));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static LogNormalDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==2){
 			double mu=params[0].getDouble(), sigma=params[1].getDouble();
 			if(sigma<=0){throw new NumericException("σ should be >0","LogNorm");}
-			LogNormalDistribution lnorm=new LogNormalDistribution(null,mu,sigma);
-			return(new Numeric(lnorm.inverseCumulativeProbability(rand)));
+			return(new LogNormalDistribution(null,mu,sigma));
 		}
 		else{throw new NumericException("Incorrect number of parameters","LogNorm");}
 	}
@@ -60,11 +60,18 @@ public final class Logistic{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		LogisticDistribution logi=getDistribution(params);
+		return(new Numeric(logi.inverseCumulativeProbability(rand))); //mean
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static LogisticDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==2){
 			double mu=params[0].getDouble(), s=params[1].getDouble();
 			if(s<=0){throw new NumericException("s should be >0","Logistic");}
-			LogisticDistribution logi=new LogisticDistribution(null,mu,s);
-			return(new Numeric(logi.inverseCumulativeProbability(rand))); //mean
+			return(new LogisticDistribution(null,mu,s));
 		}
 		else{throw new NumericException("Incorrect number of parameters","Logistic");}
 	}
@@ -91,6 +91,26 @@ public final class MultivariateNormal{
 	}
 
 	public static Numeric sample(Numeric params[], MersenneTwisterFast generator) throws NumericException{
+		checkParams(params);
+		Numeric mu=params[0], sigma=params[1];
+		int n=sigma.nrow;
+		Numeric A=MatrixFunctions.chol(sigma); //get cholesky decomposition
+		double randVector[][]=new double[n][1]; //random column vector of standard normals
+		NormalDistribution stdNorm=new NormalDistribution(null,0,1);
+		for(int i=0; i<n; i++){
+			double rand=generator.nextDouble(); //Get next rand
+			randVector[i][0]=stdNorm.inverseCumulativeProbability(rand);
+		}
+		Numeric z=new Numeric(randVector);
+		Numeric Az=MatrixFunctions.multiply(A, z);
+		Numeric x=MatrixFunctions.add(mu,Az);
+		return(x);
+	}
+	
+	/**
+	 * Validates the parameters for sampling (the Cholesky factor is cached by Sampler)
+	 */
+	public static void checkParams(Numeric params[]) throws NumericException{
 		if(params.length==2){
 			Numeric mu=params[0], sigma=params[1];
 			if(mu.ncol!=1){ //ensure mu is column vector
@@ -102,18 +122,6 @@ public final class MultivariateNormal{
 			if(sigma.nrow!=mu.nrow){ //ensure sigma and mu are the right size
 				throw new NumericException("μ and Σ should have the same number of rows","MvNorm");
 			}
-			int n=sigma.nrow;
-			Numeric A=MatrixFunctions.chol(sigma); //get cholesky decomposition
-			double randVector[][]=new double[n][1]; //random column vector of standard normals
-			NormalDistribution stdNorm=new NormalDistribution(null,0,1);
-			for(int i=0; i<n; i++){
-				double rand=generator.nextDouble(); //Get next rand
-				randVector[i][0]=stdNorm.inverseCumulativeProbability(rand);
-			}
-			Numeric z=new Numeric(randVector);
-			Numeric Az=MatrixFunctions.multiply(A, z);
-			Numeric x=MatrixFunctions.add(mu,Az);
-			return(x);
 		}
 		else{throw new NumericException("Incorrect number of parameters","MvNorm");}
 	}
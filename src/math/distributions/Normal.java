@@ -60,11 +60,18 @@ public final class Normal{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		NormalDistribution norm=getDistribution(params);
+		return(new Numeric(norm.inverseCumulativeProbability(rand)));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static NormalDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==2){
 			double mu=params[0].getDouble(), sigma=params[1].getDouble();
 			if(sigma<=0){throw new NumericException("σ should be >0","Norm");}
-			NormalDistribution norm=new NormalDistribution(null,mu,sigma);
-			return(new Numeric(norm.inverseCumulativeProbability(rand)));
+			return(new NormalDistribution(null,mu,sigma));
 		}
 		else{throw new NumericException("Incorrect number of parameters","Norm");}
 	}
@@ -87,6 +87,17 @@ public final class PERT{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		BetaDistribution beta=getDistribution(params);
+		double a=params[0].getDouble(), c=params[2].getDouble();
+		double val=beta.inverseCumulativeProbability(rand);
+		val=a+(c-a)*val; //Re-scale back to original min/max
+		return(new Numeric(val));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static BetaDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==3){
 			double a=params[0].getDouble(), b=params[1].getDouble(), c=params[2].getDouble();
 			if(c<=a){throw new NumericException("c should be >a","PERT");}
@@ -96,10 +107,7 @@ public final class PERT{
 			double a1=((u-a)*(2.0*b-a-c))/((b-u)*(c-a));
 			double a2=(a1*(c-u))/(u-a);
 			if(b==u){a1=3.0; a2=3.0;} //Check symmetric case where a1 is div/0
-			BetaDistribution beta=new BetaDistribution(null,a1,a2);
-			double val=beta.inverseCumulativeProbability(rand);
-			val=a+(c-a)*val; //Re-scale back to original min/max
-			return(new Numeric(val));
+			return(new BetaDistribution(null,a1,a2));
 		}
 		else{throw new NumericException("Incorrect number of parameters","PERT");}
 	}
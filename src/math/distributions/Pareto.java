@@ -71,12 +71,19 @@ public final class Pareto{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		ParetoDistribution par=getDistribution(params);
+		return(new Numeric(par.inverseCumulativeProbability(rand)));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static ParetoDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==2){
 			double k=params[0].getDouble(), alpha=params[1].getDouble(); 
 			if(k<=0){throw new NumericException("k should be >0","Pareto");}
 			if(alpha<=0){throw new NumericException("α should be >0","Pareto");}
-			ParetoDistribution par=new ParetoDistribution(null,k,alpha);
-			return(new Numeric(par.inverseCumulativeProbability(rand)));
+			return(new ParetoDistribution(null,k,alpha));
 		}
 		else{throw new NumericException("Incorrect number of parameters","Pareto");}
 	}
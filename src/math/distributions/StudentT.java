@@ -61,11 +61,18 @@ public final class StudentT{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		TDistribution stud=getDistribution(params);
+		return(new Numeric(stud.inverseCumulativeProbability(rand)));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static TDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==1){
 			double nu=params[0].getDouble();
 			if(nu<=0){throw new NumericException("ν should be >0","StudentT");}
-			TDistribution stud=new TDistribution(null,nu);
-			return(new Numeric(stud.inverseCumulativeProbability(rand)));
+			return(new TDistribution(null,nu));
 		}
 		else{throw new NumericException("Incorrect number of parameters","StudentT");}
 	}
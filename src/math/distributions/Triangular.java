@@ -71,13 +71,20 @@ public final class Triangular{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		TriangularDistribution tri=getDistribution(params);
+		return(new Numeric(tri.inverseCumulativeProbability(rand)));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static TriangularDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==3){
 			double a=params[0].getDouble(), b=params[1].getDouble(), c=params[2].getDouble();
 			if(c<=a){throw new NumericException("c should be >a","Tri");}
 			if(b<a){throw new NumericException("b should be ≥a","Tri");}
 			if(b>c){throw new NumericException("b should be ≤c","Tri");}
-			TriangularDistribution tri=new TriangularDistribution(null,a,b,c);
-			return(new Numeric(tri.inverseCumulativeProbability(rand)));
+			return(new TriangularDistribution(null,a,b,c));
 		}
 		else{throw new NumericException("Incorrect number of parameters","Tri");}
 	}
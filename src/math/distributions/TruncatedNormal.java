@@ -112,6 +112,13 @@ public final class TruncatedNormal{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		return(new Numeric(sampleValue(params,rand)));
+	}
+	
+	/**
+	 * Samples without allocating a Numeric
+	 */
+	public static double sampleValue(Numeric params[], double rand) throws NumericException{
 		if(params.length==4){
 			double mu=params[0].getDouble(), sigma=params[1].getDouble(), a=params[2].getDouble(), b=params[3].getDouble();
 			if(sigma<=0){throw new NumericException("σ should be >0","TruncNorm");}
@@ -124,7 +131,7 @@ public final class TruncatedNormal{
 			double phiXi=rand*Z+phiA;
 			double xi=Math.sqrt(2)*Erf.erfInv(2*phiXi-1);
 			double q=xi*sigma+mu;
-			return(new Numeric(q));
+			return(q);
 		}
 		else{throw new NumericException("Incorrect number of parameters","TruncNorm");}
 	}
@@ -61,10 +61,17 @@ public final class Uniform{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		return(new Numeric(sampleValue(params,rand)));
+	}
+	
+	/**
+	 * Samples without allocating a Numeric
+	 */
+	public static double sampleValue(Numeric params[], double rand) throws NumericException{
 		if(params.length==2){
 			double a=params[0].getDouble(), b=params[1].getDouble();
 			if(b<=a){throw new NumericException("b should be >a","Unif");}
-			return(new Numeric(a+rand*(b-a)));
+			return(a+rand*(b-a));
 		}
 		else{throw new NumericException("Incorrect number of parameters","Unif");}
 	}
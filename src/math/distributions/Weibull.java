@@ -67,12 +67,19 @@ public final class Weibull{
 	}
 
 	public static Numeric sample(Numeric params[], double rand) throws NumericException{
+		WeibullDistribution weib=getDistribution(params);
+		return(new Numeric(weib.inverseCumulativeProbability(rand)));
+	}
+	
+	/**
+	 * Validates the parameters and returns the distribution to sample from (cached by Sampler)
+	 */
+	public static WeibullDistribution getDistribution(Numeric params[]) throws NumericException{
 		if(params.length==2){
 			double a=params[0].getDouble(), b=params[1].getDouble();
 			if(a<=0){throw new NumericException("a should be >0","Weibull");}
 			if(b<=0){throw new NumericException("b should be >0","Weibull");}
-			WeibullDistribution weib=new WeibullDistribution(null,a,b);
-			return(new Numeric(weib.inverseCumulativeProbability(rand)));
+			return(new WeibullDistribution(null,a,b));
 		}
 		else{throw new NumericException("Incorrect number of parameters","Weibull");}
 	}
@@ -31,6 +31,7 @@ import main.Console;
 import main.ConsoleTable;
 import main.DimInfo;
 import main.VariableUpdate;
+import math.CompiledExpression;
 import math.Interpreter;
 import math.MathUtils;
 import math.Token;
@@ -99,6 +100,27 @@ public class DecisionTree{
 		}
 		return(copy);
 	}
+	
+	/**
+	 * Initializes node references without a panel (e.g. model replicas)
+	 * @param myModel
+	 */
+	public void initTree(AmuaModel myModel){
+		this.myModel=myModel;
+		int numDim=myModel.dimInfo.dimNames.length;
+		TreeNode root=nodes.get(0);
+		root.myModel=myModel;
+		root.tree=this;
+		root.cost=new String[numDim];
+		root.numDimensions=numDim;
+		int size=nodes.size();
+		for(int i=1; i<size; i++){ //Skip root
+			TreeNode curNode=nodes.get(i);
+			curNode.myModel=myModel;
+			curNode.tree=this;
+			curNode.numDimensions=numDim;
+		}
+	}
 
 	/**
 	 * Parse text entries and ensure tree inputs are plausible.
@@ -112,6 +134,7 @@ public class DecisionTree{
 		int numDim=myModel.dimInfo.dimSymbols.length;
 		root.curCosts=new double[numDim]; root.curCostTokens=new Token[numDim][];
 		root.curPayoffs=new double[numDim]; root.curPayoffTokens=new Token[numDim][];
+		root.curCostExprs=new CompiledExpression[numDim]; root.curPayoffExprs=new CompiledExpression[numDim];
 		root.numChildren=root.childIndices.size();
 		root.children=new TreeNode[root.numChildren];
 		for(int j=0; j<root.numChildren; j++){
@@ -132,6 +155,8 @@ public class DecisionTree{
 			curNode.curProb=null; //reset parsed values
 			curNode.curCosts=new double[numDim]; curNode.curCostTokens=new Token[numDim][];
 			curNode.curPayoffs=new double[numDim]; curNode.curPayoffTokens=new Token[numDim][];
+			curNode.curProbExpr=null;
+			curNode.curCostExprs=new CompiledExpression[numDim]; curNode.curPayoffExprs=new CompiledExpression[numDim];
 			curNode.curVariableUpdates=null;
 
 			if(curNode.type==0 && myModel.simType==1){
@@ -146,6 +171,7 @@ public class DecisionTree{
 					try{
 						curNode.curProbTokens=Interpreter.parse(curNode.prob, myModel);
 						curNode.curProb[0]=Interpreter.evaluateTokens(curNode.curProbTokens, 0, false).getDouble();
+						curNode.curProbExpr=CompiledExpression.compile(curNode.curProbTokens);
 					}catch(Exception e){
 						validProbs=false;
 						curNode.highlightTextField(0, Color.YELLOW); //Prob
@@ -168,6 +194,7 @@ public class DecisionTree{
 					try{
 						curNode.curCostTokens[c]=Interpreter.parse(curNode.cost[c], myModel);
 						curNode.curCosts[c]=Interpreter.evaluateTokens(curNode.curCostTokens[c], 0, false).getDouble();
+						curNode.curCostExprs[c]=CompiledExpression.compile(curNode.curCostTokens[c]);
 						
 						if(Double.isNaN(curNode.curCosts[c])){
 							curNode.highlightTextField(1, Color.YELLOW); //Cost
@@ -186,6 +213,7 @@ public class DecisionTree{
 					try{
 						curNode.curPayoffTokens[c]=Interpreter.parse(curNode.payoff[c],myModel);
 						curNode.curPayoffs[c]=Interpreter.evaluateTokens(curNode.curPayoffTokens[c], 0, false).getDouble();
+						curNode.curPayoffExprs[c]=CompiledExpression.compile(curNode.curPayoffTokens[c]);
 						if(Double.isNaN(curNode.curPayoffs[c])){
 							curNode.highlightTextField(2, Color.YELLOW); //Payoff
 							errors.add("Node "+curNode.name+": Payoff Error ("+curNode.payoff[c]+")");
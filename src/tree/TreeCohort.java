@@ -50,7 +50,7 @@ public class TreeCohort{
 		myModel.unlockVarsAll(0);
 		for(int c=0; c<numVars; c++){
 			variables[c].locked[0]=true;
-			variables[c].value[0]=Interpreter.evaluateTokens(variables[c].parsedTokens, 0, false);
+			variables[c].value[0]=Interpreter.evaluateTokens(variables[c].parsedTokens, 0, false).copy(); //value may be updated in place
 		}
 
 		root.totalDenom=myModel.cohortSize;
@@ -65,7 +65,7 @@ public class TreeCohort{
 		//Update costs
 		if(node.hasCost){
 			for(int c=0; c<numDim; c++){
-				node.curCosts[c]=Interpreter.evaluateTokens(node.curCostTokens[c], 0, false).getDouble();
+				node.curCosts[c]=node.curCostExprs[c].evaluate(0, false);
 			}
 		}
 
@@ -85,7 +85,7 @@ public class TreeCohort{
 		//Update payoffs
 		if(node.type==2){ //terminal node
 			for(int c=0; c<numDim; c++){
-				node.curPayoffs[c]=Interpreter.evaluateTokens(node.curPayoffTokens[c], 0, false).getDouble();
+				node.curPayoffs[c]=node.curPayoffExprs[c].evaluate(0, false);
 			}
 		}
 
@@ -97,12 +97,12 @@ public class TreeCohort{
 			int indexCompProb=-1;
 			for(int c=0; c<node.numChildren; c++){
 				TreeNode curChild=node.children[c];
-				if(curChild.prob.matches("C") || curChild.prob.matches("c")){ //Complementary
+				if(curChild.prob.equals("C") || curChild.prob.equals("c")){ //Complementary
 					curChild.curProb[0]=-1;
 					indexCompProb=c;
 				}
 				else{ //Evaluate text
-					curChild.curProb[0]=Interpreter.evaluateTokens(curChild.curProbTokens, 0, false).getDouble();
+					curChild.curProb[0]=curChild.curProbExpr.evaluate(0, false);
 					sumProb+=curChild.curProb[0];
 				}
 			}
@@ -21,8 +21,11 @@ package tree;
 import javax.swing.ProgressMonitor;
 import base.AmuaModel;
 import base.MicroStats;
+import base.PersonStore;
 import main.MersenneTwisterFast;
+import main.StreamRNG;
 import main.Variable;
+import main.WorkerPool;
 import math.Interpreter;
 import math.MathUtils;
 import math.Numeric;
@@ -32,13 +35,15 @@ public class TreeMonteCarlo{
 	TreeNode root;
 	DecisionTree tree;
 	int numPeople, numStrat;
-	TreePerson people[];
+	PersonStore people;
 	int numDim;
 	int numVars;
 	Variable variables[];
 	Numeric origVariableVals[];
 	AmuaModel myModel;
 	//MersenneTwisterFast generator;
+	/**Per-person RNG streams (null if not used)*/
+	StreamRNG streams[];
 	long startTime, endTime;
 	ProgressMonitor progress;
 	double maxProg;
@@ -60,7 +65,7 @@ public class TreeMonteCarlo{
 		
 		//Individuals
 		numPeople=myModel.cohortSize;
-		progress=new ProgressMonitor(myModel.mainForm.frmMain, "Monte Carlo simulation", "", 0, 100);
+		progress=new ProgressMonitor(myModel.getFrame(), "Monte Carlo simulation", "", 0, 100);
 		
 		numDim=root.numDimensions;
 		numVars=myModel.variables.size();
@@ -95,24 +100,37 @@ public class TreeMonteCarlo{
 		
 		//multi-thread
 		final int numThreads=myModel.numThreads;
+		//with per-person streams, totals are kept per block of people so they don't depend on the number of threads
+		final WorkerPool.Blocks blocks=new WorkerPool.Blocks(numPeople, numThreads, myModel.rngStreams);
 		for(int s=0; s<tree.nodes.size(); s++){
 			TreeNode curNode=tree.nodes.get(s);
-			curNode.setThreads(numThreads,numDim,numSubgroups);
+			curNode.setThreads(numThreads,blocks.getNumBlocks(),numDim,numSubgroups);
 		}
 		
 		//Initialize random number generator
 		myModel.generatorVar=new MersenneTwisterFast[numThreads];
 		myModel.curGenerator=new MersenneTwisterFast[numThreads];
+		streams=null;
+		if(myModel.rngStreams){streams=new StreamRNG[numThreads];}
+		long streamSeed=System.currentTimeMillis();
+		if(myModel.CRN){streamSeed=myModel.crnSeed;}
 		for(int n=0; n<numThreads; n++){
-			myModel.generatorVar[n]=new MersenneTwisterFast(System.currentTimeMillis()+n); //offset so that not all get the same time in millis
-			if(myModel.CRN){ //seend RNG
-				myModel.generatorVar[n].setSeed(myModel.crnSeed+555+n); //initialization seed
+			if(myModel.rngStreams){ //same seed for all threads, stream is selected for each person
+				streams[n]=new StreamRNG(streamSeed);
+				myModel.generatorVar[n]=streams[n];
+			}
+			else{
+				myModel.generatorVar[n]=new MersenneTwisterFast(System.currentTimeMillis()+n); //offset so that not all get the same time in millis
+				if(myModel.CRN){ //seend RNG
+					myModel.generatorVar[n].setSeed(myModel.crnSeed+555+n); //initialization seed
+				}
 			}
 			myModel.curGenerator[n]=myModel.generatorVar[n];
 		}
 
 		//initialize probs
 		for(int n=0; n<numThreads; n++){
+			setStream(n,-1,-1);
 			evalChildProbs(root,true,n);
 		}
 		
@@ -126,55 +144,51 @@ public class TreeMonteCarlo{
 		}
 		
 		//initialize people
-		people=new TreePerson[numPeople];
+		people=new PersonStore(numPeople, variables, origVariableVals, numSubgroups, numThreads);
 		
-		final int blockSize= numPeople/numThreads;
 		Thread[] threads = new Thread[numThreads];
+		blocks.reset();
 		for(int n=0; n<numThreads; n++){
 			final int finalN = n;
 			threads[n] = new Thread() {
 				public void run(){
 					try{
 						int threadProg=0;
-						final int beginIndex = finalN * blockSize;
-						final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
-						for(int p=beginIndex; p<endIndex; p++){
-							people[p]=new TreePerson();
-							people[p].initVariableVals=new Numeric[numVars];
-							people[p].variableVals=new Numeric[numVars];
-							people[p].costs=new double[numDim];
-							people[p].payoffs=new double[numDim];
-							//initialize independent variables
-							myModel.unlockVarsAll(finalN);
-							for(int v=0; v<numVars; v++){
-								if(variables[v].independent){
-									variables[v].locked[finalN]=true;
-									people[p].initVariableVals[v]=Interpreter.evaluateTokens(variables[v].parsedTokens, finalN, true);
-									variables[v].value[finalN]=people[p].initVariableVals[v];
+						for(int b=blocks.first(finalN); b!=-1 && cancelled==false; b=blocks.next(finalN)){
+							final int beginIndex = blocks.getBegin(b);
+							final int endIndex = blocks.getEnd(b);
+							for(int p=beginIndex; p<endIndex; p++){
+								setStream(finalN,p,-1);
+								//initialize independent variables
+								myModel.unlockVarsAll(finalN);
+								for(int v=0; v<numVars; v++){
+									if(variables[v].independent){
+										variables[v].locked[finalN]=true;
+										variables[v].value[finalN]=Interpreter.evaluateTokens(variables[v].parsedTokens, finalN, true).copy(); //value may be updated in place
+									}
 								}
-							}
-							//Update any dependent variables
-							for(int v=0; v<numVars; v++){
-								if(variables[v].independent==true){
-									variables[v].updateDependents(myModel,finalN);
-									people[p].initVariableVals[v]=variables[v].value[finalN];
+								//Update any dependent variables
+								for(int v=0; v<numVars; v++){
+									if(variables[v].independent==true){
+										variables[v].updateDependents(myModel,finalN);
+									}
 								}
-							}
+								people.setInitValues(p, finalN);
 
-							//get subgroup
-							if(myModel.reportSubgroups){
-								people[p].inSubgroup=new boolean[numSubgroups];
-								for(int g=0; g<numSubgroups; g++){
-									Numeric curVal=Interpreter.evaluateTokens(myModel.subgroupTokens[g], finalN, false);
-									people[p].inSubgroup[g]=curVal.getBool();
+								//get subgroup
+								if(myModel.reportSubgroups){
+									for(int g=0; g<numSubgroups; g++){
+										Numeric curVal=Interpreter.evaluateTokens(myModel.subgroupTokens[g], finalN, false);
+										if(curVal.getBool()){people.setInSubgroup(g, p);}
+									}
 								}
-							}
 							
-							if(finalN==0 && display){ //update progress from thread 0
-								threadProg++;
-								updateProgress(threadProg*numThreads);
-								if(progress.isCanceled()){
-									cancelled=true;	p=numPeople;
+								if(finalN==0 && display){ //update progress from thread 0
+									threadProg++;
+									updateProgress(threadProg*numThreads);
+									if(progress.isCanceled()){
+										cancelled=true;	p=numPeople;
+									}
 								}
 							}
 						}
@@ -200,24 +214,16 @@ public class TreeMonteCarlo{
 			throw threadError;
 		}
 		
-		//Get subgroup indices
+		//Get subgroup sizes
 		subgroupSize=new int[numSubgroups];
-		int subgroupCounters[]=new int[numSubgroups];
-		for(int p=0; p<numPeople; p++){
-			people[p].subgroupIndex=new int[numSubgroups];
-			for(int g=0; g<numSubgroups; g++){
-				if(people[p].inSubgroup[g]){
-					subgroupSize[g]++;
-					people[p].subgroupIndex[g]=subgroupCounters[g];
-					subgroupCounters[g]++;
-				}
-			}
+		for(int g=0; g<numSubgroups; g++){
+			subgroupSize[g]=people.getSubgroupSize(g);
 		}
 		
 		//Simulate each strategy
 		for(int s=0; s<numStrat; s++){
 			for(int n=0; n<numThreads; n++){
-				if(myModel.CRN){ //Common random numbers
+				if(myModel.CRN && streams==null){ //Common random numbers
 					myModel.generatorVar[n].setSeed(myModel.crnSeed+n);
 				}
 				myModel.curGenerator[n]=myModel.generatorVar[n];
@@ -227,10 +233,10 @@ public class TreeMonteCarlo{
 			
 			//Initialize individual summaries
 			if(myModel.displayIndResults){
-				microStats[s]=new MicroStats(myModel, numPeople);
+				microStats[s]=new MicroStats(myModel, numPeople, !display, blocks.getNumBlocks()); //keep individuals only for displayed runs
 				if(myModel.reportSubgroups){
 					for(int g=0; g<numSubgroups; g++){
-						microStatsGroup[g][s]=new MicroStats(myModel,subgroupSize[g]);
+						microStatsGroup[g][s]=new MicroStats(myModel,subgroupSize[g],!display,blocks.getNumBlocks());
 					}
 				}
 			}
@@ -238,53 +244,69 @@ public class TreeMonteCarlo{
 			//Simulate people - multithread
 			final int finalS=s;
 			final TreeNode strategy=root.children[s];
+			blocks.reset();
 			for(int n=0; n<numThreads; n++){
 				final int finalN = n;
 				threads[n] = new Thread() {
 					public void run(){
 						try{
-							final int beginIndex = finalN * blockSize;
-							final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
 							int threadProg=0;
-							for(int p=beginIndex; p<endIndex; p++){
-								TreePerson curPerson=people[p];
-								for(int v=0; v<numVars; v++){ //get person-specific variables
-									curPerson.variableVals[v]=curPerson.initVariableVals[v].copy();
-									variables[v].value[finalN]=curPerson.variableVals[v];
-								}
-								for(int d=0; d<numDim; d++){ //reset outcomes
-									curPerson.costs[d]=0; 
-									curPerson.payoffs[d]=0;
+							TreePerson curPerson=new TreePerson(numDim,numSubgroups); //re-used for each person
+							double curOutcomes[]=new double[numDim], curVars[]=new double[numVars];
+							int subgroupIndex[]=new int[numSubgroups]; //cur index in each subgroup
+							for(int b=blocks.first(finalN); b!=-1 && cancelled==false; b=blocks.next(finalN)){
+								final int beginIndex = blocks.getBegin(b);
+								final int endIndex = blocks.getEnd(b);
+								for(int g=0; g<numSubgroups; g++){
+									subgroupIndex[g]=people.getSubgroupIndex(g, beginIndex);
 								}
+								for(int p=beginIndex; p<endIndex; p++){
+									setStream(finalN,p,finalS);
+									people.loadInitValues(p, finalN); //get person-specific variables
+									for(int g=0; g<numSubgroups; g++){
+										curPerson.inSubgroup[g]=people.inSubgroup(g, p);
+									}
+									for(int d=0; d<numDim; d++){ //reset outcomes
+										curPerson.costs[d]=0; 
+										curPerson.payoffs[d]=0;
+									}
 
-								//traverse tree
-								traverseNode(strategy,curPerson,finalN);
+									//traverse tree
+									traverseNode(strategy,curPerson,b,finalN);
 
-								//record overall individual results
-								if(myModel.displayIndResults){
-									for(int d=0; d<numDim; d++){microStats[finalS].outcomes[d][p]=curPerson.costs[d]+curPerson.payoffs[d];}
-									for(int v=0; v<numVars; v++){microStats[finalS].variables[v][p]=curPerson.variableVals[v].getValue();}
+									//record overall individual results
+									if(myModel.displayIndResults){
+										for(int d=0; d<numDim; d++){
+											curOutcomes[d]=curPerson.costs[d]+curPerson.payoffs[d];
+											microStats[finalS].setOutcome(b, d, p, curOutcomes[d]);
+										}
+										for(int v=0; v<numVars; v++){
+											curVars[v]=variables[v].value[finalN].getValue();
+											microStats[finalS].setVariable(b, v, p, curVars[v]);
+										}
 
-									//record subgroup results
-									if(myModel.reportSubgroups){
-										for(int g=0; g<numSubgroups; g++){
-											if(curPerson.inSubgroup[g]){
-												int z=curPerson.subgroupIndex[g]; //cur index in subgroup
-												for(int d=0; d<numDim; d++){microStatsGroup[g][finalS].outcomes[d][z]=microStats[finalS].outcomes[d][p];}
-												for(int v=0; v<numVars; v++){microStatsGroup[g][finalS].variables[v][z]=microStats[finalS].variables[v][p];}
+										//record subgroup results
+										if(myModel.reportSubgroups){
+											for(int g=0; g<numSubgroups; g++){
+												if(curPerson.inSubgroup[g]){
+													int z=subgroupIndex[g]; //cur index in subgroup
+													for(int d=0; d<numDim; d++){microStatsGroup[g][finalS].setOutcome(b, d, z, curOutcomes[d]);}
+													for(int v=0; v<numVars; v++){microStatsGroup[g][finalS].setVariable(b, v, z, curVars[v]);}
+													subgroupIndex[g]++;
+												}
 											}
 										}
 									}
-								}
 
-								if(finalN==0 && display){ //update progress from thread 0
-									threadProg++;
-									updateProgress(numPeople+(finalS*numPeople)+(threadProg*numThreads));
-									if(progress.isCanceled()){
-										cancelled=true;	p=numPeople;
+									if(finalN==0 && display){ //update progress from thread 0
+										threadProg++;
+										updateProgress(numPeople+(finalS*numPeople)+(threadProg*numThreads));
+										if(progress.isCanceled()){
+											cancelled=true;	p=numPeople;
+										}
 									}
-								}
-							} //end simulate loop
+								} //end simulate loop
+							}
 						} catch(Exception e){
 							threadError=e;
 						}
@@ -356,6 +378,17 @@ public class TreeMonteCarlo{
 	}
 	
 	
+	/**
+	 * Selects the RNG stream for this thread, if per-person streams are used
+	 * @param p Person index, -1 for draws shared by all people
+	 * @param s Strategy index, -1 for initializing people
+	 */
+	private void setStream(int curThread, int p, int s){
+		if(streams!=null){
+			streams[curThread].setStream(p, s+1);
+		}
+	}
+	
 	private void updateProgress(int curProg){
 		progress.setProgress(curProg);
 		//Update progress
@@ -377,10 +410,13 @@ public class TreeMonteCarlo{
 	 * @throws Exception 
 	 */
 	
-	private void traverseNode(TreeNode node, TreePerson curPerson, int curThread) throws Exception{
-		node.nTotalDenom[curThread]++;
+	/**
+	 * @param b Block of the person (index of the partial totals)
+	 */
+	private void traverseNode(TreeNode node, TreePerson curPerson, int b, int curThread) throws Exception{
+		node.nTotalDenom[b]++;
 		for(int g=0; g<numSubgroups; g++){
-			if(curPerson.inSubgroup[g]){node.nTotalDenomGroup[curThread][g]++;}
+			if(curPerson.inSubgroup[g]){node.nTotalDenomGroup[b][g]++;}
 		}
 				
 		//Update variables
@@ -400,18 +436,18 @@ public class TreeMonteCarlo{
 		if(node.hasCost){
 			for(int d=0; d<numDim; d++){
 				if(node.costHasVar[d]==false){ //use pre-calculated cost
-					node.nTotalCosts[curThread][d]+=node.curCosts[d];
+					node.nTotalCosts[b][d]+=node.curCosts[d];
 					curPerson.costs[d]+=node.curCosts[d];
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){node.nTotalCostsGroup[curThread][g][d]+=node.curCosts[d];}
+						if(curPerson.inSubgroup[g]){node.nTotalCostsGroup[b][g][d]+=node.curCosts[d];}
 					}
 				}
 				else{ //has variable, re-evaluate cost
-					double curCost=Interpreter.evaluateTokens(node.curCostTokens[d], curThread, false).getDouble();
-					node.nTotalCosts[curThread][d]+=curCost;
+					double curCost=node.curCostExprs[d].evaluate(curThread, false);
+					node.nTotalCosts[b][d]+=curCost;
 					curPerson.costs[d]+=curCost;
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){node.nTotalCostsGroup[curThread][g][d]+=curCost;}
+						if(curPerson.inSubgroup[g]){node.nTotalCostsGroup[b][g][d]+=curCost;}
 					}
 				}
 			}
@@ -421,31 +457,30 @@ public class TreeMonteCarlo{
 		if(node.type==2){ //terminal node
 			for(int d=0; d<numDim; d++){
 				if(node.payoffHasVar[d]==false){ //use pre-calculated payoff
-					node.nTotalPayoffs[curThread][d]+=node.curPayoffs[d];
+					node.nTotalPayoffs[b][d]+=node.curPayoffs[d];
 					curPerson.payoffs[d]+=node.curPayoffs[d];
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){node.nTotalPayoffsGroup[curThread][g][d]+=node.curPayoffs[d];}
+						if(curPerson.inSubgroup[g]){node.nTotalPayoffsGroup[b][g][d]+=node.curPayoffs[d];}
 					}
 				}
 				else{ //has variable, re-evaluate payoff
-					double curPayoff=Interpreter.evaluateTokens(node.curPayoffTokens[d], curThread, false).getDouble();
-					node.nTotalPayoffs[curThread][d]+=curPayoff;
+					double curPayoff=node.curPayoffExprs[d].evaluate(curThread, false);
+					node.nTotalPayoffs[b][d]+=curPayoff;
 					curPerson.payoffs[d]+=curPayoff;
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){node.nTotalPayoffsGroup[curThread][g][d]+=curPayoff;}
+						if(curPerson.inSubgroup[g]){node.nTotalPayoffsGroup[b][g][d]+=curPayoff;}
 					}
 				}
 			}
 		}
 		else if(node.type==1){ //sim chance node
 			double rand=myModel.generatorVar[curThread].nextDouble();
-			int k=0;
 			if(node.childHasProbVar==true){ //re-evaluate child probs
 				evalChildProbs(node,false,curThread);
 			}
-			while(rand>node.curChildProbs[curThread][k]){k++;}
+			int k=MathUtils.selectIndex(node.curChildProbs[curThread], rand);
 			TreeNode curChild=node.children[k];
-			traverseNode(curChild,curPerson,curThread);
+			traverseNode(curChild,curPerson,b,curThread);
 		}
 		
 	}
@@ -500,12 +535,12 @@ public class TreeMonteCarlo{
 			int indexCompProb=-1;
 			for(int c=0; c<node.numChildren; c++){
 				TreeNode curChild=node.children[c];
-				if(curChild.prob.matches("C") || curChild.prob.matches("c")){ //Complementary
+				if(curChild.prob.equals("C") || curChild.prob.equals("c")){ //Complementary
 					curChild.curProb[curThread]=-1;
 					indexCompProb=c;
 				}
 				else{ //Evaluate text
-					curChild.curProb[curThread]=Interpreter.evaluateTokens(curChild.curProbTokens, curThread, false).getDouble();
+					curChild.curProb[curThread]=curChild.curProbExpr.evaluate(curThread, false);
 					sumProb+=curChild.curProb[curThread];
 				}
 			}
@@ -40,6 +40,7 @@ import javax.xml.bind.annotation.XmlTransient;
 import base.ModelNode;
 import main.VariableUpdate;
 import markov.MarkovNode;
+import math.CompiledExpression;
 import math.MathUtils;
 import math.Token;
 
@@ -53,6 +54,8 @@ public class TreeNode extends ModelNode{
 	@XmlTransient TreeNode children[];
 	@XmlTransient Token curProbTokens[]; //[token]
 	@XmlTransient Token curCostTokens[][], curPayoffTokens[][]; //[dim][token]
+	@XmlTransient CompiledExpression curProbExpr; //compiled from tokens
+	@XmlTransient CompiledExpression curCostExprs[], curPayoffExprs[]; //[dim]
 	@XmlTransient double curProb[]; //[thread] //Current probability used to run the model - not saved
 	@XmlTransient double curCosts[], curPayoffs[];
 	@XmlTransient public double expectedValues[], expectedValuesGroup[][];
@@ -65,7 +68,7 @@ public class TreeNode extends ModelNode{
 	@XmlTransient double totalDenom, totalCosts[], totalPayoffs[], totalNet[];
 	@XmlTransient double totalDenomGroup[],	totalCostsGroup[][], totalPayoffsGroup[][], totalNetGroup[][]; //subgroups
 	//multi-threaded
-	@XmlTransient int numThreads, numDim, numSubgroups;
+	@XmlTransient int numThreads, numPartials, numDim, numSubgroups;
 	@XmlTransient double nTotalDenom[], nTotalCosts[][], nTotalPayoffs[][];
 	@XmlTransient double nTotalDenomGroup[][], nTotalCostsGroup[][][], nTotalPayoffsGroup[][][];
 	
@@ -704,18 +707,22 @@ public class TreeNode extends ModelNode{
 		}
 	}
 	
-	public void setThreads(int numThreads, int numDim, int numSubgroups){
+	/**
+	 * @param numPartials Number of partial totals (e.g. one per block of people), summed in index order by sumThreads
+	 */
+	public void setThreads(int numThreads, int numPartials, int numDim, int numSubgroups){
 		this.numThreads=numThreads;
+		this.numPartials=numPartials;
 		this.numDim=numDim;
 		this.numSubgroups=numSubgroups;
 		curProb=new double[numThreads];
 		if(type==1){curChildProbs=new double[numThreads][numChildren];}
-		nTotalDenom=new double[numThreads];
-		nTotalDenomGroup=new double[numThreads][numSubgroups];
-		nTotalCosts=new double[numThreads][numDim];
-		nTotalCostsGroup=new double[numThreads][numSubgroups][numDim];
-		nTotalPayoffs=new double[numThreads][numDim];
-		nTotalPayoffsGroup=new double[numThreads][numSubgroups][numDim];
+		nTotalDenom=new double[numPartials];
+		nTotalDenomGroup=new double[numPartials][numSubgroups];
+		nTotalCosts=new double[numPartials][numDim];
+		nTotalCostsGroup=new double[numPartials][numSubgroups][numDim];
+		nTotalPayoffs=new double[numPartials][numDim];
+		nTotalPayoffsGroup=new double[numPartials][numSubgroups][numDim];
 	}
 	
 	public void sumThreads(){
@@ -725,7 +732,7 @@ public class TreeNode extends ModelNode{
 		totalCostsGroup=new double[numSubgroups][numDim];
 		totalPayoffs=new double[numDim];
 		totalPayoffsGroup=new double[numSubgroups][numDim];
-		for(int n=0; n<numThreads; n++){
+		for(int n=0; n<numPartials; n++){
 			totalDenom+=nTotalDenom[n];
 			for(int d=0; d<numDim; d++){
 				totalCosts[d]+=nTotalCosts[n][d];
@@ -18,19 +18,19 @@
 
 package tree;
 
-import math.Numeric;
-
+/**
+ * Outcomes of the person currently being simulated on a thread (re-used for each person, see PersonStore)
+ */
 public class TreePerson{
-	Numeric variableVals[];
 	double costs[];
 	double payoffs[];
 	boolean inSubgroup[];
-	int subgroupIndex[];
-	Numeric initVariableVals[];
 	
 	//Constructor
-	public TreePerson(){
-		
+	public TreePerson(int numDim, int numSubgroups){
+		costs=new double[numDim];
+		payoffs=new double[numDim];
+		inSubgroup=new boolean[numSubgroups];
 	}
 	
 	
@@ -0,0 +1,102 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks regression EVPPI against cases with known analytic values.  Parameters are independent standard normals
+ * and there are 2 strategies, with the incremental net benefit (INB) of the second given below.
+ */
+public class EVPPIEngineTest{
+	static final int numIterations=2000;
+	
+	/**
+	 * @return Draws [Parameter][Iteration]
+	 */
+	private static double[][] sampleNormals(int numParams, long seed){
+		Random rand=new Random(seed);
+		double x[][]=new double[numParams][numIterations];
+		for(int n=0; n<numIterations; n++){
+			for(int p=0; p<numParams; p++){x[p][n]=rand.nextGaussian();}
+		}
+		return(x);
+	}
+	
+	private static EVPPIEngine getEngine(double x[][], double inb[]){
+		double outcomes[][]=new double[2][];
+		outcomes[0]=new double[inb.length];
+		outcomes[1]=inb;
+		return(new EVPPIEngine(x, outcomes, 1));
+	}
+	
+	/**
+	 * INB = x0 + x1.  EVPPI(x0) = E[max(0,x0)] = 1/sqrt(2*pi)
+	 */
+	@Test
+	public void testSingleParameter(){
+		double x[][]=sampleNormals(2, 1);
+		double inb[]=new double[numIterations];
+		for(int n=0; n<numIterations; n++){inb[n]=x[0][n]+x[1][n];}
+		EVPPIEngine engine=getEngine(x, inb);
+		assertEquals("EVPPI(x0)", 1.0/Math.sqrt(2*Math.PI), engine.getEVPPI(new int[]{0}), 0.03);
+	}
+	
+	/**
+	 * INB = x0*x1 + x2.  Each parameter alone has EVPPI 0, but EVPPI(x0,x1) = E[max(0,x0*x1)] = E|x0*x1|/2 = 1/pi.
+	 * An additive fit would give 0 for the group.
+	 */
+	@Test
+	public void testInteraction(){
+		double x[][]=sampleNormals(3, 2);
+		double inb[]=new double[numIterations];
+		for(int n=0; n<numIterations; n++){inb[n]=x[0][n]*x[1][n]+x[2][n];}
+		EVPPIEngine engine=getEngine(x, inb);
+		assertEquals("EVPPI(x0)", 0, engine.getEVPPI(new int[]{0}), 0.03);
+		assertEquals("EVPPI(x0,x1)", 1.0/Math.PI, engine.getEVPPI(new int[]{0,1}), 0.04);
+	}
+	
+	/**
+	 * INB = x0*x1*x2 + x3.  EVPPI(x0,x1,x2) = E|x0*x1*x2|/2 = (2/pi)^1.5/2
+	 */
+	@Test
+	public void testThreeWayInteraction(){
+		double x[][]=sampleNormals(4, 3);
+		double inb[]=new double[numIterations];
+		for(int n=0; n<numIterations; n++){inb[n]=x[0][n]*x[1][n]*x[2][n]+x[3][n];}
+		EVPPIEngine engine=getEngine(x, inb);
+		assertEquals("EVPPI(x0,x1,x2)", Math.pow(2/Math.PI, 1.5)/2.0, engine.getEVPPI(new int[]{0,1,2}), 0.05);
+	}
+	
+	/**
+	 * INB = x0 + x1 + x2.  The group holding every parameter has EVPPI = EVPI = E[max(0,Z)], Z~N(0,3), = sqrt(3/(2*pi))
+	 */
+	@Test
+	public void testAllParameters(){
+		double x[][]=sampleNormals(3, 4);
+		double inb[]=new double[numIterations];
+		for(int n=0; n<numIterations; n++){inb[n]=x[0][n]+x[1][n]+x[2][n];}
+		EVPPIEngine engine=getEngine(x, inb);
+		assertEquals("EVPPI(x0,x1,x2)", Math.sqrt(3/(2*Math.PI)), engine.getEVPPI(new int[]{0,1,2}), 0.05);
+	}
+}
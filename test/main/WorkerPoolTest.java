@@ -0,0 +1,101 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import base.AmuaModel;
+
+public class WorkerPoolTest{
+	
+	/**
+	 * Every item is run exactly once per call, with fixed blocks and with work-stealing
+	 */
+	@Test
+	public void testBlocksCoverItems() throws Exception{
+		int numItems[]=new int[]{0, 5, 1000, 123457};
+		for(int steal=0; steal<2; steal++){
+			for(int numThreads=1; numThreads<=8; numThreads*=2){
+				for(int i=0; i<numItems.length; i++){
+					final WorkerPool pool=new WorkerPool(numThreads);
+					final WorkerPool.Blocks blocks=new WorkerPool.Blocks(numItems[i], numThreads, steal==1);
+					final int count[]=new int[numItems[i]];
+					for(int r=0; r<3; r++){
+						pool.run(new WorkerPool.Task(){
+							public void run(int curThread){
+								for(int b=blocks.first(curThread); b!=-1; b=blocks.next(curThread)){
+									for(int p=blocks.getBegin(b); p<blocks.getEnd(b); p++){count[p]++;}
+								}
+							}
+						}, blocks);
+					}
+					pool.shutdown();
+					for(int p=0; p<numItems[i]; p++){
+						assertEquals("Item "+p, 3, count[p]);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A model keeps its pool between runs, so consecutive runs use the same worker threads
+	 */
+	@Test
+	public void testPoolReusedAcrossRuns() throws Exception{
+		AmuaModel model=new AmuaModel();
+		final Thread threads[][]=new Thread[2][4];
+		WorkerPool pools[]=new WorkerPool[2];
+		for(int r=0; r<2; r++){
+			final int curRun=r;
+			pools[r]=model.getWorkerPool(4);
+			pools[r].run(new WorkerPool.Task(){
+				public void run(int curThread){
+					threads[curRun][curThread]=Thread.currentThread();
+				}
+			});
+		}
+		model.releaseWorkerPool();
+		assertSame(pools[0], pools[1]);
+		for(int n=0; n<4; n++){
+			assertNotSame(Thread.currentThread(), threads[0][n]);
+			assertSame("Worker "+n, threads[0][n], threads[1][n]);
+		}
+	}
+	
+	/**
+	 * Worker threads have exited when shutdown returns
+	 */
+	@Test
+	public void testShutdown() throws Exception{
+		WorkerPool pool=new WorkerPool(4);
+		pool.run(new WorkerPool.Task(){
+			public void run(int curThread){}
+		});
+		pool.shutdown();
+		for(int n=0; n<4; n++){
+			assertFalse("Worker "+n+" still running", pool.workers[n].isAlive());
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package markov;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import base.AmuaModel;
+import base.RunReport;
+import main.ErrorLog;
+
+/**
+ * Checks that simulating a cycle doesn't allocate: apart from the amortized growth of the trace columns,
+ * the bytes allocated by a run can't grow with the number of cycles.
+ * Expressions use parameters, variables, t, compiled functions, distributions (mean and sampled) and variable updates.
+ */
+public class MarkovAllocationTest{
+	static final int SHORT=100, LONG=1100; //horizons
+	static final long SLACK=8192; //bytes, far less than 1 object per cycle
+	
+	static final String MODEL=
+		"<Model><name>Allocation</name><type>1</type>"+
+		"<DimInfo><dimNames>Cost</dimNames><dimSymbols>$</dimSymbols><decimals>2</decimals></DimInfo>"+
+		"<Parameter><name>pSick</name><expression>0.1</expression></Parameter>"+
+		"<Parameter><name>cSick</name><expression>Norm(100,10,~)</expression></Parameter>"+
+		"<Parameter><name>horizon</name><expression>10</expression></Parameter>"+
+		"<Variable><name>age</name><expression>40+t</expression></Variable>"+
+		"<Variable><name>sick</name><expression>0</expression></Variable>"+
+		"<Variable><name>noise</name><expression>0</expression></Variable>"+
+		"<cohortSize>100</cohortSize><CRN>true</CRN><crnSeed>1</crnSeed><numThreads>1</numThreads>"+
+		"<markov><maxCycles>2000</maxCycles>"+
+		"<Node><type>0</type><name>Root</name><prob>1</prob><childIndices>1</childIndices></Node>"+
+		"<Node><type>1</type><name>Chain</name><parentType>0</parentType><prob>1</prob><childIndices>2</childIndices><childIndices>3</childIndices>"+
+			"<cost>0</cost><stateNames>Well</stateNames><stateNames>Sick</stateNames><terminationCondition>t==horizon</terminationCondition></Node>"+
+		"<Node><type>2</type><name>Well</name><parentType>1</parentType><prob>C</prob><rewards>0</rewards><childIndices>4</childIndices><childIndices>5</childIndices></Node>"+
+		"<Node><type>2</type><name>Sick</name><parentType>1</parentType><prob>0</prob><rewards>cSick*exp(-0.01*age)</rewards><childIndices>6</childIndices></Node>"+
+		"<Node><type>4</type><name>GetSick</name><parentType>2</parentType><prob>pSick</prob><transition>Sick</transition>"+
+			"<hasCost>true</hasCost><cost>Norm(50,5,~)</cost><hasVarUpdates>true</hasVarUpdates><varUpdates>sick++;noise=Norm(0,1,~)</varUpdates></Node>"+
+		"<Node><type>4</type><name>StayWell</name><parentType>2</parentType><prob>C</prob><transition>Well</transition><cost>0</cost></Node>"+
+		"<Node><type>4</type><name>StaySick</name><parentType>2</parentType><prob>1</prob><transition>Sick</transition>"+
+			"<hasCost>true</hasCost><cost>max(cSick,age)</cost></Node>"+
+		"</markov></Model>";
+	
+	/**
+	 * Cohort simulation, including traverseNode
+	 */
+	@Test
+	public void testCohortCycles() throws Exception{
+		AmuaModel model=openModel(0);
+		for(int i=0; i<3; i++){cohortBytes(model,LONG);} //warm up
+		long bytesShort=cohortBytes(model,SHORT);
+		long bytesLong=cohortBytes(model,LONG);
+		assertTrue("Cohort allocated "+(bytesLong-bytesShort)+" bytes over "+(LONG-SHORT)+" cycles", bytesLong-bytesShort<SLACK);
+	}
+	
+	/**
+	 * Microsimulation (person-level traverseNode and sampled variable updates)
+	 */
+	@Test
+	public void testMicrosimCycles() throws Exception{
+		AmuaModel model=openModel(1);
+		for(int i=0; i<3; i++){microsimBytes(model,LONG);} //warm up
+		long bytesShort=microsimBytes(model,SHORT);
+		long bytesLong=microsimBytes(model,LONG);
+		assertTrue("Microsimulation allocated "+(bytesLong-bytesShort)+" bytes over "+(LONG-SHORT)+" cycles", bytesLong-bytesShort<SLACK);
+	}
+	
+	private AmuaModel openModel(int simType) throws Exception{
+		Assume.assumeTrue(getBean().isThreadAllocatedMemorySupported());
+		getBean().setThreadAllocatedMemoryEnabled(true);
+		JAXBContext context=JAXBContext.newInstance(AmuaModel.class);
+		Unmarshaller un=context.createUnmarshaller();
+		AmuaModel model=(AmuaModel) un.unmarshal(new StringReader(MODEL));
+		model.simType=simType;
+		model.openModelHeadless(new ErrorLog("test"));
+		return(model);
+	}
+	
+	/**
+	 * Parses the model with the given horizon and locks the parameters for the run
+	 */
+	private void setHorizon(AmuaModel model, int horizon) throws Exception{
+		model.unlockParams();
+		model.parameters.get(2).expression=horizon+"";
+		ArrayList<String> errors=model.parseModel();
+		assertEquals(errors.toString(), 0, errors.size());
+		model.evaluateParameters();
+	}
+	
+	private long cohortBytes(AmuaModel model, int horizon) throws Exception{
+		setHorizon(model,horizon);
+		MarkovCohort cohort=new MarkovCohort(model.markov.chains.get(0),0);
+		long start=getAllocatedBytes();
+		cohort.simulate();
+		long bytes=getAllocatedBytes()-start;
+		assertEquals(horizon+1, cohort.trace.cycles.size());
+		assertEquals(horizon+1, cohort.trace.cycles.values.length); //trimmed
+		return(bytes-traceBytes(cohort.trace));
+	}
+	
+	private long microsimBytes(AmuaModel model, int horizon) throws Exception{
+		setHorizon(model,horizon);
+		MarkovMonteCarlo microsim=new MarkovMonteCarlo(model.markov,new RunReport(model));
+		long start=getAllocatedBytes();
+		microsim.simulate(false);
+		long bytes=getAllocatedBytes()-start;
+		assertEquals(horizon+1, microsim.trace.cycles.size());
+		assertEquals(horizon+1, microsim.trace.cycles.values.length); //trimmed
+		return(bytes-traceBytes(microsim.trace));
+	}
+	
+	/**
+	 * @return Bytes allocated growing and trimming the filled trace columns from their initial capacity
+	 */
+	private static long traceBytes(MarkovTrace trace){
+		int rows=trace.getNumRows();
+		long bytes=0;
+		int capacity=new TraceColumn().values.length;
+		while(capacity<rows){
+			capacity*=2;
+			bytes+=arrayBytes(capacity);
+		}
+		if(rows<capacity){bytes+=arrayBytes(rows);}
+		return(bytes*trace.getNumCols());
+	}
+	
+	private static long arrayBytes(int length){
+		return(16+8L*length); //header + doubles
+	}
+	
+	private static com.sun.management.ThreadMXBean getBean(){
+		return((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean());
+	}
+	
+	private static long getAllocatedBytes(){
+		return(getBean().getThreadAllocatedBytes(Thread.currentThread().getId()));
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package markov;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+
+import org.junit.Test;
+
+import base.AmuaModel;
+import main.ErrorLog;
+
+/**
+ * Chains run in matrix form give the same trace as the tree traversal in MarkovCohort, bit for bit.
+ * The strategies share their Sick and Dead subtrees, so those values are evaluated once for both.
+ */
+public class MarkovMatrixTest{
+	static final String MODEL=
+		"<Model><name>Matrix</name><type>1</type>"+
+		"<DimInfo><dimNames>Cost</dimNames><dimNames>QALYs</dimNames><dimSymbols>$</dimSymbols><dimSymbols>Q</dimSymbols><decimals>2</decimals><decimals>4</decimals></DimInfo>"+
+		"<Parameter><name>pSick</name><expression>0.07</expression></Parameter>"+
+		"<Parameter><name>pDie0</name><expression>0.013</expression></Parameter>"+
+		"<Variable><name>age</name><expression>40+t</expression></Variable>"+
+		"<Variable><name>pDie</name><expression>pDie0*exp(0.09*(age-40))</expression></Variable>"+
+		"<cohortSize>1000</cohortSize><numThreads>1</numThreads>"+
+		"<markov><maxCycles>100</maxCycles><halfCycleCorrection>true</halfCycleCorrection>"+
+		"<discountRewards>true</discountRewards><discountRates>3</discountRates><discountRates>1.5</discountRates>"+
+		"<Node><type>0</type><name>Root</name><prob>1</prob><childIndices>1</childIndices><childIndices>12</childIndices></Node>"+
+		chain("Usual care",2,5,"pSick")+
+		chain("Treatment",13,16,"pSick*0.6")+
+		"</markov></Model>";
+	
+	/**
+	 * @param first Index of the chain's first state
+	 * @param firstBranch Index of the chain's first branch node
+	 */
+	private static String chain(String name, int first, int firstBranch, String pSick){
+		int b=firstBranch;
+		return("<Node><type>1</type><name>"+name+"</name><parentType>0</parentType><prob>C</prob>"+
+			"<childIndices>"+first+"</childIndices><childIndices>"+(first+1)+"</childIndices><childIndices>"+(first+2)+"</childIndices>"+
+			"<hasCost>true</hasCost><cost>250</cost><cost>0</cost>"+
+			"<stateNames>Well</stateNames><stateNames>Sick</stateNames><stateNames>Dead</stateNames><terminationCondition>t==30</terminationCondition></Node>"+
+			//states
+			"<Node><type>2</type><name>Well</name><parentType>1</parentType><prob>0.9</prob><rewards>100*exp(-0.01*age)</rewards><rewards>1</rewards>"+
+				"<childIndices>"+b+"</childIndices><childIndices>"+(b+1)+"</childIndices></Node>"+
+			"<Node><type>2</type><name>Sick</name><parentType>1</parentType><prob>C</prob><rewards>2000+10*t</rewards><rewards>0.63</rewards>"+
+				"<childIndices>"+(b+4)+"</childIndices><childIndices>"+(b+5)+"</childIndices></Node>"+
+			"<Node><type>2</type><name>Dead</name><parentType>1</parentType><prob>0</prob><rewards>0</rewards><rewards>0</rewards>"+
+				"<childIndices>"+(b+6)+"</childIndices></Node>"+
+			//Well
+			"<Node><type>3</type><name>Event</name><parentType>2</parentType><prob>"+pSick+"+pDie</prob><cost>0</cost><cost>0</cost>"+
+				"<childIndices>"+(b+2)+"</childIndices><childIndices>"+(b+3)+"</childIndices></Node>"+
+			"<Node><type>4</type><name>StayWell</name><parentType>2</parentType><prob>C</prob><transition>Well</transition><cost>0</cost><cost>0</cost></Node>"+
+			"<Node><type>4</type><name>GetSick</name><parentType>3</parentType><prob>C</prob><transition>Sick</transition>"+
+				"<hasCost>true</hasCost><cost>300+7*t</cost><cost>-0.05</cost></Node>"+
+			"<Node><type>4</type><name>DieWell</name><parentType>3</parentType><prob>pDie/("+pSick+"+pDie)</prob><transition>Dead</transition><cost>0</cost><cost>0</cost></Node>"+
+			//Sick
+			"<Node><type>4</type><name>DieSick</name><parentType>2</parentType><prob>min(1,pDie*3.1)</prob><transition>Dead</transition>"+
+				"<hasCost>true</hasCost><cost>5000/3</cost><cost>0</cost></Node>"+
+			"<Node><type>4</type><name>StaySick</name><parentType>2</parentType><prob>C</prob><transition>Sick</transition><cost>0</cost><cost>0</cost></Node>"+
+			//Dead
+			"<Node><type>4</type><name>StayDead</name><parentType>2</parentType><prob>1</prob><transition>Dead</transition><cost>0</cost><cost>0</cost></Node>");
+	}
+	
+	@Test
+	public void testTraceMatchesCohort() throws Exception{
+		AmuaModel model=openModel();
+		MarkovMatrix.Cache cache=new MarkovMatrix.Cache();
+		for(int c=0; c<2; c++){
+			MarkovNode chain=model.markov.chains.get(c);
+			assertTrue(chain.name, chain.matrixForm);
+			MarkovTrace matrixTrace=simulate(chain,cache);
+			double matrixEVs[]=chain.expectedValuesDis;
+			chain.matrixForm=false; //traverse the tree
+			MarkovTrace cohortTrace=simulate(chain,null);
+			chain.matrixForm=true;
+			
+			assertEquals(31, cohortTrace.getNumRows());
+			assertEquals(cohortTrace.getNumCols(), matrixTrace.getNumCols());
+			for(int col=0; col<cohortTrace.getNumCols(); col++){
+				for(int r=0; r<cohortTrace.getNumRows(); r++){
+					assertEquals(chain.name+" "+cohortTrace.colNames[col]+", row "+r, cohortTrace.cols[col].get(r), matrixTrace.cols[col].get(r), 0);
+				}
+			}
+			for(int d=0; d<2; d++){
+				assertEquals(chain.expectedValuesDis[d], matrixEVs[d], 0);
+			}
+		}
+		assertEquals(4, cache.size()); //Well for each strategy, shared Sick and Dead
+	}
+	
+	private AmuaModel openModel() throws Exception{
+		JAXBContext context=JAXBContext.newInstance(AmuaModel.class);
+		Unmarshaller un=context.createUnmarshaller();
+		AmuaModel model=(AmuaModel) un.unmarshal(new StringReader(MODEL));
+		model.openModelHeadless(new ErrorLog("test"));
+		ArrayList<String> errors=model.parseModel();
+		assertEquals(errors.toString(), 0, errors.size());
+		model.evaluateParameters();
+		return(model);
+	}
+	
+	private MarkovTrace simulate(MarkovNode chain, MarkovMatrix.Cache cache) throws Exception{
+		MarkovCohort cohort=new MarkovCohort(chain,0);
+		cohort.matrixCache=cache;
+		cohort.simulate();
+		assertEquals(cache!=null, cohort.matrix!=null);
+		return(cohort.trace);
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package markov;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+
+import org.junit.Test;
+
+import base.AmuaModel;
+import base.MicroStats;
+import base.RunReport;
+import main.ErrorLog;
+
+/**
+ * With per-person RNG streams, microsimulation results are bit-identical for any number of threads
+ */
+public class MarkovStreamsTest{
+	static final int NUM_PEOPLE=3000; //several blocks
+	
+	@Test
+	public void testSameResultsForAnyThreads() throws Exception{
+		AmuaModel model=openModel();
+		RunReport expected=simulate(model,1);
+		for(int numThreads=2; numThreads<=4; numThreads*=2){
+			RunReport report=simulate(model,numThreads);
+			MarkovTrace trace=report.markovTraces.get(0), expectedTrace=expected.markovTraces.get(0);
+			assertEquals(expectedTrace.getNumRows(), trace.getNumRows());
+			for(int c=0; c<trace.getNumCols(); c++){
+				for(int r=0; r<trace.getNumRows(); r++){
+					assertEquals(numThreads+" threads, column "+c+", row "+r, expectedTrace.cols[c].get(r), trace.cols[c].get(r), 0);
+				}
+			}
+			MicroStats stats=report.microStats.get(0), expectedStats=expected.microStats.get(0);
+			assertEquals(expectedStats.outcomesMean[0], stats.outcomesMean[0], 0);
+			assertEquals(expectedStats.outcomesSD[0], stats.outcomesSD[0], 0);
+			assertEquals(expectedStats.outcomesMed[0], stats.outcomesMed[0], 0);
+		}
+		model.releaseWorkerPool();
+	}
+	
+	private AmuaModel openModel() throws Exception{
+		JAXBContext context=JAXBContext.newInstance(AmuaModel.class);
+		Unmarshaller un=context.createUnmarshaller();
+		AmuaModel model=(AmuaModel) un.unmarshal(new StringReader(MarkovAllocationTest.MODEL));
+		model.simType=1;
+		model.cohortSize=NUM_PEOPLE;
+		model.rngStreams=true;
+		model.displayIndResults=true;
+		model.openModelHeadless(new ErrorLog("test"));
+		return(model);
+	}
+	
+	private RunReport simulate(AmuaModel model, int numThreads) throws Exception{
+		model.numThreads=numThreads;
+		model.unlockParams();
+		ArrayList<String> errors=model.parseModel(); //per-thread values
+		assertEquals(errors.toString(), 0, errors.size());
+		model.evaluateParameters();
+		RunReport report=new RunReport(model);
+		MarkovMonteCarlo microsim=new MarkovMonteCarlo(model.markov,report);
+		microsim.simulate(false);
+		report.microStats.get(0).calcSummary();
+		return(report);
+	}
+}